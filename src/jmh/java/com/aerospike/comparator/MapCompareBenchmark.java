@@ -0,0 +1,88 @@
+package com.aerospike.comparator;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.aerospike.client.Key;
+import com.aerospike.client.Record;
+
+/**
+ * Comparing large identical map bins: key ordered maps, which {@link RecordComparator} walks side by side, against
+ * the same entries in hash maps, which it compares by looking up every key on the other side, and against sorting the
+ * hash maps into server order before walking them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class MapCompareBenchmark {
+    @Param({"100000", "1000000"})
+    public int entries;
+
+    @Param({"long", "string"})
+    public String keyType;
+
+    private final RecordComparator comparator = new RecordComparator();
+    private final Key key = new Key("test", "set", "benchmark");
+    private final AerospikeComparator keyOrder = new AerospikeComparator();
+    private Record ordered1;
+    private Record ordered2;
+    private Record unordered1;
+    private Record unordered2;
+
+    @Setup
+    public void setup() {
+        ordered1 = record(new TreeMap<>(keyOrder));
+        ordered2 = record(new TreeMap<>(keyOrder));
+        unordered1 = record(new HashMap<>());
+        unordered2 = record(new HashMap<>());
+    }
+
+    private Record record(Map<Object, Object> map) {
+        for (long i = 0; i < entries; i++) {
+            map.put("long".equals(keyType) ? (Object)(i * 7919) : "key-" + i, i);
+        }
+        Map<String, Object> bins = new HashMap<>();
+        bins.put("map", map);
+        return new Record(bins, 0, 0);
+    }
+
+    @Benchmark
+    public DifferenceSet orderedMergeWalk() {
+        return comparator.compare(key, ordered1, ordered2, null, false, 0, 1);
+    }
+
+    @Benchmark
+    public DifferenceSet unorderedLookup() {
+        return comparator.compare(key, unordered1, unordered2, null, false, 0, 1);
+    }
+
+    @Benchmark
+    public DifferenceSet sortThenMergeWalk() {
+        Map<Object, Object> sorted1 = new TreeMap<>(keyOrder);
+        sorted1.putAll((Map<?, ?>)unordered1.bins.get("map"));
+        Map<Object, Object> sorted2 = new TreeMap<>(keyOrder);
+        sorted2.putAll((Map<?, ?>)unordered2.bins.get("map"));
+        Map<String, Object> bins1 = new HashMap<>();
+        bins1.put("map", sorted1);
+        Map<String, Object> bins2 = new HashMap<>();
+        bins2.put("map", sorted2);
+        return comparator.compare(key, new Record(bins1, 0, 0), new Record(bins2, 0, 0), null, false, 0, 1);
+    }
+}
@@ -0,0 +1,68 @@
+package com.aerospike.comparator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Contention when many worker threads take partition tasks at once: the lock-free {@link PartitionScheduler} against
+ * the synchronized <code>ArrayList.remove(0)</code> it replaced. Each thread only takes tasks, so this measures the
+ * hand out itself. When the tasks run out they are refilled, which happens once per {@link #TASKS} polls.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(256)
+public class PartitionSchedulerBenchmark {
+    private static final int TASKS = 4096 * 16;
+
+    private List<PartitionTask> tasks;
+    private final AtomicReference<PartitionScheduler> scheduler = new AtomicReference<>();
+    private final List<PartitionTask> synchronizedList = new ArrayList<>();
+
+    @Setup
+    public void setup() {
+        tasks = new ArrayList<>();
+        for (int i = 0; i < TASKS; i++) {
+            tasks.add(new PartitionTask("test", null, PartitionRange.wholePartition(i % 4096), i));
+        }
+        scheduler.set(PartitionScheduler.largestFirst(tasks));
+        synchronizedList.addAll(tasks);
+    }
+
+    @Benchmark
+    public PartitionTask lockFreeScheduler() {
+        PartitionScheduler current = scheduler.get();
+        PartitionTask task = current.poll();
+        if (task == null) {
+            scheduler.compareAndSet(current, new PartitionScheduler(tasks));
+        }
+        return task;
+    }
+
+    @Benchmark
+    public PartitionTask synchronizedArrayList() {
+        synchronized (synchronizedList) {
+            if (synchronizedList.isEmpty()) {
+                synchronizedList.addAll(tasks);
+            }
+            return synchronizedList.remove(0);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.aerospike.comparator;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Finding the path options for every level of a deep CDT path: stepping through the compiled {@link PathMatcher}
+ * one part at a time against testing every {@link PathOption#matches} on the whole path at each level, as
+ * <code>PathOptions.getActionsForPath</code> did before the matcher. The rules mix literal parts with <code>*</code>
+ * and <code>**</code> wildcards, and only a few of them match the path walked.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PathMatcherBenchmark {
+    @Param({"100", "500"})
+    public int rules;
+
+    @Param({"8", "32"})
+    public int depth;
+
+    private PathOptions pathOptions;
+    private PathMatcher matcher;
+    private String[] path;
+
+    @Setup
+    public void setup() {
+        PathOption[] options = new PathOption[rules];
+        for (int i = 0; i < rules; i++) {
+            switch (i % 4) {
+                case 0:
+                    options[i] = new PathOption("/test/set/bin" + (i % 10) + "/**/leaf" + i, PathAction.IGNORE);
+                    break;
+                case 1:
+                    options[i] = new PathOption("/*/set/bin" + (i % 10) + "/*/level" + (i % 7), PathAction.COMPAREUNORDERED);
+                    break;
+                case 2:
+                    options[i] = new PathOption("/test/**/level" + (i % depth) + "/field" + i, PathAction.IGNORE);
+                    break;
+                default:
+                    options[i] = new PathOption("/test/set" + i + "/**", PathAction.REPORTBYTERANGES);
+                    break;
+            }
+        }
+        pathOptions = new PathOptions(options);
+        matcher = pathOptions.getMatcher();
+
+        // namespace, set, bin, then nested map keys down to the leaf
+        path = new String[depth];
+        path[0] = "test";
+        path[1] = "set";
+        path[2] = "bin0";
+        for (int i = 3; i < depth - 1; i++) {
+            path[i] = "level" + i;
+        }
+        path[depth - 1] = "leaf0";
+    }
+
+    @Benchmark
+    public void compiledMatcher(Blackhole blackhole) {
+        PathMatcher.State state = matcher.getStart();
+        for (String part : path) {
+            state = state.next(part);
+            blackhole.consume(state.getActions());
+        }
+    }
+
+    @Benchmark
+    public void matchEveryOption(Blackhole blackhole) {
+        Deque<String> parts = new ArrayDeque<>();
+        for (String part : path) {
+            parts.push(part);
+            EnumSet<PathAction> actions = EnumSet.noneOf(PathAction.class);
+            for (PathOption option : pathOptions.getPaths()) {
+                if (option.matches(parts)) {
+                    actions.add(option.getAction());
+                }
+            }
+            blackhole.consume(actions);
+        }
+    }
+}
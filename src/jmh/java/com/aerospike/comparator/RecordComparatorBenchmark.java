@@ -0,0 +1,113 @@
+package com.aerospike.comparator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.aerospike.client.Key;
+import com.aerospike.client.Record;
+
+/**
+ * The cost per record of comparing deep records, mostly to measure what the walk allocates. Run it with the GC
+ * profiler, where <code>gc.alloc.rate.norm</code> is the bytes allocated per record:
+ * <pre>
+ * mvn -Pbenchmarks -DskipUi test-compile exec:exec -Dbenchmark="RecordComparatorBenchmark -prof gc"
+ * </pre>
+ * Identical records compared with a comparator kept by the thread should allocate close to nothing. A comparator
+ * per record shows the cost of the state a comparator keeps, and a single deep difference the cost of forming the
+ * path of a difference.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RecordComparatorBenchmark {
+    private static final int FAN_OUT = 4;
+    private static final int DEPTH = 5;
+    private static final int LIST_SIZE = 100;
+
+    @Param({"false", "true"})
+    public boolean withPathOptions;
+
+    private final RecordComparator comparator = new RecordComparator();
+    private final Key key = new Key("test", "set", "benchmark");
+    private PathOptions pathOptions;
+    private Record record;
+    private Record sameRecord;
+    private Record differentRecord;
+
+    @Setup
+    public void setup() {
+        pathOptions = withPathOptions ? new PathOptions(
+                new PathOption("/test/set/map/key0/**/key3", PathAction.IGNORE),
+                new PathOption("/*/set/map/key1/**/list", PathAction.COMPAREUNORDERED),
+                new PathOption("/test/set/blob", PathAction.REPORTBYTERANGES)) : null;
+        record = new Record(bins(-1), 0, 0);
+        sameRecord = new Record(bins(-1), 0, 0);
+        differentRecord = new Record(bins(LIST_SIZE / 2), 0, 0);
+    }
+
+    /**
+     * The bins of a record with a map nested {@link #DEPTH} deep with lists at the bottom, changing the item at
+     * <code>differentItem</code> in the last list, if not negative.
+     */
+    private static Map<String, Object> bins(int differentItem) {
+        Map<String, Object> bins = new HashMap<>();
+        bins.put("map", map(DEPTH, differentItem));
+        bins.put("name", "benchmark record");
+        bins.put("count", 12345L);
+        bins.put("blob", new byte[256]);
+        return bins;
+    }
+
+    private static Map<Object, Object> map(int depth, int differentItem) {
+        Map<Object, Object> map = new HashMap<>();
+        if (depth > 1) {
+            for (int i = 0; i < FAN_OUT; i++) {
+                map.put("key" + i, map(depth - 1, i == FAN_OUT - 1 ? differentItem : -1));
+            }
+        }
+        else {
+            List<Object> list = new ArrayList<>();
+            for (int i = 0; i < LIST_SIZE; i++) {
+                list.add(i == differentItem ? -1L : (long)i);
+            }
+            map.put("list", list);
+            for (int i = 0; i < FAN_OUT; i++) {
+                map.put(i, "value" + i);
+            }
+        }
+        return map;
+    }
+
+    @Benchmark
+    public DifferenceSet identicalRecords() {
+        return comparator.compare(key, record, sameRecord, pathOptions, false, 0, 1);
+    }
+
+    @Benchmark
+    public DifferenceSet comparatorPerRecord() {
+        return new RecordComparator().compare(key, record, sameRecord, pathOptions, false, 0, 1);
+    }
+
+    @Benchmark
+    public DifferenceSet oneDifference() {
+        return comparator.compare(key, record, differentRecord, pathOptions, false, 0, 1);
+    }
+}
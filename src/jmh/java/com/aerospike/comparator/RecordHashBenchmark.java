@@ -0,0 +1,91 @@
+package com.aerospike.comparator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.aerospike.client.Record;
+import com.aerospike.comparator.dbaccess.RecordHashVersion;
+
+/**
+ * Hashing a record with many nested maps and lists, as a remote server does for every record when comparing hashes:
+ * the {@link RecordHashVersion#LEGACY} serialized hash against the {@link RecordHashVersion#CANONICAL} streamed hash.
+ * With <code>sortMaps</code> the legacy hash sorts map entries into server order before serializing them, where the
+ * canonical hash sums the hashes of the entries instead.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RecordHashBenchmark {
+    private static final int FAN_OUT = 5;
+    private static final int DEPTH = 3;
+
+    @Param({"LEGACY", "CANONICAL"})
+    public RecordHashVersion version;
+
+    @Param({"false", "true"})
+    public boolean sortMaps;
+
+    private Record record;
+
+    @Setup
+    public void setup() {
+        Map<String, Object> bins = new HashMap<>();
+        bins.put("map", map(DEPTH));
+        bins.put("ordered", orderedMap());
+        bins.put("list", list(DEPTH));
+        bins.put("name", "benchmark record");
+        bins.put("count", 12345L);
+        record = new Record(bins, 0, 0);
+    }
+
+    private static Map<Object, Object> map(int depth) {
+        Map<Object, Object> map = new HashMap<>();
+        for (int i = 0; i < FAN_OUT; i++) {
+            map.put("key" + i, depth > 1 ? map(depth - 1) : list(1));
+            map.put((long)i, 1.5 * i);
+        }
+        return map;
+    }
+
+    private static List<Object> list(int depth) {
+        List<Object> list = new ArrayList<>();
+        for (int i = 0; i < FAN_OUT; i++) {
+            list.add(depth > 1 ? map(depth - 1) : "item" + i);
+            list.add((long)i);
+            list.add(new byte[] {(byte)i, 1, 2, 3});
+        }
+        return list;
+    }
+
+    private static Map<Object, Object> orderedMap() {
+        Map<Object, Object> map = new TreeMap<>();
+        for (long i = 0; i < 1000; i++) {
+            map.put(i, "value" + i);
+        }
+        return map;
+    }
+
+    @Benchmark
+    public byte[] hash() {
+        return version.hash(record, sortMaps);
+    }
+}
@@ -0,0 +1,176 @@
+package com.aerospike.comparator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.aerospike.client.AerospikeClient;
+import com.aerospike.client.Bin;
+import com.aerospike.client.Host;
+import com.aerospike.client.IAerospikeClient;
+import com.aerospike.client.Key;
+
+/**
+ * Platform threads against virtual threads (<code>--virtualThreads</code>) at increasing thread counts, with and
+ * without a limit on the scans per node (<code>--maxScansPerNode</code>).
+ * <ul>
+ * <li><code>compareTestClusters</code> compares a set on the second and third test clusters from
+ * {@link ClusterTestHosts}, so those clusters must be running.</li>
+ * <li><code>blockingStreams</code> needs no cluster: each stream waits on simulated network round trips the way a
+ * partition scan waits on the server, isolating the cost of the threads themselves. With a limit on the scans per
+ * node, the streams are handed out by a {@link NodeAwarePartitionScheduler} over {@value #NODES} simulated nodes, so
+ * most threads spend their time waiting for a node to have capacity.</li>
+ * </ul>
+ * Virtual threads need Java 21 or later, on earlier runtimes the <code>virtualThreads=true</code> runs fail.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ThreadModeBenchmark {
+    private static final String NAMESPACE = "test";
+    private static final String SET_NAME = "benchThreadMode";
+    private static final int RECORDS = 20_000;
+    private static final int ROUND_TRIPS = 20;
+    private static final int NODES = 8;
+
+    @Param({"false", "true"})
+    public boolean virtualThreads;
+
+    @Param({"256", "4096"})
+    public int threads;
+
+    @Param({"0", "4"})
+    public int maxScansPerNode;
+
+    private IAerospikeClient[] clients;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        if (virtualThreads && !ThreadSupport.isVirtualThreadsAvailable()) {
+            throw new IllegalStateException("Virtual threads need Java 21 or later, not Java " + Runtime.version().feature());
+        }
+        ThreadSupport.setUseVirtualThreads(virtualThreads);
+    }
+
+    private void loadTestClusters() {
+        if (clients != null) {
+            return;
+        }
+        clients = new IAerospikeClient[] {
+                new AerospikeClient(null, Host.parseHosts(ClusterTestHosts.resolve(1), 3000)),
+                new AerospikeClient(null, Host.parseHosts(ClusterTestHosts.resolve(2), 3000))
+        };
+        for (int i = 0; i < RECORDS; i++) {
+            Key key = new Key(NAMESPACE, SET_NAME, i);
+            Bin[] bins = new Bin[] {new Bin("id", i), new Bin("name", "record-" + i)};
+            clients[0].put(null, key, bins);
+            // Leave some records off the second cluster so there is something to report
+            if (i % 100 != 0) {
+                clients[1].put(null, key, bins);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ThreadSupport.setUseVirtualThreads(false);
+        if (clients != null) {
+            for (IAerospikeClient client : clients) {
+                client.truncate(null, NAMESPACE, SET_NAME, null);
+                client.close();
+            }
+            clients = null;
+        }
+    }
+
+    @Benchmark
+    public DifferenceSummary compareTestClusters() throws Exception {
+        loadTestClusters();
+        List<String> args = new ArrayList<>(Arrays.asList(
+                "-h1", ClusterTestHosts.resolve(1),
+                "-h2", ClusterTestHosts.resolve(2),
+                "-n", NAMESPACE,
+                "-s", SET_NAME,
+                "-a", "scan",
+                "-C", "MISSING_RECORDS",
+                "-q",
+                "-t", Integer.toString(threads)));
+        if (virtualThreads) {
+            args.add("-vt");
+        }
+        if (maxScansPerNode > 0) {
+            args.add("-msn");
+            args.add(Integer.toString(maxScansPerNode));
+        }
+        return new ClusterComparator(new ClusterComparatorOptions(args.toArray(new String[0]))).begin();
+    }
+
+    /**
+     * One stream per thread, each a partition mastered by one of the simulated nodes.
+     */
+    private PartitionScheduler newScheduler() {
+        List<PartitionTask> tasks = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            tasks.add(new PartitionTask(NAMESPACE, SET_NAME, PartitionRange.wholePartition(i)));
+        }
+        if (maxScansPerNode <= 0) {
+            return new PartitionScheduler(tasks);
+        }
+        return new NodeAwarePartitionScheduler(tasks,
+                task -> new String[] {"node" + (task.getRange().getPartitionId() % NODES)}, maxScansPerNode);
+    }
+
+    @Benchmark
+    public int blockingStreams() throws Exception {
+        PartitionScheduler scheduler = newScheduler();
+        ExecutorService executor = ThreadSupport.newFixedThreadPool(threads, "bench-stream");
+        try {
+            List<Future<Integer>> streams = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                streams.add(executor.submit(() -> {
+                    PartitionTask task;
+                    while ((task = scheduler.poll()) == null) {
+                        scheduler.awaitCapacity(100);
+                    }
+                    try {
+                        for (int trip = 0; trip < ROUND_TRIPS; trip++) {
+                            Thread.sleep(1);
+                        }
+                    }
+                    finally {
+                        scheduler.release(task);
+                    }
+                    return ROUND_TRIPS;
+                }));
+            }
+            int total = 0;
+            for (Future<Integer> stream : streams) {
+                total += stream.get();
+            }
+            return total;
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.aerospike.comparator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The ranges of bytes which differ between two blobs, up to a limit on the number of ranges.
+ * <p>
+ * Blobs of the same length are compared a block at a time using {@link Arrays#mismatch}, which the JVM vectorizes.
+ * Adjacent blocks which differ are reported as a single range, trimmed to the first and last differing bytes. Small
+ * blobs use small blocks so the ranges are close to the bytes which differ, large blobs use larger blocks so a blob
+ * which differs throughout is still compared at the speed of the mismatch.
+ * <p>
+ * If the blobs have different lengths, bytes were probably inserted or removed, so everything after that point
+ * would be reported as different if compared position by position. Instead the bytes the blobs start and end with
+ * are trimmed off and what remains is reported as a single range, which ends at a different offset in each blob.
+ */
+public class ByteRanges {
+    /** Blobs at least this long are compared in large blocks */
+    public static final int LARGE_BLOB_SIZE = 64 * 1024;
+    private static final int SMALL_BLOCK_SIZE = 16;
+    private static final int LARGE_BLOCK_SIZE = 4096;
+
+    /**
+     * A range of differing bytes, from start up to but not including the end in each blob.
+     */
+    public static class Range {
+        private final int start;
+        private final int end1;
+        private final int end2;
+
+        public Range(int start, int end1, int end2) {
+            this.start = start;
+            this.end1 = end1;
+            this.end2 = end2;
+        }
+
+        public int getStart() {
+            return start;
+        }
+
+        public int getEnd1() {
+            return end1;
+        }
+
+        public int getEnd2() {
+            return end2;
+        }
+
+        @Override
+        public String toString() {
+            return end1 == end2 ? String.format("[%d-%d)", start, end1) : String.format("[%d-%d|%d)", start, end1, end2);
+        }
+    }
+
+    private final List<Range> ranges;
+    private final boolean truncated;
+
+    private ByteRanges(List<Range> ranges, boolean truncated) {
+        this.ranges = Collections.unmodifiableList(ranges);
+        this.truncated = truncated;
+    }
+
+    /**
+     * Find the ranges of bytes which differ between the blobs, stopping once maxRanges have been found.
+     */
+    public static ByteRanges between(byte[] bytes1, byte[] bytes2, int maxRanges) {
+        if (maxRanges < 1) {
+            throw new IllegalArgumentException("maxRanges must be >= 1");
+        }
+        List<Range> ranges = new ArrayList<>();
+        if (bytes1.length != bytes2.length) {
+            int prefix = Arrays.mismatch(bytes1, bytes2);
+            int minLength = Math.min(bytes1.length, bytes2.length);
+            // The suffix cannot overlap the prefix in the shorter blob
+            int suffix = 0;
+            while (suffix < minLength - prefix
+                    && bytes1[bytes1.length - 1 - suffix] == bytes2[bytes2.length - 1 - suffix]) {
+                suffix++;
+            }
+            ranges.add(new Range(prefix, bytes1.length - suffix, bytes2.length - suffix));
+            return new ByteRanges(ranges, false);
+        }
+        int length = bytes1.length;
+        int blockSize = length >= LARGE_BLOB_SIZE ? LARGE_BLOCK_SIZE : SMALL_BLOCK_SIZE;
+        int position = 0;
+        while (position < length) {
+            int mismatch = Arrays.mismatch(bytes1, position, length, bytes2, position, length);
+            if (mismatch < 0) {
+                break;
+            }
+            if (ranges.size() == maxRanges) {
+                return new ByteRanges(ranges, true);
+            }
+            int start = position + mismatch;
+            // Extend the range over each following block which also differs
+            int blockEnd = Math.min(length, (start / blockSize + 1) * blockSize);
+            while (blockEnd < length) {
+                int nextBlockEnd = Math.min(length, blockEnd + blockSize);
+                if (Arrays.mismatch(bytes1, blockEnd, nextBlockEnd, bytes2, blockEnd, nextBlockEnd) < 0) {
+                    break;
+                }
+                blockEnd = nextBlockEnd;
+            }
+            int end = blockEnd;
+            while (bytes1[end - 1] == bytes2[end - 1]) {
+                end--;
+            }
+            ranges.add(new Range(start, end, end));
+            position = blockEnd;
+        }
+        return new ByteRanges(ranges, false);
+    }
+
+    public List<Range> getRanges() {
+        return ranges;
+    }
+
+    /**
+     * Whether there are more differing bytes after the last range, which were not reported as the limit was reached.
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    @Override
+    public String toString() {
+        return truncated ? ranges + "..." : ranges.toString();
+    }
+}
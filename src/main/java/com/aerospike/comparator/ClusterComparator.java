@@ -7,21 +7,30 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -32,6 +41,9 @@ import com.aerospike.client.IAerospikeClient;
 import com.aerospike.client.Key;
 import com.aerospike.client.Record;
 import com.aerospike.client.ResultCode;
+import com.aerospike.client.async.EventLoops;
+import com.aerospike.client.async.EventPolicy;
+import com.aerospike.client.async.NioEventLoops;
 import com.aerospike.client.cluster.ClusterUtilities;
 import com.aerospike.client.cluster.Partition;
 import com.aerospike.client.exp.Exp;
@@ -47,15 +59,29 @@ import com.aerospike.client.query.Statement;
 import com.aerospike.comparator.ClusterComparatorOptions.Action;
 import com.aerospike.comparator.ClusterComparatorOptions.CompareMode;
 import com.aerospike.comparator.ClusterComparatorOptions.CustomActions;
+import com.aerospike.comparator.ClusterComparatorOptions.FingerprintMode;
+import com.aerospike.comparator.ClusterComparatorOptions.WorkOrder;
+import com.aerospike.comparator.ComparisonCheckpoint.Counters;
+import com.aerospike.comparator.ComparisonCheckpoint.RangeProgress;
+import com.aerospike.comparator.PartitionRetryQueue.Attempt;
 import com.aerospike.comparator.dbaccess.AerospikeClientAccess;
 import com.aerospike.comparator.dbaccess.LocalAerospikeClient;
+import com.aerospike.comparator.dbaccess.RateLimitedClientAccess;
+import com.aerospike.comparator.dbaccess.ReadAheadRecordSet;
+import com.aerospike.comparator.dbaccess.ReadAheadStats;
+import com.aerospike.comparator.dbaccess.RecordHashVersion;
 import com.aerospike.comparator.dbaccess.RecordMetadata;
+import com.aerospike.comparator.dbaccess.RecordRateLimiter;
 import com.aerospike.comparator.dbaccess.RecordSetAccess;
 import com.aerospike.comparator.dbaccess.RemoteAerospikeClient;
 import com.aerospike.comparator.dbaccess.RemoteServer;
+import com.aerospike.comparator.dbaccess.RemoteUtils;
 import com.aerospike.comparator.web.ProgressSnapshot;
 
 public class ClusterComparator {
+    private static final Pattern OBJECTS_PATTERN = Pattern.compile("(?:^|[;:])objects=(\\d+)");
+    /** The most touches or reads of missing records which can be waiting to complete at once */
+    private static final int MAX_RECORD_ACTIONS_IN_FLIGHT = 1024;
 
     // TODO:
     // - Protobuf'ing binary fields
@@ -66,21 +92,38 @@ public class ClusterComparator {
     private final AtomicLongArray recordsProcessedOnCluster;
     private final AtomicLongArray recordsMissingOnCluster;
     private final AtomicLong recordsDifferentCount = new AtomicLong();
+    private final AtomicLong fingerprintCollisions = new AtomicLong();
     private final AtomicLong totalMissingRecords = new AtomicLong();
     final AtomicLong totalRecordsCompared = new AtomicLong();
     private final AtomicLong recordsRemaining = new AtomicLong();
     final AtomicBoolean[] partitionsComplete;
+    private final AtomicInteger[] rangesRemainingInPartition;
     
     private ExecutorService executor = null;
+    private ExecutorService readAheadExecutor = null;
+    private ComparePipeline comparePipeline = null;
+    // Comparators hold state between records, so each comparator thread has its own
+    private final ThreadLocal<RecordComparator> pipelineComparators = ThreadLocal.withInitial(this::newRecordComparator);
+    private final ReadAheadStats[] readAheadStats;
+    private final RecordRateLimiter[] rateLimiters;
+    private final RecordActionSender recordActions;
+    private EventLoops eventLoops = null;
+    private final ComparisonCheckpoint checkpoint;
+    private final PartitionRetryQueue retryQueue;
     private AtomicInteger activeThreads;
     volatile boolean forceTerminate = false;
     private final List<MissingRecordHandler> missingRecordHandlers = new ArrayList<>();
     private final List<RecordDifferenceHandler> recordDifferenceHandlers = new ArrayList<>();
+    private final List<RemoteAerospikeClient> remoteClients = new ArrayList<>();
     private final ClusterComparatorOptions options;
     private int threadsToUse;
-    private List<Integer> partitionList = new ArrayList<>();
+    private volatile ConcurrencyController concurrencyController;
+    private PartitionScheduler partitionScheduler = new PartitionScheduler(Collections.emptyList());
     private List<Integer> failedPartitionsList = new ArrayList<>();
     private Expression filterExpression = null;
+    private Expression singlePassFilterExpression = null;
+    /** Missing and different record counts for each set when all the sets are compared in a single pass */
+    private final Map<String, AtomicLongArray> differencesBySet = new ConcurrentHashMap<>();
     private final int numberOfClusters;
     
     private QueryPolicy queryPolicyToUse;
@@ -93,7 +136,7 @@ public class ClusterComparator {
         return startPartition;
     }
 
-    int getNumberOfClusters() {
+    public int getNumberOfClusters() {
         return numberOfClusters;
     }
 
@@ -101,10 +144,24 @@ public class ClusterComparator {
         return options;
     }
 
+    /**
+     * A comparator for the records of one thread, keeping no more differences per record than the options allow.
+     */
+    RecordComparator newRecordComparator() {
+        return new RecordComparator(options.getMaxDifferencesPerRecord(), options.getMaxDifferencesPerBin());
+    }
+
     int getThreadsToUse() {
         return threadsToUse;
     }
 
+    /**
+     * The controller of the number of workers and the RPS, or null if the comparison has not started.
+     */
+    public ConcurrencyController getConcurrencyController() {
+        return concurrencyController;
+    }
+
     Expression getFilterExpression() {
         return filterExpression;
     }
@@ -130,14 +187,22 @@ public class ClusterComparator {
                 recordsMissingOnCluster.incrementAndGet(thisCluster);
             }
             totalMissingRecords.incrementAndGet();
+            countSetDifference(key, 0);
             checkDifferencesCount();
         }
 
         @Override
         public void handle(int partitionId, Key key, DifferenceCollection differences, List<Integer> missingFromClusters, RecordMetadata[] recordMetadatas) throws IOException {
             recordsDifferentCount.incrementAndGet();
+            countSetDifference(key, 1);
             checkDifferencesCount();
         }
+
+        private void countSetDifference(Key key, int index) {
+            if (options.isSinglePassSets() && key.setName != null) {
+                differencesBySet.computeIfAbsent(key.setName, name -> new AtomicLongArray(2)).incrementAndGet(index);
+            }
+        }
     }
     
     private String showPolicy(Policy policy) {
@@ -191,14 +256,32 @@ public class ClusterComparator {
         this.endPartition = Math.min(4096, options.getEndPartition());
         int partitionCount = endPartition - startPartition;
         this.partitionsComplete = new AtomicBoolean[partitionCount];
+        this.rangesRemainingInPartition = new AtomicInteger[partitionCount];
         for (int i = 0; i < partitionCount; i++) {
             partitionsComplete[i] = new AtomicBoolean(false);
+            rangesRemainingInPartition[i] = new AtomicInteger(1);
         }
         numberOfClusters = this.options.getClusterConfigs().size();
         recordsProcessedOnCluster = new AtomicLongArray(numberOfClusters);
         recordsMissingOnCluster = new AtomicLongArray(numberOfClusters);
+        readAheadStats = new ReadAheadStats[numberOfClusters];
+        for (int i = 0; i < numberOfClusters; i++) {
+            readAheadStats[i] = new ReadAheadStats();
+        }
+        rateLimiters = new RecordRateLimiter[numberOfClusters];
+        for (int i = 0; i < numberOfClusters; i++) {
+            rateLimiters[i] = new RecordRateLimiter(options.getClusterRps(i));
+        }
 
         this.setupPolicies();
+        this.retryQueue = new PartitionRetryQueue(options.getPartitionRetryBackoffMs());
+        this.recordActions = new RecordActionSender(MAX_RECORD_ACTIONS_IN_FLIGHT, options.isSilent());
+        if (options.getCheckpointFileName() != null) {
+            this.checkpoint = new ComparisonCheckpoint(options.getCheckpointFileName(), options.isResume(), this::formCheckpointCounters);
+        }
+        else {
+            this.checkpoint = null;
+        }
         
         InternalHandler handler = new InternalHandler();
         this.missingRecordHandlers.add(handler);
@@ -212,7 +295,8 @@ public class ClusterComparator {
                 options.getAction() != Action.TOUCH && 
                 options.getAction() != Action.READ && 
                 options.getAction() != Action.CUSTOM) {
-            CsvDifferenceHandler csvHandler = new CsvDifferenceHandler(options.getOutputFileName(), options);
+            ComparisonCheckpoint resumeFrom = checkpoint != null && checkpoint.isResuming() ? checkpoint : null;
+            CsvDifferenceHandler csvHandler = new CsvDifferenceHandler(options.getOutputFileName(), options, resumeFrom);
             this.missingRecordHandlers.add(csvHandler);
             this.recordDifferenceHandlers.add(csvHandler);
         }
@@ -292,6 +376,7 @@ public class ClusterComparator {
         clientPolicy.readPolicyDefault = readPolicyToUse;
         clientPolicy.queryPolicyDefault = queryPolicyToUse;
         clientPolicy.writePolicyDefault = writePolicyToUse;
+        clientPolicy.eventLoops = getEventLoops();
         
         String hostNames = config.getHostName();
         if (hostNames.startsWith("remote:")) {
@@ -310,7 +395,9 @@ public class ClusterComparator {
                     System.out.printf("Remote cluster %d: hosts: %s tlsPolicy: %s\n", 
                             clusterIndex, hostNames, tlsPolicyAsString(clientPolicy.tlsPolicy));
                 }
-                return new RemoteAerospikeClient(remoteHost[1], Integer.valueOf(remoteHost[2]), this.threadsToUse, clientPolicy.tlsPolicy, options);
+                RemoteAerospikeClient client = new RemoteAerospikeClient(remoteHost[1], Integer.valueOf(remoteHost[2]), this.threadsToUse, clientPolicy.tlsPolicy, options);
+                remoteClients.add(client);
+                return client;
             }
             catch (IOException ioe) {
                 throw new AerospikeException(ioe);
@@ -337,7 +424,28 @@ public class ClusterComparator {
                     new ClusterUtilities(client).printInfo(true, 120);
                 }
             }
-            return new LocalAerospikeClient(client);
+            return new LocalAerospikeClient(client, clientPolicy.eventLoops);
+        }
+    }
+
+    /**
+     * The event loops shared by the clients of all the clusters for their batch reads, metadata lookups and record
+     * actions, or null if the asynchronous client is not being used.
+     */
+    private synchronized EventLoops getEventLoops() {
+        if (eventLoops == null && options.getEventLoops() > 0) {
+            EventPolicy eventPolicy = new EventPolicy();
+            // Commands beyond this wait in the event loop's queue rather than opening more connections
+            eventPolicy.maxCommandsInProcess = Math.max(1, this.threadsToUse);
+            eventLoops = new NioEventLoops(eventPolicy, options.getEventLoops(), true, "comparator-event-loop");
+        }
+        return eventLoops;
+    }
+
+    private synchronized void closeEventLoops() {
+        if (eventLoops != null) {
+            eventLoops.close();
+            eventLoops = null;
         }
     }
 
@@ -373,23 +481,6 @@ public class ClusterComparator {
         return differences;
     }
     
-    int compare(byte[] digest1, byte[] digest2) {
-        if (digest1.length != digest2.length) {
-            throw new IllegalArgumentException("Digest1 has a length of " + digest1.length + ", digest2 has a length of " + digest2.length);
-        }
-        for (int i = 0; i < digest1.length; i++) {
-            char c1 = (char) digest1[i];
-            char c2 = (char) digest2[i];
-            if (c1 < c2) {
-                return -1;
-            }
-            if (c1 > c2) {
-                return 1;
-            }
-        }
-        return 0;
-    }
-
     void differentRecords(int partitionId, Key key, DifferenceCollection differences, List<Integer> clustersWithRecord, RecordMetadata[] recordMetadatas) {
         for (RecordDifferenceHandler thisHandler : recordDifferenceHandlers) {
             try {
@@ -495,67 +586,83 @@ public class ClusterComparator {
         }
         return result;
     }
+
+    private synchronized ComparePipeline getComparePipeline() {
+        if (comparePipeline == null) {
+            comparePipeline = new ComparePipeline(options.getCompareThreads());
+        }
+        return comparePipeline;
+    }
+
+    private synchronized ExecutorService getReadAheadExecutor() {
+        if (readAheadExecutor == null) {
+            readAheadExecutor = ThreadSupport.newCachedThreadPool("read-ahead");
+        }
+        return readAheadExecutor;
+    }
+
+    /**
+     * Move the scan on this cluster on to the next record and load its digest into the merger. A record
+     * past the end of the range being compared ends the scan on this cluster and is not counted.
+     */
+    private void advanceCluster(RecordSetAccess recordSet, int cluster, Key[] keys, DigestMerger merger, PartitionRange range) {
+        if (recordSet.next() && !range.isPastEnd(recordSet.getKey().digest)) {
+            recordsProcessedOnCluster.incrementAndGet(cluster);
+            keys[cluster] = recordSet.getKey();
+            merger.setDigest(cluster, keys[cluster].digest);
+        }
+        else {
+            keys[cluster] = null;
+            merger.setExhausted(cluster);
+        }
+    }
     
-    private Expression formFilterExpression() {
+    private Exp formDateFilter() {
         if (this.options.getBeginDate() == null && this.options.getEndDate() == null) {
             return null;
         }
         if (this.options.getBeginDate() == null && this.options.getEndDate() != null) {
             // We need the last update time to be <= endTime
-            return Exp.build(Exp.le(Exp.lastUpdate(), Exp.val(TimeUnit.MILLISECONDS.toNanos(this.options.getEndDate().getTime()))));
+            return Exp.le(Exp.lastUpdate(), Exp.val(TimeUnit.MILLISECONDS.toNanos(this.options.getEndDate().getTime())));
         }
         else if (this.options.getBeginDate() != null && this.options.getEndDate() == null) {
             // We need the last update time to be greater or equal to the begin time.
-            return Exp.build(Exp.ge(Exp.lastUpdate(), Exp.val(TimeUnit.MILLISECONDS.toNanos(this.options.getBeginDate().getTime()))));
+            return Exp.ge(Exp.lastUpdate(), Exp.val(TimeUnit.MILLISECONDS.toNanos(this.options.getBeginDate().getTime())));
         }
         else {
             // Both are non-null
-            return Exp.build(Exp.and(
+            return Exp.and(
                     Exp.le(Exp.lastUpdate(), Exp.val(TimeUnit.MILLISECONDS.toNanos(this.options.getEndDate().getTime()))), 
-                    Exp.ge(Exp.lastUpdate(), Exp.val(TimeUnit.MILLISECONDS.toNanos(this.options.getBeginDate().getTime())))));
+                    Exp.ge(Exp.lastUpdate(), Exp.val(TimeUnit.MILLISECONDS.toNanos(this.options.getBeginDate().getTime()))));
         }
     }
     
-    boolean anySideValid(boolean[] sidesValid) {
-        for (boolean isValid: sidesValid) {
-            if (isValid) {
-                return true;
-            }
-        }
-        return false;
+    private Expression formFilterExpression() {
+        Exp dateFilter = formDateFilter();
+        return dateFilter == null ? null : Exp.build(dateFilter);
     }
     
-    private boolean atMostOneSideValid(boolean[] sidesValid) {
-        int count = 0;
-        for (boolean isValid: sidesValid) {
-            if (isValid) {
-                count++;
-            }
+    /**
+     * Form the filter used when the sets are compared in a single pass of each partition: the record must be in one of
+     * the sets being compared, as well as in the date range if there is one.
+     */
+    private Expression formSinglePassFilterExpression() {
+        if (!options.isSinglePassSets()) {
+            return null;
         }
-        return count <= 1;
-        
+        return Exp.build(formSinglePassFilter(options.getSetNames(), formDateFilter()));
     }
     
-    Key getKeyWithLargestDigest(Key[] keys) {
-        if (keys.length == 1) {
-            throw new IllegalArgumentException("Must pass at least two keys");
-        }
-        Key keyToReturn = keys[0];
-        for (int i = 1; i < keys.length; i++) {
-            if (keyToReturn == null) {
-                keyToReturn = keys[i];
-            }
-            else {
-                if (keys[i] != null) {
-                    int result = compare(keyToReturn.digest, keys[i].digest);
-                    if (result < 0) {
-                        // max < keys[i].digest
-                        keyToReturn = keys[i];
-                    }
-                }
-            }
+    /**
+     * Combine a filter keeping only records in the passed sets with the date filter, if there is one.
+     */
+    static Exp formSinglePassFilter(String[] sets, Exp dateFilter) {
+        Exp[] setFilters = new Exp[sets.length];
+        for (int i = 0; i < sets.length; i++) {
+            setFilters[i] = Exp.eq(Exp.setName(), Exp.val(sets[i]));
         }
-        return keyToReturn;
+        Exp setFilter = setFilters.length == 1 ? setFilters[0] : Exp.or(setFilters);
+        return dateFilter == null ? setFilter : Exp.and(setFilter, dateFilter);
     }
     
     private static class DeferredRecord {
@@ -575,23 +682,40 @@ public class ClusterComparator {
         }
     }
 
-    private void comparePartition(AerospikeClientAccess[] clients, String namespace, String setName, int partitionId) {
+    /**
+     * Thrown when the comparison of a range fails part way through. Holds the part of the range which still needs to
+     * be compared: everything after the last digest which was compared on all clusters.
+     */
+    private static class RangeFailedException extends RuntimeException {
+        private static final long serialVersionUID = -6114227329548018735L;
+        private final PartitionRange remainingRange;
+
+        public RangeFailedException(PartitionRange remainingRange, Throwable cause) {
+            super(cause.getMessage(), cause);
+            this.remainingRange = remainingRange;
+        }
+
+        public PartitionRange getRemainingRange() {
+            return remainingRange;
+        }
+    }
+
+    private void comparePartition(AerospikeClientAccess[] clients, String namespace, String setName, PartitionRange range) {
+        int partitionId = range.getPartitionId();
+        RangeProgress progress = checkpoint == null ? null : checkpoint.rangeStarted(namespace, setName, range);
         if (options.hasSetMapping()) {
             new SourceDrivenPartitionComparator(this).comparePartition(clients, namespace, setName, partitionId);
+            markRangeComplete(range, progress);
             return;
         }
         QueryPolicy queryPolicy = new QueryPolicy(queryPolicyToUse);
         queryPolicy.maxConcurrentNodes = 1;
         queryPolicy.includeBinData = options.isRecordLevelCompare();
         queryPolicy.shortQuery = false;
-        queryPolicy.filterExp = this.filterExpression;
+        // With a single pass over the sets, the scan covers the whole namespace and the filter keeps just the sets being compared
+        queryPolicy.filterExp = (setName == null && singlePassFilterExpression != null) ? singlePassFilterExpression : this.filterExpression;
         
-        int rps = options.getRps()/this.threadsToUse;
-        if (options.getRps() > 0 && rps == 0) {
-            // Eg 10 threads, 5 rps would give 0
-            rps = 1;
-        }
-        final int rpsThisThread = rps;
+        final int rpsThisThread = concurrencyController.getRecordsPerSecondPerWorker();
 
         Statement[] statements = new Statement[numberOfClusters];
         PartitionFilter[] filters = new PartitionFilter[clients.length];
@@ -602,73 +726,81 @@ public class ClusterComparator {
             statement.setSetName(setName);
             statement.setRecordsPerSecond(rpsThisThread);
             statements[i] = statement;
-            filters[i] = PartitionFilter.id(partitionId);
+            filters[i] = range.getFilter(namespaceName, setName);
         });
 
         if (options.isDebug()) {
-            System.out.printf("Thread %d starting comparison of namespace %s, partition %d\n", Thread.currentThread().getId(), namespace, partitionId);
+            System.out.printf("Thread %d starting comparison of namespace %s, partition %s\n", Thread.currentThread().getId(), namespace, range);
         }
         RecordSetAccess[] recordSets = new RecordSetAccess[clients.length];
-        boolean[] sidesValid = new boolean[clients.length];
+        Key[] keys = new Key[clients.length];
+        DigestMerger merger = DigestMerger.create(clients.length, options.getMergeTreeThreshold());
         for (int i = 0; i < clients.length; i++) {
             recordSets[i] = clients[i].queryPartitions(queryPolicy, statements[i], filters[i]);
-            sidesValid[i] = getNextRecord(recordSets[i], i);
+            if (options.getReadAheadDepth() > 0 && clients[i].isLocal()) {
+                recordSets[i] = new ReadAheadRecordSet(recordSets[i], options.getReadAheadDepth(), getReadAheadExecutor(), readAheadStats[i]);
+            }
+            advanceCluster(recordSets[i], i, keys, merger, range);
         }
         
-        RecordComparator comparator = new RecordComparator();
+        RecordComparator comparator = newRecordComparator();
         boolean dateRangeVerify = options.isDateRangeVerify();
         int batchSize = options.getLookupBatchSize();
         List<DeferredRecord> deferredBatch = dateRangeVerify ? new ArrayList<>(batchSize) : null;
+        byte[] lastComparedDigest = null;
+        // Records found on every cluster are compared on the comparator threads if there are any. Hashes from a remote
+        // server are read from the scan, so these records have to be compared on this thread.
+        ComparePipeline.RangeTracker tracker = null;
+        if (options.isRecordLevelCompare() && options.getCompareThreads() > 0 
+                && (!options.isRemoteServerHashes() || Arrays.stream(clients).allMatch(AerospikeClientAccess::isLocal))) {
+            tracker = getComparePipeline().newRange();
+        }
 
         try {
-            Key[] keys = new Key[clients.length];
-            List<Integer> clustersWithMaxDigest = new ArrayList<>();
-            List<Integer> clustersWithoutRecord = new ArrayList<>();
-            while (anySideValid(sidesValid) && !forceTerminate) {
-                for (int i = 0; i < clients.length; i++) {
-                    keys[i] = sidesValid[i] ? recordSets[i].getKey() : null;
-                }
+            List<Integer> clustersWithMaxDigest = new ArrayList<>(clients.length);
+            List<Integer> clustersWithoutRecord = new ArrayList<>(clients.length);
+            while (merger.hasMore() && !forceTerminate) {
                 // The digests go down as we go through the partition, so we need to find the largest
                 // digest, and any clusters which don't have that digest are missing records and get
                 // flagged. Any clusters with the max need to advance to the next record.
-                Key keyWithLargestDigest = getKeyWithLargestDigest(keys);
-                clustersWithMaxDigest.clear();
-                clustersWithoutRecord.clear();
+                long withRecordMask = merger.selectLargest();
+                long withoutRecordMask = merger.getClustersWithoutRecord();
+                Key keyWithLargestDigest = keys[merger.getLargestCluster()];
+                boolean handedOff = false;
                 if (options.isDebug()) {
                     System.out.printf("Part %d: next digest: %s, cluster digests:", partitionId, keyWithLargestDigest);
                     forEachCluster((i, c)-> System.out.printf(" %d:%s:%s", i, options.clusterIdToName(i), keys[i]));
                     System.out.println();
                 }
-                for (int i = 0; i < clients.length; i++) {
-                    if (keys[i] == null) {
-                        clustersWithoutRecord.add(i);
-                    }
-                    else if (compare(keys[i].digest, keyWithLargestDigest.digest) == 0) {
-                        // This is valid, advance or compare
-                        clustersWithMaxDigest.add(i);
-                    }
-                    else {
-                        clustersWithoutRecord.add(i);
-                    }
-                }
                 if (options.getCompareMode() == CompareMode.FIND_OVERLAP) {
-                    if (clustersWithMaxDigest.size() > 1) {
-                        missingRecord(clients, clustersWithMaxDigest, clustersWithoutRecord, false, partitionId, keyWithLargestDigest);
+                    if (Long.bitCount(withRecordMask) > 1) {
+                        missingRecord(clients, DigestMerger.toClusterList(withRecordMask, clustersWithMaxDigest), 
+                                DigestMerger.toClusterList(withoutRecordMask, clustersWithoutRecord), false, partitionId, keyWithLargestDigest);
                     }
-                    if (atMostOneSideValid(sidesValid)) {
+                    if (merger.countValid() <= 1) {
                         // There's only one side left, so there's definitely no more overlap
-                        return;
+                        break;
                     }
                 }
                 else {
                     boolean hasRecordLevelDifferences = false;
-                    if (options.isRecordLevelCompare()) {
-                        boolean deferringDateRangeVerify = dateRangeVerify && !clustersWithoutRecord.isEmpty();
-                        DifferenceCollection result = compareRecords(comparator, partitionId, clustersWithMaxDigest, clients, recordSets, keys,
+                    if (tracker != null && withoutRecordMask == 0) {
+                        // Records awaiting verification in the deferred batch come first, so this one cannot be the resume point
+                        byte[] resumeDigest = (deferredBatch == null || deferredBatch.isEmpty()) ? keyWithLargestDigest.digest : null;
+                        submitComparison(tracker, resumeDigest, partitionId,
+                                DigestMerger.toClusterList(withRecordMask, clustersWithMaxDigest), clients, recordSets, keys);
+                        handedOff = true;
+                    }
+                    else if (options.isRecordLevelCompare()) {
+                        boolean deferringDateRangeVerify = dateRangeVerify && withoutRecordMask != 0;
+                        DifferenceCollection result = compareRecords(comparator, partitionId, 
+                                DigestMerger.toClusterList(withRecordMask, clustersWithMaxDigest), clients, recordSets, keys,
                                 !deferringDateRangeVerify);
                         hasRecordLevelDifferences = result.hasDifferences();
                     }
-                    if (!clustersWithoutRecord.isEmpty()) {
+                    if (withoutRecordMask != 0) {
+                        DigestMerger.toClusterList(withRecordMask, clustersWithMaxDigest);
+                        DigestMerger.toClusterList(withoutRecordMask, clustersWithoutRecord);
                         if (dateRangeVerify) {
                             Record[] captured = null;
                             if (options.isRecordLevelCompare()) {
@@ -691,15 +823,41 @@ public class ClusterComparator {
                         }
                     }
                 }
-                for (int cluster : clustersWithMaxDigest) {
-                    sidesValid[cluster] = getNextRecord(recordSets[cluster], cluster);
+                if (deferredBatch == null || deferredBatch.isEmpty()) {
+                    // Records awaiting verification in the deferred batch have not been completely compared yet.
+                    lastComparedDigest = keyWithLargestDigest.digest;
+                    if (tracker != null) {
+                        // Neither have records still queued for the comparator threads
+                        if (!handedOff) {
+                            tracker.completed(lastComparedDigest);
+                        }
+                        lastComparedDigest = tracker.getLastCompletedDigest();
+                    }
+                    if (progress != null && lastComparedDigest != null) {
+                        progress.setLastDigest(lastComparedDigest);
+                    }
+                }
+                for (long remaining = withRecordMask; remaining != 0; remaining &= remaining - 1) {
+                    int cluster = Long.numberOfTrailingZeros(remaining);
+                    advanceCluster(recordSets[cluster], cluster, keys, merger, range);
                 }
             }
             if (dateRangeVerify && !deferredBatch.isEmpty() && !forceTerminate) {
                 flushDeferredBatch(clients, deferredBatch, comparator, partitionId);
                 deferredBatch.clear();
             }
-            partitionsComplete[partitionId-startPartition].set(true);
+            if (tracker != null) {
+                tracker.awaitCompletion();
+            }
+            markRangeComplete(range, progress);
+        }
+        catch (RuntimeException e) {
+            if (tracker != null) {
+                // Let the queued comparisons finish so the retry does not compare them again
+                tracker.awaitQuietly();
+                lastComparedDigest = tracker.getLastCompletedDigest();
+            }
+            throw new RangeFailedException(lastComparedDigest == null ? range : range.resumeAfter(lastComparedDigest), e);
         }
         finally {
             for (RecordSetAccess recordSet : recordSets) {
@@ -711,6 +869,205 @@ public class ClusterComparator {
         }
     }
 
+    /**
+     * Flag that a range has been compared. The partition is complete once all of its ranges are complete. A range
+     * cut short by termination is left in progress in the checkpoint so it will be continued if resumed.
+     */
+    private void markRangeComplete(PartitionRange range, RangeProgress progress) {
+        int index = range.getPartitionId() - startPartition;
+        if (rangesRemainingInPartition[index].decrementAndGet() <= 0) {
+            partitionsComplete[index].set(true);
+        }
+        if (progress != null && !forceTerminate) {
+            checkpoint.rangeComplete(progress);
+        }
+    }
+
+    /**
+     * Determine the number of records in each partition of the namespace, taking the largest across the clusters.
+     * Returns null if partitions are neither being split nor ordered by size, or the sizes cannot be determined.
+     */
+    private long[] getPartitionSizes(AerospikeClientAccess[] clients, String namespace, List<Integer> partitions) {
+        if ((options.getSplitPartitionRecords() <= 0 && options.getWorkOrder() != WorkOrder.LARGEST_PARTITION_FIRST) || options.hasSetMapping()) {
+            return null;
+        }
+        try {
+            long[] partitionSizes = new long[4096];
+            for (int i = 0; i < clients.length; i++) {
+                String thisNamespace = options.getNamespaceName(namespace, i);
+                PartitionMap partitionMap = new PartitionMap(clients[i]);
+                for (int partitionId : partitions) {
+                    partitionSizes[partitionId] = Math.max(partitionSizes[partitionId], partitionMap.getRecords(thisNamespace, partitionId));
+                }
+            }
+            return partitionSizes;
+        }
+        catch (AerospikeException ae) {
+            if (!options.isSilent()) {
+                System.out.printf("Unable to determine partition sizes of namespace %s, partitions will not be split or ordered by size: %s\n", namespace, ae.getMessage());
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Form the ranges to compare in one namespace and set. Partitions whose record count on any cluster exceeds the
+     * <code>splitPartitionRecords</code> option are split into digest ranges of about that many records so that one
+     * large partition can be compared by several threads in parallel.
+     */
+    private List<PartitionRange> formPartitionRanges(String namespace, String setName, List<Integer> partitions, long[] partitionSizes) {
+        long splitRecords = options.getSplitPartitionRecords();
+        List<PartitionRange> result = new ArrayList<>();
+        for (int partitionId : partitions) {
+            List<PartitionRange> ranges = (checkpoint == null) ? null : checkpoint.getRemainingRanges(namespace, setName, partitionId);
+            if (ranges == null) {
+                int rangeCount = 1;
+                if (partitionSizes != null && partitionSizes[partitionId] > splitRecords) {
+                    rangeCount = (int)Math.min(PartitionRange.MAX_SPLITS, (partitionSizes[partitionId] + splitRecords - 1) / splitRecords);
+                }
+                ranges = PartitionRange.split(partitionId, rangeCount);
+            }
+            // When resuming, the partition is split as it was before and only the ranges not yet compared are queued.
+            rangesRemainingInPartition[partitionId - startPartition].addAndGet(ranges.size());
+            result.addAll(ranges);
+        }
+        return result;
+    }
+
+    /**
+     * Estimate the number of records in the set (or the namespace if the set is null) from the largest cluster.
+     * Returns 0 if the size cannot be determined.
+     */
+    private long getSetSize(AerospikeClientAccess[] clients, String namespace, String setName) {
+        long result = 0;
+        for (int i = 0; i < clients.length; i++) {
+            String thisNamespace = options.getNamespaceName(namespace, i);
+            String command = setName == null ? "namespace/" + thisNamespace : "sets/" + thisNamespace + "/" + setName;
+            try {
+                long clusterTotal = 0;
+                for (String info : clients[i].invokeInfoCommandOnAllNodes(command).values()) {
+                    Matcher matcher = OBJECTS_PATTERN.matcher(info);
+                    if (matcher.find()) {
+                        clusterTotal += Long.parseLong(matcher.group(1));
+                    }
+                }
+                result = Math.max(result, clusterTotal);
+            }
+            catch (AerospikeException ae) {
+                if (!options.isSilent()) {
+                    System.out.printf("Unable to determine the size of namespace %s%s on cluster %s: %s\n", namespace,
+                            setName == null ? "" : ", set " + setName, options.clusterIdToName(i), ae.getMessage());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Form the queue of work for every namespace and set being compared. All of them are compared by one pool of
+     * threads, so there is no point at the end of each set where most of the threads are idle.
+     */
+    private PartitionScheduler formWorkQueue(AerospikeClientAccess[] clients) {
+        List<Integer> partitions;
+        if (options.getPartitionList() != null) {
+            partitions = options.getPartitionList();
+        }
+        else {
+            partitions = IntStream.range(startPartition, endPartition).boxed().collect(Collectors.toList());
+        }
+        for (int partitionId : partitions) {
+            rangesRemainingInPartition[partitionId - startPartition].set(0);
+        }
+        String[] sets = options.getSetNames();
+        if (sets == null || sets.length == 0 || options.isSinglePassSets()) {
+            // Scan the whole namespace. With a single pass over the sets, the filter expression restricts it to the sets.
+            sets = new String[] { null };
+        }
+        boolean bySize = options.getWorkOrder() == WorkOrder.LARGEST_PARTITION_FIRST;
+        List<List<PartitionTask>> tasksPerSet = new ArrayList<>();
+        Map<List<PartitionTask>, Long> setSizes = new IdentityHashMap<>();
+        for (String namespace : options.getNamespaces()) {
+            long[] partitionSizes = getPartitionSizes(clients, namespace, partitions);
+            // Partition sizes are only known for the whole namespace, so scale them by the proportion of it in each set
+            long namespaceSize = (bySize && partitionSizes != null && sets[0] != null) ? getSetSize(clients, namespace, null) : 0;
+            for (String setName : sets) {
+                double setFraction = 1.0;
+                if (namespaceSize > 0) {
+                    setFraction = Math.min(1.0, (double)getSetSize(clients, namespace, setName) / namespaceSize);
+                }
+                List<PartitionTask> tasks = new ArrayList<>();
+                for (PartitionRange range : formPartitionRanges(namespace, setName, partitions, partitionSizes)) {
+                    long estimatedRecords = 0;
+                    if (partitionSizes != null) {
+                        estimatedRecords = (long)(setFraction * partitionSizes[range.getPartitionId()] / range.getRangeCount());
+                    }
+                    tasks.add(new PartitionTask(namespace, setName, range, estimatedRecords));
+                }
+                tasksPerSet.add(tasks);
+                if (options.getWorkOrder() == WorkOrder.LARGEST_SET_FIRST) {
+                    setSizes.put(tasks, getSetSize(clients, namespace, setName));
+                }
+            }
+        }
+        if (options.getWorkOrder() == WorkOrder.LARGEST_SET_FIRST) {
+            // The sort is stable so sets of the same size stay in the order they were specified
+            tasksPerSet.sort((a, b) -> Long.compare(setSizes.get(b), setSizes.get(a)));
+        }
+        List<PartitionTask> result = new ArrayList<>();
+        tasksPerSet.forEach(result::addAll);
+        for (int partitionId : partitions) {
+            partitionsComplete[partitionId - startPartition].set(rangesRemainingInPartition[partitionId - startPartition].get() == 0);
+        }
+        if (!options.isSilent() && (tasksPerSet.size() > 1 || options.getSplitPartitionRecords() > 0)) {
+            System.out.printf("%,d ranges to compare across %,d namespaces and sets\n", result.size(), tasksPerSet.size());
+        }
+        if (options.getMaxScansPerNode() > 0) {
+            if (bySize) {
+                result = PartitionScheduler.orderLargestFirst(result);
+            }
+            Map<String, String[][]> nodesByNamespace = getPartitionNodes(clients);
+            if (nodesByNamespace != null) {
+                return new NodeAwarePartitionScheduler(result, task -> {
+                    String[][] nodes = nodesByNamespace.get(task.getNamespace());
+                    return nodes[task.getRange().getPartitionId()];
+                }, options.getMaxScansPerNode());
+            }
+        }
+        return bySize ? PartitionScheduler.largestFirst(result) : new PartitionScheduler(result);
+    }
+
+    /**
+     * Determine the node mastering each partition of each namespace on every cluster. The result is indexed by the
+     * partition id, then the cluster, and node names are prefixed with the cluster index so they are unique across
+     * the clusters. Returns null if the partition map of any cluster cannot be determined.
+     */
+    private Map<String, String[][]> getPartitionNodes(AerospikeClientAccess[] clients) {
+        PartitionMap[] partitionMaps = new PartitionMap[clients.length];
+        try {
+            for (int i = 0; i < clients.length; i++) {
+                partitionMaps[i] = new PartitionMap(clients[i]);
+            }
+        }
+        catch (AerospikeException ae) {
+            if (!options.isSilent()) {
+                System.out.printf("Unable to determine the nodes holding each partition, scans per node will not be limited: %s\n", ae.getMessage());
+            }
+            return null;
+        }
+        Map<String, String[][]> result = new HashMap<>();
+        for (String namespace : options.getNamespaces()) {
+            String[][] nodes = new String[4096][clients.length];
+            for (int partitionId = 0; partitionId < nodes.length; partitionId++) {
+                for (int i = 0; i < clients.length; i++) {
+                    String node = partitionMaps[i].getMasterNode(options.getNamespaceName(namespace, i), partitionId);
+                    nodes[partitionId][i] = node == null ? null : i + ":" + node;
+                }
+            }
+            result.put(namespace, nodes);
+        }
+        return result;
+    }
+
     /**
      * Process a batch of deferred records: re-read them from the clusters where they were
      * missing (without the date filter) to determine if they truly don't exist or were just
@@ -736,20 +1093,32 @@ public class ClusterComparator {
             BatchPolicy batchPolicy, boolean recordLevelCompare,
             Record[][] lookupResults, boolean[][] existsResults) {
 
+        // Send the batch to every cluster before waiting on any, so the clusters are read in parallel
+        List<List<Integer>> indicesByCluster = new ArrayList<>();
+        List<CompletableFuture<Record[]>> lookups = new ArrayList<>();
+        List<CompletableFuture<boolean[]>> exists = new ArrayList<>();
         for (int clusterIdx = 0; clusterIdx < numberOfClusters; clusterIdx++) {
             List<Integer> indicesForThisCluster = collectDeferredIndicesForCluster(batch, clusterIdx);
+            indicesByCluster.add(indicesForThisCluster);
             if (indicesForThisCluster.isEmpty()) {
+                lookups.add(null);
+                exists.add(null);
                 continue;
             }
 
             Key[] lookupKeys = buildLookupKeys(batch, indicesForThisCluster, clusterIdx);
+            lookups.add(recordLevelCompare ? clients[clusterIdx].getAsync(batchPolicy, lookupKeys) : null);
+            exists.add(recordLevelCompare ? null : clients[clusterIdx].existsAsync(batchPolicy, lookupKeys));
+        }
 
-            if (recordLevelCompare) {
-                Record[] results = clients[clusterIdx].get(batchPolicy, lookupKeys);
+        for (int clusterIdx = 0; clusterIdx < numberOfClusters; clusterIdx++) {
+            List<Integer> indicesForThisCluster = indicesByCluster.get(clusterIdx);
+            if (lookups.get(clusterIdx) != null) {
+                Record[] results = AerospikeClientAccess.await(lookups.get(clusterIdx));
                 lookupResults[clusterIdx] = scatterResultsIntoBatchArray(results, indicesForThisCluster, batch.size());
             }
-            else {
-                boolean[] results = clients[clusterIdx].exists(batchPolicy, lookupKeys);
+            else if (exists.get(clusterIdx) != null) {
+                boolean[] results = AerospikeClientAccess.await(exists.get(clusterIdx));
                 existsResults[clusterIdx] = scatterBoolResultsIntoBatchArray(results, indicesForThisCluster, batch.size());
             }
         }
@@ -866,21 +1235,7 @@ public class ClusterComparator {
 
     private void compareDeferredRecords(RecordComparator comparator, int partitionId,
             List<Integer> clustersWithRecord, AerospikeClientAccess[] clients, Key key, Record[] allRecords) {
-        DifferenceCollection compareResult = new DifferenceCollection(clustersWithRecord);
-        for (int i = 0; i < clustersWithRecord.size(); i++) {
-            for (int j = i + 1; j < clustersWithRecord.size(); j++) {
-                int left = clustersWithRecord.get(i);
-                int right = clustersWithRecord.get(j);
-                Record rec1 = allRecords[left];
-                Record rec2 = allRecords[right];
-                if (rec1 != null && rec2 != null) {
-                    DifferenceSet diffSet = comparator.compare(key, rec1, rec2,
-                            options.getPathOptions(),
-                            options.getCompareMode() == CompareMode.RECORDS_DIFFERENT, left, right);
-                    compareResult.add(diffSet);
-                }
-            }
-        }
+        DifferenceCollection compareResult = compareRecordsOnClusters(comparator, key, clustersWithRecord, allRecords);
         if (compareResult.hasDifferences()) {
             RecordMetadata[] recordMetadatas = getMetadata(clients, key, null, clustersWithRecord);
             differentRecords(partitionId, key, compareResult, invertClusterList(clustersWithRecord), recordMetadatas);
@@ -891,7 +1246,77 @@ public class ClusterComparator {
         }
     }
 
-    private void compareRecord(DifferenceCollection differenceCollection, RecordComparator comparator, int partitionId, AerospikeClientAccess client1, AerospikeClientAccess client2, RecordSetAccess recordSet1, RecordSetAccess recordSet2, Key key1, Key key2, int cluster1index, int cluster2index) {
+    /**
+     * Compare records which have already been read from each cluster. Identical records are grouped into
+     * equivalence classes so only one record from each distinct class is deep compared.
+     */
+    DifferenceCollection compareRecordsOnClusters(RecordComparator comparator, Key key, List<Integer> clustersWithRecord, Record[] records) {
+        RecordEquivalenceClasses classes = new RecordEquivalenceClasses(clustersWithRecord);
+        // With only 2 clusters, fingerprinting both records costs more than just comparing them.
+        IntFunction<byte[]> fingerprinter = clustersWithRecord.size() <= 2 ? null :
+                cluster -> records[cluster] == null ? null : RemoteUtils.getRecordHash(records[cluster], options.isSortMaps(), options.getRecordHashVersion());
+        return compareClasses(classes, key, fingerprinter, cluster -> records[cluster], (left, right) -> {
+            Record rec1 = records[left];
+            Record rec2 = records[right];
+            if (rec1 == null || rec2 == null) {
+                return null;
+            }
+            return comparator.compare(key, rec1, rec2,
+                    options.getPathOptions(),
+                    options.getCompareMode() == CompareMode.RECORDS_DIFFERENT, left, right);
+        });
+    }
+
+    /**
+     * Group the clusters into classes with the same record. If fingerprinting is turned on and the records are held
+     * locally, the records are grouped by {@link RecordFingerprint} first so identical records are not walked in full.
+     * In paranoid mode every record is still compared in full, and records whose fingerprint matches but whose
+     * contents do not are counted for the summary.
+     * @param fingerprinter - the fingerprinter to use if fingerprinting is turned off, can be null
+     * @param records - provides the record on each cluster, or null if the records are not held locally
+     */
+    private DifferenceCollection compareClasses(RecordEquivalenceClasses classes, Key key, IntFunction<byte[]> fingerprinter,
+            IntFunction<Record> records, RecordEquivalenceClasses.ClusterComparer comparer) {
+        FingerprintMode mode = options.getFingerprintMode();
+        if (mode == FingerprintMode.NONE || records == null) {
+            return classes.compare(fingerprinter, comparer);
+        }
+        byte[][] fingerprints = new byte[numberOfClusters][];
+        IntFunction<byte[]> recordFingerprinter = cluster -> {
+            if (fingerprints[cluster] == null) {
+                Record record = records.apply(cluster);
+                fingerprints[cluster] = record == null ? null : RecordFingerprint.of(key, record, options.getPathOptions());
+            }
+            return fingerprints[cluster];
+        };
+        if (mode == FingerprintMode.FAST) {
+            return classes.compare(recordFingerprinter, comparer);
+        }
+        DifferenceCollection result = classes.compare(null, comparer);
+        List<Integer> clusters = classes.getClusters();
+        boolean collision = false;
+        for (int i = 0; i < clusters.size(); i++) {
+            for (int j = i+1; j < clusters.size(); j++) {
+                int cluster1 = clusters.get(i);
+                int cluster2 = clusters.get(j);
+                byte[] fingerprint1 = recordFingerprinter.apply(cluster1);
+                if (fingerprint1 != null && Arrays.equals(fingerprint1, recordFingerprinter.apply(cluster2))
+                        && classes.getRepresentative(cluster1) != classes.getRepresentative(cluster2)) {
+                    collision = true;
+                    if (options.isDebug()) {
+                        System.out.printf("Record %s has the same fingerprint on clusters %s and %s but different contents\n",
+                                key, options.clusterIdToName(cluster1), options.clusterIdToName(cluster2));
+                    }
+                }
+            }
+        }
+        if (collision) {
+            fingerprintCollisions.incrementAndGet();
+        }
+        return result;
+    }
+
+    private DifferenceSet compareRecord(RecordComparator comparator, AerospikeClientAccess client1, AerospikeClientAccess client2, RecordSetAccess recordSet1, RecordSetAccess recordSet2, Key key1, Key key2, int cluster1index, int cluster2index, IntFunction<byte[]> hashProvider) {
         DifferenceSet compareResult = null;
         if ((client1.isLocal() && client2.isLocal()) || !options.isRemoteServerHashes()) {
             Record record1 = recordSet1.getRecord();
@@ -901,8 +1326,8 @@ public class ClusterComparator {
                     options.getCompareMode() == CompareMode.RECORDS_DIFFERENT, cluster1index, cluster2index);
         }
         else {
-            byte[] record1hash = recordSet1.getRecordHash(options.isSortMaps());
-            byte[] record2hash = recordSet2.getRecordHash(options.isSortMaps());
+            byte[] record1hash = hashProvider.apply(cluster1index);
+            byte[] record2hash = hashProvider.apply(cluster2index);
             int recordsEqual = compare(record1hash, record2hash);
             if (recordsEqual != 0) {
                 if (options.getCompareMode() == CompareMode.RECORDS_DIFFERENT) {
@@ -917,7 +1342,7 @@ public class ClusterComparator {
                 }
             }
         }
-        differenceCollection.add(compareResult);
+        return compareResult;
     }
     
     private Key getFirstNonNull(Key[] keys) {
@@ -945,20 +1370,65 @@ public class ClusterComparator {
     }
     private DifferenceCollection compareRecords(RecordComparator comparator, int partitionId, List<Integer> clustersToCompare, AerospikeClientAccess[] clients, RecordSetAccess[] recordSets, Key[] keys,
             boolean countTowardTotalCompared) {
-        DifferenceCollection compareResult = new DifferenceCollection(clustersToCompare);
-        for (int i = 0; i < clustersToCompare.size(); i++) {
-            for (int j = i+1; j < clustersToCompare.size(); j++) {
-                int left = clustersToCompare.get(i);
-                int right = clustersToCompare.get(j);
-                compareRecord(compareResult, comparator, partitionId,
+        // Hashes are fetched at most once per cluster, they may need a round trip to a remote server. If the
+        // remote server is not sending hashes, the hash is formed locally from the transferred record.
+        byte[][] hashes = new byte[clients.length][];
+        IntFunction<byte[]> hashProvider = cluster -> {
+            if (hashes[cluster] == null) {
+                if (clients[cluster].isLocal() || options.isRemoteServerHashes()) {
+                    hashes[cluster] = recordSets[cluster].getRecordHash(options.isSortMaps(), options.getRecordHashVersion());
+                }
+                else {
+                    hashes[cluster] = RemoteUtils.getRecordHash(recordSets[cluster].getRecord(), options.isSortMaps(), options.getRecordHashVersion());
+                }
+            }
+            return hashes[cluster];
+        };
+        boolean useFingerprints = clustersToCompare.size() > 2;
+        if (options.isRemoteServerHashes()) {
+            for (int cluster : clustersToCompare) {
+                useFingerprints |= !clients[cluster].isLocal();
+            }
+        }
+        // The records can be fingerprinted locally unless hashes are being sent by a remote server instead
+        boolean recordsHeldLocally = true;
+        if (options.isRemoteServerHashes()) {
+            for (int cluster : clustersToCompare) {
+                recordsHeldLocally &= clients[cluster].isLocal();
+            }
+        }
+        RecordEquivalenceClasses classes = new RecordEquivalenceClasses(clustersToCompare);
+        DifferenceCollection compareResult = compareClasses(classes, getFirstNonNull(keys), useFingerprints ? hashProvider : null,
+                recordsHeldLocally ? cluster -> recordSets[cluster].getRecord() : null,
+                (left, right) -> compareRecord(comparator,
                         clients[left], clients[right],
                         recordSets[left], recordSets[right],
                         keys[left], keys[right],
-                        left, right
-                );
-            }
-        }
-        
+                        left, right, hashProvider));
+        recordsCompared(partitionId, clustersToCompare, clients, keys, compareResult, countTowardTotalCompared);
+        return compareResult;
+    }
+
+    /**
+     * Hand the records the scans are positioned on to the comparator threads. The records are taken from the scans
+     * now as the scans will have moved on by the time they are compared.
+     */
+    private void submitComparison(ComparePipeline.RangeTracker tracker, byte[] resumeDigest, int partitionId, 
+            List<Integer> clustersToCompare, AerospikeClientAccess[] clients, RecordSetAccess[] recordSets, Key[] keys) {
+        List<Integer> clusters = new ArrayList<>(clustersToCompare);
+        Key[] recordKeys = keys.clone();
+        Record[] records = new Record[numberOfClusters];
+        for (int cluster : clusters) {
+            records[cluster] = recordSets[cluster].getRecord();
+        }
+        tracker.submit(resumeDigest, () -> {
+            DifferenceCollection compareResult = compareRecordsOnClusters(pipelineComparators.get(), getFirstNonNull(recordKeys), clusters, records);
+            recordsCompared(partitionId, clusters, clients, recordKeys, compareResult, true);
+        });
+    }
+
+    private void recordsCompared(int partitionId, List<Integer> clustersToCompare, AerospikeClientAccess[] clients, Key[] keys,
+            DifferenceCollection compareResult, boolean countTowardTotalCompared) {
         if (compareResult.hasDifferences()) {
             RecordMetadata[] recordMetadatas = getMetadata(clients, getFirstNonNull(keys), null, clustersToCompare);
             // TODO: Master cluster logic
@@ -972,81 +1442,162 @@ public class ClusterComparator {
                 forceTerminate = true;
             }
         }
-        return compareResult;
     }
     
     /**
-     * The PartitionCompareRunner is used to compare a set of partitions. The partitions used are specified in the partitionList variable 
+     * The PartitionCompareRunner is used to compare a set of partitions. The partitions used are handed out by the partitionScheduler
      * @author tfaulkes
      */
     private class PartitionCompareRunner implements Runnable {
         private final AerospikeClientAccess[] clients;
-        private final String namespace;
-        private final String setName;
         
-        public PartitionCompareRunner(AerospikeClientAccess[] clients, String namespace, String setName) {
+        public PartitionCompareRunner(AerospikeClientAccess[] clients) {
             super();
             this.clients = clients;
-            this.namespace = namespace;
-            this.setName = setName;
+        }
+
+        /**
+         * Get the next task to compare. Retries whose backoff has elapsed are taken first, then fresh partitions. If
+         * there are no fresh partitions but retries are still waiting, wait for the next one. Returns null when there
+         * is no work left.
+         */
+        private Attempt nextWork() throws InterruptedException {
+            while (!forceTerminate) {
+                Attempt retry = retryQueue.pollReady();
+                if (retry != null) {
+                    return retry;
+                }
+                PartitionTask task = partitionScheduler.poll();
+                if (task != null) {
+                    return new Attempt(task);
+                }
+                if (!partitionScheduler.isEmpty()) {
+                    // The nodes holding the remaining partitions are all busy, wait for one of their scans to finish
+                    partitionScheduler.awaitCapacity(retryQueue.isEmpty() ? 1000 : 100);
+                    continue;
+                }
+                if (retryQueue.isEmpty()) {
+                    return null;
+                }
+                retry = retryQueue.awaitReady(1000);
+                if (retry != null) {
+                    return retry;
+                }
+            }
+            return null;
+        }
+
+        private void taskFailed(PartitionTask task, int attempt, Exception e) {
+            Throwable cause = e;
+            PartitionRange range = task.getRange();
+            PartitionTask remainingTask = task;
+            if (e instanceof RangeFailedException) {
+                cause = e.getCause();
+                remainingTask = task.withRange(((RangeFailedException)e).getRemainingRange());
+            }
+            if (cause instanceof AerospikeException.Timeout) {
+                concurrencyController.recordTimeout();
+            }
+            else {
+                concurrencyController.recordError();
+            }
+            if (attempt < options.getPartitionRetries() && !forceTerminate) {
+                if (checkpoint != null) {
+                    checkpoint.rangeStopped(range);
+                }
+                long backoffMs = retryQueue.schedule(remainingTask, attempt + 1);
+                if (!options.isSilent()) {
+                    System.out.printf("WARNING: Worker thread encountered an error scanning partition %s, it will be retried from where it "
+                            + "stopped in %,dms (retry %d of %d). The error encountered was %s (%s)\n",
+                            task, backoffMs, attempt + 1, options.getPartitionRetries(), cause.getMessage(), cause.getClass());
+                }
+                return;
+            }
+            // The partition has failed on every attempt so flag it as an issue.
+            retryQueue.rangeAbandoned();
+            if (!options.isSilent()) {
+                System.out.printf("ERROR: Worker thread encountered an error scanning partition %s which prevented it from completing "
+                        + "the scan of the partition. The error encountered was %s (%s)\n", 
+                        task, cause.getMessage(), cause.getClass());
+                cause.printStackTrace();
+            }
+            synchronized (failedPartitionsList) {
+                if (!failedPartitionsList.contains(range.getPartitionId())) {
+                    failedPartitionsList.add(range.getPartitionId());
+                }
+            }
+            if (checkpoint != null) {
+                checkpoint.rangeFailed(task.getNamespace(), task.getSetName(), range);
+            }
+        }
+
+        private boolean hasWorkLeft() {
+            return !forceTerminate && !(partitionScheduler.isEmpty() && retryQueue.isEmpty());
         }
 
         public void run() {
-            boolean done = false;
             try {
-                while (!done && !forceTerminate) {
-                    int partitionId;
-                    synchronized (partitionList) {
-                        if (partitionList.isEmpty()) {
-                            done = true;
-                            partitionId = -1;
-                        }
-                        else {
-                            partitionId = partitionList.remove(0);
-                        }
+                while (hasWorkLeft()) {
+                    // Only as many workers as the concurrency controller allows compare partitions at once
+                    if (!concurrencyController.acquireWorker(1000)) {
+                        continue;
                     }
-                    if (!done) {
-                        try {
-                            comparePartition(clients, namespace, setName, partitionId);
-                        }
-                        catch (Exception e) {
-                            // When a partition fails, it is unexpected as the retries
-                            // have been set up to be very tolerant of timeouts, etc. 
-                            // It would be possible to retry the partition by pushing it
-                            // back onto the <code>partitionList</code> but then there is 
-                            // a chance of infinite errors. Instead just flag it as an issue.
-                            if (!options.isSilent()) {
-                                System.out.printf("ERROR: Worker thread encountered an error scanning partition %d which prevented it from completing "
-                                        + "the scan of the partition. The error encountered was %s (%s)\n", 
-                                        partitionId, e.getMessage(), e.getClass());
-                                e.printStackTrace();
-                            }
-                            synchronized (failedPartitionsList) {
-                                failedPartitionsList.add(partitionId);
-                            }
+                    try {
+                        Attempt work = nextWork();
+                        if (work == null) {
+                            break;
                         }
+                        compare(work);
+                    }
+                    finally {
+                        concurrencyController.releaseWorker();
                     }
                 }
             }
+            catch (InterruptedException ie) {
+                // ignored
+            }
             finally {
                 activeThreads.decrementAndGet();
             }
         }
+
+        private void compare(Attempt work) {
+            PartitionTask task = work.getTask();
+            if (work.getAttempt() > 0) {
+                // Retries do not come from the scheduler but still load the nodes they scan
+                partitionScheduler.claim(task);
+            }
+            try {
+                comparePartition(clients, task.getNamespace(), task.getSetName(), task.getRange());
+                if (work.getAttempt() > 0) {
+                    retryQueue.retrySucceeded();
+                }
+            }
+            catch (Exception e) {
+                taskFailed(task, work.getAttempt(), e);
+            }
+            finally {
+                partitionScheduler.release(task);
+            }
+        }
     }
     
     RecordMetadata[] getMetadata(AerospikeClientAccess[] clients, Key key, List<Integer> clustersToSkip, List<Integer> clustersToInclude) {
         RecordMetadata[] recordMetadatas = null;
         if (options.isShowMetadata() || options.getMasterCluster() >= 0) {
             recordMetadatas = new RecordMetadata[numberOfClusters];
+            @SuppressWarnings("unchecked")
+            CompletableFuture<RecordMetadata>[] requests = new CompletableFuture[numberOfClusters];
             for (int i = 0; i < numberOfClusters; i++) {
-                if ((clustersToSkip != null && clustersToSkip.contains(i)) || (clustersToInclude != null && !clustersToInclude.contains(i))) {
-                    recordMetadatas[i] = null;
-                }
-                else {
+                if ((clustersToSkip == null || !clustersToSkip.contains(i)) && (clustersToInclude == null || clustersToInclude.contains(i))) {
                     Key namespaceResolvedKey = new Key(options.getNamespaceName(key.namespace, i), key.digest, key.setName, key.userKey);
-                    recordMetadatas[i] = clients[i].getMetadata(writePolicyToUse, namespaceResolvedKey);
+                    requests[i] = clients[i].getMetadataAsync(writePolicyToUse, namespaceResolvedKey);
                 }
             }
+            for (int i = 0; i < numberOfClusters; i++) {
+                recordMetadatas[i] = requests[i] == null ? null : AerospikeClientAccess.await(requests[i]);
+            }
         }
         return recordMetadatas;
     }
@@ -1068,7 +1619,7 @@ public class ClusterComparator {
 
         public void run() {
             try {
-                RecordComparator comparator = new RecordComparator();
+                RecordComparator comparator = newRecordComparator();
 
                 while (!processor.isDone() && !forceTerminate) {
                     
@@ -1096,7 +1647,6 @@ public class ClusterComparator {
                     }
                     else {
                         // This must be a record level compare
-                        DifferenceSet compareResult = null;
                         Record[] records = new Record[clients.length];
                         List<Integer> clustersWithRecord = new ArrayList<>();
                         List<Integer> clustersWithoutRecord = new ArrayList<>();
@@ -1110,18 +1660,8 @@ public class ClusterComparator {
                                 clustersWithRecord.add(i);
                             }
                         }
-                        // For those with the record, iterate through all clusters with the record and compare them.
-                        DifferenceCollection differenceCollection = new DifferenceCollection(clustersWithRecord);
-                        for (int i = 0; i < clustersWithRecord.size(); i++) {
-                            for (int j = i+1; j < clustersWithRecord.size(); j++) {
-                                int left = clustersWithRecord.get(i);
-                                int right = clustersWithRecord.get(j);
-                                compareResult = comparator.compare(key, records[left], records[right],
-                                        options.getPathOptions(),
-                                        options.getCompareMode() == CompareMode.RECORDS_DIFFERENT, left, right);
-                                differenceCollection.add(compareResult);
-                            }
-                        }
+                        // For those with the record, compare one record from each distinct equivalence class.
+                        DifferenceCollection differenceCollection = compareRecordsOnClusters(comparator, key, clustersWithRecord, records);
                         
                         if (differenceCollection.hasDifferences()) {
                             RecordMetadata[] recordMetadatas = getMetadata(clients, key, clustersWithoutRecord, null);
@@ -1151,7 +1691,7 @@ public class ClusterComparator {
         }
     }
     
-    private void beginComparison(AerospikeClientAccess[] clients, String namespace, String setName) throws InterruptedException {
+    private void beginComparison(AerospikeClientAccess[] clients, String namespace) throws InterruptedException {
         Runnable runner = null;
         if (options.isQuickCompare()) {
             try {
@@ -1184,29 +1724,43 @@ public class ClusterComparator {
             runner = new FixedRecordsCompareRunner(clients, new FileLoadingProcessor());
         }
         else {
-            if (options.getPartitionList() != null) {
-                this.partitionList = options.getPartitionList();
-            }
-            else {
-                this.partitionList = IntStream.range(startPartition, endPartition).boxed().collect(Collectors.toList());
-            }
-            runner = new PartitionCompareRunner(clients, namespace, setName);
+            this.partitionScheduler = formWorkQueue(clients);
+            runner = new PartitionCompareRunner(clients);
         }
         
-        this.executor = Executors.newFixedThreadPool(threadsToUse);
+        this.executor = ThreadSupport.newFixedThreadPool(threadsToUse, "partition-worker");
         this.activeThreads = new AtomicInteger(threadsToUse);
         for (int i = 0; i < threadsToUse; i++) {
             this.executor.execute(runner);
         }
         this.executor.shutdown();
-        this.monitorProgress(namespace, setName);
+        this.monitorProgress();
     }
     
     private void performComparisons(AerospikeClientAccess[] clients) throws InterruptedException {
         this.filterExpression = formFilterExpression();
+        this.singlePassFilterExpression = formSinglePassFilterExpression();
+        differencesBySet.clear();
         for (int i = 0; i < clients.length; i++) {
             recordsMissingOnCluster.set(i, 0);
             recordsProcessedOnCluster.set(i, 0);
+            readAheadStats[i].reset();
+        }
+        fingerprintCollisions.set(0);
+        if (checkpoint != null && checkpoint.isResuming()) {
+            if (!options.isSilent()) {
+                System.out.printf("Resuming comparison from checkpoint file %s: %s\n", checkpoint.getFileName(), checkpoint.describe());
+            }
+            Counters counters = checkpoint.getResumedCounters();
+            if (counters != null) {
+                for (int i = 0; i < clients.length && i < counters.getProcessedOnCluster().length; i++) {
+                    recordsProcessedOnCluster.set(i, counters.getProcessedOnCluster()[i]);
+                    recordsMissingOnCluster.set(i, counters.getMissingOnCluster()[i]);
+                }
+                totalRecordsCompared.set(counters.getRecordsCompared());
+                recordsDifferentCount.set(counters.getRecordsDifferent());
+                totalMissingRecords.set(counters.getMissingRecords());
+            }
         }
 
         if (options.isMetadataCompare()) {
@@ -1214,25 +1768,31 @@ public class ClusterComparator {
             DifferenceSet result = metadataComparator.compareMetaData(clients);
             // TODO: Should the result be used in the summary?
         }
-        if (options.getAction() == Action.RERUN) {
-            beginComparison(clients, null, null);
-        }
-        else {
+        if (options.isQuickCompare()) {
             for (String namespace : options.getNamespaces()) {
-                String[] sets = options.getSetNames();
-                if (sets == null || sets.length == 0) {
-                    beginComparison(clients, namespace, null);
-                }
-                else {
-                    for (String thisSet : sets) {
-                        beginComparison(clients, namespace, thisSet);
-                    }
-                }
+                beginComparison(clients, namespace);
             }
         }
+        else {
+            // Rerunning from a file, or comparing every namespace and set through one queue of work
+            beginComparison(clients, null);
+        }
         for (MissingRecordHandler thisHandler : missingRecordHandlers) {
             thisHandler.close();
         }
+        if (checkpoint != null) {
+            checkpoint.close();
+        }
+    }
+
+    private Counters formCheckpointCounters() {
+        long[] processed = new long[numberOfClusters];
+        long[] missing = new long[numberOfClusters];
+        for (int i = 0; i < numberOfClusters; i++) {
+            processed[i] = recordsProcessedOnCluster.get(i);
+            missing[i] = recordsMissingOnCluster.get(i);
+        }
+        return new Counters(totalRecordsCompared.get(), recordsDifferentCount.get(), totalMissingRecords.get(), processed, missing);
     }
     
     private void showSummary() {
@@ -1242,11 +1802,28 @@ public class ClusterComparator {
                 System.out.printf("Records different         : %,d\n"
                                 + "Records compared          : %,d\n", 
                         this.recordsDifferentCount.get(), this.totalRecordsCompared.get());
+                if (options.getFingerprintMode() == FingerprintMode.PARANOID) {
+                    System.out.printf("Fingerprint collisions    : %,d\n", this.fingerprintCollisions.get());
+                }
             }
             else {
                 String title = options.getCompareMode() == CompareMode.FIND_OVERLAP ? "Overlapping" : "Missing";
                 forEachCluster((i, c) -> System.out.printf("%s records on side %d : %,d\n", title, i+1, this.recordsMissingOnCluster.get(i)));
             }
+            if (options.isSinglePassSets()) {
+                for (String setName : options.getSetNames()) {
+                    AtomicLongArray counts = differencesBySet.get(setName);
+                    System.out.printf("Set %-21s : %,d %s, %,d different\n", setName,
+                            counts == null ? 0 : counts.get(0),
+                            options.getCompareMode() == CompareMode.FIND_OVERLAP ? "overlapping" : "missing",
+                            counts == null ? 0 : counts.get(1));
+                }
+            }
+            if (options.getReadAheadDepth() > 0) {
+                forEachCluster((i, c) -> System.out.printf("Read-ahead on side %d      : stalled %,d times for %,dms, average queue depth %.1f of %d\n",
+                        i+1, readAheadStats[i].getStallCount(), readAheadStats[i].getStallTimeMs(),
+                        readAheadStats[i].getAverageDepth(), options.getReadAheadDepth()));
+            }
             if (this.forceTerminate) {
                 if (this.totalMissingRecords.get() >= this.options.getMissingRecordsLimit()) {
                     System.out.printf("Comparison terminated after finding %d missing records on a limit of %d\n", 
@@ -1257,6 +1834,10 @@ public class ClusterComparator {
                             this.totalRecordsCompared.get(), this.options.getRecordCompareLimit());
                 }
             }
+            if (retryQueue.getRetriesScheduled() > 0) {
+                System.out.printf("Partition retries         : %,d (%,d succeeded, %,d partitions failed after all retries)\n",
+                        retryQueue.getRetriesScheduled(), retryQueue.getRetriesSucceeded(), retryQueue.getRangesAbandoned());
+            }
             if (!this.failedPartitionsList.isEmpty()) {
                 System.out.printf("******************************\n");
                 System.out.printf("*                            *\n");
@@ -1277,13 +1858,70 @@ public class ClusterComparator {
         }
     }
     
-    private void monitorProgress(String namespace, String setName) throws InterruptedException {
+    /**
+     * Describe the worker and RPS limits for the progress output, if they can differ from those set at startup.
+     */
+    private String describeConcurrency() {
+        ConcurrencyController controller = this.concurrencyController;
+        if (!controller.isAdaptive() && controller.getAdjustments() == 0) {
+            return "";
+        }
+        int rps = controller.getRecordsPerSecond();
+        return String.format("worker limit: %d, rps limit: %s, ", controller.getWorkerLimit(), rps <= 0 ? "unlimited" : String.format("%,d", rps));
+    }
+
+    /**
+     * Describe the records per second used on each cluster by all operations, if any cluster has a limit on them.
+     */
+    private String describeClusterRates() {
+        boolean anyLimited = false;
+        for (RecordRateLimiter limiter : rateLimiters) {
+            anyLimited |= limiter.getRecordsPerSecond() > 0;
+        }
+        if (!anyLimited) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(" cluster operations: {");
+        for (int i = 0; i < numberOfClusters; i++) {
+            int limit = rateLimiters[i].getRecordsPerSecond();
+            sb.append(i > 0 ? ", " : "").append(options.clusterIdToName(i)).append(": ")
+                .append(String.format("%,d rps", rateLimiters[i].getObservedRecordsPerSecond()))
+                .append(limit > 0 ? String.format(" of %,d", limit) : "");
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * Change the records per second allowed across all operations on the cluster, with 0 meaning unlimited.
+     */
+    public void setClusterRps(int clusterIndex, int recordsPerSecond) {
+        int oldLimit = rateLimiters[clusterIndex].getRecordsPerSecond();
+        rateLimiters[clusterIndex].setRecordsPerSecond(recordsPerSecond);
+        if (!options.isSilent()) {
+            System.out.printf("Operations on cluster %s limited to %s rps (was %s)\n", options.clusterIdToName(clusterIndex),
+                    recordsPerSecond <= 0 ? "unlimited" : String.format("%,d", recordsPerSecond),
+                    oldLimit <= 0 ? "unlimited" : String.format("%,d", oldLimit));
+        }
+    }
+
+    public int getClusterRps(int clusterIndex) {
+        return rateLimiters[clusterIndex].getRecordsPerSecond();
+    }
+
+    public long getObservedClusterRps(int clusterIndex) {
+        return rateLimiters[clusterIndex].getObservedRecordsPerSecond();
+    }
+
+    private void monitorProgress() throws InterruptedException {
         if (!options.isSilent()) {
             if (options.getAction().needsInputFile() ) {
                 System.out.println("Comparison started using input file: " + options.getInputFileName());
             }
             else {
-                System.out.println("Comparison started for namespace " + namespace + ((setName == null) ?  "." : (", set " + setName + ".")));
+                String[] namespaces = options.getNamespaces();
+                String[] sets = options.getSetNames();
+                System.out.println("Comparison started for namespace" + (namespaces.length > 1 ? "s " : " ") + String.join(", ", namespaces)
+                        + ((sets == null || sets.length == 0) ?  "." : (", set" + (sets.length > 1 ? "s " : " ") + String.join(", ", sets) + ".")));
             }
         }
         long[] lastRecordsForCluster = new long[numberOfClusters];
@@ -1291,6 +1929,7 @@ public class ClusterComparator {
         forEachCluster((i, c) -> lastRecordsForCluster[i] = 0);
         
         long startTime = System.currentTimeMillis();
+        long lastAdjustTime = startTime;
         while (activeThreads.get() > 0) {
             Thread.sleep(1000);
             long totalCurrentRecords = 0;
@@ -1300,14 +1939,15 @@ public class ClusterComparator {
                 totalCurrentRecords += currentRecordsForCluster[i];
                 recordsThisSecond += currentRecordsForCluster[i] - lastRecordsForCluster[i];
             };
-            int nextPartition = this.partitionList.size();
+            int nextPartition = this.partitionScheduler.size() + this.retryQueue.size();
             int activeThreads = this.activeThreads.get();
             long now = System.currentTimeMillis();
             long elapsedMilliseconds = now - startTime;
             if (!options.isSilent() && !hasChallengeActive.get()) {
                 if (options.getAction() != Action.RERUN) {
-                    System.out.printf("%,dms: [%d-%d, remaining %d, complete:%s], active threads: %d, records scanned: {",
-                            (now-startTime), this.startPartition, this.endPartition, nextPartition, getPartitionsComplete(), activeThreads);
+                    System.out.printf("%,dms: [%d-%d, remaining %d, complete:%s], active threads: %d, %srecords scanned: {",
+                            (now-startTime), this.startPartition, this.endPartition, nextPartition, getPartitionsComplete(), activeThreads,
+                            describeConcurrency());
                 }
                 else {
                     long remaining = recordsRemaining.get();
@@ -1315,45 +1955,40 @@ public class ClusterComparator {
                             (now-startTime), remaining, remaining == FileLoadingProcessor.MAX_QUEUE_DEPTH ? "+" : "", activeThreads);
                 }
                 forEachCluster((i, c) -> System.out.printf("%s%s: %,d", i > 0 ? ", ": "" , options.clusterIdToName(i), currentRecordsForCluster[i]));
-                System.out.printf("} throughput: {last second: %,d rps, overall: %,d rps}\n", 
+                System.out.printf("} throughput: {last second: %,d rps, overall: %,d rps}%s\n", 
                         recordsThisSecond/numberOfClusters,
-                        (totalCurrentRecords)*1000/2/elapsedMilliseconds);
+                        (totalCurrentRecords)*1000/2/elapsedMilliseconds,
+                        describeClusterRates());
             }
             forEachCluster((i, c) -> lastRecordsForCluster[i] = currentRecordsForCluster[i]);
+            for (RecordRateLimiter limiter : rateLimiters) {
+                limiter.updateObservedRate();
+            }
+            if (now - lastAdjustTime >= ConcurrencyController.ADJUST_INTERVAL_MS) {
+                concurrencyController.adjust();
+                lastAdjustTime = now;
+            }
+            if (checkpoint != null) {
+                checkpoint.checkpoint();
+            }
         }
         this.executor.awaitTermination(7, TimeUnit.DAYS);
+        recordActions.awaitAll();
+        if (checkpoint != null) {
+            checkpoint.checkpoint();
+        }
         
         showSummary();
     }
     
     private void touchRecord(AerospikeClientAccess client, Key key) {
-        try {
-            client.touch(writePolicyToUse, key);
-            if (!options.isSilent()) {
-                System.out.println("Touching record " + key);
-            }
-        }
-        catch (AerospikeException ae) {
-            System.out.printf("Error thrown when touching record. Error was %s, class %s\n", ae.getMessage(), ae.getClass().getCanonicalName());
-            System.out.printf("Key: %s\n", key);
-            ae.printStackTrace();
-        }
+        recordActions.send(() -> client.touchAsync(writePolicyToUse, key), key, "Touching", "touching");
     }
 
     private void readRecord(AerospikeClientAccess client, Key key) {
-        try {
-            client.get(readPolicyToUse, key);
-            if (!options.isSilent()) {
-                System.out.println("Reading record " + key);
-            }
-        }
-        catch (AerospikeException ae) {
-            System.out.printf("Error thrown when reading record. Error was %s, class %s\n", ae.getMessage(), ae.getClass().getCanonicalName());
-            System.out.printf("Key: %s\n", key);
-            ae.printStackTrace();
-        }
+        recordActions.send(() -> client.getAsync(readPolicyToUse, key), key, "Reading", "reading");
     }
-    
+
     private String getChallengeString(int length) {
         StringBuilder sb = new StringBuilder();
         for (int i = 0; i < length; i++) {
@@ -1461,6 +2096,8 @@ public class ClusterComparator {
     private class FileLoadingProcessor implements FileLineProcessor {
         public static final int MAX_QUEUE_DEPTH = 10000;
         private ArrayBlockingQueue<FileLine> lines = new ArrayBlockingQueue<>(MAX_QUEUE_DEPTH);
+        // Workers may be virtual threads, which would pin their carriers waiting for a line inside a monitor
+        private final ReentrantLock lock = new ReentrantLock();
         private volatile boolean done = false;
         
         public FileLoadingProcessor() {
@@ -1482,15 +2119,21 @@ public class ClusterComparator {
             producer.start();
         }
         
-        public synchronized FileLine get() throws InterruptedException {
-            recordsRemaining.set(lines.size());
-            if (isDone()) {
-                return null;
+        public FileLine get() throws InterruptedException {
+            lock.lockInterruptibly();
+            try {
+                recordsRemaining.set(lines.size());
+                if (isDone()) {
+                    return null;
+                }
+                // It is possible for the producer to finish producing before a line is taken if the file is empty.
+                // In that case, using <code>lines.take()</code> would wait forever. Hence <code>poll</code> is used
+                // instead with a lenient timeout to resolve this race condition
+                return lines.poll(10, TimeUnit.SECONDS);
+            }
+            finally {
+                lock.unlock();
             }
-            // It is possible for the producer to finish producing before a line is taken if the file is empty.
-            // In that case, using <code>lines.take()</code> would wait forever. Hence <code>poll</code> is used
-            // instead with a lenient timeout to resolve this race condition
-            return lines.poll(10, TimeUnit.SECONDS);
         }
         
         public boolean isDone() {
@@ -1525,6 +2168,45 @@ public class ClusterComparator {
         }
     }
     
+    /**
+     * Hashes from remote servers are compared with each other and with hashes formed here, so every remote server has
+     * to hash with the same version as this comparator. If any server does not know the version asked for, all of
+     * them fall back to {@link RecordHashVersion#LEGACY}, which every server knows.
+     */
+    private void agreeRecordHashVersion() {
+        if (!options.isRemoteServerHashes() || remoteClients.isEmpty()) {
+            return;
+        }
+        RecordHashVersion version = options.getRecordHashVersion();
+        for (RemoteAerospikeClient client : remoteClients) {
+            version = client.useRecordHashVersion(version);
+        }
+        if (version != options.getRecordHashVersion()) {
+            // Servers asked before the one which fell back are hashing with the newer version
+            for (RemoteAerospikeClient client : remoteClients) {
+                client.useRecordHashVersion(version);
+            }
+            options.setRecordHashVersion(version);
+        }
+    }
+
+    /**
+     * Split partitions start scans after a digest. Remote servers from before this was supported scan each range
+     * from the start of its partition, which is correct but slow, so say so.
+     */
+    private void warnIfScansAfterDigestUnsupported() {
+        if (options.getSplitPartitionRecords() <= 0 || options.isSilent()) {
+            return;
+        }
+        for (RemoteAerospikeClient client : remoteClients) {
+            if (!client.supportsScansAfterDigest()) {
+                System.out.printf("Warning: remote server %s does not support scans starting after a digest, so every range of a "
+                        + "split partition scans the whole partition. Upgrade the remote server or do not use --splitPartitionRecords\n",
+                        client.getAddress());
+            }
+        }
+    }
+
     private void startRemoteServer() {
         AerospikeClientAccess client1 = this.connectClient(0, options.getClusterConfigs().get(0));
         RemoteServer remoteServer = new RemoteServer(client1, options.getRemoteServerPort(), options.getRemoteServerHeartbeatPort(), options.isVerbose(), options.isDebug());
@@ -1589,14 +2271,24 @@ public class ClusterComparator {
         if (!options.isSilent()) {
             System.out.printf("=== Aerospike Cluster Comparator v%s ===\n", this.getClass().getPackage().getImplementationVersion());
         }
+        if (!ThreadSupport.setUseVirtualThreads(options.isVirtualThreads()) && !options.isSilent()) {
+            System.out.printf("Warning: Virtual threads need Java 21 or later but this is Java %d, platform threads will be used.\n",
+                    Runtime.version().feature());
+        }
         if (options.isRemoteServer()) {
             startRemoteServer();
             return null;
         }
         this.printExecutionParameters();
         this.threadsToUse = options.resolveThreadsToUse();
+        this.concurrencyController = new ConcurrencyController(options.getMinThreads(), threadsToUse, options.getMinRps(), options.getRps(),
+                options.isAdaptiveConcurrency(), options.isSilent());
         AerospikeClientAccess[] clients = new AerospikeClientAccess[numberOfClusters];
-        forEachCluster((i, c) -> clients[i] = this.connectClient(i, c));
+        // Every operation on a cluster draws from the cluster's rate limiter, not just the scans
+        forEachCluster((i, c) -> clients[i] = new RateLimitedClientAccess(this.connectClient(i, c), rateLimiters[i],
+                nanos -> this.concurrencyController.recordLatency(nanos)));
+        agreeRecordHashVersion();
+        warnIfScansAfterDigestUnsupported();
         Scanner input = null;
         try {
             if (options.getAction() == Action.TOUCH) {
@@ -1636,12 +2328,24 @@ public class ClusterComparator {
             }
         }
         finally {
+            recordActions.awaitAll();
             forEachCluster((i,c) -> clients[i].close());
+            closeEventLoops();
+            synchronized (this) {
+                if (readAheadExecutor != null) {
+                    readAheadExecutor.shutdownNow();
+                    readAheadExecutor = null;
+                }
+                if (comparePipeline != null) {
+                    comparePipeline.close();
+                    comparePipeline = null;
+                }
+            }
             if (input != null) {
                 input.close();
             }
         }
-        return new DifferenceSummary(recordsMissingOnCluster, recordsDifferentCount.get());
+        return new DifferenceSummary(recordsMissingOnCluster, recordsDifferentCount.get(), differencesBySet);
     }
     
     public ProgressSnapshot getProgressSnapshot() {
@@ -1654,11 +2358,15 @@ public class ClusterComparator {
         }
         long[] processedPerCluster = new long[numberOfClusters];
         long[] missingPerCluster = new long[numberOfClusters];
+        long[] readAheadStallMsPerCluster = new long[numberOfClusters];
+        double[] readAheadDepthPerCluster = new double[numberOfClusters];
         for (int i = 0; i < numberOfClusters; i++) {
             processedPerCluster[i] = recordsProcessedOnCluster.get(i);
             missingPerCluster[i] = recordsMissingOnCluster.get(i);
+            readAheadStallMsPerCluster[i] = readAheadStats[i].getStallTimeMs();
+            readAheadDepthPerCluster[i] = readAheadStats[i].getAverageDepth();
         }
-        return new ProgressSnapshot(
+        ProgressSnapshot snapshot = new ProgressSnapshot(
                 processedPerCluster,
                 missingPerCluster,
                 recordsDifferentCount.get(),
@@ -1669,6 +2377,19 @@ public class ClusterComparator {
                 forceTerminate,
                 options.getOutputFileName()
         );
+        snapshot.setReadAheadStats(readAheadStallMsPerCluster, readAheadDepthPerCluster);
+        long[] observedRps = new long[numberOfClusters];
+        int[] rpsLimits = new int[numberOfClusters];
+        for (int i = 0; i < numberOfClusters; i++) {
+            observedRps[i] = rateLimiters[i].getObservedRecordsPerSecond();
+            rpsLimits[i] = rateLimiters[i].getRecordsPerSecond();
+        }
+        snapshot.setClusterRates(observedRps, rpsLimits);
+        ConcurrencyController controller = this.concurrencyController;
+        if (controller != null) {
+            snapshot.setConcurrency(controller.getWorkerLimit(), controller.getRecordsPerSecond(), controller.isAdaptive());
+        }
+        return snapshot;
     }
     
     public void requestTermination() {
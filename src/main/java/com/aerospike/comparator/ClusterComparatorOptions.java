@@ -5,6 +5,7 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -19,6 +20,7 @@ import org.apache.commons.cli.UnrecognizedOptionException;
 
 import com.aerospike.client.policy.AuthMode;
 import com.aerospike.client.policy.TlsPolicy;
+import com.aerospike.comparator.dbaccess.RecordHashVersion;
 import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.yaml.YAMLMapper;
@@ -71,6 +73,18 @@ public class ClusterComparatorOptions implements ClusterNameResolver, NamespaceN
         DURABLE_DELETE
     }
     
+    public static enum WorkOrder {
+        SEQUENTIAL,
+        LARGEST_SET_FIRST,
+        LARGEST_PARTITION_FIRST
+    }
+    
+    public static enum FingerprintMode {
+        NONE,
+        FAST,
+        PARANOID
+    }
+    
     private List<ClusterConfig> clusters = null;
     private boolean console = false;
     private boolean silent = false;
@@ -124,6 +138,27 @@ public class ClusterComparatorOptions implements ClusterNameResolver, NamespaceN
     private String webPassword = null;
     private int lookupBatchSize = 100;
 	private boolean skipDateRangeVerify = false;
+    private int mergeTreeThreshold = 4;
+    private int readAheadDepth = 0;
+    private long splitPartitionRecords = 0;
+    private WorkOrder workOrder = WorkOrder.SEQUENTIAL;
+    private boolean singlePassSets = false;
+    private int maxScansPerNode = 0;
+    private boolean adaptiveConcurrency = false;
+    private int minThreads = 1;
+    private int minRps = 1;
+    private int[] clusterRps = null;
+    private boolean virtualThreads = false;
+    private int eventLoops = 0;
+    private int compareThreads = 0;
+    private FingerprintMode fingerprintMode = FingerprintMode.NONE;
+    private int maxDifferencesPerRecord = 0;
+    private int maxDifferencesPerBin = 0;
+    private RecordHashVersion recordHashVersion = RecordHashVersion.latest();
+    private int partitionRetries = 3;
+    private long partitionRetryBackoffMs = 1000;
+    private String checkpointFileName = null;
+    private boolean resume = false;
     private int sourceCluster = -1;
     
     static class ParseException extends RuntimeException {
@@ -349,6 +384,97 @@ public class ClusterComparatorOptions implements ClusterNameResolver, NamespaceN
                 "Number of records to accumulate before performing a batch read on clusters where the "
                 + "record was not found. Used by date range verification and set mapping modes. All "
                 + "records in a batch target the same server node (same partition). (Default: 100)");
+        options.addOption("mtt", "mergeTreeThreshold", true,
+                "When comparing more than this number of clusters, use a tournament tree to find the next digest to compare "
+                + "rather than checking every cluster. This reduces CPU usage when comparing many clusters. (Default: 4)");
+        options.addOption("rad", "readAheadDepth", true,
+                "Number of records to read ahead on each local cluster's partition scan. Each cluster is read on its own thread into a buffer of "
+                + "this size so waits on different clusters overlap. Stall times and queue depths per cluster are shown in the summary. "
+                + "Use 0 to disable. (Default: 0)");
+        options.addOption("spr", "splitPartitionRecords", true,
+                "Partitions holding more than this number of records on any cluster are split into digest ranges of about this many records, "
+                + "which are compared in parallel. This stops one large partition keeping a single thread busy long after the others have "
+                + "finished. Use 0 to never split partitions. (Default: 0)");
+        options.addOption("wo", "workOrder", true,
+                "The order in which the partitions of the namespaces and sets are compared. All of them share one queue of work and one "
+                + "pool of threads. The options are:\n"
+                + "SEQUENTIAL -- the namespaces and sets in the order they were specified, each in partition order\n"
+                + "LARGEST_SET_FIRST -- the sets with the most records first, so the longest running work is not left until the end\n"
+                + "LARGEST_PARTITION_FIRST -- the partitions and ranges with the most records first, across all the namespaces and sets, "
+                + "so the small ones fill in around the large ones at the end\n"
+                + "(Default: SEQUENTIAL)");
+        options.addOption("sps", "singlePassSets", false,
+                "When comparing more than one set, read each partition once and compare the records of all the sets in that one pass, "
+                + "rather than reading the partition once per set. Records of other sets are filtered out on the server. This reads less "
+                + "when the sets do not have set indexes, or hold most of the records in the namespace. Cannot be used with set mapping.");
+        options.addOption("msn", "maxScansPerNode", true,
+                "The most partition scans to run at once against any one server node on each cluster. Partitions are handed to the "
+                + "threads so the scans are spread evenly over the nodes mastering them, rather than several threads scanning one "
+                + "node while others are idle. Use 0 for no limit. (Default: 0)");
+        options.addOption("acc", "adaptiveConcurrency", false,
+                "Adjust the number of threads comparing partitions and the RPS while the comparison runs. Both grow while the clusters "
+                + "show no stress and halve on timeouts, server errors, or scans taking much longer than usual to return records. "
+                + "They stay between --minThreads and --threads, and --minRps and --rps. Each adjustment is logged. The limits can "
+                + "also be changed by hand through the web interface.");
+        options.addOption("mnt", "minThreads", true,
+                "The fewest threads --adaptiveConcurrency will reduce the comparison to. (Default: 1)");
+        options.addOption("mnr", "minRps", true,
+                "The lowest RPS --adaptiveConcurrency will reduce the comparison to, if --rps is set. (Default: 1)");
+        options.addOption("crp", "clusterRps", true,
+                "Limit the records per second read from or written to each cluster across all operations: scans, batch reads of "
+                + "missing records, metadata reads and record actions. A batch counts one record per key. Either one value for "
+                + "every cluster, or a comma separated list with a value for each cluster. The limits can be changed through the "
+                + "web interface while the comparison runs. Use 0 for unlimited. (Default: 0)");
+        options.addOption("vt", "virtualThreads", false,
+                "Run the partition workers, read-ahead and remote cache filling threads, and the remote server's connection handlers "
+                + "on virtual threads. These threads mostly wait on the network, so with virtual threads --threads can be set to "
+                + "thousands of concurrent partition scans. Needs Java 21 or later; platform threads are used on earlier versions.");
+        options.addOption("el", "eventLoops", true,
+                "Use the asynchronous client with this many event loops for the batch reads of missing records, metadata reads, "
+                + "and the touches and reads of SCAN_TOUCH and SCAN_READ. The clusters are then read in parallel rather than one "
+                + "after another, and touches and reads no longer hold up the partition workers. Scans still use the synchronous "
+                + "client. Has no effect on remote clusters. Use 0 to use the synchronous client for everything. (Default: 0)");
+        options.addOption("ct", "compareThreads", true,
+                "When comparing the contents of records, compare records found on every cluster on this many separate threads. "
+                + "The threads scanning partitions queue the records and carry on reading, so deep records do not hold up the "
+                + "scans. The number of CPUs is a good starting point. Use 0 to compare records on the scanning threads. (Default: 0)");
+        options.addOption("fpm", "fingerprintMode", true,
+                "When comparing the contents of records held locally, first form a fingerprint of each record which takes into account "
+                + "the path options. The options are:\n"
+                + "NONE -- always compare the records in full\n"
+                + "FAST -- only compare the records in full if their fingerprints differ. Most records are the same, so this saves "
+                + "a lot of CPU\n"
+                + "PARANOID -- always compare the records in full, and count any records whose fingerprints match but whose contents "
+                + "differ, shown in the summary\n"
+                + "(Default: NONE)");
+        options.addOption("mdr", "maxDiffsPerRecord", true,
+                "The most differences to keep for a single record. When a record reaches this, comparing it stops and the output "
+                + "shows the record as truncated. Limits the memory used by records which differ throughout, such as long lists. "
+                + "Use 0 for no limit. (Default: 0)");
+        options.addOption("mdb", "maxDiffsPerBin", true,
+                "The most differences to keep for a single bin of a record. Further differences in the bin are counted but not kept, "
+                + "and the output shows the count. Use 0 for no limit. (Default: 0)");
+        options.addOption("rhv", "recordHashVersion", true,
+                "How to hash records when comparing hashes rather than whole records, such as with a remote server. The options are:\n"
+                + "LEGACY -- Java serialization of the bins hashed with RIPEMD160. Understood by every remote server\n"
+                + "CANONICAL -- a canonical encoding of the bins streamed into a 128 bit hash, which is much faster\n"
+                + "The remote servers are told which to use when the comparator connects. If any remote server is from before hashes were "
+                + "versioned, every cluster falls back to LEGACY with a warning. (Default: CANONICAL)");
+        options.addOption("prt", "partitionRetries", true,
+                "Number of times a partition which fails part way through is retried before it is reported as failed. Each retry "
+                + "starts after the last digest which was compared on all clusters and other partitions are compared while the retry "
+                + "waits. Use 0 to never retry. (Default: 3)");
+        options.addOption("prb", "partitionRetryBackoff", true,
+                "Time in milliseconds to wait before the first retry of a failed partition. The wait doubles on each subsequent "
+                + "retry of the same partition, up to 5 minutes. (Default: 1000)");
+        options.addOption("cpf", "checkpointFile", true,
+                "Record the progress of the comparison in this file: the partitions which are complete or have failed, the last digest compared "
+                + "in each partition in progress and the totals so far. The file is appended to as the comparison runs and can be used with "
+                + "--resume to continue a comparison which was stopped.");
+        options.addOption(null, "resume", false,
+                "Continue the comparison recorded in the --checkpointFile, skipping the partitions which are already complete and starting "
+                + "partitions which were in progress after the last digest compared. Differences are appended to the existing output file "
+                + "without repeating rows which were already written.");
         options.addOption("wip", "webInterfacePort", true,
                 "Start a web interface on this port instead of running from the command line.");
         options.addOption("wpw", "webPassword", true,
@@ -385,6 +511,15 @@ public class ClusterComparatorOptions implements ClusterNameResolver, NamespaceN
                 System.out.printf("Path configuration \"%s\" has an empty element with no path and no action\n", path.getPath());
                 hasErrors = true;
             }
+            else if (path.getMaxRanges() < 0) {
+                System.out.printf("Path configuration \"%s\" has maxRanges of %d, it must be >= 0\n", path.getPath(), path.getMaxRanges());
+                hasErrors = true;
+            }
+            else if (path.getMaxRanges() > 0 && path.getAction() != PathAction.REPORTBYTERANGES) {
+                System.out.printf("Path configuration \"%s\" has maxRanges set but maxRanges can only be used with an action of %s\n",
+                        path.getPath(), PathAction.REPORTBYTERANGES);
+                hasErrors = true;
+            }
         }
         return !hasErrors;
     }
@@ -541,6 +676,61 @@ public class ClusterComparatorOptions implements ClusterNameResolver, NamespaceN
             else if (this.lookupBatchSize < 1) {
                 System.out.println("--lookupBatchSize must be >= 1, not " + this.lookupBatchSize);
             }
+            else if (this.mergeTreeThreshold < 1) {
+                System.out.println("--mergeTreeThreshold must be >= 1, not " + this.mergeTreeThreshold);
+            }
+            else if (this.readAheadDepth < 0) {
+                System.out.println("--readAheadDepth must be >= 0, not " + this.readAheadDepth);
+            }
+            else if (this.splitPartitionRecords < 0) {
+                System.out.println("--splitPartitionRecords must be >= 0, not " + this.splitPartitionRecords);
+            }
+            else if (this.maxScansPerNode < 0) {
+                System.out.println("--maxScansPerNode must be >= 0, not " + this.maxScansPerNode);
+            }
+            else if (this.minThreads < 1) {
+                System.out.println("--minThreads must be >= 1, not " + this.minThreads);
+            }
+            else if (this.minRps < 1) {
+                System.out.println("--minRps must be >= 1, not " + this.minRps);
+            }
+            else if (this.clusterRps != null && this.clusterRps.length != 1 && this.clusterRps.length != this.getNumberOfClusters()) {
+                System.out.printf("--clusterRps must have either 1 value or a value for each of the %d clusters, not %d values\n",
+                        this.getNumberOfClusters(), this.clusterRps.length);
+            }
+            else if (this.clusterRps != null && Arrays.stream(this.clusterRps).anyMatch(value -> value < 0)) {
+                System.out.println("--clusterRps values must be >= 0");
+            }
+            else if (this.eventLoops < 0) {
+                System.out.println("--eventLoops must be >= 0, not " + this.eventLoops);
+            }
+            else if (this.compareThreads < 0) {
+                System.out.println("--compareThreads must be >= 0, not " + this.compareThreads);
+            }
+            else if (this.maxDifferencesPerRecord < 0) {
+                System.out.println("--maxDiffsPerRecord must be >= 0, not " + this.maxDifferencesPerRecord);
+            }
+            else if (this.maxDifferencesPerBin < 0) {
+                System.out.println("--maxDiffsPerBin must be >= 0, not " + this.maxDifferencesPerBin);
+            }
+            else if (this.partitionRetries < 0) {
+                System.out.println("--partitionRetries must be >= 0, not " + this.partitionRetries);
+            }
+            else if (this.partitionRetryBackoffMs < 0) {
+                System.out.println("--partitionRetryBackoff must be >= 0, not " + this.partitionRetryBackoffMs);
+            }
+            else if (this.resume && this.checkpointFileName == null) {
+                System.out.println("--resume requires --checkpointFile to identify the comparison to continue");
+            }
+            else if (this.checkpointFileName != null && (this.action.needsInputFile || this.isQuickCompare())) {
+                System.out.printf("--checkpointFile can only be used when scanning partitions, not with action %s and compare mode %s\n", this.action, this.compareMode);
+            }
+            else if (this.singlePassSets && (this.setNames == null || this.setNames.length < 2)) {
+                System.out.println("--singlePassSets requires at least 2 sets to be specified with --setNames");
+            }
+            else if (this.singlePassSets && this.hasSetMapping()) {
+                System.out.println("--singlePassSets cannot be used with set mapping");
+            }
             else if (this.hasSetMapping() && !this.hasSourceCluster()) {
                 System.out.println("Set mapping requires --sourceCluster to identify which cluster to scan");
             }
@@ -655,6 +845,12 @@ public class ClusterComparatorOptions implements ClusterNameResolver, NamespaceN
         if (this.isQuickCompare() && this.setNames != null) {
             errors.put("setNames", "Quick compare cannot be used in conjunction with sets");
         }
+        if (this.singlePassSets && (this.setNames == null || this.setNames.length < 2)) {
+            errors.put("singlePassSets", "--singlePassSets requires at least 2 sets to be specified with --setNames");
+        }
+        else if (this.singlePassSets && this.hasSetMapping()) {
+            errors.put("singlePassSets", "--singlePassSets cannot be used with set mapping");
+        }
         if (this.endDate != null && this.beginDate != null && this.beginDate.compareTo(this.endDate) > 0) {
             errors.put("beginDate", "Start date must be before the end date");
         }
@@ -805,6 +1001,29 @@ public class ClusterComparatorOptions implements ClusterNameResolver, NamespaceN
         this.webPassword = cl.getOptionValue("webPassword");
         this.lookupBatchSize = Integer.parseInt(cl.getOptionValue("lookupBatchSize", "100"));
         this.skipDateRangeVerify = cl.hasOption("skipDateRangeVerify");
+        this.mergeTreeThreshold = Integer.parseInt(cl.getOptionValue("mergeTreeThreshold", "4"));
+        this.readAheadDepth = Integer.parseInt(cl.getOptionValue("readAheadDepth", "0"));
+        this.splitPartitionRecords = Long.parseLong(cl.getOptionValue("splitPartitionRecords", "0"));
+        this.workOrder = WorkOrder.valueOf(cl.getOptionValue("workOrder", WorkOrder.SEQUENTIAL.toString()).toUpperCase());
+        this.singlePassSets = cl.hasOption("singlePassSets");
+        this.maxScansPerNode = Integer.parseInt(cl.getOptionValue("maxScansPerNode", "0"));
+        this.adaptiveConcurrency = cl.hasOption("adaptiveConcurrency");
+        this.minThreads = Integer.parseInt(cl.getOptionValue("minThreads", "1"));
+        this.minRps = Integer.parseInt(cl.getOptionValue("minRps", "1"));
+        this.virtualThreads = cl.hasOption("virtualThreads");
+        this.eventLoops = Integer.parseInt(cl.getOptionValue("eventLoops", "0"));
+        this.compareThreads = Integer.parseInt(cl.getOptionValue("compareThreads", "0"));
+        this.fingerprintMode = FingerprintMode.valueOf(cl.getOptionValue("fingerprintMode", FingerprintMode.NONE.toString()).toUpperCase());
+        this.maxDifferencesPerRecord = Integer.parseInt(cl.getOptionValue("maxDiffsPerRecord", "0"));
+        this.maxDifferencesPerBin = Integer.parseInt(cl.getOptionValue("maxDiffsPerBin", "0"));
+        this.recordHashVersion = RecordHashVersion.valueOf(cl.getOptionValue("recordHashVersion", RecordHashVersion.latest().toString()).toUpperCase());
+        if (cl.hasOption("clusterRps")) {
+            this.clusterRps = Arrays.stream(cl.getOptionValue("clusterRps").split(",")).mapToInt(value -> Integer.parseInt(value.trim())).toArray();
+        }
+        this.partitionRetries = Integer.parseInt(cl.getOptionValue("partitionRetries", "3"));
+        this.partitionRetryBackoffMs = Long.parseLong(cl.getOptionValue("partitionRetryBackoff", "1000"));
+        this.checkpointFileName = cl.getOptionValue("checkpointFile");
+        this.resume = cl.hasOption("resume");
         this.sourceCluster = parseSourceCluster(cl.getOptionValue("sourceCluster"));
         
         if (this.isWebInterface()) {
@@ -853,6 +1072,113 @@ public class ClusterComparatorOptions implements ClusterNameResolver, NamespaceN
         return lookupBatchSize;
     }
 
+    public int getMergeTreeThreshold() {
+        return mergeTreeThreshold;
+    }
+
+    public int getReadAheadDepth() {
+        return readAheadDepth;
+    }
+
+    public long getSplitPartitionRecords() {
+        return splitPartitionRecords;
+    }
+
+    public WorkOrder getWorkOrder() {
+        return workOrder;
+    }
+
+    public boolean isSinglePassSets() {
+        return singlePassSets;
+    }
+
+    public int getMaxScansPerNode() {
+        return maxScansPerNode;
+    }
+
+    public boolean isAdaptiveConcurrency() {
+        return adaptiveConcurrency;
+    }
+
+    public int getMinThreads() {
+        return minThreads;
+    }
+
+    public int getMinRps() {
+        return minRps;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * The number of event loops for the asynchronous client, or 0 if only the synchronous client is used.
+     */
+    public int getEventLoops() {
+        return eventLoops;
+    }
+
+    /**
+     * The number of threads comparing records handed over by the scanning threads, or 0 if records are compared on the
+     * scanning threads.
+     */
+    public int getCompareThreads() {
+        return compareThreads;
+    }
+
+    public FingerprintMode getFingerprintMode() {
+        return fingerprintMode;
+    }
+
+    /**
+     * The most differences kept for one record, or 0 if unlimited.
+     */
+    public int getMaxDifferencesPerRecord() {
+        return maxDifferencesPerRecord;
+    }
+
+    /**
+     * The most differences kept for one bin of a record, or 0 if unlimited.
+     */
+    public int getMaxDifferencesPerBin() {
+        return maxDifferencesPerBin;
+    }
+
+    public RecordHashVersion getRecordHashVersion() {
+        return recordHashVersion;
+    }
+
+    public void setRecordHashVersion(RecordHashVersion recordHashVersion) {
+        this.recordHashVersion = recordHashVersion;
+    }
+
+    /**
+     * The records per second allowed across all operations on the cluster, or 0 if unlimited.
+     */
+    public int getClusterRps(int clusterIndex) {
+        if (clusterRps == null) {
+            return 0;
+        }
+        return clusterRps.length == 1 ? clusterRps[0] : clusterRps[clusterIndex];
+    }
+
+    public int getPartitionRetries() {
+        return partitionRetries;
+    }
+
+    public long getPartitionRetryBackoffMs() {
+        return partitionRetryBackoffMs;
+    }
+
+    public String getCheckpointFileName() {
+        return checkpointFileName;
+    }
+
+    public boolean isResume() {
+        return resume;
+    }
+
     /**
      * Returns true when date filtering is active and missing records should be
      * verified by re-reading them without the date filter.
@@ -0,0 +1,246 @@
+package com.aerospike.comparator;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Separates reading records from comparing them. The threads scanning partitions hand each set of matching records
+ * to a bounded queue, and a pool of comparator threads, sized to the CPUs, does the deep comparison and reports the
+ * differences. The scan threads go straight back to reading from the network, so the query buffers keep draining
+ * even when records with deep CDTs take a long time to compare. When the queue is full, the scan threads wait for
+ * the comparators to catch up.
+ * <p>
+ * Each range being scanned has a {@link RangeTracker} which knows which of its comparisons are still queued, so
+ * the range is only reported complete once all its records have been compared.
+ */
+public class ComparePipeline {
+    /** The comparisons which can be queued for each comparator thread before the scan threads wait */
+    public static final int QUEUE_DEPTH_PER_THREAD = 64;
+
+    private final BlockingQueue<Runnable> queue;
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile boolean closed = false;
+
+    /**
+     * Tracks the comparisons handed off by the scan of one range. Used by the thread scanning the range and the
+     * comparator threads comparing its records.
+     */
+    public class RangeTracker {
+        private class Entry {
+            private final byte[] digest;
+            private boolean done;
+
+            Entry(byte[] digest, boolean done) {
+                this.digest = digest;
+                this.done = done;
+            }
+        }
+
+        // The scan threads may be virtual threads, so they wait on a lock condition rather than the monitor, which would pin them
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition comparisonFinished = lock.newCondition();
+        // Records in scan order whose comparison has not completed, or which follow one which has not. Guarded by lock.
+        private final ArrayDeque<Entry> pending = new ArrayDeque<>();
+        private byte[] lastCompletedDigest = null;
+        private int outstanding = 0;
+        private Throwable failure = null;
+
+        /**
+         * Queue the comparison of the record with the passed digest, waiting if the queue is full. The digest is null
+         * if the range cannot be resumed after this record even once it is compared.
+         */
+        public void submit(byte[] digest, Runnable comparison) {
+            Entry entry = new Entry(digest, false);
+            lock.lock();
+            try {
+                pending.add(entry);
+                outstanding++;
+            }
+            finally {
+                lock.unlock();
+            }
+            Runnable job = () -> {
+                Throwable thrown = null;
+                try {
+                    comparison.run();
+                }
+                catch (RuntimeException | Error e) {
+                    thrown = e;
+                }
+                finished(entry, thrown);
+            };
+            try {
+                queue.put(job);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                finished(entry, e);
+                throw new IllegalStateException("Interrupted waiting to queue a record comparison", e);
+            }
+        }
+
+        /**
+         * Flag that the record with the passed digest has been completely handled by the scanning thread itself.
+         */
+        public void completed(byte[] digest) {
+            lock.lock();
+            try {
+                if (pending.isEmpty()) {
+                    lastCompletedDigest = digest;
+                }
+                else {
+                    pending.add(new Entry(digest, true));
+                }
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        private void finished(Entry entry, Throwable thrown) {
+            lock.lock();
+            try {
+                outstanding--;
+                if (thrown == null) {
+                    entry.done = true;
+                    while (!pending.isEmpty() && pending.peek().done) {
+                        byte[] digest = pending.poll().digest;
+                        if (digest != null) {
+                            lastCompletedDigest = digest;
+                        }
+                    }
+                }
+                else if (failure == null) {
+                    failure = thrown;
+                }
+                comparisonFinished.signalAll();
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * The digest of the last record, in scan order, for which it and every record before it have been compared.
+         * Null if no record has been completely compared yet.
+         */
+        public byte[] getLastCompletedDigest() {
+            lock.lock();
+            try {
+                return lastCompletedDigest;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        public int getOutstanding() {
+            lock.lock();
+            try {
+                return outstanding;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Wait for every comparison queued for this range to finish, then throw the first failure of any of them.
+         */
+        public void awaitCompletion() {
+            Throwable failure;
+            lock.lock();
+            try {
+                awaitQuietly();
+                failure = this.failure;
+            }
+            finally {
+                lock.unlock();
+            }
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+            if (failure != null) {
+                throw new IllegalStateException(failure.getMessage(), failure);
+            }
+        }
+
+        /**
+         * Wait for every comparison queued for this range to finish, ignoring any failures. Used when the range has
+         * already failed so the point to resume from covers everything compared.
+         */
+        public void awaitQuietly() {
+            boolean interrupted = false;
+            lock.lock();
+            try {
+                while (outstanding > 0 && !closed) {
+                    try {
+                        comparisonFinished.await(1000, TimeUnit.MILLISECONDS);
+                    }
+                    catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+            finally {
+                lock.unlock();
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public ComparePipeline(int threadCount) {
+        this.queue = new ArrayBlockingQueue<>(threadCount * QUEUE_DEPTH_PER_THREAD);
+        for (int i = 0; i < threadCount; i++) {
+            // The comparisons are CPU bound, so these are always platform threads
+            Thread thread = new Thread(this::run, "record-comparator-" + (i+1));
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+    }
+
+    private void run() {
+        while (!closed) {
+            try {
+                queue.take().run();
+            }
+            catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    public RangeTracker newRange() {
+        return new RangeTracker();
+    }
+
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+    public int getThreadCount() {
+        return threads.size();
+    }
+
+    /**
+     * Stop the comparator threads. Every range should have been awaited first, anything still queued is dropped.
+     */
+    public void close() {
+        closed = true;
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+    }
+}
@@ -0,0 +1,446 @@
+package com.aerospike.comparator;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import com.aerospike.client.command.Buffer;
+
+/**
+ * Records the progress of a comparison in an append-only file so a comparison which is stopped part way
+ * through can be resumed without rescanning the work which has already been done. Each line is one event:
+ * <ul>
+ * <li><code>START,ns,set,partition,rangeIndex,rangeCount</code>: a thread has begun comparing a range</li>
+ * <li><code>PROGRESS,ns,set,partition,rangeIndex,rangeCount,digest</code>: all records in the range down to and
+ * including this digest have been compared. Scans return digests in descending order.</li>
+ * <li><code>DONE,ns,set,partition,rangeIndex,rangeCount</code>: the range has been completely compared</li>
+ * <li><code>FAILED,ns,set,partition,rangeIndex,rangeCount</code>: the range failed and must be rescanned</li>
+ * <li><code>COUNTERS,compared,different,missing,processed1;processed2...,missing1;missing2...</code>: the totals
+ * at the time the line was written</li>
+ * </ul>
+ * Later lines supersede earlier ones, so the file can be read back to find the ranges still to be compared
+ * and where each in-flight range got to. Progress lines are written by the progress monitor once a second
+ * rather than per record, so a resumed range may re-compare a second or so of records.
+ * <p>
+ * Progress, done and failed lines are always followed by the totals, read just before the progress, and only take
+ * effect on resume once those totals have been read back, so the totals restored match the ranges restored. Records
+ * counted but not yet covered by the last digest of their range, such as those queued for the comparator threads or
+ * awaiting date range verification, are counted again when the range is resumed, so the totals of a resumed
+ * comparison may be slightly high.
+ */
+public class ComparisonCheckpoint {
+    private static final String START = "START";
+    private static final String PROGRESS = "PROGRESS";
+    private static final String DONE = "DONE";
+    private static final String FAILED = "FAILED";
+    private static final String COUNTERS = "COUNTERS";
+
+    /**
+     * The totals of the comparison, stored in the checkpoint so a resumed run reports the totals of the whole comparison.
+     */
+    public static class Counters {
+        private final long recordsCompared;
+        private final long recordsDifferent;
+        private final long missingRecords;
+        private final long[] processedOnCluster;
+        private final long[] missingOnCluster;
+
+        public Counters(long recordsCompared, long recordsDifferent, long missingRecords, long[] processedOnCluster, long[] missingOnCluster) {
+            this.recordsCompared = recordsCompared;
+            this.recordsDifferent = recordsDifferent;
+            this.missingRecords = missingRecords;
+            this.processedOnCluster = processedOnCluster;
+            this.missingOnCluster = missingOnCluster;
+        }
+
+        public long getRecordsCompared() {
+            return recordsCompared;
+        }
+
+        public long getRecordsDifferent() {
+            return recordsDifferent;
+        }
+
+        public long getMissingRecords() {
+            return missingRecords;
+        }
+
+        public long[] getProcessedOnCluster() {
+            return processedOnCluster;
+        }
+
+        public long[] getMissingOnCluster() {
+            return missingOnCluster;
+        }
+
+        private static String join(long[] values) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    sb.append(';');
+                }
+                sb.append(values[i]);
+            }
+            return sb.toString();
+        }
+
+        private static long[] split(String value) {
+            return Arrays.stream(value.split(";")).mapToLong(Long::parseLong).toArray();
+        }
+
+        String asLine() {
+            return String.format("%s,%d,%d,%d,%s,%s", COUNTERS, recordsCompared, recordsDifferent, missingRecords,
+                    join(processedOnCluster), join(missingOnCluster));
+        }
+
+        static Counters fromLine(String[] parts) {
+            return new Counters(Long.parseLong(parts[1]), Long.parseLong(parts[2]), Long.parseLong(parts[3]),
+                    split(parts[4]), split(parts[5]));
+        }
+    }
+
+    /**
+     * The progress of a range which is currently being compared. The comparing thread sets the last digest it has
+     * finished with, and the progress monitor writes it to the checkpoint file if it has changed.
+     */
+    public static class RangeProgress {
+        private final String namespace;
+        private final String setName;
+        private final PartitionRange range;
+        private volatile byte[] lastDigest = null;
+        private byte[] lastWrittenDigest = null;
+
+        private RangeProgress(String namespace, String setName, PartitionRange range) {
+            this.namespace = namespace;
+            this.setName = setName;
+            this.range = range;
+        }
+
+        public void setLastDigest(byte[] digest) {
+            this.lastDigest = digest;
+        }
+    }
+
+    /**
+     * The state of one partition as read from an existing checkpoint file.
+     */
+    private static class PartitionState {
+        private int rangeCount;
+        private final BitSet started = new BitSet();
+        private final BitSet done = new BitSet();
+        private final BitSet failed = new BitSet();
+        private final Map<Integer, byte[]> lastDigests = new HashMap<>();
+
+        public PartitionState(int rangeCount) {
+            this.rangeCount = rangeCount;
+        }
+
+        public boolean isComplete() {
+            return done.cardinality() >= rangeCount;
+        }
+
+        public boolean isInFlight() {
+            return !isComplete() && !started.isEmpty();
+        }
+    }
+
+    private final File file;
+    private final PrintWriter writer;
+    private final Map<String, Map<Integer, PartitionState>> resumeState = new HashMap<>();
+    private final Set<Integer> partitionsInFlightOnResume = new HashSet<>();
+    private final Map<PartitionRange, RangeProgress> rangesInFlight = new ConcurrentHashMap<>();
+    private final Supplier<Counters> counters;
+    private Counters resumedCounters = null;
+    private String lastCountersLine = null;
+    private boolean rangeEventsWithoutCounters = false;
+    private boolean resuming = false;
+
+    /**
+     * Open the checkpoint file. If <code>resume</code> is set and the file exists, the state in it is loaded and new
+     * events are appended to it, otherwise the file is started afresh. The totals of the comparison are read from
+     * <code>counters</code> whenever the progress of the ranges is written.
+     */
+    public ComparisonCheckpoint(String fileName, boolean resume, Supplier<Counters> counters) throws IOException {
+        this.file = new File(fileName);
+        this.counters = counters;
+        if (resume && file.exists() && file.length() > 0) {
+            load();
+            terminatePartialLine();
+            this.resuming = true;
+        }
+        this.writer = new PrintWriter(new FileWriter(file, this.resuming));
+    }
+
+    private static String scope(String namespace, String setName) {
+        return namespace + "," + (setName == null ? "" : setName);
+    }
+
+    private void load() throws IOException {
+        // Progress lines are only applied once the totals which follow them have been read
+        List<Runnable> pendingEvents = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(",", -1);
+                try {
+                    if (COUNTERS.equals(parts[0])) {
+                        resumedCounters = Counters.fromLine(parts);
+                        pendingEvents.forEach(Runnable::run);
+                        pendingEvents.clear();
+                    }
+                    else if (START.equals(parts[0])) {
+                        loadRangeEvent(parts).run();
+                    }
+                    else {
+                        pendingEvents.add(loadRangeEvent(parts));
+                    }
+                }
+                catch (RuntimeException e) {
+                    // A line only partially written when the comparison was stopped, ignore it.
+                }
+            }
+        }
+        for (Map<Integer, PartitionState> partitions : resumeState.values()) {
+            partitions.forEach((partitionId, state) -> {
+                if (state.isInFlight()) {
+                    partitionsInFlightOnResume.add(partitionId);
+                }
+            });
+        }
+    }
+
+    /**
+     * Parse a range event, returning the change it makes to the state of its partition.
+     */
+    private Runnable loadRangeEvent(String[] parts) {
+        String event = parts[0];
+        int partitionId = Integer.parseInt(parts[3]);
+        int rangeIndex = Integer.parseInt(parts[4]);
+        int rangeCount = Integer.parseInt(parts[5]);
+        byte[] digest = PROGRESS.equals(event) ? FileLine.hexStringToByteArray(parts[6]) : null;
+        if (digest != null && digest.length != DigestMerger.DIGEST_LENGTH) {
+            throw new IllegalArgumentException("Invalid digest " + parts[6]);
+        }
+        if (!START.equals(event) && !PROGRESS.equals(event) && !DONE.equals(event) && !FAILED.equals(event)) {
+            throw new IllegalArgumentException("Unknown checkpoint event " + event);
+        }
+        String scope = scope(parts[1], parts[2]);
+        return () -> {
+            Map<Integer, PartitionState> partitions = resumeState.computeIfAbsent(scope, k -> new HashMap<>());
+            PartitionState state = partitions.get(partitionId);
+            if (state == null || state.rangeCount != rangeCount) {
+                // The partition has been split differently to an earlier run, the latest split wins
+                state = new PartitionState(rangeCount);
+                partitions.put(partitionId, state);
+            }
+            switch (event) {
+                case START:
+                    state.started.set(rangeIndex);
+                    break;
+                case PROGRESS:
+                    state.lastDigests.put(rangeIndex, digest);
+                    break;
+                case DONE:
+                    state.done.set(rangeIndex);
+                    state.failed.clear(rangeIndex);
+                    break;
+                default:
+                    state.failed.set(rangeIndex);
+                    break;
+            }
+        };
+    }
+
+    /**
+     * If the comparison was stopped part way through writing a line, end that line so the next event starts on its own line.
+     */
+    private void terminatePartialLine() throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length() - 1);
+            if (raf.read() != '\n') {
+                raf.write('\n');
+            }
+        }
+    }
+
+    /**
+     * Returns true if an existing checkpoint was loaded and the comparison is continuing from it.
+     */
+    public boolean isResuming() {
+        return resuming;
+    }
+
+    public String getFileName() {
+        return file.getPath();
+    }
+
+    /**
+     * The totals at the point the checkpoint was last written, or null if none were recorded.
+     */
+    public Counters getResumedCounters() {
+        return resumedCounters;
+    }
+
+    /**
+     * Returns true if the partition had been started but not completed in any namespace or set when the checkpoint was
+     * loaded. Differences in these partitions may have been output already and may be found again when the partition
+     * is resumed.
+     */
+    public boolean wasInFlight(int partitionId) {
+        return partitionsInFlightOnResume.contains(partitionId);
+    }
+
+    /**
+     * Determine the ranges of the partition still to be compared. Returns null if the checkpoint holds nothing about the
+     * partition, in which case the partition should be compared as normal. Completed ranges are omitted and ranges which
+     * were in progress start after the last digest which was compared.
+     */
+    public List<PartitionRange> getRemainingRanges(String namespace, String setName, int partitionId) {
+        Map<Integer, PartitionState> partitions = resumeState.get(scope(namespace, setName));
+        PartitionState state = partitions == null ? null : partitions.get(partitionId);
+        if (state == null) {
+            return null;
+        }
+        List<PartitionRange> result = new ArrayList<>();
+        for (PartitionRange range : PartitionRange.split(partitionId, state.rangeCount)) {
+            if (!state.done.get(range.getRangeIndex())) {
+                byte[] lastDigest = state.lastDigests.get(range.getRangeIndex());
+                result.add(lastDigest == null ? range : range.resumeAfter(lastDigest));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Describe the state loaded from the checkpoint file.
+     */
+    public String describe() {
+        long complete = 0;
+        long inFlight = 0;
+        long failed = 0;
+        for (Map<Integer, PartitionState> partitions : resumeState.values()) {
+            for (PartitionState state : partitions.values()) {
+                if (state.isComplete()) {
+                    complete++;
+                }
+                else if (!state.failed.isEmpty()) {
+                    failed++;
+                }
+                else if (state.isInFlight()) {
+                    inFlight++;
+                }
+            }
+        }
+        return String.format("%,d partitions complete, %,d partially complete, %,d failed and to be rescanned", complete, inFlight, failed);
+    }
+
+    private void writeRangeEvent(String event, String namespace, String setName, PartitionRange range, byte[] digest) {
+        StringBuilder sb = new StringBuilder().append(event).append(',')
+                .append(scope(namespace, setName)).append(',')
+                .append(range.getPartitionId()).append(',')
+                .append(range.getRangeIndex()).append(',')
+                .append(range.getRangeCount());
+        if (digest != null) {
+            sb.append(',').append(Buffer.bytesToHexString(digest));
+        }
+        writer.println(sb.toString());
+        if (!START.equals(event)) {
+            rangeEventsWithoutCounters = true;
+        }
+    }
+
+    /**
+     * Record that a thread has started comparing the range. The returned progress should be updated as records are compared.
+     */
+    public synchronized RangeProgress rangeStarted(String namespace, String setName, PartitionRange range) {
+        RangeProgress progress = new RangeProgress(namespace, setName, range);
+        rangesInFlight.put(range, progress);
+        writeRangeEvent(START, namespace, setName, range, null);
+        writer.flush();
+        return progress;
+    }
+
+    public synchronized void rangeComplete(RangeProgress progress) {
+        Counters totals = counters.get();
+        rangesInFlight.remove(progress.range);
+        writeRangeEvent(DONE, progress.namespace, progress.setName, progress.range, null);
+        writeCheckpoint(totals);
+    }
+
+    /**
+     * Record that the range stopped before it was complete, for example to be retried. Any progress made is kept so
+     * the range can be continued from there.
+     */
+    public synchronized void rangeStopped(PartitionRange range) {
+        Counters totals = counters.get();
+        stopRange(range);
+        writeCheckpoint(totals);
+    }
+
+    /**
+     * Record that the range failed. Any progress made is kept so the rescan of the range can start from there.
+     */
+    public synchronized void rangeFailed(String namespace, String setName, PartitionRange range) {
+        Counters totals = counters.get();
+        stopRange(range);
+        writeRangeEvent(FAILED, namespace, setName, range, null);
+        writeCheckpoint(totals);
+    }
+
+    private void stopRange(PartitionRange range) {
+        RangeProgress progress = rangesInFlight.remove(range);
+        if (progress != null) {
+            writeProgress(progress);
+        }
+    }
+
+    private void writeProgress(RangeProgress progress) {
+        byte[] digest = progress.lastDigest;
+        if (digest != null && digest != progress.lastWrittenDigest) {
+            writeRangeEvent(PROGRESS, progress.namespace, progress.setName, progress.range, digest);
+            progress.lastWrittenDigest = digest;
+        }
+    }
+
+    /**
+     * Write the last digest of each range in flight and the totals, skipping anything unchanged since it was last written.
+     */
+    public synchronized void checkpoint() {
+        writeCheckpoint(counters.get());
+    }
+
+    /**
+     * Write the progress of the ranges in flight followed by the totals. The totals are read before the progress, so a
+     * record compared in between is at worst left out of the totals on resume rather than counted twice.
+     */
+    private void writeCheckpoint(Counters totals) {
+        for (RangeProgress progress : rangesInFlight.values()) {
+            writeProgress(progress);
+        }
+        String countersLine = totals.asLine();
+        if (rangeEventsWithoutCounters || !countersLine.equals(lastCountersLine)) {
+            writer.println(countersLine);
+            lastCountersLine = countersLine;
+            rangeEventsWithoutCounters = false;
+        }
+        writer.flush();
+    }
+
+    public synchronized void close() {
+        writer.close();
+    }
+}
@@ -0,0 +1,256 @@
+package com.aerospike.comparator;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Controls how many worker threads compare partitions at once and the records per second they are allowed to read.
+ * Both can be changed while the comparison runs, either by hand (through the web interface) or automatically.
+ * <p>
+ * When adaptive, the limits are adjusted additive-increase / multiplicative-decrease: every interval without signs of
+ * stress on the clusters, one more worker is allowed and the RPS rises by a twentieth of its maximum. Timeouts,
+ * server errors or the time for scans to return their first record rising well above the lowest seen all halve both.
+ * The limits stay between the configured minimums and maximums.
+ * <p>
+ * Workers may be virtual threads, so waiting workers park on a lock condition rather than a monitor, which would pin
+ * their carrier threads.
+ */
+public class ConcurrencyController {
+    /** How often the adaptive limits are adjusted */
+    public static final long ADJUST_INTERVAL_MS = 5000;
+    /** Scans taking this many times longer than usual to return their first record indicate the clusters are stressed */
+    public static final double LATENCY_STRESS_FACTOR = 2.0;
+
+    private final int minWorkers;
+    private final int maxWorkers;
+    private final int minRps;
+    private final int maxRps;
+    private final boolean silent;
+    private volatile boolean adaptive;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition workerAvailable = lock.newCondition();
+
+    // Guarded by lock
+    private int workerLimit;
+    private int rps;
+    private int workersRunning = 0;
+    private double baselineLatencyMicros = -1;
+
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong latencySamples = new AtomicLong();
+    private final AtomicLong latencyTotalMicros = new AtomicLong();
+    private final AtomicLong adjustments = new AtomicLong();
+
+    /**
+     * Form the controller. Workers and RPS start at their maximums. An RPS of 0 means unlimited, in which case the RPS
+     * is not adjusted automatically.
+     */
+    public ConcurrencyController(int minWorkers, int maxWorkers, int minRps, int maxRps, boolean adaptive, boolean silent) {
+        this.minWorkers = Math.max(1, Math.min(minWorkers, maxWorkers));
+        this.maxWorkers = maxWorkers;
+        this.minRps = Math.min(minRps, maxRps);
+        this.maxRps = maxRps;
+        this.adaptive = adaptive;
+        this.silent = silent;
+        this.workerLimit = maxWorkers;
+        this.rps = maxRps;
+    }
+
+    /**
+     * Wait up to <code>maxWaitMs</code> for the number of running workers to be below the limit, then count this
+     * worker as running. Returns false if the worker may not run yet.
+     */
+    public boolean acquireWorker(long maxWaitMs) throws InterruptedException {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        lock.lock();
+        try {
+            while (workersRunning >= workerLimit) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = workerAvailable.awaitNanos(remaining);
+            }
+            workersRunning++;
+            return true;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    public void releaseWorker() {
+        lock.lock();
+        try {
+            workersRunning--;
+            workerAvailable.signalAll();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The RPS each running worker should apply to a new scan, so the total across the workers is the current RPS.
+     * Returns 0 if the RPS is unlimited.
+     */
+    public int getRecordsPerSecondPerWorker() {
+        lock.lock();
+        try {
+            if (rps <= 0) {
+                return 0;
+            }
+            return Math.max(1, rps / workerLimit);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    public void recordLatency(long nanos) {
+        latencySamples.incrementAndGet();
+        latencyTotalMicros.addAndGet(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    public void recordTimeout() {
+        timeouts.incrementAndGet();
+    }
+
+    public void recordError() {
+        errors.incrementAndGet();
+    }
+
+    /**
+     * Adjust the limits based on what has happened since the last adjustment, if adaptive. Returns a description
+     * of the change, or null if nothing changed.
+     */
+    public String adjust() {
+        lock.lock();
+        try {
+            long timeoutCount = timeouts.getAndSet(0);
+            long errorCount = errors.getAndSet(0);
+            long samples = latencySamples.getAndSet(0);
+            long totalMicros = latencyTotalMicros.getAndSet(0);
+            if (!adaptive) {
+                return null;
+            }
+            double latencyMicros = samples > 0 ? (double)totalMicros / samples : -1;
+            boolean slow = latencyMicros >= 0 && baselineLatencyMicros > 0 && latencyMicros > baselineLatencyMicros * LATENCY_STRESS_FACTOR;
+            if (latencyMicros >= 0) {
+                // Follow drops in latency immediately and rises slowly so a lasting change in the clusters becomes the new normal
+                baselineLatencyMicros = baselineLatencyMicros < 0 || latencyMicros < baselineLatencyMicros
+                        ? latencyMicros : baselineLatencyMicros * 0.95 + latencyMicros * 0.05;
+            }
+            if (timeoutCount > 0 || errorCount > 0 || slow) {
+                String reason = String.format("%,d timeouts, %,d errors, first record latency %,.1fms", timeoutCount, errorCount,
+                        Math.max(latencyMicros, 0) / 1000.0);
+                return apply(Math.max(minWorkers, workerLimit / 2), maxRps > 0 ? Math.max(minRps, rps / 2) : rps, reason);
+            }
+            else if (samples > 0) {
+                return apply(Math.min(maxWorkers, workerLimit + 1), maxRps > 0 ? Math.min(maxRps, rps + Math.max(1, maxRps / 20)) : rps,
+                        "no stress on the clusters");
+            }
+            return null;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Set the limits by hand. A null value leaves that limit unchanged. Workers are held between 1 and the number of
+     * threads. Returns a description of the change, or null if nothing changed.
+     */
+    public String setLimits(Integer workers, Integer recordsPerSecond) {
+        lock.lock();
+        try {
+            int newWorkers = workers == null ? workerLimit : Math.max(1, Math.min(maxWorkers, workers));
+            int newRps = recordsPerSecond == null ? rps : Math.max(0, recordsPerSecond);
+            return apply(newWorkers, newRps, "set by hand");
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    private String apply(int newWorkerLimit, int newRps, String reason) {
+        if (newWorkerLimit == workerLimit && newRps == rps) {
+            return null;
+        }
+        String description = String.format("Concurrency adjusted (%s): workers %d -> %d, rps %s -> %s", reason,
+                workerLimit, newWorkerLimit, rpsToString(rps), rpsToString(newRps));
+        workerLimit = newWorkerLimit;
+        rps = newRps;
+        adjustments.incrementAndGet();
+        workerAvailable.signalAll();
+        if (!silent) {
+            System.out.println(description);
+        }
+        return description;
+    }
+
+    private static String rpsToString(int rps) {
+        return rps <= 0 ? "unlimited" : String.format("%,d", rps);
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    public void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    public int getWorkerLimit() {
+        lock.lock();
+        try {
+            return workerLimit;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    public int getWorkersRunning() {
+        lock.lock();
+        try {
+            return workersRunning;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    public int getRecordsPerSecond() {
+        lock.lock();
+        try {
+            return rps;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    public int getMinWorkers() {
+        return minWorkers;
+    }
+
+    public int getMaxWorkers() {
+        return maxWorkers;
+    }
+
+    public int getMinRps() {
+        return minRps;
+    }
+
+    public int getMaxRps() {
+        return maxRps;
+    }
+
+    public long getAdjustments() {
+        return adjustments.get();
+    }
+}
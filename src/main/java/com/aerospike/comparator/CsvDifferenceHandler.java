@@ -1,11 +1,16 @@
 package com.aerospike.comparator;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.RandomAccessFile;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import com.aerospike.client.Key;
@@ -20,17 +25,39 @@ public class CsvDifferenceHandler implements MissingRecordHandler, RecordDiffere
     private PrintWriter writer;
     private final int numberOfClusters;
     private final ClusterComparatorOptions options;
+    private Set<String> existingRows = null;
 
     public CsvDifferenceHandler(String fileName, ClusterComparatorOptions options) throws IOException {
+        this(fileName, options, null);
+    }
+
+    /**
+     * Create a handler which writes to the passed file. If <code>resumeFrom</code> is not null, the comparison is
+     * being resumed from this checkpoint, so new rows are appended to the file. Rows already in the file for
+     * partitions which were part way through being compared are not written a second time.
+     */
+    public CsvDifferenceHandler(String fileName, ClusterComparatorOptions options, ComparisonCheckpoint resumeFrom) throws IOException {
+        this.options = options;
+        this.numberOfClusters = options.getClusterConfigs().size();
+        this.FILE_HEADER = formHeader();
         if (fileName != null) {
             this.file = new File(fileName);
-            writer = new PrintWriter(new FileWriter(file));
+            boolean append = resumeFrom != null && file.exists() && file.length() > 0;
+            if (append) {
+                loadExistingRows(resumeFrom);
+            }
+            writer = new PrintWriter(new FileWriter(file, append));
+            if (!append) {
+                writer.println(FILE_HEADER);
+                writer.flush();
+            }
         }
         else {
             this.file = null;
         }
-        this.options = options;
-        this.numberOfClusters = options.getClusterConfigs().size();
+    }
+
+    private String formHeader() {
         StringBuilder sb = new StringBuilder().append("Namespace,Set,Partition,Key,");
         if (numberOfClusters != 2) {
             sb.append("Number of Clusters").append(',');
@@ -46,11 +73,45 @@ public class CsvDifferenceHandler implements MissingRecordHandler, RecordDiffere
             }
         }
         sb.append("Diffs");
-        this.FILE_HEADER = sb.toString();
+        return sb.toString();
+    }
 
-        if (writer != null) {
-            writer.println(FILE_HEADER);
-            writer.flush();
+    private void loadExistingRows(ComparisonCheckpoint resumeFrom) throws IOException {
+        removePartialRow();
+        this.existingRows = new HashSet<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line = reader.readLine();
+            if (!FILE_HEADER.equals(line)) {
+                throw new UnsupportedOperationException("File " + file + " has a header which does not match what was expected so cannot be appended to. "
+                        + "Expected '" + FILE_HEADER + "' but received '" + line + "'");
+            }
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(",", 4);
+                if (parts.length == 4 && parts[2].matches("\\d+") && resumeFrom.wasInFlight(Integer.parseInt(parts[2]))) {
+                    existingRows.add(line);
+                }
+            }
+        }
+    }
+
+    /**
+     * If the comparison was stopped part way through writing a row, remove the incomplete row. It will be written
+     * again when its partition is resumed.
+     */
+    private void removePartialRow() throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long length = raf.length();
+            long end = length;
+            while (end > 0) {
+                raf.seek(end - 1);
+                if (raf.read() == '\n') {
+                    break;
+                }
+                end--;
+            }
+            if (end < length) {
+                raf.setLength(end);
+            }
         }
     }
     
@@ -136,6 +197,10 @@ public class CsvDifferenceHandler implements MissingRecordHandler, RecordDiffere
         for (String s : differences) {
             sb.append(csvify(s)).append(',');
         }
+        if (existingRows != null && existingRows.remove(sb.toString())) {
+            // Already output before the comparison was resumed
+            return;
+        }
         writer.print(sb.append('\n').toString());
         writer.flush();
     }
@@ -4,7 +4,6 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -17,7 +16,7 @@ import com.aerospike.comparator.dbaccess.RecordMetadata;
 public class DifferenceCollection {
     private List<DifferenceSet> differenceSets = null;
     private boolean isQuickCompare = false;
-    private final List<Integer> clustersWithRecord;
+    private final RecordEquivalenceClasses equivalenceClasses;
     
     public static class RecordDifferences {
         private List<BinDifferences> binDiffs = null;
@@ -182,8 +181,8 @@ public class DifferenceCollection {
         }
     }
     
-    public DifferenceCollection(List<Integer> clustersWithRecord) {
-        this.clustersWithRecord = clustersWithRecord;
+    public DifferenceCollection(RecordEquivalenceClasses equivalenceClasses) {
+        this.equivalenceClasses = equivalenceClasses;
     }
     
     public void add(DifferenceSet differenceSet)  {
@@ -208,6 +207,10 @@ public class DifferenceCollection {
         return this.differenceSets;
     }
 
+    public RecordEquivalenceClasses getEquivalenceClasses() {
+        return equivalenceClasses;
+    }
+
     /**
      * Return the bin name from the path. Note that paths do not start with a slash and if the path
      * only goes to the bin name may not end with a slash.
@@ -241,104 +244,96 @@ public class DifferenceCollection {
         return path.split("/").length > 3;
     }
     
-    private void addSameValues(Set<Set<Integer>> clustersWithSameValues, int same1, int same2) {
-        Set<Integer> firstFound = null;
-        for (Iterator<Set<Integer>> iterator = clustersWithSameValues.iterator(); iterator.hasNext();) {
-            Set<Integer> thisSameValue = iterator.next();
-            if (thisSameValue.contains(same1) || thisSameValue.contains(same2)) {
-                if (firstFound == null) {
-                    // This is the first match, add in both same values
-                    firstFound = thisSameValue;
-                    thisSameValue.add(same1);
-                    thisSameValue.add(same2);
-                }
-                else {
-                    // There is already a set which contains both of these values, so we need to 
-                    // merge this set into the other set and remove this set. For example, there
-                    // may be one set with [A,B,C] and another with [C,D], we want to end up with just [A,B,C,D]
-                    firstFound.addAll(thisSameValue);
-                    iterator.remove();
-                }
-            }
-        }
-        if (firstFound == null) {
-            // This is a new match
-            Set<Integer> thisMatch = new HashSet<>();
-            thisMatch.add(same1);
-            thisMatch.add(same2);
-            clustersWithSameValues.add(thisMatch);
-        }
+    private static long pairKey(int cluster1, int cluster2) {
+        return ((long)Math.min(cluster1, cluster2) << 32) | Math.max(cluster1, cluster2);
     }
+
     /**
      * Determine which clusters have the same values. So if there are 5 clusters, A,B,C,D,E, we might have 2 sets
-     * of discrete values: A,B and C,D,E. In this case the result would be Set(Set(A,B), Set(C,D,E))
-     * @param clustersWithDifferentValues
-     * @param clusterCount
+     * of discrete values: A,B and C,D,E. In this case the result would be Set(Set(A,B), Set(C,D,E)).
+     * <p>
+     * Differences are only held between the representatives of the record equivalence classes, and every
+     * cluster in a class has the same value as its representative. So the representatives which do not
+     * differ for this bin are merged, then each group is expanded out to all the members of the classes.
+     * @param representativesWithDifferentValues - pairs of representatives which have different values for this bin
+     * @param clustersMissingBin - clusters which do not have this bin at all, these are excluded
      * @return
      */
-    private Set<Set<Integer>> getClustersWithSameValue(Set<String> clustersWithDifferentValues, Set<Integer> clustersMissingBin) {
-        Set<Set<Integer>> results = new HashSet<>();
-        // Prepopulate with all clusters, to assume they all have different values
-        for (int i = 0; i < clustersWithRecord.size(); i++) {
-            if (clustersMissingBin == null || !clustersMissingBin.contains(i)) {
-                Set<Integer> thisSet = new HashSet<>();
-                thisSet.add(clustersWithRecord.get(i));
-                results.add(thisSet);
+    private Set<Set<Integer>> getClustersWithSameValue(Set<Long> representativesWithDifferentValues, Set<Integer> clustersMissingBin) {
+        List<Integer> representatives = new ArrayList<>();
+        for (int rep : equivalenceClasses.getRepresentatives()) {
+            if (clustersMissingBin == null || !clustersMissingBin.contains(rep)) {
+                representatives.add(rep);
             }
         }
-        for (int i = 0; i < clustersWithRecord.size(); i++) {
-            if (clustersMissingBin != null && clustersMissingBin.contains(i)) {
-                continue;
-            }
-            for (int j = i+1; j < clustersWithRecord.size(); j++) {
-                if (clustersMissingBin != null && clustersMissingBin.contains(j)) {
-                    continue;
-                }
-                String cluster = clustersWithRecord.get(i)+"~"+clustersWithRecord.get(j);
-                if (!clustersWithDifferentValues.contains(cluster)) {
-                    addSameValues(results, clustersWithRecord.get(i), clustersWithRecord.get(j));
+        RecordEquivalenceClasses binClasses = new RecordEquivalenceClasses(representatives);
+        for (int i = 0; i < representatives.size(); i++) {
+            for (int j = i+1; j < representatives.size(); j++) {
+                if (!representativesWithDifferentValues.contains(pairKey(representatives.get(i), representatives.get(j)))) {
+                    binClasses.merge(representatives.get(i), representatives.get(j));
                 }
             }
         }
+        Set<Set<Integer>> results = new HashSet<>();
+        for (int binRep : binClasses.getRepresentatives()) {
+            Set<Integer> thisSet = new HashSet<>();
+            for (int rep : binClasses.getMembers(binRep)) {
+                thisSet.addAll(equivalenceClasses.getMembers(rep));
+            }
+            results.add(thisSet);
+        }
         return results;
     }
     
     private BinDifferences getBinDiffs(String binName, List<DifferenceValue> diffs) {
         BinDifferences result = null;
         
-        Set<String> clustersWithDifferentValues = null;
+        Set<Long> representativesWithDifferentValues = null;
         for (DifferenceValue diff : diffs) {
             DifferenceType type = diff.getType();
             switch (type) {
             case CONTENTS:
-                if (clustersWithDifferentValues == null) {
-                    clustersWithDifferentValues = new HashSet<>();
+                if (representativesWithDifferentValues == null) {
+                    representativesWithDifferentValues = new HashSet<>();
                 }
-                clustersWithDifferentValues.add(diff.getCluster1()+"~"+diff.getCluster2());
-                clustersWithDifferentValues.add(diff.getCluster2()+"~"+diff.getCluster1());
+                representativesWithDifferentValues.add(pairKey(diff.getCluster1(), diff.getCluster2()));
                 break;
             case ONLY_ON_1:
                 if (result == null) {
                     result = new BinDifferences(binName);
                 }
-                result.addMissingCluster(diff.getCluster2());
+                addMissingClusters(result, diff.getCluster2());
                 break;
             case ONLY_ON_2:
                 if (result == null) {
                     result = new BinDifferences(binName);
                 }
-                result.addMissingCluster(diff.getCluster1());
+                addMissingClusters(result, diff.getCluster1());
                 break;
             }
         }
-        if (clustersWithDifferentValues != null) {
+        if (representativesWithDifferentValues != null) {
             if (result == null) {
                 result = new BinDifferences(binName);
             }
-            result.setClustersWithSameValues(getClustersWithSameValue(clustersWithDifferentValues, result.getClustersMissing()));
+            result.setClustersWithSameValues(getClustersWithSameValue(representativesWithDifferentValues, result.getClustersMissing()));
         }
         return result;
     }
+
+    /**
+     * A representative is missing a bin, so all the clusters in its class are missing it too.
+     */
+    private void addMissingClusters(BinDifferences binDifferences, int representative) {
+        if (equivalenceClasses.contains(representative)) {
+            for (int cluster : equivalenceClasses.getMembers(representative)) {
+                binDifferences.addMissingCluster(cluster);
+            }
+        }
+        else {
+            binDifferences.addMissingCluster(representative);
+        }
+    }
     
     public RecordDifferences getBinsDifferent() {
         RecordDifferences result = null;
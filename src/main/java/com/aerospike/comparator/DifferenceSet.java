@@ -1,60 +1,177 @@
 package com.aerospike.comparator;
 
-import java.util.ArrayDeque;
-import java.util.Deque;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import com.aerospike.client.Key;
 import com.aerospike.comparator.RecordComparator.DifferenceType;
 
+/**
+ * The differences found comparing a record on two clusters, along with the path to the part of the record currently
+ * being compared. The path is held as the map keys and list indexes themselves, and is only turned into a string
+ * when a difference is recorded, so walking records with no differences does not create any strings.
+ * <p>
+ * The number of differences kept can be limited for each bin and for the whole record, so a record which differs
+ * throughout does not hold every differing value. Differences in a bin past its limit are only counted. Once the
+ * record reaches its limit, comparing it stops.
+ */
 public class DifferenceSet {
-    private final Deque<String> pathParts = new ArrayDeque<>();
+    // Marks a level of the path which is a list index, held in indexes
+    private static final Object INDEX = new Object();
+    // The level of the path holding the bin name, below the namespace and set
+    private static final int BIN_LEVEL = 3;
+
+    // The part of the path at each level, level 0 being the root which has no part
+    private Object[] parts = new Object[16];
+    private int[] indexes = new int[16];
+    private int depth = 0;
+    private final StringBuilder pathBuilder = new StringBuilder();
     // Differences in the record, keyed by the path. 
     private final Map<String, DifferenceValue> differences = new HashMap<>();
-    private final Key key;
-    private final boolean quickCompare;
-    private final PathOptions pathOptions;
-    private final int cluster1Index;
-    private final int cluster2Index;
+    private Key key;
+    private boolean quickCompare;
+    private PathOptions pathOptions;
+    private int cluster1Index;
+    private int cluster2Index;
+    // The state of the path options matcher at each level of the current path, null if there are no path options
+    private PathMatcher.State[] pathStates;
+    // The most differences to keep for the record and for each bin, 0 for no limit
+    private int maxDifferencesPerRecord = 0;
+    private int maxDifferencesPerBin = 0;
+    private int binDifferences = 0;
+    private long binDifferencesOmitted = 0;
+    private String omittedBinPath = null;
+    // The number of differences not kept for each bin which reached its limit, by the path of the bin
+    private Map<String, Long> omittedByBin = null;
+    private boolean recordLimitReached = false;
     
     public DifferenceSet() {
         this(null, false, null, -1, -1);
     }
     
     public DifferenceSet(Key key, boolean quickCompare, PathOptions pathOptions, int cluster1Index, int cluster2Index) {
+        reset(key, quickCompare, pathOptions, cluster1Index, cluster2Index);
+    }
+    
+    /**
+     * Prepare this set to compare another record. Only valid if the set has no differences, as a set with
+     * differences may still be referenced by whatever it was reported to.
+     */
+    DifferenceSet reset(Key key, boolean quickCompare, PathOptions pathOptions, int cluster1Index, int cluster2Index) {
         this.key = key;
         this.quickCompare = quickCompare;
         this.pathOptions = pathOptions;
         this.cluster1Index = cluster1Index;
         this.cluster2Index = cluster2Index;
+        this.depth = 0;
+        this.maxDifferencesPerRecord = 0;
+        this.maxDifferencesPerBin = 0;
+        this.binDifferences = 0;
+        this.binDifferencesOmitted = 0;
+        this.omittedBinPath = null;
+        this.omittedByBin = null;
+        this.recordLimitReached = false;
+        if (pathOptions == null) {
+            this.pathStates = null;
+        }
+        else {
+            if (pathStates == null) {
+                this.pathStates = new PathMatcher.State[parts.length];
+            }
+            this.pathStates[0] = pathOptions.getMatcher().getStart();
+        }
+        return this;
     }
     
+    /**
+     * Limit the differences kept, 0 for no limit. Set after the set is created or reset, before any are added.
+     */
+    DifferenceSet limitDifferences(int maxDifferencesPerRecord, int maxDifferencesPerBin) {
+        this.maxDifferencesPerRecord = maxDifferencesPerRecord;
+        this.maxDifferencesPerBin = maxDifferencesPerBin;
+        return this;
+    }
+    
+    /**
+     * Get the actions for the current path, or null if there are no path options. The result must not be changed.
+     */
     public EnumSet<PathAction> getOptionsForCurrentPath() {
-        if (pathOptions != null) {
-            return pathOptions.getActionsForPath(pathParts);
+        if (pathStates != null) {
+            return pathStates[depth].getActions();
         }
         return null;
     }
     
     public boolean shouldIgnoreCurrentPath() {
-        if (pathOptions != null) {
-            return pathOptions.getActionsForPath(pathParts).contains(PathAction.IGNORE);
+        return pathStates != null && pathStates[depth].isIgnored();
+    }
+    
+    /**
+     * The most differing byte ranges to report for a blob at the current path, zero to report only the first
+     * differing byte.
+     */
+    public int getMaxByteRangesForCurrentPath() {
+        return pathStates == null ? 0 : pathStates[depth].getMaxByteRanges();
+    }
+    
+    private void pushLevel(Object part, int index) {
+        if (depth + 1 == parts.length) {
+            parts = Arrays.copyOf(parts, parts.length * 2);
+            indexes = Arrays.copyOf(indexes, indexes.length * 2);
+            if (pathStates != null) {
+                pathStates = Arrays.copyOf(pathStates, parts.length);
+            }
         }
-        return false;
+        if (pathStates != null) {
+            pathStates[depth + 1] = part == INDEX ? pathStates[depth].nextPart(index) : pathStates[depth].nextPart(part);
+        }
+        depth++;
+        parts[depth] = part;
+        indexes[depth] = index;
+        if (depth == BIN_LEVEL) {
+            binDifferences = 0;
+        }
+    }
+
+    /**
+     * Move down the path into the value of a map entry.
+     */
+    protected void pushKey(Object key) {
+        pushLevel(key, 0);
+    }
+    
+    /**
+     * Move down the path into an item of a list.
+     */
+    protected void pushIndex(int index) {
+        pushLevel(INDEX, index);
     }
     
+    protected void pushPath(String pathPart) {
+        pushLevel(pathPart, 0);
+    }
+
     protected void pushPath(String pathPart, String ...otherParts) {
-        this.pathParts.addFirst(pathPart);
+        pushPath(pathPart);
         for (String thisPart : otherParts) {
-            this.pathParts.addFirst(thisPart);
+            pushPath(thisPart);
         }
     }
 
-    protected String popPath() {
-        return this.pathParts.removeFirst();
+    protected void popPath() {
+        if (depth == BIN_LEVEL && binDifferencesOmitted > 0) {
+            if (omittedByBin == null) {
+                omittedByBin = new LinkedHashMap<>();
+            }
+            omittedByBin.put(omittedBinPath, binDifferencesOmitted);
+            binDifferencesOmitted = 0;
+        }
+        parts[depth] = null;
+        depth--;
     }
 
     protected void popPath(int count) {
@@ -62,33 +179,103 @@ public class DifferenceSet {
             throw new IllegalArgumentException("count must be >= 1");
         }
         for (int i = 0; i < count; i++) {
-            this.pathParts.removeFirst();
+            popPath();
         }
     }
 
     protected String getCurrentPath() {
-        StringBuilder sb = new StringBuilder(1000);
-        for (Iterator<String> iter = pathParts.descendingIterator(); iter.hasNext();) {
-            sb.append(iter.next()).append("/");
+        return appendCurrentPath(pathBuilder).toString();
+    }
+    
+    private StringBuilder appendCurrentPath(StringBuilder sb) {
+        return appendPath(sb, depth);
+    }
+    
+    private StringBuilder appendPath(StringBuilder sb, int toLevel) {
+        sb.setLength(0);
+        for (int i = 1; i <= toLevel; i++) {
+            if (parts[i] == INDEX) {
+                sb.append(indexes[i]);
+            }
+            else {
+                sb.append(parts[i]);
+            }
+            sb.append('/');
         }
-        return sb.toString();
+        return sb;
     }
 
+    /**
+     * Whether a difference at the current path fits within the limits. If not, the difference is counted against its
+     * bin, or comparing the record stops if the record has reached its limit.
+     */
+    private boolean withinLimits() {
+        if (recordLimitReached) {
+            return false;
+        }
+        if (maxDifferencesPerRecord > 0 && differences.size() >= maxDifferencesPerRecord) {
+            recordLimitReached = true;
+            return false;
+        }
+        if (depth >= BIN_LEVEL && maxDifferencesPerBin > 0) {
+            if (binDifferences >= maxDifferencesPerBin) {
+                if (binDifferencesOmitted++ == 0) {
+                    omittedBinPath = appendPath(pathBuilder, BIN_LEVEL).toString();
+                }
+                return false;
+            }
+            binDifferences++;
+        }
+        return true;
+    }
+    
+    /**
+     * Whether comparing the record should stop, either because quick compare only needs the first difference or
+     * because the record has reached its limit on differences.
+     */
+    public boolean isComplete() {
+        return recordLimitReached || (quickCompare && areDifferent());
+    }
+    
+    /**
+     * Whether any differences were not kept as a limit was reached.
+     */
+    public boolean isTruncated() {
+        return recordLimitReached || omittedByBin != null;
+    }
+    
+    /**
+     * The number of differences found past the limit in each bin which reached it, by the path of the bin. Empty if
+     * no bin reached its limit.
+     */
+    public Map<String, Long> getOmittedByBin() {
+        return omittedByBin == null ? Collections.emptyMap() : omittedByBin;
+    }
+    
+    public boolean isRecordLimitReached() {
+        return recordLimitReached;
+    }
+    
     public void addDifference(DifferenceType difference, Object obj1, Object obj2, int cluster1, int cluster2) {
         this.addDifference("", difference, obj1, obj2, cluster1, cluster2);
     }
     public void addDifference(String path, DifferenceType difference, Object obj1, Object obj2, int cluster1, int cluster2) {
-        if (!shouldIgnoreCurrentPath()) {
-            String fullPath = pathParts.size() == 0 ? path : this.getCurrentPath() + path;
+        if (!shouldIgnoreCurrentPath() && withinLimits()) {
+            String fullPath = depth == 0 ? path : appendCurrentPath(pathBuilder).append(path).toString();
             this.differences.put(fullPath, new DifferenceValue(difference, obj1, obj2, cluster1, cluster2));
         }
     }
 
     public void addDifference(DifferenceType difference, Object obj1, Object obj2, int index, int cluster1, int cluster2) {
-        if (!shouldIgnoreCurrentPath()) {
+        if (!shouldIgnoreCurrentPath() && withinLimits()) {
             this.differences.put(this.getCurrentPath(), new DifferenceValue(difference, obj1, obj2, index, cluster1, cluster2));
         }
     }
+    public void addDifference(DifferenceType difference, byte[] obj1, byte[] obj2, ByteRanges ranges, int cluster1, int cluster2) {
+        if (!shouldIgnoreCurrentPath() && withinLimits()) {
+            this.differences.put(this.getCurrentPath(), new DifferenceValue(difference, obj1, obj2, ranges, cluster1, cluster2));
+        }
+    }
     public Map<String, DifferenceValue> getDifferences() {
         return differences;
     }
@@ -108,6 +295,15 @@ public class DifferenceSet {
             sb.append(differences.get(key).asJsonFragment(truncateBinary));
             sb.append("},");
         }
+        // Differences which were not kept are shown as the count of them in the bin, and where comparing stopped
+        for (Map.Entry<String, Long> omitted : getOmittedByBin().entrySet()) {
+            sb.append("{\"path\":\"").append(omitted.getKey()).append("\",\"type\":\"TRUNCATED\",\"omitted\":")
+                .append(omitted.getValue()).append("},");
+        }
+        if (recordLimitReached) {
+            sb.append("{\"path\":\"").append(getNamespace()).append('/').append(getSetName())
+                .append("/\",\"type\":\"TRUNCATED\",\"stoppedAfter\":").append(maxDifferencesPerRecord).append("},");
+        }
         int index = sb.lastIndexOf(",");
         if (index > 0) {
             sb.deleteCharAt(index);
@@ -123,7 +319,14 @@ public class DifferenceSet {
         for (String key : differences.keySet()) {
             sb.append(key).append(": ").append(differences.get(key)).append(" ");
         }
-        sb.append("]\ncurrentPath:").append(pathParts).append("\noptions:").append(pathOptions);
+        sb.append("]");
+        if (isTruncated()) {
+            sb.append("\ntruncated: omitted by bin ").append(getOmittedByBin());
+            if (recordLimitReached) {
+                sb.append(", stopped after ").append(maxDifferencesPerRecord).append(" differences");
+            }
+        }
+        sb.append("\ncurrentPath:").append(getCurrentPath()).append("\noptions:").append(pathOptions);
         return sb.toString();
     }
     
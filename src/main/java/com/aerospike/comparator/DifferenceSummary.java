@@ -1,15 +1,27 @@
 package com.aerospike.comparator;
 
+import java.util.Collections;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLongArray;
 
 public class DifferenceSummary {
     private final long differences;
     private final AtomicLongArray missingRecords;
+    private final Map<String, AtomicLongArray> differencesBySet;
     
     public DifferenceSummary(AtomicLongArray missingRecords, long differences) {
+        this(missingRecords, differences, Collections.emptyMap());
+    }
+    
+    /**
+     * @param differencesBySet - when comparing sets in a single pass, the number of missing and different records in
+     * each set, in that order.
+     */
+    public DifferenceSummary(AtomicLongArray missingRecords, long differences, Map<String, AtomicLongArray> differencesBySet) {
         super();
         this.missingRecords = missingRecords;
         this.differences = differences;
+        this.differencesBySet = differencesBySet;
     }
 
     public long getMissingRecords(int clusterId) {
@@ -20,6 +32,24 @@ public class DifferenceSummary {
         return differences;
     }
     
+    /**
+     * The number of records in the set missing from at least one cluster. Only counted when comparing sets in a
+     * single pass.
+     */
+    public long getMissingRecordsInSet(String setName) {
+        AtomicLongArray counts = differencesBySet.get(setName);
+        return counts == null ? 0 : counts.get(0);
+    }
+    
+    /**
+     * The number of records in the set which differ between clusters. Only counted when comparing sets in a single
+     * pass.
+     */
+    public long getDifferencesInSet(String setName) {
+        AtomicLongArray counts = differencesBySet.get(setName);
+        return counts == null ? 0 : counts.get(1);
+    }
+    
     public boolean areDifferent() {
         for (int i = 0; i < missingRecords.length(); i++) {
             if (missingRecords.get(i) > 0) {
@@ -9,15 +9,23 @@ public class DifferenceValue {
     private final int cluster1;
     private final int cluster2;
     private final int index;
+    private final ByteRanges byteRanges;
     
     public DifferenceValue(DifferenceType type, Object obj1, Object obj2, int cluster1, int cluster2) {
         this(type, obj1, obj2, -1, cluster1, cluster2);
     }
     public DifferenceValue(DifferenceType type, Object obj1, Object obj2, int index, int cluster1, int cluster2) {
+        this(type, obj1, obj2, index, null, cluster1, cluster2);
+    }
+    public DifferenceValue(DifferenceType type, byte[] obj1, byte[] obj2, ByteRanges byteRanges, int cluster1, int cluster2) {
+        this(type, obj1, obj2, byteRanges.getRanges().isEmpty() ? -1 : byteRanges.getRanges().get(0).getStart(), byteRanges, cluster1, cluster2);
+    }
+    private DifferenceValue(DifferenceType type, Object obj1, Object obj2, int index, ByteRanges byteRanges, int cluster1, int cluster2) {
         this.type = type;
         this.obj1 = obj1;
         this.obj2 = obj2;
         this.index = index;
+        this.byteRanges = byteRanges;
         this.cluster1 = cluster1;
         this.cluster2 = cluster2;
     }
@@ -33,6 +41,12 @@ public class DifferenceValue {
     public Object getObj2() {
         return obj2;
     }
+    /**
+     * The ranges of bytes which differ if this is a difference between blobs and the path asks for them, otherwise null.
+     */
+    public ByteRanges getByteRanges() {
+        return byteRanges;
+    }
     
     public String asJsonFragment(boolean truncateBinary) {
         StringBuilder sb = new StringBuilder();
@@ -46,6 +60,24 @@ public class DifferenceValue {
         if (this.index >= 0) {
             sb.append(",\"index\":").append(this.index);
         }
+        if (this.byteRanges != null) {
+            sb.append(",\"ranges\":[");
+            for (ByteRanges.Range range : byteRanges.getRanges()) {
+                sb.append("{\"start\":").append(range.getStart());
+                if (range.getEnd1() == range.getEnd2()) {
+                    sb.append(",\"end\":").append(range.getEnd1());
+                }
+                else {
+                    sb.append(",\"cluster").append(cluster1+1).append("End\":").append(range.getEnd1());
+                    sb.append(",\"cluster").append(cluster2+1).append("End\":").append(range.getEnd2());
+                }
+                sb.append("},");
+            }
+            if (!byteRanges.getRanges().isEmpty()) {
+                sb.setLength(sb.length() - 1);
+            }
+            sb.append("],\"moreRanges\":").append(byteRanges.isTruncated());
+        }
         return sb.toString();
     }
     
@@ -118,6 +150,11 @@ public class DifferenceValue {
     }
     @Override
     public String toString() {
+        if (byteRanges != null) {
+            return String.format("{type: %s, cluster%d: %s, cluster%d: %s, ranges: %s}", this.getType(), 
+                    this.cluster1+1, this.showObject(this.getObj1()), 
+                    this.cluster2+1, this.showObject(this.getObj2()), byteRanges);
+        }
         return String.format("{type: %s, cluster%d: %s, cluster%d: %s}", this.getType(), 
                 this.cluster1+1, this.showObject(this.getObj1()), 
                 this.cluster2+1, this.showObject(this.getObj2()));
@@ -0,0 +1,171 @@
+package com.aerospike.comparator;
+
+import java.util.List;
+
+import com.aerospike.client.command.Buffer;
+
+/**
+ * Merge engine used when walking the partition scans of several clusters in lock step. Each cluster's
+ * current digest is held as packed primitives (two longs and an int, big-endian) so that finding the
+ * largest digest is a handful of unsigned word comparisons rather than a byte-by-byte walk, and no
+ * objects are allocated per step.
+ * <p>
+ * Clusters are identified by their 0-based index, and sets of clusters are reported as a <code>long</code>
+ * bitmask with bit <i>n</i> representing cluster <i>n</i>. Hence at most {@link #MAX_CLUSTERS} clusters
+ * are supported.
+ * <p>
+ * The largest digest is found with a linear pass over the clusters. When comparing many clusters
+ * {@link LoserTreeDigestMerger} is used instead, see {@link #create(int, int)}.
+ * <p>
+ * Instances are not thread safe, each partition comparison should use its own instance.
+ */
+class DigestMerger {
+    public static final int MAX_CLUSTERS = 64;
+    public static final int DIGEST_LENGTH = 20;
+
+    private final int numberOfClusters;
+    private final long allClustersMask;
+    private final long[] digestHigh;
+    private final long[] digestMid;
+    private final int[] digestLow;
+    private long validMask = 0;
+    protected long largestMask = 0;
+    protected int largestCluster = -1;
+
+    public DigestMerger(int numberOfClusters) {
+        if (numberOfClusters < 1 || numberOfClusters > MAX_CLUSTERS) {
+            throw new IllegalArgumentException(String.format("Number of clusters must be between 1 and %d, not %d", MAX_CLUSTERS, numberOfClusters));
+        }
+        this.numberOfClusters = numberOfClusters;
+        this.allClustersMask = numberOfClusters == MAX_CLUSTERS ? -1L : (1L << numberOfClusters) - 1;
+        this.digestHigh = new long[numberOfClusters];
+        this.digestMid = new long[numberOfClusters];
+        this.digestLow = new int[numberOfClusters];
+    }
+
+    /**
+     * Create the merger appropriate for the number of clusters. Above <code>treeThreshold</code> clusters
+     * a loser tree is used so each advance costs O(log N) comparisons rather than O(N).
+     */
+    public static DigestMerger create(int numberOfClusters, int treeThreshold) {
+        if (numberOfClusters > treeThreshold) {
+            return new LoserTreeDigestMerger(numberOfClusters);
+        }
+        return new DigestMerger(numberOfClusters);
+    }
+
+    /**
+     * Set the current digest for the cluster, marking the cluster as having a record.
+     */
+    public void setDigest(int cluster, byte[] digest) {
+        if (digest.length != DIGEST_LENGTH) {
+            throw new IllegalArgumentException("Digest has a length of " + digest.length + ", expected " + DIGEST_LENGTH);
+        }
+        digestHigh[cluster] = Buffer.bytesToLong(digest, 0);
+        digestMid[cluster] = Buffer.bytesToLong(digest, 8);
+        digestLow[cluster] = Buffer.bytesToInt(digest, 16);
+        validMask |= 1L << cluster;
+    }
+
+    /**
+     * Flag that the scan on this cluster has no more records.
+     */
+    public void setExhausted(int cluster) {
+        validMask &= ~(1L << cluster);
+    }
+
+    boolean isValid(int cluster) {
+        return (validMask & (1L << cluster)) != 0;
+    }
+
+    public boolean hasMore() {
+        return validMask != 0;
+    }
+
+    public int getNumberOfClusters() {
+        return numberOfClusters;
+    }
+
+    /**
+     * Return the number of clusters which still have records in their scan.
+     */
+    public int countValid() {
+        return Long.bitCount(validMask);
+    }
+
+    /**
+     * Compare the current digests of two clusters using unsigned, lexicographic byte ordering.
+     */
+    int compare(int cluster1, int cluster2) {
+        int result = Long.compareUnsigned(digestHigh[cluster1], digestHigh[cluster2]);
+        if (result == 0) {
+            result = Long.compareUnsigned(digestMid[cluster1], digestMid[cluster2]);
+            if (result == 0) {
+                result = Integer.compareUnsigned(digestLow[cluster1], digestLow[cluster2]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Find the largest digest across all clusters which still have records. Partition scans return digests
+     * in descending order, so the largest digest is the next one to process.
+     * @return a bitmask of the clusters which hold the largest digest, or 0 if no cluster has any records left.
+     */
+    public long selectLargest() {
+        largestCluster = -1;
+        largestMask = 0;
+        for (long remaining = validMask; remaining != 0; remaining &= remaining - 1) {
+            int cluster = Long.numberOfTrailingZeros(remaining);
+            if (largestCluster < 0) {
+                largestCluster = cluster;
+                largestMask = 1L << cluster;
+            }
+            else {
+                int result = compare(cluster, largestCluster);
+                if (result > 0) {
+                    largestCluster = cluster;
+                    largestMask = 1L << cluster;
+                }
+                else if (result == 0) {
+                    largestMask |= 1L << cluster;
+                }
+            }
+        }
+        return largestMask;
+    }
+
+    /**
+     * The lowest numbered cluster holding the digest found by the last call to {@link #selectLargest()}, or -1 if none.
+     */
+    public int getLargestCluster() {
+        return largestCluster;
+    }
+
+    /**
+     * The clusters which hold the digest found by the last call to {@link #selectLargest()}.
+     */
+    public long getClustersWithRecord() {
+        return largestMask;
+    }
+
+    /**
+     * The clusters which do not hold the digest found by the last call to {@link #selectLargest()}.
+     * This includes clusters whose scans have finished.
+     */
+    public long getClustersWithoutRecord() {
+        return allClustersMask & ~largestMask;
+    }
+
+    /**
+     * Populate the passed list with the cluster ids in the mask, in ascending order. The list is cleared first.
+     * Small <code>Integer</code>s are cached by the JVM so re-using the list does not allocate.
+     */
+    public static List<Integer> toClusterList(long mask, List<Integer> clusters) {
+        clusters.clear();
+        for (long remaining = mask; remaining != 0; remaining &= remaining - 1) {
+            clusters.add(Long.numberOfTrailingZeros(remaining));
+        }
+        return clusters;
+    }
+}
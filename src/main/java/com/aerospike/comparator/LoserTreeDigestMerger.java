@@ -0,0 +1,139 @@
+package com.aerospike.comparator;
+
+/**
+ * A {@link DigestMerger} which uses a tournament (loser) tree to find the largest digest. This is worthwhile
+ * when comparing many clusters: advancing the scan on the winning cluster replays only the matches on the path
+ * from its leaf to the root, so costs O(log N) comparisons instead of the O(N) of a linear pass.
+ * <p>
+ * The tree is stored implicitly: the leaf for cluster <i>c</i> is node <i>c + N</i>, the parent of node <i>n</i>
+ * is <i>n / 2</i>, internal nodes 1 to N-1 hold the cluster which lost the match at that node, and node 0
+ * holds the overall winner. Clusters are ordered by largest digest first, then lowest cluster id, with
+ * exhausted clusters losing to everything, so the winner is always the lowest numbered cluster holding the
+ * largest digest.
+ * <p>
+ * A replay is only valid when the changed cluster is the current winner. This is the case in the normal merge
+ * loop, where the clusters holding the largest digest are advanced in ascending order of cluster id, as each
+ * one in turn becomes the winner. Any other change causes the tree to be rebuilt on the next call to
+ * {@link #selectLargest()}.
+ */
+class LoserTreeDigestMerger extends DigestMerger {
+    private final int numberOfClusters;
+    private final int[] tree;
+    private final int[] stackClusters;
+    private final int[] stackStopNodes;
+    private boolean needsRebuild = true;
+
+    public LoserTreeDigestMerger(int numberOfClusters) {
+        super(numberOfClusters);
+        this.numberOfClusters = numberOfClusters;
+        this.tree = new int[numberOfClusters];
+        this.stackClusters = new int[numberOfClusters];
+        this.stackStopNodes = new int[numberOfClusters];
+    }
+
+    @Override
+    public void setDigest(int cluster, byte[] digest) {
+        super.setDigest(cluster, digest);
+        clusterChanged(cluster);
+    }
+
+    @Override
+    public void setExhausted(int cluster) {
+        super.setExhausted(cluster);
+        clusterChanged(cluster);
+    }
+
+    private void clusterChanged(int cluster) {
+        if (!needsRebuild && tree[0] == cluster) {
+            replay(cluster);
+        }
+        else {
+            needsRebuild = true;
+        }
+    }
+
+    /**
+     * Returns true if <code>cluster1</code> should win a match against <code>cluster2</code>.
+     */
+    private boolean beats(int cluster1, int cluster2) {
+        boolean valid1 = isValid(cluster1);
+        if (valid1 != isValid(cluster2)) {
+            return valid1;
+        }
+        if (valid1) {
+            int result = compare(cluster1, cluster2);
+            if (result != 0) {
+                return result > 0;
+            }
+        }
+        return cluster1 < cluster2;
+    }
+
+    private int build(int node) {
+        if (node >= numberOfClusters) {
+            return node - numberOfClusters;
+        }
+        int left = build(2 * node);
+        int right = build(2 * node + 1);
+        if (beats(left, right)) {
+            tree[node] = right;
+            return left;
+        }
+        else {
+            tree[node] = left;
+            return right;
+        }
+    }
+
+    private void replay(int cluster) {
+        int winner = cluster;
+        for (int node = (cluster + numberOfClusters) >> 1; node > 0; node >>= 1) {
+            int loser = tree[node];
+            if (beats(loser, winner)) {
+                tree[node] = winner;
+                winner = loser;
+            }
+        }
+        tree[0] = winner;
+    }
+
+    /**
+     * Find the clusters holding the largest digest. The winner is at the root, any other cluster holding the
+     * same digest must have lost a match to a cluster with the same digest, so is stored as the loser on the
+     * path of that cluster. These paths are walked until no more matching digests are found, costing
+     * O(k log N) for k clusters with the largest digest.
+     */
+    @Override
+    public long selectLargest() {
+        if (needsRebuild) {
+            tree[0] = build(1);
+            needsRebuild = false;
+        }
+        int winner = tree[0];
+        if (!isValid(winner)) {
+            largestCluster = -1;
+            largestMask = 0;
+            return 0;
+        }
+        largestCluster = winner;
+        largestMask = 1L << winner;
+
+        int depth = 0;
+        stackClusters[depth] = winner;
+        stackStopNodes[depth++] = 0;
+        while (depth > 0) {
+            depth--;
+            int cluster = stackClusters[depth];
+            int stopNode = stackStopNodes[depth];
+            for (int node = (cluster + numberOfClusters) >> 1; node != stopNode; node >>= 1) {
+                int loser = tree[node];
+                if (isValid(loser) && compare(loser, winner) == 0) {
+                    largestMask |= 1L << loser;
+                    stackClusters[depth] = loser;
+                    stackStopNodes[depth++] = node;
+                }
+            }
+        }
+        return largestMask;
+    }
+}
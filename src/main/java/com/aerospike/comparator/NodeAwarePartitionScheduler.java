@@ -0,0 +1,190 @@
+package com.aerospike.comparator;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * A scheduler which limits the number of scans running against any one server node. Each task is scanned from the
+ * node mastering its partition on every cluster, so a task is only handed out when none of those nodes already has
+ * the maximum number of scans running. Of the tasks which can be handed out, the one whose nodes are least busy is
+ * chosen, so the scans are spread evenly over the nodes rather than following the order of the partitions.
+ * <p>
+ * Partitions whose master node is not known are not limited on that cluster.
+ * <p>
+ * The state is guarded by a lock rather than the monitor so workers on virtual threads waiting for capacity do not
+ * pin their carrier threads.
+ */
+public class NodeAwarePartitionScheduler extends PartitionScheduler {
+    /** Tasks whose partitions are mastered by the same nodes, in the order they should be handed out */
+    private static class NodeGroup {
+        private final String[] nodes;
+        private final ArrayDeque<Integer> taskIndexes = new ArrayDeque<>();
+
+        NodeGroup(String[] nodes) {
+            this.nodes = nodes;
+        }
+    }
+
+    private final PartitionTask[] tasks;
+    private final List<NodeGroup> groups;
+    private final Function<PartitionTask, String[]> nodeFinder;
+    private final int maxScansPerNode;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition scanReleased = lock.newCondition();
+    // Guarded by lock
+    private final Map<String, Integer> scansOnNode = new HashMap<>();
+    private int remaining;
+
+    /**
+     * Form the scheduler. <code>nodeFinder</code> returns the node mastering the partition of a task on each
+     * cluster, with null for a cluster where the node is not known. Node names must be unique across the clusters.
+     */
+    public NodeAwarePartitionScheduler(List<PartitionTask> tasks, Function<PartitionTask, String[]> nodeFinder, int maxScansPerNode) {
+        super(Collections.emptyList());
+        this.tasks = tasks.toArray(new PartitionTask[0]);
+        this.nodeFinder = nodeFinder;
+        this.maxScansPerNode = maxScansPerNode;
+        this.remaining = this.tasks.length;
+
+        Map<List<String>, NodeGroup> groupsByNodes = new LinkedHashMap<>();
+        for (int i = 0; i < this.tasks.length; i++) {
+            String[] nodes = nodeFinder.apply(this.tasks[i]);
+            groupsByNodes.computeIfAbsent(Arrays.asList(nodes), key -> new NodeGroup(nodes)).taskIndexes.add(i);
+        }
+        this.groups = new ArrayList<>(groupsByNodes.values());
+    }
+
+    private int getScansOnNode(String node) {
+        return node == null ? 0 : scansOnNode.getOrDefault(node, 0);
+    }
+
+    private void addScans(String[] nodes, int delta) {
+        for (String node : nodes) {
+            if (node != null) {
+                scansOnNode.merge(node, delta, Integer::sum);
+            }
+        }
+    }
+
+    @Override
+    public PartitionTask poll() {
+        lock.lock();
+        try {
+            NodeGroup best = null;
+            int bestLoad = 0;
+            for (NodeGroup group : groups) {
+                if (group.taskIndexes.isEmpty()) {
+                    continue;
+                }
+                int load = 0;
+                boolean full = false;
+                for (String node : group.nodes) {
+                    int scans = getScansOnNode(node);
+                    if (scans >= maxScansPerNode && node != null) {
+                        full = true;
+                        break;
+                    }
+                    load += scans;
+                }
+                if (full) {
+                    continue;
+                }
+                // Prefer the least busy nodes, then the task which was due to be handed out first
+                if (best == null || load < bestLoad || (load == bestLoad && group.taskIndexes.peekFirst() < best.taskIndexes.peekFirst())) {
+                    best = group;
+                    bestLoad = load;
+                }
+            }
+            if (best == null) {
+                return null;
+            }
+            remaining--;
+            addScans(best.nodes, 1);
+            return tasks[best.taskIndexes.pollFirst()];
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void claim(PartitionTask task) {
+        lock.lock();
+        try {
+            addScans(nodeFinder.apply(task), 1);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void release(PartitionTask task) {
+        lock.lock();
+        try {
+            addScans(nodeFinder.apply(task), -1);
+            scanReleased.signalAll();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void awaitCapacity(long maxWaitMs) throws InterruptedException {
+        lock.lock();
+        try {
+            if (remaining > 0) {
+                scanReleased.await(maxWaitMs, TimeUnit.MILLISECONDS);
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        lock.lock();
+        try {
+            return remaining == 0;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return remaining;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The number of scans currently running against the node.
+     */
+    public int getScansRunning(String node) {
+        lock.lock();
+        try {
+            return getScansOnNode(node);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+}
@@ -81,6 +81,30 @@ public class PartitionMap {
         }
     }
 
+    /**
+     * Get the number of records in a single partition, as reported by the working master. Returns 0 if the
+     * partition or namespace is not known.
+     */
+    public long getRecords(String namespace, int partitionId) {
+        List<PartitionData> partitionDataList = namespaceToPartitions.get(namespace);
+        if (partitionDataList == null || partitionDataList.get(partitionId) == null) {
+            return 0;
+        }
+        return partitionDataList.get(partitionId).getRecords();
+    }
+
+    /**
+     * Get the name of the node which is the working master of the partition. Returns null if the partition or
+     * namespace is not known.
+     */
+    public String getMasterNode(String namespace, int partitionId) {
+        List<PartitionData> partitionDataList = namespaceToPartitions.get(namespace);
+        if (partitionDataList == null || partitionDataList.get(partitionId) == null) {
+            return null;
+        }
+        return partitionDataList.get(partitionId).getWorkingMaster();
+    }
+
     public long getTombstoneCount(String namespace) {
         List<PartitionData> partitionDataList = namespaceToPartitions.get(namespace);
         if (partitionDataList == null || !complete.get(namespace)) {
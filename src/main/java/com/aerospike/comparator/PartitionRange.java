@@ -0,0 +1,139 @@
+package com.aerospike.comparator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.aerospike.client.Key;
+import com.aerospike.client.query.PartitionFilter;
+
+/**
+ * A unit of comparison work: either a whole partition or a range of digests within a partition. Large partitions
+ * are split into several digest ranges so they can be compared by different threads in parallel.
+ * <p>
+ * Partition scans return digests in descending order, so a range starts <i>after</i> its upper digest (using a
+ * resumable {@link PartitionFilter#after(Key)} cursor) and ends when a digest below its lower digest is returned.
+ * The upper digest is exclusive and the lower digest inclusive, so adjacent ranges do not overlap.
+ * <p>
+ * The partition id is held in the first 12 bits of the digest (all of byte 0 and the low nibble of byte 1), so
+ * the ranges are formed by dividing the next 12 bits (the high nibble of byte 1 and all of byte 2) evenly.
+ */
+public class PartitionRange {
+    public static final int MAX_SPLITS = 4096;
+
+    private final int partitionId;
+    private final int rangeIndex;
+    private final int rangeCount;
+    private final byte[] upperDigest;
+    private final byte[] lowerDigest;
+
+    PartitionRange(int partitionId, int rangeIndex, int rangeCount, byte[] upperDigest, byte[] lowerDigest) {
+        this.partitionId = partitionId;
+        this.rangeIndex = rangeIndex;
+        this.rangeCount = rangeCount;
+        this.upperDigest = upperDigest;
+        this.lowerDigest = lowerDigest;
+    }
+
+    public static PartitionRange wholePartition(int partitionId) {
+        return new PartitionRange(partitionId, 0, 1, null, null);
+    }
+
+    /**
+     * Split the partition into the passed number of digest ranges, ordered in scan order (highest digests first).
+     */
+    public static List<PartitionRange> split(int partitionId, int rangeCount) {
+        if (rangeCount < 1 || rangeCount > MAX_SPLITS) {
+            throw new IllegalArgumentException(String.format("Partitions can be split into between 1 and %d ranges, not %d", MAX_SPLITS, rangeCount));
+        }
+        List<PartitionRange> result = new ArrayList<>(rangeCount);
+        if (rangeCount == 1) {
+            result.add(wholePartition(partitionId));
+            return result;
+        }
+        byte[] upper = null;
+        for (int i = 0; i < rangeCount; i++) {
+            // Ranges are in descending digest order, so the first range holds the highest sub-positions
+            byte[] lower = i == rangeCount - 1 ? null : boundaryDigest(partitionId, MAX_SPLITS * (rangeCount - 1 - i) / rangeCount);
+            result.add(new PartitionRange(partitionId, i, rangeCount, upper, lower));
+            upper = lower;
+        }
+        return result;
+    }
+
+    /**
+     * Form the rest of this range once all digests down to and including <code>lastDigest</code> have been compared.
+     */
+    public PartitionRange resumeAfter(byte[] lastDigest) {
+        return new PartitionRange(partitionId, rangeIndex, rangeCount, lastDigest, lowerDigest);
+    }
+
+    /**
+     * Form the smallest digest in the partition whose 12 bits after the partition id are <code>position</code>.
+     */
+    static byte[] boundaryDigest(int partitionId, int position) {
+        byte[] digest = new byte[DigestMerger.DIGEST_LENGTH];
+        digest[0] = (byte)(partitionId & 0xff);
+        digest[1] = (byte)(((partitionId >> 8) & 0x0f) | ((position >> 8) << 4));
+        digest[2] = (byte)(position & 0xff);
+        return digest;
+    }
+
+    public int getPartitionId() {
+        return partitionId;
+    }
+
+    public int getRangeIndex() {
+        return rangeIndex;
+    }
+
+    public int getRangeCount() {
+        return rangeCount;
+    }
+
+    public boolean isWholePartition() {
+        return upperDigest == null && lowerDigest == null;
+    }
+
+    public byte[] getUpperDigest() {
+        return upperDigest;
+    }
+
+    public byte[] getLowerDigest() {
+        return lowerDigest;
+    }
+
+    /**
+     * Form the filter to scan this range. Each call returns a new filter as filters hold the scan state.
+     */
+    public PartitionFilter getFilter(String namespace, String setName) {
+        if (upperDigest == null) {
+            return PartitionFilter.id(partitionId);
+        }
+        return PartitionFilter.after(new Key(namespace, upperDigest, setName, null));
+    }
+
+    /**
+     * Returns true if the digest is below the end of this range, in which case the scan of this range is complete.
+     */
+    public boolean isPastEnd(byte[] digest) {
+        if (lowerDigest == null) {
+            return false;
+        }
+        for (int i = 0; i < lowerDigest.length; i++) {
+            int b1 = digest[i] & 0xff;
+            int b2 = lowerDigest[i] & 0xff;
+            if (b1 != b2) {
+                return b1 < b2;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        if (rangeCount == 1 && isWholePartition()) {
+            return Integer.toString(partitionId);
+        }
+        return String.format("%d[%d/%d]", partitionId, rangeIndex + 1, rangeCount);
+    }
+}
@@ -0,0 +1,129 @@
+package com.aerospike.comparator;
+
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds partition tasks which failed and are waiting to be retried. Each retry waits exponentially longer than the one before
+ * it. The worker threads carry on with fresh partitions while a retry is waiting, so a flapping node delays only the
+ * ranges it holds rather than stalling the whole pool.
+ */
+public class PartitionRetryQueue {
+    /** The longest a retry will wait, irrespective of the number of attempts */
+    public static final long MAX_BACKOFF_MS = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * An attempt to compare a task. Fresh work is attempt 0, retries are numbered from 1.
+     */
+    public static class Attempt implements Delayed {
+        private final PartitionTask task;
+        private final int attempt;
+        private final long readyAtNanos;
+
+        public Attempt(PartitionTask task) {
+            this(task, 0, 0);
+        }
+
+        private Attempt(PartitionTask task, int attempt, long delayMs) {
+            this.task = task;
+            this.attempt = attempt;
+            this.readyAtNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMs);
+        }
+
+        public PartitionTask getTask() {
+            return task;
+        }
+
+        /**
+         * The attempt number, with 0 being the initial attempt and 1 the first retry after it failed.
+         */
+        public int getAttempt() {
+            return attempt;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(readyAtNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed o) {
+            return Long.compare(this.getDelay(TimeUnit.NANOSECONDS), o.getDelay(TimeUnit.NANOSECONDS));
+        }
+    }
+
+    private final DelayQueue<Attempt> queue = new DelayQueue<>();
+    private final long initialBackoffMs;
+    private final AtomicLong retriesScheduled = new AtomicLong();
+    private final AtomicLong retriesSucceeded = new AtomicLong();
+    private final AtomicLong rangesAbandoned = new AtomicLong();
+
+    public PartitionRetryQueue(long initialBackoffMs) {
+        this.initialBackoffMs = initialBackoffMs;
+    }
+
+    /**
+     * The time to wait before the passed attempt: the initial backoff, doubling on each subsequent attempt.
+     */
+    public long getBackoffMs(int attempt) {
+        int shift = Math.min(Math.max(attempt - 1, 0), 30);
+        if (initialBackoffMs > (MAX_BACKOFF_MS >> shift)) {
+            return MAX_BACKOFF_MS;
+        }
+        return initialBackoffMs << shift;
+    }
+
+    /**
+     * Queue the task to be retried once the backoff for this attempt has elapsed. Returns the backoff used.
+     */
+    public long schedule(PartitionTask task, int attempt) {
+        long backoffMs = getBackoffMs(attempt);
+        retriesScheduled.incrementAndGet();
+        queue.add(new Attempt(task, attempt, backoffMs));
+        return backoffMs;
+    }
+
+    /**
+     * Returns a retry whose backoff has elapsed, or null if there are none.
+     */
+    public Attempt pollReady() {
+        return queue.poll();
+    }
+
+    /**
+     * Wait up to <code>maxWaitMs</code> for a retry to become ready. Returns the retry, or null if none became ready.
+     */
+    public Attempt awaitReady(long maxWaitMs) throws InterruptedException {
+        return queue.poll(maxWaitMs, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    public void retrySucceeded() {
+        retriesSucceeded.incrementAndGet();
+    }
+
+    public void rangeAbandoned() {
+        rangesAbandoned.incrementAndGet();
+    }
+
+    public long getRetriesScheduled() {
+        return retriesScheduled.get();
+    }
+
+    public long getRetriesSucceeded() {
+        return retriesSucceeded.get();
+    }
+
+    public long getRangesAbandoned() {
+        return rangesAbandoned.get();
+    }
+}
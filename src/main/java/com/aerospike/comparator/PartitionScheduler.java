@@ -0,0 +1,83 @@
+package com.aerospike.comparator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out the partition tasks to the worker threads. The order of the tasks is fixed when the scheduler is formed,
+ * so taking the next task is a single atomic increment: there is no lock for the threads to queue on and nothing is
+ * shifted when a task is removed.
+ * <p>
+ * When ordered largest first, the partitions expected to take longest are started first and the small ones fill in
+ * around them at the end, rather than one large partition being started just as the other threads run out of work.
+ */
+public class PartitionScheduler {
+    private final PartitionTask[] tasks;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public PartitionScheduler(List<PartitionTask> tasks) {
+        this.tasks = tasks.toArray(new PartitionTask[0]);
+    }
+
+    /**
+     * Form a scheduler which hands out the tasks with the most estimated records first. Tasks with the same estimate
+     * stay in the order they were passed.
+     */
+    public static PartitionScheduler largestFirst(List<PartitionTask> tasks) {
+        return new PartitionScheduler(orderLargestFirst(tasks));
+    }
+
+    /**
+     * Returns the tasks with the most estimated records first. Tasks with the same estimate stay in the order they
+     * were passed.
+     */
+    public static List<PartitionTask> orderLargestFirst(List<PartitionTask> tasks) {
+        List<PartitionTask> ordered = new ArrayList<>(tasks);
+        ordered.sort((a, b) -> Long.compare(b.getEstimatedRecords(), a.getEstimatedRecords()));
+        return ordered;
+    }
+
+    /**
+     * Returns the next task to compare, or null if all the tasks have been handed out.
+     */
+    public PartitionTask poll() {
+        // Check first so that threads which keep polling an empty scheduler cannot overflow the counter
+        if (next.get() >= tasks.length) {
+            return null;
+        }
+        int index = next.getAndIncrement();
+        return index < tasks.length ? tasks[index] : null;
+    }
+
+    /**
+     * Record that a task obtained other than through {@link #poll()}, such as a retry, is being compared.
+     */
+    public void claim(PartitionTask task) {
+    }
+
+    /**
+     * Record that a task handed out by {@link #poll()} or passed to {@link #claim(PartitionTask)} has finished,
+     * whether or not it succeeded.
+     */
+    public void release(PartitionTask task) {
+    }
+
+    /**
+     * Wait up to <code>maxWaitMs</code> for a task to possibly become available after {@link #poll()} returned null
+     * while tasks remain. Tasks are always available until the scheduler is empty so this does not wait.
+     */
+    public void awaitCapacity(long maxWaitMs) throws InterruptedException {
+    }
+
+    public boolean isEmpty() {
+        return next.get() >= tasks.length;
+    }
+
+    /**
+     * The number of tasks not yet handed out.
+     */
+    public int size() {
+        return Math.max(0, tasks.length - next.get());
+    }
+}
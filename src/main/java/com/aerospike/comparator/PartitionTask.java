@@ -0,0 +1,54 @@
+package com.aerospike.comparator;
+
+/**
+ * One item on the work queue: a range of a partition in a particular namespace and set. The work for every
+ * namespace and set being compared shares one queue so threads do not sit idle at the end of each set.
+ */
+public class PartitionTask {
+    private final String namespace;
+    private final String setName;
+    private final PartitionRange range;
+    private final long estimatedRecords;
+
+    public PartitionTask(String namespace, String setName, PartitionRange range) {
+        this(namespace, setName, range, 0);
+    }
+
+    public PartitionTask(String namespace, String setName, PartitionRange range, long estimatedRecords) {
+        this.namespace = namespace;
+        this.setName = setName;
+        this.range = range;
+        this.estimatedRecords = estimatedRecords;
+    }
+
+    public String getNamespace() {
+        return namespace;
+    }
+
+    public String getSetName() {
+        return setName;
+    }
+
+    public PartitionRange getRange() {
+        return range;
+    }
+
+    /**
+     * The number of records this task is expected to compare, or 0 if it is not known.
+     */
+    public long getEstimatedRecords() {
+        return estimatedRecords;
+    }
+
+    /**
+     * Form a task for a different part of the same partition in the same namespace and set.
+     */
+    public PartitionTask withRange(PartitionRange range) {
+        return new PartitionTask(namespace, setName, range, estimatedRecords);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (namespace %s%s)", range, namespace, setName == null ? "" : ", set " + setName);
+    }
+}
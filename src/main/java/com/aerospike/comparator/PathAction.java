@@ -2,5 +2,6 @@ package com.aerospike.comparator;
 
 public enum PathAction {
     IGNORE,
-    COMPAREUNORDERED
+    COMPAREUNORDERED,
+    REPORTBYTERANGES
 }
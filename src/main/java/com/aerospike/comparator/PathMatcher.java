@@ -0,0 +1,253 @@
+package com.aerospike.comparator;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The path options compiled into an automaton over path parts. Each state knows the actions which apply to the path
+ * which led to it, and moving down one level of a record is a single lookup, however many path options there are
+ * and however deep the path is. States are formed the first time they are reached and then shared by every thread.
+ * <p>
+ * A state holds where every {@link PathOption} is in its own match, following exactly the same steps as
+ * {@link PathOption#matches}. Parts of a path which are not a literal part of any pattern at the current position
+ * all lead to the same state, so only the literals need their own transitions.
+ */
+public class PathMatcher {
+    // Positions of a single option within its match, other than a position in its pattern
+    private static final int REJECTED = -1;
+    private static final int MATCHES_ALL = -2;
+
+    private final String[][] patterns;
+    private final PathAction[] actions;
+    private final int[] rangesToReport;
+    private final Map<Positions, State> states = new ConcurrentHashMap<>();
+    private final State start;
+
+    /**
+     * The position of every option in its match, used to find states which have already been formed.
+     */
+    private static class Positions {
+        private final int[] positions;
+        private final int hashCode;
+
+        Positions(int[] positions) {
+            this.positions = positions;
+            this.hashCode = Arrays.hashCode(positions);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Positions && Arrays.equals(positions, ((Positions)obj).positions);
+        }
+    }
+
+    public class State {
+        private final int[] positions;
+        private final EnumSet<PathAction> actions;
+        private final boolean ignored;
+        private final boolean unordered;
+        private final int maxByteRanges;
+        // The parts which could move any of the options on differently to other parts
+        private final Set<String> literals = new HashSet<>();
+        private final Map<String, State> literalTransitions = new ConcurrentHashMap<>();
+        private volatile State otherTransition;
+
+        private State(int[] positions) {
+            this.positions = positions;
+            for (int i = 0; i < positions.length; i++) {
+                int index = positions[i] >> 1;
+                String[] pattern = patterns[i];
+                if (positions[i] >= 0 && index < pattern.length) {
+                    literals.add(pattern[index]);
+                    if ("**".equals(pattern[index]) && index + 1 < pattern.length) {
+                        literals.add(pattern[index + 1]);
+                    }
+                }
+            }
+            this.actions = EnumSet.noneOf(PathAction.class);
+            int ranges = 0;
+            for (int i = 0; i < positions.length; i++) {
+                if (isMatch(i, positions[i])) {
+                    actions.add(PathMatcher.this.actions[i]);
+                    ranges = Math.max(ranges, rangesToReport[i]);
+                }
+            }
+            this.maxByteRanges = ranges;
+            this.ignored = actions.contains(PathAction.IGNORE);
+            this.unordered = actions.contains(PathAction.COMPAREUNORDERED);
+        }
+
+        /**
+         * The actions for the path leading to this state. Shared by every path reaching this state, so must not be
+         * changed.
+         */
+        public EnumSet<PathAction> getActions() {
+            return actions;
+        }
+
+        public boolean isIgnored() {
+            return ignored;
+        }
+
+        public boolean isUnordered() {
+            return unordered;
+        }
+
+        /**
+         * The most differing byte ranges to report for a blob at this path, the largest of any matching option.
+         * Zero if only the first differing byte is reported.
+         */
+        public int getMaxByteRanges() {
+            return maxByteRanges;
+        }
+
+        /**
+         * The state for the path one level further down, through the passed part.
+         */
+        public State next(String part) {
+            if (literals.contains(part)) {
+                State result = literalTransitions.get(part);
+                if (result == null) {
+                    result = computeNext(part);
+                    literalTransitions.put(part, result);
+                }
+                return result;
+            }
+            State result = otherTransition;
+            if (result == null) {
+                result = computeNext(part);
+                otherTransition = result;
+            }
+            return result;
+        }
+
+        /**
+         * The state for the path one level further down, through a map key or other part of a record. The part is
+         * only turned into a string if some option could treat it differently to other parts.
+         */
+        public State nextPart(Object part) {
+            State result = otherTransition;
+            if (result != null && literals.isEmpty()) {
+                return result;
+            }
+            return next(String.valueOf(part));
+        }
+
+        /**
+         * The state for the path one level further down, through a list index.
+         */
+        public State nextPart(int index) {
+            State result = otherTransition;
+            if (result != null && literals.isEmpty()) {
+                return result;
+            }
+            return next(Integer.toString(index));
+        }
+
+        private State computeNext(String part) {
+            int[] nextPositions = new int[positions.length];
+            for (int i = 0; i < positions.length; i++) {
+                nextPositions[i] = step(i, positions[i], part);
+            }
+            return states.computeIfAbsent(new Positions(nextPositions), key -> new State(key.positions));
+        }
+    }
+
+    public PathMatcher(List<PathOption> options) {
+        int count = options == null ? 0 : options.size();
+        this.patterns = new String[count][];
+        this.actions = new PathAction[count];
+        this.rangesToReport = new int[count];
+        for (int i = 0; i < count; i++) {
+            patterns[i] = options.get(i).getPathParts();
+            actions[i] = options.get(i).getAction();
+            rangesToReport[i] = options.get(i).getRangesToReport();
+        }
+        int[] startPositions = new int[count];
+        this.start = states.computeIfAbsent(new Positions(startPositions), key -> new State(key.positions));
+    }
+
+    /**
+     * The state for the empty path, before any parts have been pushed.
+     */
+    public State getStart() {
+        return start;
+    }
+
+    /**
+     * The state reached by following the path from its root.
+     */
+    public State find(Iterable<String> rootFirstParts) {
+        State state = start;
+        for (String part : rootFirstParts) {
+            state = state.next(part);
+        }
+        return state;
+    }
+
+    public int getStateCount() {
+        return states.size();
+    }
+
+    /*
+     * A position within a pattern is held as (index << 1) | onWildcard, where index is the next pattern part to match
+     * and onWildcard is set after passing a "**" which has not yet been followed by a matching literal.
+     */
+    private int step(int option, int position, String part) {
+        if (position < 0) {
+            return position;
+        }
+        String[] pattern = patterns[option];
+        int index = position >> 1;
+        boolean onWildcard = (position & 1) != 0;
+        if (index >= pattern.length) {
+            return REJECTED;
+        }
+        if ("*".equals(pattern[index])) {
+            return ((index + 1) << 1) | (onWildcard ? 1 : 0);
+        }
+        else if ("**".equals(pattern[index])) {
+            onWildcard = true;
+            index++;
+            if (index >= pattern.length) {
+                return MATCHES_ALL;
+            }
+        }
+        if (onWildcard) {
+            if (part.equals(pattern[index])) {
+                return (index + 1) << 1;
+            }
+            return (index << 1) | 1;
+        }
+        else if (part.equals(pattern[index])) {
+            return (index + 1) << 1;
+        }
+        return REJECTED;
+    }
+
+    private boolean isMatch(int option, int position) {
+        if (position == MATCHES_ALL) {
+            return true;
+        }
+        if (position == REJECTED) {
+            return false;
+        }
+        String[] pattern = patterns[option];
+        for (int i = position >> 1; i < pattern.length; i++) {
+            if (!"**".equals(pattern[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -5,9 +5,13 @@ import java.util.Deque;
 import java.util.Iterator;
 
 public class PathOption {
+    /** The number of differing byte ranges reported for a blob if the option does not say */
+    public static final int DEFAULT_MAX_RANGES = 10;
+    
     private String path;
     private PathAction action;
     private String[] pathParts;
+    private int maxRanges = 0;
     
     public PathOption() {}
     public PathOption(String path, PathAction action) {
@@ -39,6 +43,13 @@ public class PathOption {
         }
     }
     
+    /**
+     * The parts of the path, split on '/'. Must not be changed.
+     */
+    String[] getPathParts() {
+        return pathParts;
+    }
+
     public PathAction getAction() {
         return action;
     }
@@ -46,6 +57,27 @@ public class PathOption {
         this.action = action;
     }
     
+    /**
+     * The most differing byte ranges to report for blobs on this path, used with {@link PathAction#REPORTBYTERANGES}.
+     * Zero if not set.
+     */
+    public int getMaxRanges() {
+        return maxRanges;
+    }
+    public void setMaxRanges(int maxRanges) {
+        this.maxRanges = maxRanges;
+    }
+    
+    /**
+     * The number of byte ranges to report for blobs on this path, if this option reports byte ranges.
+     */
+    int getRangesToReport() {
+        if (action != PathAction.REPORTBYTERANGES) {
+            return 0;
+        }
+        return maxRanges > 0 ? maxRanges : DEFAULT_MAX_RANGES;
+    }
+    
     public boolean matches(Deque<String> pathParts) {
         int index = 0;
         boolean isOnWildcard = false;
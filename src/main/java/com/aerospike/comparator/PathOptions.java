@@ -7,6 +7,7 @@ import java.util.List;
 
 public class PathOptions {
     private List<PathOption> paths;
+    private volatile PathMatcher matcher;
     public PathOptions() {}
     
     public PathOptions(PathOption ...options) {
@@ -24,17 +25,29 @@ public class PathOptions {
 
     public void setPaths(List<PathOption> paths) {
         this.paths = paths;
+        this.matcher = null;
     }
-    
-    public EnumSet<PathAction> getActionsForPath(Deque<String> path) {
-        EnumSet<PathAction> actions = EnumSet.noneOf(PathAction.class);
-        if (paths != null) {
-            for (PathOption thisPath : paths) {
-                if (thisPath.matches(path)) {
-                    actions.add(thisPath.getAction());
-                }
-            }
+
+    public boolean hasPaths() {
+        return paths != null && !paths.isEmpty();
+    }
+
+    /**
+     * The paths compiled into a matcher which can be moved along a path a part at a time. Formed when first needed.
+     */
+    public PathMatcher getMatcher() {
+        PathMatcher result = matcher;
+        if (result == null) {
+            result = new PathMatcher(paths);
+            matcher = result;
         }
-        return actions;
+        return result;
+    }
+
+    /**
+     * Get the actions which apply to the path, which is held deepest part first.
+     */
+    public EnumSet<PathAction> getActionsForPath(Deque<String> path) {
+        return EnumSet.copyOf(getMatcher().find(path::descendingIterator).getActions());
     }
 }
@@ -0,0 +1,75 @@
+package com.aerospike.comparator;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+import com.aerospike.client.Key;
+
+/**
+ * Sends touches and reads of records without waiting for them to complete, so the workers can carry on comparing.
+ * The number of actions outstanding is bounded: sending blocks while the limit are in flight. {@link #awaitAll()}
+ * waits for all of them, such as before the clients are closed.
+ */
+public class RecordActionSender {
+    private final int maxInFlight;
+    private final Semaphore permits;
+    private final boolean silent;
+
+    public RecordActionSender(int maxInFlight, boolean silent) {
+        this.maxInFlight = maxInFlight;
+        this.permits = new Semaphore(maxInFlight);
+        this.silent = silent;
+    }
+
+    /**
+     * Send an action on a record, logging its outcome when it completes. An action which throws rather than returning
+     * a future is treated as having failed.
+     */
+    public void send(Supplier<CompletableFuture<?>> action, Key key, String doing, String doingLowerCase) {
+        permits.acquireUninterruptibly();
+        CompletableFuture<?> result;
+        try {
+            result = action.get();
+        }
+        catch (RuntimeException e) {
+            CompletableFuture<?> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            result = failed;
+        }
+        result.whenComplete((ignored, throwable) -> {
+            try {
+                Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+                if (cause == null) {
+                    if (!silent) {
+                        System.out.println(doing + " record " + key);
+                    }
+                }
+                else {
+                    System.out.printf("Error thrown when %s record. Error was %s, class %s\n", doingLowerCase, cause.getMessage(), cause.getClass().getCanonicalName());
+                    System.out.printf("Key: %s\n", key);
+                    cause.printStackTrace();
+                }
+            }
+            finally {
+                permits.release();
+            }
+        });
+    }
+
+    /**
+     * Wait for every action sent to complete.
+     */
+    public void awaitAll() {
+        permits.acquireUninterruptibly(maxInFlight);
+        permits.release(maxInFlight);
+    }
+
+    /**
+     * The number of actions sent which have not yet completed.
+     */
+    public int getInFlight() {
+        return maxInFlight - permits.availablePermits();
+    }
+}
@@ -1,41 +1,62 @@
 package com.aerospike.comparator;
 
+import java.util.Arrays;
 import java.util.EnumSet;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.SortedMap;
 
 import com.aerospike.client.Key;
 import com.aerospike.client.Record;
 
+/**
+ * Compares the bins of two records, walking down through any maps and lists. A comparator keeps the
+ * {@link DifferenceSet} it uses for records without differences to use again on the next records, so it must only be
+ * used by one thread at a time.
+ */
 public class RecordComparator {
     public enum DifferenceType {
         ONLY_ON_1, ONLY_ON_2, CONTENTS
     }
+    
+    private DifferenceSet scratch = new DifferenceSet();
+    private final int maxDifferencesPerRecord;
+    private final int maxDifferencesPerBin;
+    private final AerospikeComparator keyOrder = new AerospikeComparator();
+    // The hashes of the items of the unordered lists being compared. Unordered lists are compared by hash alone, so
+    // they are never in use by two lists at once.
+    private long[] unorderedHashes1 = new long[16];
+    private long[] unorderedHashes2 = new long[16];
+    
+    public RecordComparator() {
+        this(0, 0);
+    }
+    
+    /**
+     * A comparator which keeps at most the passed number of differences for each record and each bin, 0 for no limit.
+     */
+    public RecordComparator(int maxDifferencesPerRecord, int maxDifferencesPerBin) {
+        this.maxDifferencesPerRecord = maxDifferencesPerRecord;
+        this.maxDifferencesPerBin = maxDifferencesPerBin;
+    }
+    
+    /**
+     * A set with differences is kept by whatever it is reported to, so the next records need a new set. A set without
+     * differences is only valid until this comparator next compares records.
+     */
+    private DifferenceSet handOff(DifferenceSet result) {
+        if (result.areDifferent()) {
+            scratch = new DifferenceSet();
+        }
+        return result;
+    }
 
     protected static boolean isByteType(Class<?> clazz) {
         return Byte.class.equals(clazz) ||
                 Byte.TYPE.equals(clazz);
     }
 
-    // Implementation of Arrays.mismatch to allow compiling with Java 8
-    private int arrayMismatch(byte[] a, byte[] b) {
-        int length = Math.min(a.length, b.length); // Check null array refs
-        if (a == b) {
-            return -1;
-        }
-        int index = -1;
-        for (int i = 0; i < length; i++) {
-            if (a[i] != b[i]) {
-                index = i;
-                break;
-            }
-        }
-        return (index < 0 && a.length != b.length) ? length : index;
-    }
-    
     private void compareNonNull(Object obj1, Object obj2, DifferenceSet differences, int cluster1Index, int cluster2Index) {
         if (obj1 instanceof Map) {
             compare((Map<Object, Object>)obj1, (Map<Object, Object>)obj2, differences, cluster1Index, cluster2Index);
@@ -47,9 +68,18 @@ public class RecordComparator {
             Class<?> elementType = obj1.getClass().getComponentType();
             if (isByteType(elementType)) {
                 // Byte arrays are natively supported
-                int mismatch = arrayMismatch((byte[])obj1, (byte[])obj2);
+                byte[] bytes1 = (byte[])obj1;
+                byte[] bytes2 = (byte[])obj2;
+                int mismatch = Arrays.mismatch(bytes1, bytes2);
                 if (mismatch >= 0) {
-                    differences.addDifference(DifferenceType.CONTENTS, obj1, obj2, mismatch, cluster1Index, cluster2Index);
+                    int maxRanges = differences.getMaxByteRangesForCurrentPath();
+                    if (maxRanges > 0) {
+                        differences.addDifference(DifferenceType.CONTENTS, bytes1, bytes2,
+                                ByteRanges.between(bytes1, bytes2, maxRanges), cluster1Index, cluster2Index);
+                    }
+                    else {
+                        differences.addDifference(DifferenceType.CONTENTS, obj1, obj2, mismatch, cluster1Index, cluster2Index);
+                    }
                 }
             } else {
                 // TODO: Can we even get other arrays here?
@@ -81,10 +111,10 @@ public class RecordComparator {
         }
         if (obj instanceof Map) {
             Map<?, ?> map = (Map<?, ?>)obj;
-            for (Object key: map.keySet()) {
-                differences.pushPath(key.toString());
-                long keyHash = getHashCode(key, differences);
-                long objHash = getHashCode(map.get(key), differences);
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                differences.pushKey(entry.getKey());
+                long keyHash = getHashCode(entry.getKey(), differences);
+                long objHash = getHashCode(entry.getValue(), differences);
                 hash = hash * 23 + 31 * keyHash + 17 * objHash + 1;
                 differences.popPath();
             }
@@ -93,7 +123,7 @@ public class RecordComparator {
             boolean unorderedCompare = differences.shouldIgnoreCurrentPath();
             List<?> list = (List)obj;
             for (int i = 0; i < list.size(); i++) {
-                differences.pushPath(Integer.toString(i));
+                differences.pushIndex(i);
                 long itemHash = getHashCode(list.get(i), differences);
                 if (!unorderedCompare) {
                     itemHash += 13*i;
@@ -124,36 +154,23 @@ public class RecordComparator {
                 differences.addDifference(DifferenceType.CONTENTS, list1, list2, cluster1index, cluster2index);
             }
             else {
-                HashMap<Long, Integer> values = new HashMap<>();
-                for (int i = 0; i < list1.size(); i++) {
-                    long hash = getHashCode(list1.get(i), differences);
-                    Integer count = values.get(hash);
-                    if (count == null) {
-                        values.put(hash, 1);
-                    }
-                    else {
-                        values.put(hash, count+1);
-                    }
+                // The lists hold the same items if the sorted hashes of their items are the same
+                int size = list1.size();
+                if (unorderedHashes1.length < size) {
+                    unorderedHashes1 = new long[Math.max(size, unorderedHashes1.length * 2)];
+                    unorderedHashes2 = new long[unorderedHashes1.length];
+                }
+                for (int i = 0; i < size; i++) {
+                    unorderedHashes1[i] = getHashCode(list1.get(i), differences);
+                    unorderedHashes2[i] = getHashCode(list2.get(i), differences);
                 }
-                boolean checkSize = true;
-                for (int i = 0; i < list2.size(); i++) {
-                    long hash = getHashCode(list2.get(i), differences);
-                    Integer count = values.get(hash);
-                    if (count == null || count == 0) {
+                Arrays.sort(unorderedHashes1, 0, size);
+                Arrays.sort(unorderedHashes2, 0, size);
+                for (int i = 0; i < size; i++) {
+                    if (unorderedHashes1[i] != unorderedHashes2[i]) {
                         differences.addDifference(DifferenceType.CONTENTS, list1, list2, cluster1index, cluster2index);
-                        checkSize = false;
                         break;
                     }
-                    else if (count <= 1) {
-                        values.remove(hash);
-                    }
-                    else {
-                        values.put(hash, count - 1);
-                    }
-                }
-                if (checkSize && !values.isEmpty()) {
-                    // There are values missing
-                    differences.addDifference(DifferenceType.CONTENTS, list1, list2, cluster1index, cluster2index);
                 }
             }
         }
@@ -162,37 +179,102 @@ public class RecordComparator {
             for (int i = 0; i < max; i++) {
                 Object o1 = (i < list1.size()) ? list1.get(i) : null;
                 Object o2 = (i < list2.size()) ? list2.get(i) : null;
-                differences.pushPath(Integer.toString(i));
+                differences.pushIndex(i);
                 compare(o1, o2, differences, cluster1index, cluster2index);
                 differences.popPath();
-                if (differences.isQuickCompare() && differences.areDifferent()) {
+                if (differences.isComplete()) {
                     return;
                 }
             }
         }
     }
 
+    /**
+     * Whether the map iterates its keys in the order the server sorts them. Key ordered maps are read as sorted maps
+     * using the natural order of their keys. A naturally ordered map only holds keys which are comparable with each
+     * other, so they are all of the type of the first key, and for these types natural order is server order.
+     */
+    private boolean isInServerOrder(Map<?, ?> map) {
+        if (!(map instanceof SortedMap)) {
+            return false;
+        }
+        SortedMap<?, ?> sortedMap = (SortedMap<?, ?>)map;
+        if (sortedMap.comparator() instanceof AerospikeComparator) {
+            return true;
+        }
+        if (sortedMap.comparator() != null) {
+            return false;
+        }
+        if (sortedMap.isEmpty()) {
+            return true;
+        }
+        Object firstKey = sortedMap.firstKey();
+        return firstKey instanceof Long || firstKey instanceof Integer || firstKey instanceof Short || firstKey instanceof Byte
+                || firstKey instanceof String || firstKey instanceof Double || firstKey instanceof Boolean;
+    }
+    
+    private static Map.Entry<?, ?> nextOrNull(Iterator<? extends Map.Entry<?, ?>> iterator) {
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+    
+    /**
+     * Compare two maps which are both in server key order by walking them side by side, so every entry is visited
+     * once and nothing is looked up.
+     */
+    private void compareInServerOrder(Map<?, ?> side1, Map<?, ?> side2, DifferenceSet differences, int cluster1index, int cluster2index) {
+        Iterator<? extends Map.Entry<?, ?>> iterator1 = side1.entrySet().iterator();
+        Iterator<? extends Map.Entry<?, ?>> iterator2 = side2.entrySet().iterator();
+        Map.Entry<?, ?> entry1 = nextOrNull(iterator1);
+        Map.Entry<?, ?> entry2 = nextOrNull(iterator2);
+        while (entry1 != null || entry2 != null) {
+            int order = entry1 == null ? 1 : entry2 == null ? -1 : keyOrder.compare(entry1.getKey(), entry2.getKey());
+            if (order < 0) {
+                differences.pushKey(entry1.getKey());
+                compare(entry1.getValue(), null, differences, cluster1index, cluster2index);
+                entry1 = nextOrNull(iterator1);
+            }
+            else if (order > 0) {
+                differences.pushKey(entry2.getKey());
+                compare(null, entry2.getValue(), differences, cluster1index, cluster2index);
+                entry2 = nextOrNull(iterator2);
+            }
+            else {
+                differences.pushKey(entry1.getKey());
+                compare(entry1.getValue(), entry2.getValue(), differences, cluster1index, cluster2index);
+                entry1 = nextOrNull(iterator1);
+                entry2 = nextOrNull(iterator2);
+            }
+            differences.popPath();
+            if (differences.isComplete()) {
+                return;
+            }
+        }
+    }
+
     public void compare(Map<?, ?> side1, Map<?, ?> side2, DifferenceSet differences, int cluster1index, int cluster2index) {
         if (differences.shouldIgnoreCurrentPath()) {
             return;
         }
+        if (isInServerOrder(side1) && isInServerOrder(side2)) {
+            compareInServerOrder(side1, side2, differences, cluster1index, cluster2index);
+            return;
+        }
 
-        Set<Object> keys = new HashSet<>();
-        for (Object key : side1.keySet()) {
-            keys.add(key);
-            differences.pushPath(key.toString());
-            compare(side1.get(key), side2.get(key), differences, cluster1index, cluster2index);
+        for (Map.Entry<?, ?> entry : side1.entrySet()) {
+            differences.pushKey(entry.getKey());
+            compare(entry.getValue(), side2.get(entry.getKey()), differences, cluster1index, cluster2index);
             differences.popPath();
-            if (differences.isQuickCompare() && differences.areDifferent()) {
+            if (differences.isComplete()) {
                 return;
             }
         }
         for (Object key : side2.keySet()) {
-            if (!keys.contains(key)) {
-                differences.pushPath(key.toString());
-                compare(side1.get(key), side2.get(key), differences, cluster1index, cluster2index);
+            // Keys in both maps have already been compared
+            if (!side1.containsKey(key)) {
+                differences.pushKey(key);
+                compare(null, side2.get(key), differences, cluster1index, cluster2index);
                 differences.popPath();
-                if (differences.isQuickCompare() && differences.areDifferent()) {
+                if (differences.isComplete()) {
                     return;
                 }
             }
@@ -203,21 +285,22 @@ public class RecordComparator {
         Map<?, ?> map1 = (Map<?, ?>)record1.bins;
         Map<?, ?> map2 = record2.bins;
 
-        DifferenceSet result = new DifferenceSet(key, stopAtFirstDifference, pathOptions, cluster1index, cluster2index);
+        DifferenceSet result = scratch.reset(key, stopAtFirstDifference, pathOptions, cluster1index, cluster2index)
+                .limitDifferences(maxDifferencesPerRecord, maxDifferencesPerBin);
         result.pushPath(key.namespace);
         result.pushPath(key.setName);
         compare(map1, map2, result, cluster1index, cluster2index);
         result.popPath();
         result.popPath();
-        return result;
+        return handOff(result);
     }
     public DifferenceSet compare(Key key, byte[] record1hash, byte[] record2hash, PathOptions pathOptions, int cluster1index, int cluster2index) {
-        DifferenceSet result = new DifferenceSet(key, true, pathOptions, cluster1index, cluster2index);
+        DifferenceSet result = scratch.reset(key, true, pathOptions, cluster1index, cluster2index);
         result.pushPath(key.namespace);
         result.pushPath(key.setName);
         compare(record1hash, record2hash, result, cluster1index, cluster2index);
         result.popPath();
         result.popPath();
-        return result;
+        return handOff(result);
     }
 }
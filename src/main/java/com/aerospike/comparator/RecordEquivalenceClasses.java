@@ -0,0 +1,186 @@
+package com.aerospike.comparator;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntFunction;
+
+/**
+ * Groups the clusters which hold a record into classes of clusters with identical copies of the record.
+ * <p>
+ * Rather than comparing the record on every pair of clusters, each cluster's record is optionally fingerprinted
+ * once and clusters with the same fingerprint are placed in the same class. One representative from each class
+ * is then deep-compared against the representatives of the distinct classes found so far, merging classes which
+ * turn out to be the same (for example if they differ only in ignored paths). In the common case where all
+ * clusters have the same record this means no deep comparisons at all.
+ * <p>
+ * The representative of a class is always the lowest cluster id in that class.
+ */
+public class RecordEquivalenceClasses {
+    @FunctionalInterface
+    public interface ClusterComparer {
+        /**
+         * Compare the record on the 2 clusters, returning the differences or <code>null</code> if there are none.
+         */
+        DifferenceSet compare(int cluster1, int cluster2);
+    }
+
+    private final List<Integer> clusters;
+    private final int[] parent;
+
+    public RecordEquivalenceClasses(List<Integer> clustersWithRecord) {
+        this.clusters = new ArrayList<>(clustersWithRecord);
+        Collections.sort(this.clusters);
+        int maxCluster = clusters.isEmpty() ? -1 : clusters.get(clusters.size() - 1);
+        this.parent = new int[maxCluster + 1];
+        Arrays.fill(parent, -1);
+        for (int cluster : clusters) {
+            parent[cluster] = cluster;
+        }
+    }
+
+    /**
+     * Get the clusters which have the record, in ascending order.
+     */
+    public List<Integer> getClusters() {
+        return clusters;
+    }
+
+    public boolean contains(int cluster) {
+        return cluster >= 0 && cluster < parent.length && parent[cluster] >= 0;
+    }
+
+    /**
+     * Get the representative of the class the cluster belongs to.
+     */
+    public int getRepresentative(int cluster) {
+        while (parent[cluster] != cluster) {
+            parent[cluster] = parent[parent[cluster]];
+            cluster = parent[cluster];
+        }
+        return cluster;
+    }
+
+    /**
+     * Flag that the 2 clusters have the same record, merging their classes.
+     */
+    public void merge(int cluster1, int cluster2) {
+        int rep1 = getRepresentative(cluster1);
+        int rep2 = getRepresentative(cluster2);
+        if (rep1 < rep2) {
+            parent[rep2] = rep1;
+        }
+        else if (rep2 < rep1) {
+            parent[rep1] = rep2;
+        }
+    }
+
+    /**
+     * Get the representative of each class, in ascending order.
+     */
+    public List<Integer> getRepresentatives() {
+        List<Integer> result = new ArrayList<>();
+        for (int cluster : clusters) {
+            if (getRepresentative(cluster) == cluster) {
+                result.add(cluster);
+            }
+        }
+        return result;
+    }
+
+    public int getNumberOfClasses() {
+        return getRepresentatives().size();
+    }
+
+    /**
+     * Get all the clusters in the same class as the passed cluster.
+     */
+    public Set<Integer> getMembers(int cluster) {
+        int rep = getRepresentative(cluster);
+        Set<Integer> result = new HashSet<>();
+        for (int thisCluster : clusters) {
+            if (getRepresentative(thisCluster) == rep) {
+                result.add(thisCluster);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Merge all clusters whose records have the same fingerprint. Clusters with a <code>null</code> fingerprint
+     * are left in their own class.
+     */
+    public void mergeByFingerprint(IntFunction<byte[]> fingerprinter) {
+        Map<ByteBuffer, Integer> firstClusterWithFingerprint = new HashMap<>();
+        for (int cluster : clusters) {
+            byte[] fingerprint = fingerprinter.apply(cluster);
+            if (fingerprint != null) {
+                Integer existing = firstClusterWithFingerprint.putIfAbsent(ByteBuffer.wrap(fingerprint), cluster);
+                if (existing != null) {
+                    merge(existing, cluster);
+                }
+            }
+        }
+    }
+
+    /**
+     * Deep compare one representative from each class. Each representative is compared against the distinct
+     * classes found so far; if it matches one of them the classes are merged and any differences found against
+     * other classes are discarded as they duplicate differences already recorded.
+     * @param fingerprinter - used to group the clusters before any deep comparisons. Can be null to skip this step.
+     * @param comparer - used to deep compare the records on 2 clusters
+     * @return the differences between the distinct classes
+     */
+    public DifferenceCollection compare(IntFunction<byte[]> fingerprinter, ClusterComparer comparer) {
+        if (fingerprinter != null) {
+            mergeByFingerprint(fingerprinter);
+        }
+        DifferenceCollection result = new DifferenceCollection(this);
+        List<Integer> distinctClasses = new ArrayList<>();
+        List<DifferenceSet> differences = new ArrayList<>();
+        for (int cluster : getRepresentatives()) {
+            differences.clear();
+            int sameAs = -1;
+            for (int existing : distinctClasses) {
+                DifferenceSet diffs = comparer.compare(existing, cluster);
+                if (diffs == null || !diffs.areDifferent()) {
+                    sameAs = existing;
+                    break;
+                }
+                differences.add(diffs);
+            }
+            if (sameAs >= 0) {
+                merge(sameAs, cluster);
+            }
+            else {
+                distinctClasses.add(cluster);
+                for (DifferenceSet diffs : differences) {
+                    result.add(diffs);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder().append('[');
+        boolean first = true;
+        for (int rep : getRepresentatives()) {
+            if (!first) {
+                sb.append(',');
+            }
+            first = false;
+            List<Integer> members = new ArrayList<>(getMembers(rep));
+            Collections.sort(members);
+            sb.append(members);
+        }
+        return sb.append(']').toString();
+    }
+}
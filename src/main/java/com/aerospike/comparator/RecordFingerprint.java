@@ -0,0 +1,237 @@
+package com.aerospike.comparator;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+import com.aerospike.client.Key;
+import com.aerospike.client.Record;
+import com.aerospike.client.Value;
+
+/**
+ * Forms a 128 bit fingerprint of the structure and contents of a record's bins, so identical records can be found
+ * without the full walk of {@link RecordComparator}. Records which {@link RecordComparator} finds to be the same
+ * always have the same fingerprint:
+ * <ul>
+ * <li>Maps are fingerprinted irrespective of the order of their entries</li>
+ * <li>Lists flagged {@link PathAction#COMPAREUNORDERED} are fingerprinted irrespective of the order of their items</li>
+ * <li>Anything under a path flagged {@link PathAction#IGNORE} is left out</li>
+ * </ul>
+ * Records with different fingerprints may still be the same, for example if they differ only in the order of a
+ * list nested in an unordered list, so a difference in fingerprints only means the records need comparing in full.
+ * Records with the same fingerprint are taken to be the same in FAST mode, so the fingerprint is formed from two
+ * 64 bit lanes, each hashing every value with its own function, and covers the full contents of every value type
+ * the database returns.
+ * <p>
+ * Fingerprints use the path of the first cluster's key so records from namespaces with different names are
+ * fingerprinted against the same path options.
+ */
+public class RecordFingerprint {
+    public static final int LENGTH = 16;
+
+    private static final long NULL_TAG = 0x6a09e667f3bcc908L;
+    private static final long MAP_TAG = 0xbb67ae8584caa73bL;
+    private static final long LIST_TAG = 0x3c6ef372fe94f82bL;
+    private static final long UNORDERED_LIST_TAG = 0xa54ff53a5f1d36f1L;
+    private static final long BYTES_TAG = 0x510e527fade682d1L;
+    private static final long STRING_TAG = 0x9b05688c2b3e6c1fL;
+    private static final long ARRAY_TAG = 0x1f83d9abfb41bd6bL;
+    private static final long BOOLEAN_TAG = 0x5be0cd19137e2179L;
+    private static final long GEOJSON_TAG = 0xcbbb9d5dc1059ed8L;
+    private static final long HLL_TAG = 0x629a292a367cd507L;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    // The hash of the last value hashed, one 64 bit lane in each
+    private long hash1;
+    private long hash2;
+
+    private RecordFingerprint() {
+    }
+
+    public static byte[] of(Key key, Record record, PathOptions pathOptions) {
+        return of(key.namespace, key.setName, record.bins, pathOptions);
+    }
+
+    public static byte[] of(String namespace, String setName, Map<String, Object> bins, PathOptions pathOptions) {
+        RecordFingerprint fingerprint = new RecordFingerprint();
+        if (pathOptions != null && pathOptions.hasPaths()) {
+            // Walk the same parts as DifferenceSet, where a record with no set has a set level of "null"
+            PathMatcher.State state = pathOptions.getMatcher().getStart().nextPart(namespace).nextPart(setName);
+            if (state.isIgnored()) {
+                fingerprint.setTagged(NULL_TAG, 0);
+            }
+            else {
+                fingerprint.hashMap(bins, state);
+            }
+        }
+        else {
+            // Without path options there is no need to track where in the record we are
+            fingerprint.hashMap(bins, null);
+        }
+        return ByteBuffer.allocate(LENGTH).putLong(fingerprint.hash1).putLong(fingerprint.hash2).array();
+    }
+
+    /**
+     * The finalizer of MurmurHash3, spreading every bit of the input across the result. Used for the first lane.
+     */
+    static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    /**
+     * The SplitMix64 finalizer, which spreads bits with different constants to {@link #mix(long)}. Used for the
+     * second lane.
+     */
+    static long mix2(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+
+    /**
+     * Hash a fixed size value of a given kind into both lanes.
+     */
+    private void setTagged(long tag, long value) {
+        hash1 = mix(tag ^ value);
+        hash2 = mix2(mix2(tag) + value * GOLDEN_GAMMA);
+    }
+
+    /**
+     * Hash an object. The state is the path options matcher's state for the path to the object, or null if the path
+     * options are not applied. They are not applied inside unordered lists as {@link RecordComparator} does not
+     * apply them there either.
+     */
+    private void hash(Object obj, PathMatcher.State state) {
+        if (obj == null) {
+            setTagged(NULL_TAG, 0);
+        }
+        else if (obj instanceof Map) {
+            hashMap((Map<?, ?>)obj, state);
+        }
+        else if (obj instanceof List) {
+            hashList((List<?>)obj, state);
+        }
+        else if (obj instanceof byte[]) {
+            hashBytes(BYTES_TAG, (byte[])obj);
+        }
+        else if (obj instanceof String) {
+            hashString(STRING_TAG, (String)obj);
+        }
+        else if (obj.getClass().isArray()) {
+            long result1 = ARRAY_TAG;
+            long result2 = mix2(ARRAY_TAG);
+            for (Object item : (Object[])obj) {
+                hash(item, null);
+                result1 = mix(result1 * 31 + hash1);
+                result2 = mix2(result2 * 37 + hash2);
+            }
+            hash1 = result1;
+            hash2 = result2;
+        }
+        else if (obj instanceof Long || obj instanceof Integer || obj instanceof Short || obj instanceof Byte) {
+            // Values of different classes are always reported as different
+            setTagged(mix(obj.getClass().getName().hashCode()), ((Number)obj).longValue());
+        }
+        else if (obj instanceof Double) {
+            setTagged(mix(obj.getClass().getName().hashCode()), Double.doubleToLongBits((Double)obj));
+        }
+        else if (obj instanceof Boolean) {
+            setTagged(BOOLEAN_TAG, (Boolean)obj ? 1 : 0);
+        }
+        else if (obj instanceof Value.GeoJSONValue) {
+            hashString(GEOJSON_TAG, obj.toString());
+        }
+        else if (obj instanceof Value.HLLValue) {
+            hashBytes(HLL_TAG, ((Value.HLLValue)obj).getBytes());
+        }
+        else {
+            // Not returned by the database, so only the class and hash code are known to agree with equals()
+            setTagged(mix(obj.getClass().getName().hashCode()), obj.hashCode());
+        }
+    }
+
+    private void hashMap(Map<?, ?> map, PathMatcher.State state) {
+        // Summing the entries makes the result independent of their order
+        long sum1 = 0;
+        long sum2 = 0;
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            PathMatcher.State entryState = state == null ? null : state.nextPart(entry.getKey());
+            if (entryState == null || !entryState.isIgnored()) {
+                hash(entry.getKey(), null);
+                long key1 = hash1;
+                long key2 = hash2;
+                hash(entry.getValue(), entryState);
+                sum1 += mix(key1 * 31 + hash1);
+                sum2 += mix2(key2 * 37 + hash2);
+            }
+        }
+        hash1 = mix(MAP_TAG ^ sum1);
+        hash2 = mix2(mix2(MAP_TAG) ^ sum2);
+    }
+
+    private void hashList(List<?> list, PathMatcher.State state) {
+        if (state != null && state.isUnordered()) {
+            long sum1 = 0;
+            long sum2 = 0;
+            for (Object item : list) {
+                hash(item, null);
+                sum1 += mix(hash1);
+                sum2 += mix2(hash2);
+            }
+            hash1 = mix(UNORDERED_LIST_TAG ^ sum1 ^ list.size());
+            hash2 = mix2(mix2(UNORDERED_LIST_TAG) ^ sum2 ^ list.size());
+            return;
+        }
+        long result1 = LIST_TAG;
+        long result2 = mix2(LIST_TAG);
+        for (int i = 0; i < list.size(); i++) {
+            PathMatcher.State itemState = state == null ? null : state.nextPart(i);
+            if (itemState != null && itemState.isIgnored()) {
+                setTagged(NULL_TAG, 0);
+            }
+            else {
+                hash(list.get(i), itemState);
+            }
+            result1 = mix(result1 * 31 + hash1);
+            result2 = mix2(result2 * 37 + hash2);
+        }
+        hash1 = result1;
+        hash2 = result2;
+    }
+
+    /**
+     * Hash bytes with FNV-1a in the first lane and a multiplicative hash in the second.
+     */
+    private void hashBytes(long tag, byte[] bytes) {
+        long result1 = FNV_OFFSET;
+        long result2 = tag;
+        for (byte b : bytes) {
+            result1 = (result1 ^ (b & 0xff)) * FNV_PRIME;
+            result2 = (result2 + (b & 0xff)) * GOLDEN_GAMMA;
+        }
+        hash1 = mix(tag ^ result1 ^ bytes.length);
+        hash2 = mix2(result2 ^ bytes.length);
+    }
+
+    /**
+     * Hash the characters of a string as {@link #hashBytes(long, byte[])} hashes bytes.
+     */
+    private void hashString(long tag, String string) {
+        long result1 = FNV_OFFSET;
+        long result2 = tag;
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            result1 = (result1 ^ c) * FNV_PRIME;
+            result2 = (result2 + c) * GOLDEN_GAMMA;
+        }
+        hash1 = mix(tag ^ result1);
+        hash2 = mix2(result2 ^ string.length());
+    }
+}
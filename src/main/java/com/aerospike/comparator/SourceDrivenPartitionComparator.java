@@ -3,6 +3,7 @@ package com.aerospike.comparator;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import com.aerospike.client.Key;
 import com.aerospike.client.Record;
@@ -52,10 +53,7 @@ class SourceDrivenPartitionComparator {
         queryPolicy.shortQuery = false;
         queryPolicy.filterExp = parent.getFilterExpression();
 
-        int rps = options.getRps() / parent.getThreadsToUse();
-        if (options.getRps() > 0 && rps == 0) {
-            rps = 1;
-        }
+        int rps = parent.getConcurrencyController().getRecordsPerSecondPerWorker();
 
         List<Integer> nonSourceIndices = new ArrayList<>();
         for (int i = 0; i < parent.getNumberOfClusters(); i++) {
@@ -95,7 +93,6 @@ class SourceDrivenPartitionComparator {
                 flushBatch(clients, batch, nonSourceIndices, namespace, setName, partitionId);
                 batch.clear();
             }
-            parent.partitionsComplete[partitionId - parent.getStartPartition()].set(true);
         }
         finally {
             try {
@@ -113,6 +110,12 @@ class SourceDrivenPartitionComparator {
 
         Record[][] nonSourceRecords = new Record[parent.getNumberOfClusters()][];
         boolean[][] nonSourceExists = new boolean[parent.getNumberOfClusters()][];
+        // Each cluster's batch is sent before waiting on any of them, so the clusters are read in parallel
+        @SuppressWarnings("unchecked")
+        CompletableFuture<Record[]>[] recordRequests = new CompletableFuture[parent.getNumberOfClusters()];
+        @SuppressWarnings("unchecked")
+        CompletableFuture<boolean[]>[] existsRequests = new CompletableFuture[parent.getNumberOfClusters()];
+        boolean[][] validKeysByCluster = new boolean[parent.getNumberOfClusters()][];
 
         for (int clusterIdx : nonSourceIndices) {
             String resolvedNamespace = options.getNamespaceName(namespace, clusterIdx);
@@ -146,17 +149,27 @@ class SourceDrivenPartitionComparator {
                 continue;
             }
 
+            validKeysByCluster[clusterIdx] = validKeys;
             if (recordLevelCompare) {
-                Record[] results = clients[clusterIdx].get(batchPolicy, validLookupKeys);
-                nonSourceRecords[clusterIdx] = expandResults(results, validKeys, batch.size());
+                recordRequests[clusterIdx] = clients[clusterIdx].getAsync(batchPolicy, validLookupKeys);
             }
             else {
-                boolean[] results = clients[clusterIdx].exists(batchPolicy, validLookupKeys);
-                nonSourceExists[clusterIdx] = expandBoolResults(results, validKeys, batch.size());
+                existsRequests[clusterIdx] = clients[clusterIdx].existsAsync(batchPolicy, validLookupKeys);
             }
         }
 
-        RecordComparator comparator = new RecordComparator();
+        for (int clusterIdx : nonSourceIndices) {
+            if (recordRequests[clusterIdx] != null) {
+                Record[] results = AerospikeClientAccess.await(recordRequests[clusterIdx]);
+                nonSourceRecords[clusterIdx] = expandResults(results, validKeysByCluster[clusterIdx], batch.size());
+            }
+            else if (existsRequests[clusterIdx] != null) {
+                boolean[] results = AerospikeClientAccess.await(existsRequests[clusterIdx]);
+                nonSourceExists[clusterIdx] = expandBoolResults(results, validKeysByCluster[clusterIdx], batch.size());
+            }
+        }
+
+        RecordComparator comparator = parent.newRecordComparator();
 
         for (int b = 0; b < batch.size(); b++) {
             if (parent.forceTerminate) break;
@@ -208,21 +221,7 @@ class SourceDrivenPartitionComparator {
 
     private boolean compareRecords(RecordComparator comparator, int partitionId,
             List<Integer> clustersWithRecord, AerospikeClientAccess[] clients, Key key, Record[] allRecords) {
-        DifferenceCollection compareResult = new DifferenceCollection(clustersWithRecord);
-        for (int i = 0; i < clustersWithRecord.size(); i++) {
-            for (int j = i + 1; j < clustersWithRecord.size(); j++) {
-                int left = clustersWithRecord.get(i);
-                int right = clustersWithRecord.get(j);
-                Record rec1 = allRecords[left];
-                Record rec2 = allRecords[right];
-                if (rec1 != null && rec2 != null) {
-                    DifferenceSet diffSet = comparator.compare(key, rec1, rec2,
-                            options.getPathOptions(),
-                            options.getCompareMode() == CompareMode.RECORDS_DIFFERENT, left, right);
-                    compareResult.add(diffSet);
-                }
-            }
-        }
+        DifferenceCollection compareResult = parent.compareRecordsOnClusters(comparator, key, clustersWithRecord, allRecords);
 
         if (compareResult.hasDifferences()) {
             RecordMetadata[] recordMetadatas = parent.getMetadata(clients, key, null, clustersWithRecord);
@@ -0,0 +1,98 @@
+package com.aerospike.comparator;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the threads used by the comparator: the partition workers, the read-ahead and remote cache filling threads,
+ * and the remote server's socket handlers. These spend nearly all their time waiting on the network, so on Java 21
+ * and later they can be virtual threads, making thousands of concurrent partition scans cheap.
+ * <p>
+ * The comparator is built for Java 11, so virtual threads are found by reflection. Where they are not available,
+ * or have not been asked for, platform threads are used as before.
+ */
+public class ThreadSupport {
+    private static final Method OF_VIRTUAL = findOfVirtual();
+    private static volatile boolean useVirtualThreads = false;
+
+    private static Method findOfVirtual() {
+        // Virtual threads were a preview feature before Java 21 and cannot be used without --enable-preview
+        if (Runtime.version().feature() < 21) {
+            return null;
+        }
+        try {
+            return Thread.class.getMethod("ofVirtual");
+        }
+        catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    public static boolean isVirtualThreadsAvailable() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * Use virtual threads for the threads created from now on. Returns false, leaving platform threads in use, if
+     * this Java runtime does not support virtual threads.
+     */
+    public static boolean setUseVirtualThreads(boolean useVirtualThreads) {
+        if (useVirtualThreads && !isVirtualThreadsAvailable()) {
+            ThreadSupport.useVirtualThreads = false;
+            return false;
+        }
+        ThreadSupport.useVirtualThreads = useVirtualThreads;
+        return true;
+    }
+
+    public static boolean isUsingVirtualThreads() {
+        return useVirtualThreads;
+    }
+
+    /**
+     * Form a factory for daemon threads named with the prefix and an increasing number.
+     */
+    public static ThreadFactory factory(String namePrefix) {
+        if (useVirtualThreads) {
+            try {
+                // Thread.ofVirtual().name(namePrefix, 1).factory()
+                Object builder = OF_VIRTUAL.invoke(null);
+                Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix + "-", 1L);
+                return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            }
+            catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Unable to create virtual threads: " + e.getMessage(), e);
+            }
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Create, but do not start, a daemon thread.
+     */
+    public static Thread newThread(String name, Runnable runnable) {
+        Thread thread = factory(name).newThread(runnable);
+        thread.setName(name);
+        return thread;
+    }
+
+    public static ExecutorService newFixedThreadPool(int threads, String namePrefix) {
+        if (!useVirtualThreads) {
+            return Executors.newFixedThreadPool(threads);
+        }
+        return Executors.newFixedThreadPool(threads, factory(namePrefix));
+    }
+
+    public static ExecutorService newCachedThreadPool(String namePrefix) {
+        return Executors.newCachedThreadPool(factory(namePrefix));
+    }
+}
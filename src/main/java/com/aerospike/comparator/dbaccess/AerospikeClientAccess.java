@@ -2,6 +2,9 @@ package com.aerospike.comparator.dbaccess;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
 
 import com.aerospike.client.Bin;
 import com.aerospike.client.Key;
@@ -29,4 +32,55 @@ public interface AerospikeClientAccess {
     Map<String, String> invokeInfoCommandOnAllNodes(String info);
     String invokeInfoCommandOnANode(String info);
     List<String> getNodeNames();
+
+    /*
+     * Non-blocking versions of the point and batch operations. Implementations without an asynchronous path run the
+     * operation on the calling thread and return a future which is already complete, so callers can issue a request
+     * to every cluster and then wait for all of them without caring which kind of access they have.
+     */
+    default CompletableFuture<Void> touchAsync(WritePolicy policy, Key key) {
+        return complete(() -> {
+            touch(policy, key);
+            return null;
+        });
+    }
+    default CompletableFuture<Record> getAsync(Policy policy, Key key) {
+        return complete(() -> get(policy, key));
+    }
+    default CompletableFuture<boolean[]> existsAsync(BatchPolicy policy, Key[] keys) {
+        return complete(() -> exists(policy, keys));
+    }
+    default CompletableFuture<Record[]> getAsync(BatchPolicy policy, Key[] keys) {
+        return complete(() -> get(policy, keys));
+    }
+    default CompletableFuture<RecordMetadata> getMetadataAsync(WritePolicy policy, Key key) {
+        return complete(() -> getMetadata(policy, key));
+    }
+
+    /**
+     * Wait for an asynchronous operation, throwing the exception it failed with rather than the wrapping
+     * {@code CompletionException} so callers can handle {@code AerospikeException}s as before.
+     */
+    static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        }
+        catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static <T> CompletableFuture<T> complete(Supplier<T> operation) {
+        try {
+            return CompletableFuture.completedFuture(operation.get());
+        }
+        catch (RuntimeException e) {
+            CompletableFuture<T> result = new CompletableFuture<>();
+            result.completeExceptionally(e);
+            return result;
+        }
+    }
 }
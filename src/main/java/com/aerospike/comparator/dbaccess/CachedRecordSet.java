@@ -2,11 +2,15 @@ package com.aerospike.comparator.dbaccess;
 
 import java.io.IOException;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.aerospike.client.AerospikeException;
 import com.aerospike.client.Key;
 import com.aerospike.client.Record;
 import com.aerospike.comparator.ClusterComparatorOptions.CompareMode;
+import com.aerospike.comparator.ThreadSupport;
 
 public class CachedRecordSet {
     private static class Entry {
@@ -53,7 +57,9 @@ public class CachedRecordSet {
     private volatile boolean isFilling = false;
     private volatile boolean isFinished = false;
     private volatile boolean threadTerminated = false;
-    private final Object lock = new Object();
+    // The filling thread may be a virtual thread, so it waits on a lock condition rather than a monitor, which would pin it
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition spaceInCache = lock.newCondition();
     private final Connection connection;
     private final boolean storeHashes;
     private final CompareMode compareMode;
@@ -64,15 +70,19 @@ public class CachedRecordSet {
         this.queue = new ArrayBlockingQueue<>(cacheSize);
         this.storeHashes = storeHashes;
         this.compareMode = compareMode;
-        this.fillingThread = new Thread(() -> {
+        this.fillingThread = ThreadSupport.newThread("cache-filling-thread", () -> {
             try {
                 this.isFinished = !readMulti(cacheSize, connection);
                 while ((!close) && (!isFinished)) {
-                    synchronized(lock) {
+                    lock.lock();
+                    try {
                         // There's a tiny window where we could miss the notification 
                         // and worst case enter a deadlock situation. So wait 50ms then wake up
                         // and check the queue again.
-                        lock.wait(50);
+                        spaceInCache.await(50, TimeUnit.MILLISECONDS);
+                    }
+                    finally {
+                        lock.unlock();
                     }
                     if (close) {
                         break;
@@ -95,8 +105,6 @@ public class CachedRecordSet {
                 this.threadTerminated = true;
             }
         });
-        this.fillingThread.setDaemon(true);
-        this.fillingThread.setName("cache-filling-thread");
         this.fillingThread.start();
     }
     
@@ -150,8 +158,12 @@ public class CachedRecordSet {
         }
         try {
             if (!isFinished && !isFilling && this.queue.remainingCapacity() > cacheSize/2) {
-                synchronized(lock) {
-                    lock.notify();
+                lock.lock();
+                try {
+                    spaceInCache.signal();
+                }
+                finally {
+                    lock.unlock();
                 }
             }
             this.current = this.queue.take();
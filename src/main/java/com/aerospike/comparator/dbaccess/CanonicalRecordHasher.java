@@ -0,0 +1,278 @@
+package com.aerospike.comparator.dbaccess;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hashes the bins of a record by walking them and feeding a canonical encoding of each value straight into a 128 bit
+ * hash, without serializing the record first. The encoding only depends on the values, not on the JVM, so a
+ * comparator and a remote server on different JVMs form the same hash for the same record.
+ * <p>
+ * Every value is encoded as 64 bit words: a word tagging its type, then for variable length values a word holding
+ * the length, then the contents packed into words. The words are hashed with the block function and finalizer of
+ * MurmurHash3 x64 128, two words to a block.
+ * <p>
+ * Maps are encoded in the order they iterate, unless sorting maps. Then each entry is hashed on its own and the
+ * entry hashes are summed, so the result does not depend on the order of the entries, without sorting or copying the
+ * map.
+ * <p>
+ * Changing the encoding changes the hashes, so any change needs a new {@link RecordHashVersion}.
+ */
+public class CanonicalRecordHasher {
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+    private static final long SEED = 0x2545f4914f6cdd1dL;
+
+    private static final long TAG_NULL = 1;
+    private static final long TAG_BOOLEAN = 2;
+    private static final long TAG_LONG = 3;
+    private static final long TAG_INTEGER = 4;
+    private static final long TAG_SHORT = 5;
+    private static final long TAG_BYTE = 6;
+    private static final long TAG_DOUBLE = 7;
+    private static final long TAG_FLOAT = 8;
+    private static final long TAG_STRING = 9;
+    private static final long TAG_BYTES = 10;
+    private static final long TAG_LIST = 11;
+    private static final long TAG_MAP = 12;
+    private static final long TAG_ARRAY = 13;
+    private static final long TAG_OTHER = 14;
+
+    private final boolean sortMaps;
+    private long h1 = SEED;
+    private long h2 = SEED;
+    // The first word of a block, waiting for the second
+    private long pending;
+    private boolean hasPending = false;
+    private long words = 0;
+
+    private CanonicalRecordHasher(boolean sortMaps) {
+        this.sortMaps = sortMaps;
+    }
+
+    /**
+     * Form the 16 byte hash of the bins of a record.
+     */
+    public static byte[] hash(Map<String, Object> bins, boolean sortMaps) {
+        CanonicalRecordHasher hasher = new CanonicalRecordHasher(sortMaps);
+        hasher.addMap(bins);
+        return hasher.finish();
+    }
+
+    private void addWord(long word) {
+        words++;
+        if (!hasPending) {
+            pending = word;
+            hasPending = true;
+            return;
+        }
+        hasPending = false;
+        long k1 = pending;
+        long k2 = word;
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        k1 *= C2;
+        h1 ^= k1;
+        h1 = Long.rotateLeft(h1, 27);
+        h1 += h2;
+        h1 = h1 * 5 + 0x52dce729;
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        k2 *= C1;
+        h2 ^= k2;
+        h2 = Long.rotateLeft(h2, 31);
+        h2 += h1;
+        h2 = h2 * 5 + 0x38495ab5;
+    }
+
+    private static long fmix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    private void start() {
+        h1 = SEED;
+        h2 = SEED;
+        hasPending = false;
+        words = 0;
+    }
+
+    /**
+     * Mix the last word and the length into <code>h1</code> and <code>h2</code>, which then hold the hash.
+     */
+    private void mixFinal() {
+        if (hasPending) {
+            long k1 = pending;
+            k1 *= C1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= C2;
+            h1 ^= k1;
+        }
+        long length = words * Long.BYTES;
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+        h1 += h2;
+        h2 += h1;
+    }
+
+    private byte[] finish() {
+        mixFinal();
+        byte[] result = new byte[16];
+        for (int i = 0; i < 8; i++) {
+            result[i] = (byte)(h1 >>> (56 - 8 * i));
+            result[i + 8] = (byte)(h2 >>> (56 - 8 * i));
+        }
+        return result;
+    }
+
+    private void add(Object obj) {
+        if (obj == null) {
+            addWord(TAG_NULL);
+        }
+        else if (obj instanceof Long) {
+            addWord(TAG_LONG);
+            addWord((Long)obj);
+        }
+        else if (obj instanceof String) {
+            addString((String)obj);
+        }
+        else if (obj instanceof Map) {
+            addMap((Map<?, ?>)obj);
+        }
+        else if (obj instanceof List) {
+            List<?> list = (List<?>)obj;
+            addWord(TAG_LIST);
+            addWord(list.size());
+            for (Object item : list) {
+                add(item);
+            }
+        }
+        else if (obj instanceof byte[]) {
+            addBytes((byte[])obj);
+        }
+        else if (obj instanceof Double) {
+            addWord(TAG_DOUBLE);
+            addWord(Double.doubleToLongBits((Double)obj));
+        }
+        else if (obj instanceof Boolean) {
+            addWord(TAG_BOOLEAN);
+            addWord((Boolean)obj ? 1 : 0);
+        }
+        // Records read from the database only hold longs and doubles, other numbers keep their own type
+        else if (obj instanceof Integer) {
+            addWord(TAG_INTEGER);
+            addWord((Integer)obj);
+        }
+        else if (obj instanceof Short) {
+            addWord(TAG_SHORT);
+            addWord((Short)obj);
+        }
+        else if (obj instanceof Byte) {
+            addWord(TAG_BYTE);
+            addWord((Byte)obj);
+        }
+        else if (obj instanceof Float) {
+            addWord(TAG_FLOAT);
+            addWord(Float.floatToIntBits((Float)obj));
+        }
+        else if (obj instanceof Object[]) {
+            Object[] array = (Object[])obj;
+            addWord(TAG_ARRAY);
+            addWord(array.length);
+            for (Object item : array) {
+                add(item);
+            }
+        }
+        else {
+            // Such as GeoJSON and HyperLogLog values, which are identified by their class and text
+            addWord(TAG_OTHER);
+            addString(obj.getClass().getName());
+            addString(obj.toString());
+        }
+    }
+
+    private void addString(String string) {
+        int length = string.length();
+        addWord(TAG_STRING);
+        addWord(length);
+        // Pack 4 UTF-16 chars into each word, the length tells apart any padding in the last word
+        int i = 0;
+        for (; i + 4 <= length; i += 4) {
+            addWord(((long)string.charAt(i) << 48) | ((long)string.charAt(i + 1) << 32)
+                    | ((long)string.charAt(i + 2) << 16) | string.charAt(i + 3));
+        }
+        if (i < length) {
+            long word = 0;
+            for (int shift = 48; i < length; i++, shift -= 16) {
+                word |= (long)string.charAt(i) << shift;
+            }
+            addWord(word);
+        }
+    }
+
+    private void addBytes(byte[] bytes) {
+        int length = bytes.length;
+        addWord(TAG_BYTES);
+        addWord(length);
+        int i = 0;
+        for (; i + 8 <= length; i += 8) {
+            long word = 0;
+            for (int j = 0; j < 8; j++) {
+                word = (word << 8) | (bytes[i + j] & 0xff);
+            }
+            addWord(word);
+        }
+        if (i < length) {
+            long word = 0;
+            for (int shift = 56; i < length; i++, shift -= 8) {
+                word |= (long)(bytes[i] & 0xff) << shift;
+            }
+            addWord(word);
+        }
+    }
+
+    private void addMap(Map<?, ?> map) {
+        addWord(TAG_MAP);
+        addWord(map.size());
+        if (sortMaps) {
+            // Hash each entry from a fresh state and sum the entry hashes, keeping the state of the enclosing
+            // value on the stack so nested maps need no allocation
+            long savedH1 = h1;
+            long savedH2 = h2;
+            long savedPending = pending;
+            boolean savedHasPending = hasPending;
+            long savedWords = words;
+            long sum1 = 0;
+            long sum2 = 0;
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                start();
+                add(entry.getKey());
+                add(entry.getValue());
+                mixFinal();
+                sum1 += h1;
+                sum2 += h2;
+            }
+            h1 = savedH1;
+            h2 = savedH2;
+            pending = savedPending;
+            hasPending = savedHasPending;
+            words = savedWords;
+            addWord(sum1);
+            addWord(sum2);
+        }
+        else {
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                add(entry.getKey());
+                add(entry.getValue());
+            }
+        }
+    }
+}
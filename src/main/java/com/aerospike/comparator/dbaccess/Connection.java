@@ -74,6 +74,13 @@ class Connection {
         catch (IOException ignored) {}
     }
     
+    /**
+     * Set how long reads wait for the remote server before failing, 0 to wait forever.
+     */
+    public void setReadTimeout(int timeoutMs) throws IOException {
+        this.socket.setSoTimeout(timeoutMs);
+    }
+    
     public DataInputStream getDis() {
         return dis;
     }
@@ -59,6 +59,14 @@ class ConnectionPool {
         }
     }
     
+    /**
+     * Close a borrowed connection which can no longer be used, rather than returning it to the pool.
+     */
+    public synchronized void discard(Connection conn) {
+        inUse.remove(conn);
+        conn.close();
+    }
+    
     public synchronized void close() {
         this.closed = true;
         for (Connection conn : this.available) {
@@ -4,6 +4,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 import com.aerospike.client.AerospikeException;
@@ -13,7 +14,12 @@ import com.aerospike.client.IAerospikeClient;
 import com.aerospike.client.Info;
 import com.aerospike.client.Key;
 import com.aerospike.client.Record;
+import com.aerospike.client.async.EventLoops;
 import com.aerospike.client.cluster.Node;
+import com.aerospike.client.listener.ExistsArrayListener;
+import com.aerospike.client.listener.RecordArrayListener;
+import com.aerospike.client.listener.RecordListener;
+import com.aerospike.client.listener.WriteListener;
 import com.aerospike.client.policy.BatchPolicy;
 import com.aerospike.client.policy.Policy;
 import com.aerospike.client.policy.QueryPolicy;
@@ -24,10 +30,21 @@ import com.aerospike.client.query.Statement;
 
 public class LocalAerospikeClient implements AerospikeClientAccess {
     private final IAerospikeClient client;
+    private final EventLoops eventLoops;
 
     public LocalAerospikeClient(IAerospikeClient client) {
+        this(client, null);
+    }
+
+    /**
+     * Form access to a cluster whose client was created with the passed event loops. If these are not null, the
+     * asynchronous operations are sent through them and complete on an event loop thread rather than blocking the
+     * caller.
+     */
+    public LocalAerospikeClient(IAerospikeClient client, EventLoops eventLoops) {
         super();
         this.client = client;
+        this.eventLoops = eventLoops;
     }
     
     @Override
@@ -116,4 +133,94 @@ public class LocalAerospikeClient implements AerospikeClientAccess {
         Record record = this.client.operate(policy, key, RecordMetadata.getMetadataOperations());
         return record == null ? null : new RecordMetadata(record);
     }
+
+    @Override
+    public CompletableFuture<Void> touchAsync(WritePolicy policy, Key key) {
+        if (eventLoops == null) {
+            return AerospikeClientAccess.super.touchAsync(policy, key);
+        }
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        this.client.touch(eventLoops.next(), new WriteListener() {
+            @Override
+            public void onSuccess(Key key) {
+                result.complete(null);
+            }
+            @Override
+            public void onFailure(AerospikeException exception) {
+                result.completeExceptionally(exception);
+            }
+        }, policy, key);
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<Record> getAsync(Policy policy, Key key) {
+        if (eventLoops == null) {
+            return AerospikeClientAccess.super.getAsync(policy, key);
+        }
+        CompletableFuture<Record> result = new CompletableFuture<>();
+        this.client.get(eventLoops.next(), recordListener(result), policy, key);
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<boolean[]> existsAsync(BatchPolicy policy, Key[] keys) {
+        if (eventLoops == null) {
+            return AerospikeClientAccess.super.existsAsync(policy, keys);
+        }
+        CompletableFuture<boolean[]> result = new CompletableFuture<>();
+        this.client.exists(eventLoops.next(), new ExistsArrayListener() {
+            @Override
+            public void onSuccess(Key[] keys, boolean[] exists) {
+                result.complete(exists);
+            }
+            @Override
+            public void onFailure(AerospikeException exception) {
+                result.completeExceptionally(exception);
+            }
+        }, policy, keys);
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<Record[]> getAsync(BatchPolicy policy, Key[] keys) {
+        if (eventLoops == null) {
+            return AerospikeClientAccess.super.getAsync(policy, keys);
+        }
+        CompletableFuture<Record[]> result = new CompletableFuture<>();
+        this.client.get(eventLoops.next(), new RecordArrayListener() {
+            @Override
+            public void onSuccess(Key[] keys, Record[] records) {
+                result.complete(records);
+            }
+            @Override
+            public void onFailure(AerospikeException exception) {
+                result.completeExceptionally(exception);
+            }
+        }, policy, keys);
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<RecordMetadata> getMetadataAsync(WritePolicy policy, Key key) {
+        if (eventLoops == null) {
+            return AerospikeClientAccess.super.getMetadataAsync(policy, key);
+        }
+        CompletableFuture<Record> result = new CompletableFuture<>();
+        this.client.operate(eventLoops.next(), recordListener(result), policy, key, RecordMetadata.getMetadataOperations());
+        return result.thenApply(record -> record == null ? null : new RecordMetadata(record));
+    }
+
+    private RecordListener recordListener(CompletableFuture<Record> result) {
+        return new RecordListener() {
+            @Override
+            public void onSuccess(Key key, Record record) {
+                result.complete(record);
+            }
+            @Override
+            public void onFailure(AerospikeException exception) {
+                result.completeExceptionally(exception);
+            }
+        };
+    }
 }
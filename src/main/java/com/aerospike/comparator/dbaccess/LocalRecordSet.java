@@ -41,7 +41,7 @@ public class LocalRecordSet implements RecordSetAccess {
     }
     
     @Override
-    public byte[] getRecordHash(boolean sortMaps) {
-        return RemoteUtils.getRecordHash(this.getRecord(), sortMaps);
+    public byte[] getRecordHash(boolean sortMaps, RecordHashVersion version) {
+        return version.hash(this.getRecord(), sortMaps);
     }
 }
@@ -0,0 +1,195 @@
+package com.aerospike.comparator.dbaccess;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongConsumer;
+
+import com.aerospike.client.Bin;
+import com.aerospike.client.Key;
+import com.aerospike.client.Record;
+import com.aerospike.client.policy.BatchPolicy;
+import com.aerospike.client.policy.Policy;
+import com.aerospike.client.policy.QueryPolicy;
+import com.aerospike.client.policy.WritePolicy;
+import com.aerospike.client.query.PartitionFilter;
+import com.aerospike.client.query.Statement;
+
+/**
+ * Wraps the access to a cluster so every operation takes tokens from the cluster's {@link RecordRateLimiter}: one
+ * per key for single record and batch operations, and one per record returned by a scan. Info commands do not
+ * touch records so are not limited.
+ * <p>
+ * Asynchronous operations take their tokens on the calling thread before being sent, so event loop threads never
+ * wait on the limiter.
+ * <p>
+ * The time each scan takes to return its first record is passed to the scan latency listener. It is measured before
+ * the record takes its token, so time spent waiting on the limiter does not look like the cluster slowing down.
+ */
+public class RateLimitedClientAccess implements AerospikeClientAccess {
+    private final AerospikeClientAccess delegate;
+    private final RecordRateLimiter limiter;
+    private final LongConsumer scanLatencyListener;
+
+    private class RateLimitedRecordSet implements RecordSetAccess {
+        private final RecordSetAccess recordSet;
+        private long startNanos;
+
+        RateLimitedRecordSet(RecordSetAccess recordSet, long startNanos) {
+            this.recordSet = recordSet;
+            this.startNanos = startNanos;
+        }
+
+        @Override
+        public boolean next() {
+            boolean hasNext = recordSet.next();
+            if (startNanos != 0) {
+                scanLatencyListener.accept(System.nanoTime() - startNanos);
+                startNanos = 0;
+            }
+            if (hasNext) {
+                limiter.acquire(1);
+            }
+            return hasNext;
+        }
+
+        @Override
+        public Key getKey() {
+            return recordSet.getKey();
+        }
+
+        @Override
+        public Record getRecord() {
+            return recordSet.getRecord();
+        }
+
+        @Override
+        public byte[] getRecordHash(boolean sortMaps, RecordHashVersion version) {
+            return recordSet.getRecordHash(sortMaps, version);
+        }
+
+        @Override
+        public void close() {
+            recordSet.close();
+        }
+    }
+
+    public RateLimitedClientAccess(AerospikeClientAccess delegate, RecordRateLimiter limiter, LongConsumer scanLatencyListener) {
+        this.delegate = delegate;
+        this.limiter = limiter;
+        this.scanLatencyListener = scanLatencyListener;
+    }
+
+    public RecordRateLimiter getLimiter() {
+        return limiter;
+    }
+
+    @Override
+    public boolean isLocal() {
+        return delegate.isLocal();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    @Override
+    public void put(WritePolicy policy, Key key, Bin... bins) {
+        limiter.acquire(1);
+        delegate.put(policy, key, bins);
+    }
+
+    @Override
+    public void touch(WritePolicy policy, Key key) {
+        limiter.acquire(1);
+        delegate.touch(policy, key);
+    }
+
+    @Override
+    public void delete(WritePolicy policy, Key key) {
+        limiter.acquire(1);
+        delegate.delete(policy, key);
+    }
+
+    @Override
+    public boolean exists(Policy policy, Key key) {
+        limiter.acquire(1);
+        return delegate.exists(policy, key);
+    }
+
+    @Override
+    public Record get(Policy policy, Key key) {
+        limiter.acquire(1);
+        return delegate.get(policy, key);
+    }
+
+    @Override
+    public boolean[] exists(BatchPolicy policy, Key[] keys) {
+        limiter.acquire(keys.length);
+        return delegate.exists(policy, keys);
+    }
+
+    @Override
+    public Record[] get(BatchPolicy policy, Key[] keys) {
+        limiter.acquire(keys.length);
+        return delegate.get(policy, keys);
+    }
+
+    @Override
+    public RecordMetadata getMetadata(WritePolicy policy, Key key) {
+        limiter.acquire(1);
+        return delegate.getMetadata(policy, key);
+    }
+
+    @Override
+    public CompletableFuture<Void> touchAsync(WritePolicy policy, Key key) {
+        limiter.acquire(1);
+        return delegate.touchAsync(policy, key);
+    }
+
+    @Override
+    public CompletableFuture<Record> getAsync(Policy policy, Key key) {
+        limiter.acquire(1);
+        return delegate.getAsync(policy, key);
+    }
+
+    @Override
+    public CompletableFuture<boolean[]> existsAsync(BatchPolicy policy, Key[] keys) {
+        limiter.acquire(keys.length);
+        return delegate.existsAsync(policy, keys);
+    }
+
+    @Override
+    public CompletableFuture<Record[]> getAsync(BatchPolicy policy, Key[] keys) {
+        limiter.acquire(keys.length);
+        return delegate.getAsync(policy, keys);
+    }
+
+    @Override
+    public CompletableFuture<RecordMetadata> getMetadataAsync(WritePolicy policy, Key key) {
+        limiter.acquire(1);
+        return delegate.getMetadataAsync(policy, key);
+    }
+
+    @Override
+    public RecordSetAccess queryPartitions(QueryPolicy queryPolicy, Statement statement, PartitionFilter filter) {
+        long startNanos = System.nanoTime();
+        return new RateLimitedRecordSet(delegate.queryPartitions(queryPolicy, statement, filter), startNanos);
+    }
+
+    @Override
+    public Map<String, String> invokeInfoCommandOnAllNodes(String info) {
+        return delegate.invokeInfoCommandOnAllNodes(info);
+    }
+
+    @Override
+    public String invokeInfoCommandOnANode(String info) {
+        return delegate.invokeInfoCommandOnANode(info);
+    }
+
+    @Override
+    public List<String> getNodeNames() {
+        return delegate.getNodeNames();
+    }
+}
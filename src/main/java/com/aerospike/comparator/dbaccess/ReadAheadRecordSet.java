@@ -0,0 +1,155 @@
+package com.aerospike.comparator.dbaccess;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.Key;
+import com.aerospike.client.Record;
+
+/**
+ * Reads ahead on a record set from a local cluster into a bounded buffer on a separate thread. When comparing
+ * multiple clusters each cluster's stream is read ahead independently, so the waits on the different clusters
+ * overlap and the merge only consumes records which are already available unless the buffer is empty.
+ * <p>
+ * This is not used for remote clusters, which have their own read-ahead in the form of {@link CachedRecordSet}.
+ */
+public class ReadAheadRecordSet implements RecordSetAccess {
+    private static class Entry {
+        final Key key;
+        final Record record;
+
+        public Entry(Key key, Record record) {
+            this.key = key;
+            this.record = record;
+        }
+    }
+
+    private static final Entry END_OF_STREAM_ENTRY = new Entry(null, null);
+    // How often a consumer waiting on an empty buffer checks the filler is still running
+    private static final long FILLER_CHECK_MS = 100;
+    private final RecordSetAccess recordSet;
+    private final ArrayBlockingQueue<Entry> queue;
+    private final ReadAheadStats stats;
+    private final Future<?> filler;
+    private volatile boolean close = false;
+    private volatile Throwable failure = null;
+    private Entry current = null;
+    private boolean finished = false;
+
+    public ReadAheadRecordSet(RecordSetAccess recordSet, int depth, ExecutorService executor, ReadAheadStats stats) {
+        this.recordSet = recordSet;
+        this.queue = new ArrayBlockingQueue<>(depth);
+        this.stats = stats;
+        this.filler = executor.submit(this::fill);
+    }
+
+    private void fill() {
+        try {
+            while (!close && recordSet.next()) {
+                queue.put(new Entry(recordSet.getKey(), recordSet.getRecord()));
+            }
+        }
+        catch (Throwable t) {
+            // Pass the failure back to the consumer so the partition is flagged as failed. Being interrupted is only
+            // expected when closed, otherwise the executor is being shut down under the consumer.
+            if (!close) {
+                failure = t;
+            }
+        }
+        finally {
+            if (!close) {
+                try {
+                    queue.put(END_OF_STREAM_ENTRY);
+                }
+                catch (InterruptedException ie) {
+                    // The consumer sees the filler has stopped without this
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * Wait for the next entry. The filler always ends the stream unless closed, but waits with a timeout so that a
+     * filler which could not end the stream, such as one cancelled before it started, does not leave the consumer
+     * waiting forever.
+     */
+    private Entry take() throws InterruptedException {
+        while (true) {
+            Entry entry = queue.poll(FILLER_CHECK_MS, TimeUnit.MILLISECONDS);
+            if (entry != null) {
+                return entry;
+            }
+            if (filler.isDone()) {
+                entry = queue.poll();
+                if (entry != null) {
+                    return entry;
+                }
+                if (failure == null) {
+                    failure = new AerospikeException("Read ahead stopped before the end of the record set");
+                }
+                return END_OF_STREAM_ENTRY;
+            }
+        }
+    }
+
+    @Override
+    public boolean next() {
+        if (finished) {
+            return false;
+        }
+        Entry entry = queue.poll();
+        if (entry == null) {
+            long startTime = System.nanoTime();
+            try {
+                entry = take();
+            }
+            catch (InterruptedException e) {
+                throw new AerospikeException(e);
+            }
+            stats.addStall(System.nanoTime() - startTime);
+        }
+        stats.sampleDepth(queue.size());
+        if (entry == END_OF_STREAM_ENTRY) {
+            finished = true;
+            current = null;
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException)failure;
+            }
+            else if (failure instanceof Error) {
+                throw (Error)failure;
+            }
+            else if (failure != null) {
+                throw new AerospikeException(failure);
+            }
+            return false;
+        }
+        current = entry;
+        return true;
+    }
+
+    @Override
+    public Key getKey() {
+        return current == null ? null : current.key;
+    }
+
+    @Override
+    public Record getRecord() {
+        return current == null ? null : current.record;
+    }
+
+    @Override
+    public byte[] getRecordHash(boolean sortMaps, RecordHashVersion version) {
+        return version.hash(this.getRecord(), sortMaps);
+    }
+
+    @Override
+    public void close() {
+        this.close = true;
+        this.filler.cancel(true);
+        this.recordSet.close();
+    }
+}
@@ -0,0 +1,51 @@
+package com.aerospike.comparator.dbaccess;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics for the read-ahead buffers of one cluster, aggregated across all the partition scans on that
+ * cluster. A cluster with a high stall time and a low average queue depth is the one holding up the comparison.
+ */
+public class ReadAheadStats {
+    private final AtomicLong stallNanos = new AtomicLong();
+    private final AtomicLong stallCount = new AtomicLong();
+    private final AtomicLong depthTotal = new AtomicLong();
+    private final AtomicLong depthSamples = new AtomicLong();
+
+    /**
+     * Record that the consumer had to wait for a record to be read from the cluster.
+     */
+    public void addStall(long nanos) {
+        stallNanos.addAndGet(nanos);
+        stallCount.incrementAndGet();
+    }
+
+    /**
+     * Record the number of records buffered at the point a record was consumed.
+     */
+    public void sampleDepth(int depth) {
+        depthTotal.addAndGet(depth);
+        depthSamples.incrementAndGet();
+    }
+
+    public long getStallCount() {
+        return stallCount.get();
+    }
+
+    public long getStallTimeMs() {
+        return TimeUnit.NANOSECONDS.toMillis(stallNanos.get());
+    }
+
+    public double getAverageDepth() {
+        long samples = depthSamples.get();
+        return samples == 0 ? 0.0 : (double)depthTotal.get() / samples;
+    }
+
+    public void reset() {
+        stallNanos.set(0);
+        stallCount.set(0);
+        depthTotal.set(0);
+        depthSamples.set(0);
+    }
+}
@@ -0,0 +1,47 @@
+package com.aerospike.comparator.dbaccess;
+
+import com.aerospike.client.Record;
+
+/**
+ * The ways of hashing a record. Hashes are only comparable if formed the same way, so the comparator and any remote
+ * server it uses agree on the version before exchanging hashes.
+ */
+public enum RecordHashVersion {
+    /** Java serialization of the bins, hashed with RIPEMD160. Understood by every remote server. */
+    LEGACY(1),
+    /** A canonical encoding of the bins, streamed into a 128 bit hash. See {@link CanonicalRecordHasher}. */
+    CANONICAL(2);
+
+    private final int id;
+
+    private RecordHashVersion(int id) {
+        this.id = id;
+    }
+
+    /**
+     * The number of this version when sent between the comparator and a remote server.
+     */
+    public int getId() {
+        return id;
+    }
+
+    public static RecordHashVersion fromId(int id) {
+        for (RecordHashVersion version : values()) {
+            if (version.id == id) {
+                return version;
+            }
+        }
+        return null;
+    }
+
+    public static RecordHashVersion latest() {
+        return CANONICAL;
+    }
+
+    public byte[] hash(Record record, boolean sortMaps) {
+        if (this == CANONICAL) {
+            return CanonicalRecordHasher.hash(record.bins, sortMaps);
+        }
+        return RemoteUtils.getLegacyRecordHash(record, sortMaps);
+    }
+}
@@ -0,0 +1,107 @@
+package com.aerospike.comparator.dbaccess;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Limits the records per second read from or written to one cluster, across every thread using it. Each operation
+ * takes one token per record it touches, so a batch of 100 keys costs the same as a scan returning 100 records.
+ * <p>
+ * The bucket is held as the time at which the next token is free, advanced with a compare-and-set, so threads never
+ * block each other to take tokens. Up to a second of tokens can be used at once after the cluster has been idle.
+ */
+public class RecordRateLimiter {
+    private static final long BURST_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private volatile int recordsPerSecond;
+    private final AtomicLong nextFreeNanos = new AtomicLong(System.nanoTime());
+    private final LongAdder recordsUsed = new LongAdder();
+
+    // Guarded by this, used to report the observed rate
+    private long lastObservedRecords = 0;
+    private long lastObservedNanos = System.nanoTime();
+    private volatile long observedRecordsPerSecond = 0;
+
+    /**
+     * Form a limiter allowing the passed records per second. 0 means unlimited, in which case records are still
+     * counted so the rate can be reported.
+     */
+    public RecordRateLimiter(int recordsPerSecond) {
+        this.recordsPerSecond = Math.max(0, recordsPerSecond);
+    }
+
+    /**
+     * Take tokens for the passed number of records, waiting until they are available.
+     */
+    public void acquire(int records) {
+        if (records <= 0) {
+            return;
+        }
+        recordsUsed.add(records);
+        int rps = recordsPerSecond;
+        if (rps <= 0) {
+            return;
+        }
+        long cost = records * TimeUnit.SECONDS.toNanos(1) / rps;
+        long now = System.nanoTime();
+        long nextFree;
+        long current;
+        do {
+            current = nextFreeNanos.get();
+            nextFree = Math.max(current, now) + cost;
+        } while (!nextFreeNanos.compareAndSet(current, nextFree));
+
+        long deadline = nextFree - BURST_NANOS;
+        long waitNanos;
+        while ((waitNanos = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(this, waitNanos);
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Change the records per second allowed, with 0 meaning unlimited. Records already waiting are not affected.
+     */
+    public void setRecordsPerSecond(int recordsPerSecond) {
+        this.recordsPerSecond = Math.max(0, recordsPerSecond);
+        // Forget the debt built up at the old rate so the new rate applies from now
+        nextFreeNanos.set(System.nanoTime());
+    }
+
+    public int getRecordsPerSecond() {
+        return recordsPerSecond;
+    }
+
+    /**
+     * The total records which have taken tokens from this limiter.
+     */
+    public long getRecordsUsed() {
+        return recordsUsed.sum();
+    }
+
+    /**
+     * Work out the records per second used since the last call. Called periodically by the progress monitor.
+     */
+    public synchronized long updateObservedRate() {
+        long now = System.nanoTime();
+        long records = recordsUsed.sum();
+        long elapsed = now - lastObservedNanos;
+        if (elapsed > 0) {
+            observedRecordsPerSecond = (records - lastObservedRecords) * TimeUnit.SECONDS.toNanos(1) / elapsed;
+        }
+        lastObservedRecords = records;
+        lastObservedNanos = now;
+        return observedRecordsPerSecond;
+    }
+
+    /**
+     * The records per second used, as of the last call to {@link #updateObservedRate()}.
+     */
+    public long getObservedRecordsPerSecond() {
+        return observedRecordsPerSecond;
+    }
+}
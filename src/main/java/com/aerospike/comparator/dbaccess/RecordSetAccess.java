@@ -7,6 +7,6 @@ public interface RecordSetAccess {
     boolean next();
     Key getKey();
     Record getRecord();
-    byte[] getRecordHash(boolean sortMaps);
+    byte[] getRecordHash(boolean sortMaps, RecordHashVersion version);
     void close();
 }
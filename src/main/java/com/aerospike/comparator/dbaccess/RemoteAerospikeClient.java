@@ -1,7 +1,9 @@
 package com.aerospike.comparator.dbaccess;
 
 import java.io.IOException;
+import java.net.SocketTimeoutException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -21,14 +23,71 @@ import com.aerospike.comparator.ClusterComparatorOptions;
 import com.aerospike.comparator.ClusterComparatorOptions.CompareMode;
 
 public class RemoteAerospikeClient implements AerospikeClientAccess {
+    /**
+     * Passes on the records of a whole partition scan which come after a digest, as <code>PartitionFilter.after</code>
+     * does on servers which support it. Scans return digests in descending order, so this skips records until the
+     * first digest below the passed one.
+     */
+    static class AfterDigestRecordSet implements RecordSetAccess {
+        private final RecordSetAccess recordSet;
+        private final byte[] afterDigest;
+        private boolean skipping = true;
+
+        public AfterDigestRecordSet(RecordSetAccess recordSet, byte[] afterDigest) {
+            this.recordSet = recordSet;
+            this.afterDigest = afterDigest;
+        }
+
+        @Override
+        public boolean next() {
+            while (recordSet.next()) {
+                if (!skipping || Arrays.compareUnsigned(recordSet.getKey().digest, afterDigest) < 0) {
+                    skipping = false;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public Key getKey() {
+            return recordSet.getKey();
+        }
+
+        @Override
+        public Record getRecord() {
+            return recordSet.getRecord();
+        }
+
+        @Override
+        public byte[] getRecordHash(boolean sortMaps, RecordHashVersion version) {
+            return recordSet.getRecordHash(sortMaps, version);
+        }
+
+        @Override
+        public void close() {
+            recordSet.close();
+        }
+    }
+
 
     private final ConnectionPool pool;
+    private final String address;
     private final int cacheSize;
     private final boolean useHashes;
     private final CompareMode compareMode;
+    // The version the remote server hashes records with. Servers start every comparison with legacy hashes.
+    private RecordHashVersion recordHashVersion = RecordHashVersion.LEGACY;
+    // The latest record hash version the remote server knows, 0 if it does not know versions, -1 until asked
+    private int serverHashVersion = -1;
+    // How long to wait for a remote server to say which record hash versions it knows. Servers from before hashes
+    // were versioned ignore the request.
+    private static final int HASH_VERSION_TIMEOUT_MS = 10_000;
+    private int hashVersionTimeoutMs = HASH_VERSION_TIMEOUT_MS;
     
     public RemoteAerospikeClient(String host, int port, int defaultPoolSize, TlsPolicy tlsPolicy, ClusterComparatorOptions options) throws IOException {
         this.pool = new ConnectionPool(host, port, defaultPoolSize, tlsPolicy);
+        this.address = host + ":" + port;
         this.cacheSize = options.getRemoteCacheSize();
         this.useHashes = options.isRemoteServerHashes();
         this.compareMode = options.getCompareMode();
@@ -42,6 +101,7 @@ public class RemoteAerospikeClient implements AerospikeClientAccess {
      */
     public RemoteAerospikeClient(String host, int port, TlsPolicy tlsPolicy) throws IOException {
         this.pool = new ConnectionPool(host, port, 1, tlsPolicy);
+        this.address = host + ":" + port;
         this.cacheSize = 0;
         this.useHashes = false;
         this.compareMode = CompareMode.MISSING_RECORDS;
@@ -65,6 +125,118 @@ public class RemoteAerospikeClient implements AerospikeClientAccess {
         }
     }
     
+    /**
+     * The host and port of the remote server.
+     */
+    public String getAddress() {
+        return address;
+    }
+    
+    void setHashVersionTimeout(int timeoutMs) {
+        this.hashVersionTimeoutMs = timeoutMs;
+    }
+    
+    /**
+     * The latest record hash version the remote server knows, asking it the first time. Servers from before hashes
+     * were versioned ignore the request, so after a timeout this returns 0 and the connection is closed.
+     */
+    private synchronized int getServerHashVersion() {
+        if (serverHashVersion >= 0) {
+            return serverHashVersion;
+        }
+        Connection conn = null;
+        boolean reusable = false;
+        try {
+            conn = this.pool.borrow();
+            conn.setReadTimeout(hashVersionTimeoutMs);
+            conn.getDos().write(RemoteServer.CMD_GET_RECORD_HASH_VERSION);
+            try {
+                serverHashVersion = conn.getDis().readInt();
+            }
+            catch (SocketTimeoutException ste) {
+                // The server has not read the request as a command, so the connection cannot be used again
+                serverHashVersion = 0;
+                return serverHashVersion;
+            }
+            conn.setReadTimeout(0);
+            reusable = true;
+            return serverHashVersion;
+        }
+        catch (IOException ioe) {
+            throw new AerospikeException(ioe);
+        }
+        finally {
+            if (conn != null) {
+                if (reusable) {
+                    this.pool.release(conn);
+                }
+                else {
+                    this.pool.discard(conn);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Whether the remote server can start a partition scan after a digest, as needed to compare split partitions
+     * and to retry a partition from where it failed. This came before record hash versions, so servers which know
+     * versions can. Other servers scan the whole partition and the digests before the resume point are skipped here.
+     */
+    public boolean supportsScansAfterDigest() {
+        return getServerHashVersion() > 0;
+    }
+    
+    /**
+     * Ask the remote server to hash records with the passed version, so its hashes match the ones formed here. A
+     * server which does not know the version is left on {@link RecordHashVersion#LEGACY}, which every server knows,
+     * with a warning.
+     * @return the version the remote server hashes records with
+     */
+    public RecordHashVersion useRecordHashVersion(RecordHashVersion version) {
+        if (version == this.recordHashVersion) {
+            return version;
+        }
+        if (version != RecordHashVersion.LEGACY) {
+            int latest = getServerHashVersion();
+            if (latest == 0) {
+                System.out.printf("Warning: remote server %s does not support record hash versions, using %s record hashes. "
+                        + "Upgrade the remote server to use %s record hashes\n", address, RecordHashVersion.LEGACY, version);
+                return RecordHashVersion.LEGACY;
+            }
+            if (latest < version.getId()) {
+                System.out.printf("Warning: remote server %s only supports record hash versions up to %d, not %s (%d), using %s record hashes. "
+                        + "Upgrade the remote server to use %s record hashes\n", address, latest, version, version.getId(), RecordHashVersion.LEGACY, version);
+                return RecordHashVersion.LEGACY;
+            }
+        }
+        Connection conn = null;
+        boolean reusable = false;
+        try {
+            conn = this.pool.borrow();
+            conn.getDos().write(RemoteServer.CMD_SET_RECORD_HASH_VERSION);
+            conn.getDos().writeInt(version.getId());
+            if (conn.getDis().readInt() != 0) {
+                throw new AerospikeException("The remote server rejected record hash version " + version);
+            }
+            reusable = true;
+            this.recordHashVersion = version;
+            return version;
+        }
+        catch (IOException ioe) {
+            throw new AerospikeException(ioe);
+        }
+        finally {
+            if (conn != null) {
+                if (reusable) {
+                    this.pool.release(conn);
+                }
+                else {
+                    this.pool.discard(conn);
+                }
+            }
+        }
+    }
+    
     @Override
     public void close() {
         Connection conn = null;
@@ -256,7 +428,14 @@ public class RemoteAerospikeClient implements AerospikeClientAccess {
         Connection conn = null;
         try {
             conn = this.pool.borrow();
-            conn.getDos().write(RemoteServer.CMD_QUERY_PARTITION);
+            byte[] afterDigest = filter.getDigest();
+            byte[] skipToDigest = null;
+            if (afterDigest != null && !supportsScansAfterDigest()) {
+                // Scan the whole partition, which the filter's begin and count already describe
+                skipToDigest = afterDigest;
+                afterDigest = null;
+            }
+            conn.getDos().write(afterDigest == null ? RemoteServer.CMD_QUERY_PARTITION : RemoteServer.CMD_QUERY_PARTITION_AFTER_DIGEST);
             conn.getDos().writeInt(queryPolicy.maxConcurrentNodes);
             conn.getDos().writeBoolean(queryPolicy.includeBinData);
             conn.getDos().writeBoolean(queryPolicy.shortQuery);
@@ -273,9 +452,14 @@ public class RemoteAerospikeClient implements AerospikeClientAccess {
             conn.getDos().writeInt(statement.getRecordsPerSecond());
             conn.getDos().writeInt(filter.getBegin());
             conn.getDos().writeInt(filter.getCount());
+            if (afterDigest != null) {
+                conn.getDos().writeInt(afterDigest.length);
+                conn.getDos().write(afterDigest);
+            }
             conn.getDis().readUTF();    // Getting this back means the server is ready.
             // We keep hold of this connection until the recordset is closed, which simplifies the back-and-forth
-            return new RemoteRecordSet(pool, conn, this.cacheSize, useHashes, compareMode);
+            RecordSetAccess recordSet = new RemoteRecordSet(pool, conn, this.cacheSize, useHashes, compareMode);
+            return skipToDigest == null ? recordSet : new AfterDigestRecordSet(recordSet, skipToDigest);
         }
         catch (IOException ioe) {
             RemoteUtils.handleIOException(ioe);
@@ -67,7 +67,8 @@ public class RemoteRecordSet implements RecordSetAccess {
     }
 
     @Override
-    public byte[] getRecordHash(boolean sortMaps) {
+    public byte[] getRecordHash(boolean sortMaps, RecordHashVersion version) {
+        // The remote server hashes the records with the version agreed when the client connected
         if (cachedRecordSet != null) {
             return cachedRecordSet.getRecordHash();
         }
@@ -23,6 +23,7 @@ import com.aerospike.client.policy.TlsPolicy;
 import com.aerospike.client.policy.WritePolicy;
 import com.aerospike.client.query.PartitionFilter;
 import com.aerospike.client.query.Statement;
+import com.aerospike.comparator.ThreadSupport;
 
 public class RemoteServer {
     public static final int CMD_CLOSE = 1;
@@ -47,6 +48,9 @@ public class RemoteServer {
     public static final int CMD_BATCH_EXISTS = 20;
     public static final int CMD_BATCH_GET = 21;
     public static final int CMD_PUT = 22;
+    public static final int CMD_QUERY_PARTITION_AFTER_DIGEST = 23;
+    public static final int CMD_GET_RECORD_HASH_VERSION = 24;
+    public static final int CMD_SET_RECORD_HASH_VERSION = 25;
     
     private final boolean debug;
     private final boolean verbose;
@@ -172,7 +176,7 @@ public class RemoteServer {
                 System.out.printf("New client connection established: %s\n", dumpSocketDetails(socket));
                 
                 SocketHandler handler = new SocketHandler(socket, client, this.debug);
-                Thread thread = new Thread(handler);
+                Thread thread = ThreadSupport.newThread("socket-handler", handler);
                 thread.start();
             }
             catch (IOException ioe) {
@@ -192,6 +196,8 @@ public class RemoteServer {
         private final Socket socket;
         private final boolean debug;
         private static volatile boolean sortMaps = false;
+        // Stays legacy unless the client asks for another version, as clients before versioning expect
+        private static volatile RecordHashVersion hashVersion = RecordHashVersion.LEGACY;
         
         public SocketHandler(Socket socket, AerospikeClientAccess client, boolean debug) throws IOException {
             this.client = client;
@@ -201,7 +207,7 @@ public class RemoteServer {
             this.dos = new DataOutputStream(socket.getOutputStream());
         }
         
-        private void doQueryPartition() throws IOException {
+        private void doQueryPartition(boolean afterDigest) throws IOException {
             QueryPolicy qp = new QueryPolicy();
             qp.maxConcurrentNodes = dis.readInt();
             qp.includeBinData = dis.readBoolean();
@@ -222,12 +228,15 @@ public class RemoteServer {
             
             int begin = dis.readInt();
             int count = dis.readInt();
+            byte[] digest = afterDigest ? dis.readNBytes(dis.readInt()) : null;
             
             if (debug) {
-                System.out.printf("Starting query partition (%d, %d, %b, %d, %b)\n",
-                        begin, count, qp.includeBinData, qp.maxConcurrentNodes, qp.shortQuery);
+                System.out.printf("Starting query partition (%d, %d, %b, %d, %b, %b)\n",
+                        begin, count, qp.includeBinData, qp.maxConcurrentNodes, qp.shortQuery, afterDigest);
             }
-            PartitionFilter partitionFilter = PartitionFilter.range(begin, count);
+            PartitionFilter partitionFilter = afterDigest ? 
+                    PartitionFilter.after(new Key(stmt.getNamespace(), digest, stmt.getSetName(), null)) :
+                    PartitionFilter.range(begin, count);
             RecordSetAccess recordsSet = client.queryPartitions(qp, stmt, partitionFilter);
             dos.writeUTF("Ready");
             boolean done = false;
@@ -256,7 +265,7 @@ public class RemoteServer {
                                 }
                                 RemoteUtils.sendKey(key, dos);
                                 if (command == CMD_RS_MULTI_RECORD_HASH) {
-                                    RemoteUtils.sendRecordHash(recordsSet.getRecord(), dos, sortMaps);
+                                    RemoteUtils.sendRecordHash(recordsSet.getRecord(), dos, sortMaps, hashVersion);
                                 }
                                 else if (command == CMD_RS_MULTI) {
                                     RemoteUtils.sendRecord(recordsSet.getRecord(), dos);
@@ -318,7 +327,7 @@ public class RemoteServer {
                             now = System.nanoTime();
                         }
                         record = recordsSet.getRecord();
-                        RemoteUtils.sendRecordHash(record, dos, sortMaps);
+                        RemoteUtils.sendRecordHash(record, dos, sortMaps, hashVersion);
                         if (this.debug) {
                             long time = System.nanoTime() - now;
                             System.out.printf("Finished processing request for record in %,dus\n", time/1000);
@@ -361,8 +370,25 @@ public class RemoteServer {
 
         private void doConfig() throws IOException {
             sortMaps = dis.readBoolean();
+            // A new comparison, which asks for another version after this if it wants one
+            hashVersion = RecordHashVersion.LEGACY;
             dos.writeInt(0);
         }
+        
+        private void doGetRecordHashVersion() throws IOException {
+            dos.writeInt(RecordHashVersion.latest().getId());
+        }
+        
+        private void doSetRecordHashVersion() throws IOException {
+            RecordHashVersion version = RecordHashVersion.fromId(dis.readInt());
+            if (version == null) {
+                dos.writeInt(-1);
+            }
+            else {
+                hashVersion = version;
+                dos.writeInt(0);
+            }
+        }
         private void doTouch() throws IOException {
             WritePolicy policy = new WritePolicy();
             policy = (WritePolicy) RemoteUtils.readPolicy(policy, dis);
@@ -470,6 +496,14 @@ public class RemoteServer {
                         doConfig();
                         break;
                         
+                    case CMD_GET_RECORD_HASH_VERSION:
+                        doGetRecordHashVersion();
+                        break;
+                        
+                    case CMD_SET_RECORD_HASH_VERSION:
+                        doSetRecordHashVersion();
+                        break;
+                        
                     case CMD_CLOSE:
                         done = true;
                         dos.writeInt(0);
@@ -492,7 +526,11 @@ public class RemoteServer {
                         break;
                         
                     case CMD_QUERY_PARTITION:
-                        doQueryPartition();
+                        doQueryPartition(false);
+                        break;
+                        
+                    case CMD_QUERY_PARTITION_AFTER_DIGEST:
+                        doQueryPartition(true);
                         break;
                         
                     case CMD_INVOKE_INFO_CMD_ON_ALL_NODES:
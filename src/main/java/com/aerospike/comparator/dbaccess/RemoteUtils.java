@@ -236,7 +236,7 @@ public class RemoteUtils {
         }
     }
     
-    public static void sendRecordHash(Record record, DataOutputStream dos, boolean sortMaps) throws IOException{
+    public static void sendRecordHash(Record record, DataOutputStream dos, boolean sortMaps, RecordHashVersion version) throws IOException{
         if (record == null) {
             dos.writeBoolean(false);
         }
@@ -244,7 +244,7 @@ public class RemoteUtils {
             dos.writeBoolean(true);
             dos.writeInt(record.expiration);
             dos.writeInt(record.generation);
-            byte[] hash = getRecordHash(record, sortMaps);
+            byte[] hash = version.hash(record, sortMaps);
             dos.writeInt(hash.length);
             dos.write(hash);
         }
@@ -301,14 +301,22 @@ public class RemoteUtils {
         }
         else if (object instanceof List) {
             List<Object> list = (List<Object>)object;
+            // Copy the list on the first change rather than altering the record being hashed
+            List<Object> copy = null;
             for (int i = 0; i < list.size(); i++) {
                 Object obj = list.get(i);
                 Object newObj = turnAnyMapsToLists(obj, comparator);
                 // deliberately compare object references
                 if (obj != newObj) {
-                    list.set(i, newObj);
+                    if (copy == null) {
+                        copy = new ArrayList<>(list);
+                    }
+                    copy.set(i, newObj);
                 }
             }
+            if (copy != null) {
+                return copy;
+            }
         }
         return object;
     }
@@ -330,6 +338,13 @@ public class RemoteUtils {
         return getHash(list);
     }
     
+    /**
+     * Return a hash representing the record, formed as the passed version forms it.
+     */
+    public static byte[] getRecordHash(Record record, boolean sortMaps, RecordHashVersion version) {
+        return version.hash(record, sortMaps);
+    }
+    
     /**
      * Return a hash representing the record. This has is 20 bytes of random noise computed by <code>RIPEMD160</code>
      * hashing algorithm. Whilst this is not guaranteed to be unique, the probability of 2 hashes colliding is ~1 in 1e48
@@ -340,7 +355,7 @@ public class RemoteUtils {
      * @param record
      * @return The hash of the passed record.
      */
-    public static byte[] getRecordHash(Record record, boolean sortMaps) {
+    static byte[] getLegacyRecordHash(Record record, boolean sortMaps) {
         if (sortMaps) {
             return getMapHash(record.bins);
         }
@@ -6,6 +6,7 @@ import java.util.List;
 
 import com.aerospike.comparator.ClusterComparator;
 import com.aerospike.comparator.ClusterComparatorOptions;
+import com.aerospike.comparator.ConcurrencyController;
 import com.aerospike.comparator.DifferenceSummary;
 
 public class ComparisonSession {
@@ -71,6 +72,25 @@ public class ComparisonSession {
         return snapshot;
     }
 
+    /**
+     * The running comparison, or null if no comparison is running.
+     */
+    public ClusterComparator getRunningComparator() {
+        ClusterComparator current = comparator;
+        if (current == null || state != State.RUNNING) {
+            return null;
+        }
+        return current;
+    }
+
+    /**
+     * The controller of the workers and RPS of the running comparison, or null if no comparison is running.
+     */
+    public ConcurrencyController getConcurrencyController() {
+        ClusterComparator current = getRunningComparator();
+        return current == null ? null : current.getConcurrencyController();
+    }
+
     public State getState() {
         return state;
     }
@@ -12,6 +12,13 @@ public class ProgressSnapshot {
     private final String outputFile;
     private String state;
     private long completedAt;
+    private long[] readAheadStallMsPerCluster;
+    private double[] readAheadAverageDepthPerCluster;
+    private int workerLimit;
+    private int recordsPerSecondLimit;
+    private boolean adaptiveConcurrency;
+    private long[] observedRpsPerCluster;
+    private int[] rpsLimitPerCluster;
 
     public ProgressSnapshot(long[] recordsProcessedPerCluster, long[] recordsMissingPerCluster,
             long recordsDifferent, long totalMissingRecords, long totalRecordsCompared,
@@ -71,6 +78,50 @@ public class ProgressSnapshot {
         this.state = state;
     }
 
+    public long[] getReadAheadStallMsPerCluster() {
+        return readAheadStallMsPerCluster;
+    }
+
+    public double[] getReadAheadAverageDepthPerCluster() {
+        return readAheadAverageDepthPerCluster;
+    }
+
+    public void setReadAheadStats(long[] stallMsPerCluster, double[] averageDepthPerCluster) {
+        this.readAheadStallMsPerCluster = stallMsPerCluster;
+        this.readAheadAverageDepthPerCluster = averageDepthPerCluster;
+    }
+
+    public int getWorkerLimit() {
+        return workerLimit;
+    }
+
+    public int getRecordsPerSecondLimit() {
+        return recordsPerSecondLimit;
+    }
+
+    public boolean isAdaptiveConcurrency() {
+        return adaptiveConcurrency;
+    }
+
+    public void setConcurrency(int workerLimit, int recordsPerSecondLimit, boolean adaptiveConcurrency) {
+        this.workerLimit = workerLimit;
+        this.recordsPerSecondLimit = recordsPerSecondLimit;
+        this.adaptiveConcurrency = adaptiveConcurrency;
+    }
+
+    public long[] getObservedRpsPerCluster() {
+        return observedRpsPerCluster;
+    }
+
+    public int[] getRpsLimitPerCluster() {
+        return rpsLimitPerCluster;
+    }
+
+    public void setClusterRates(long[] observedRpsPerCluster, int[] rpsLimitPerCluster) {
+        this.observedRpsPerCluster = observedRpsPerCluster;
+        this.rpsLimitPerCluster = rpsLimitPerCluster;
+    }
+
     public long getCompletedAt() {
         return completedAt;
     }
@@ -23,7 +23,9 @@ import com.aerospike.client.Value;
 import com.aerospike.client.policy.ClientPolicy;
 import com.aerospike.client.policy.AuthMode;
 import com.aerospike.client.policy.WritePolicy;
+import com.aerospike.comparator.ClusterComparator;
 import com.aerospike.comparator.ClusterComparatorOptions;
+import com.aerospike.comparator.ConcurrencyController;
 import com.aerospike.comparator.dbaccess.AerospikeClientAccess;
 import com.aerospike.comparator.dbaccess.LocalAerospikeClient;
 import com.aerospike.comparator.dbaccess.RemoteAerospikeClient;
@@ -97,6 +99,32 @@ public class WebServer {
         }
     }
 
+    private static Map<String, Object> concurrencyToMap(ConcurrencyController controller) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("adaptive", controller.isAdaptive());
+        result.put("workers", controller.getWorkerLimit());
+        result.put("workersRunning", controller.getWorkersRunning());
+        result.put("minWorkers", controller.getMinWorkers());
+        result.put("maxWorkers", controller.getMaxWorkers());
+        result.put("rps", controller.getRecordsPerSecond());
+        result.put("minRps", controller.getMinRps());
+        result.put("maxRps", controller.getMaxRps());
+        result.put("adjustments", controller.getAdjustments());
+        return result;
+    }
+
+    private static List<Map<String, Object>> rateLimitsToList(ClusterComparator comparator) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (int i = 0; i < comparator.getNumberOfClusters(); i++) {
+            Map<String, Object> cluster = new HashMap<>();
+            cluster.put("cluster", i + 1);
+            cluster.put("rps", comparator.getClusterRps(i));
+            cluster.put("observedRps", comparator.getObservedClusterRps(i));
+            result.add(cluster);
+        }
+        return result;
+    }
+
     private static String customerUserKey(int keyNum) {
         return "customer-" + keyNum;
     }
@@ -238,6 +266,81 @@ public class WebServer {
             ctx.json(status);
         });
 
+        app.get("/api/concurrency", ctx -> {
+            ConcurrencyController controller = session.getConcurrencyController();
+            if (controller == null) {
+                ctx.status(409).json(Map.of("error", "No comparison is running"));
+                return;
+            }
+            ctx.json(concurrencyToMap(controller));
+        });
+
+        app.put("/api/concurrency", ctx -> {
+            ConcurrencyController controller = session.getConcurrencyController();
+            if (controller == null) {
+                ctx.status(409).json(Map.of("error", "No comparison is running"));
+                return;
+            }
+            @SuppressWarnings("unchecked")
+            Map<String, Object> body = ctx.bodyAsClass(Map.class);
+            try {
+                if (body.get("adaptive") != null) {
+                    controller.setAdaptive(Boolean.parseBoolean(body.get("adaptive").toString()));
+                }
+                Integer workers = body.get("workers") == null ? null : Integer.valueOf(body.get("workers").toString());
+                Integer rps = body.get("rps") == null ? null : Integer.valueOf(body.get("rps").toString());
+                controller.setLimits(workers, rps);
+            } catch (NumberFormatException e) {
+                ctx.status(400).json(Map.of("error", "workers and rps must be integers: " + e.getMessage()));
+                return;
+            }
+            ctx.json(concurrencyToMap(controller));
+        });
+
+        app.get("/api/rate-limits", ctx -> {
+            ClusterComparator comparator = session.getRunningComparator();
+            if (comparator == null) {
+                ctx.status(409).json(Map.of("error", "No comparison is running"));
+                return;
+            }
+            ctx.json(rateLimitsToList(comparator));
+        });
+
+        app.put("/api/rate-limits", ctx -> {
+            ClusterComparator comparator = session.getRunningComparator();
+            if (comparator == null) {
+                ctx.status(409).json(Map.of("error", "No comparison is running"));
+                return;
+            }
+            @SuppressWarnings("unchecked")
+            Map<String, Object> body = ctx.bodyAsClass(Map.class);
+            int clusters = comparator.getNumberOfClusters();
+            try {
+                if (body.get("rps") == null) {
+                    ctx.status(400).json(Map.of("error", "rps must be specified"));
+                    return;
+                }
+                int rps = Integer.parseInt(body.get("rps").toString());
+                if (body.get("cluster") == null) {
+                    for (int i = 0; i < clusters; i++) {
+                        comparator.setClusterRps(i, rps);
+                    }
+                }
+                else {
+                    int cluster = Integer.parseInt(body.get("cluster").toString());
+                    if (cluster < 1 || cluster > clusters) {
+                        ctx.status(400).json(Map.of("error", "cluster must be in the range 1 to " + clusters));
+                        return;
+                    }
+                    comparator.setClusterRps(cluster - 1, rps);
+                }
+            } catch (NumberFormatException e) {
+                ctx.status(400).json(Map.of("error", "cluster and rps must be integers: " + e.getMessage()));
+                return;
+            }
+            ctx.json(rateLimitsToList(comparator));
+        });
+
         app.post("/api/test-connection", ctx -> {
             @SuppressWarnings("unchecked")
             Map<String, Object> body = ctx.bodyAsClass(Map.class);
@@ -108,8 +108,12 @@ public abstract class AbstractBaseTest {
     }
 
     protected Key uniqueKey(String suffix) {
+        return uniqueKey(getTestSetName(), suffix);
+    }
+
+    protected Key uniqueKey(String setName, String suffix) {
         long id = ThreadLocalRandom.current().nextLong(1_000_000_000L, Long.MAX_VALUE);
-        Key key = new Key(NAMESPACE, getTestSetName(), suffix + "-" + id);
+        Key key = new Key(NAMESPACE, setName, suffix + "-" + id);
         keysToCleanup.add(key);
         return key;
     }
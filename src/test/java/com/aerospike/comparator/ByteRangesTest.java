@@ -0,0 +1,83 @@
+package com.aerospike.comparator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class ByteRangesTest {
+    private static void assertRange(ByteRanges.Range range, int start, int end1, int end2) {
+        assertEquals(start, range.getStart());
+        assertEquals(end1, range.getEnd1());
+        assertEquals(end2, range.getEnd2());
+    }
+
+    private static byte[] blob(int length, long seed) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void sameLengthBlobs() {
+        byte[] bytes1 = blob(200, 1);
+        byte[] bytes2 = bytes1.clone();
+        assertTrue(ByteRanges.between(bytes1, bytes2, 5).getRanges().isEmpty());
+
+        bytes2[3]++;
+        bytes2[5]++;
+        bytes2[100]++;
+        bytes2[199]++;
+        ByteRanges ranges = ByteRanges.between(bytes1, bytes2, 5);
+        List<ByteRanges.Range> list = ranges.getRanges();
+        assertEquals(3, list.size());
+        assertRange(list.get(0), 3, 6, 6);
+        assertRange(list.get(1), 100, 101, 101);
+        assertRange(list.get(2), 199, 200, 200);
+        assertFalse(ranges.isTruncated());
+
+        ranges = ByteRanges.between(bytes1, bytes2, 2);
+        assertEquals(2, ranges.getRanges().size());
+        assertTrue(ranges.isTruncated());
+    }
+
+    @Test
+    public void differentLengthBlobs() {
+        byte[] bytes1 = blob(100, 2);
+        byte[] bytes2 = new byte[103];
+        System.arraycopy(bytes1, 0, bytes2, 0, 40);
+        bytes2[40] = 1;
+        bytes2[41] = 2;
+        bytes2[42] = 3;
+        System.arraycopy(bytes1, 40, bytes2, 43, 60);
+        List<ByteRanges.Range> list = ByteRanges.between(bytes1, bytes2, 5).getRanges();
+        assertEquals(1, list.size());
+        // The inserted bytes may happen to match the bytes either side of them
+        assertTrue(list.get(0).getStart() <= 40);
+        assertEquals(list.get(0).getEnd2() - list.get(0).getEnd1(), 3);
+
+        byte[] prefix = new byte[] {1, 1};
+        byte[] longer = new byte[] {1, 1, 1};
+        assertRange(ByteRanges.between(prefix, longer, 5).getRanges().get(0), 2, 2, 3);
+        assertRange(ByteRanges.between(longer, prefix, 5).getRanges().get(0), 2, 3, 2);
+    }
+
+    @Test
+    public void largeBlobs() {
+        byte[] bytes1 = blob(ByteRanges.LARGE_BLOB_SIZE * 8, 3);
+        byte[] bytes2 = bytes1.clone();
+        // Three blocks which differ throughout, then one byte
+        byte[] noise = blob(3 * 4096, 4);
+        System.arraycopy(noise, 0, bytes2, 10000, noise.length);
+        bytes2[400000]++;
+        List<ByteRanges.Range> list = ByteRanges.between(bytes1, bytes2, 10).getRanges();
+        assertEquals(2, list.size());
+        assertTrue(list.get(0).getStart() >= 10000 && list.get(0).getStart() < 10010);
+        assertTrue(list.get(0).getEnd1() <= 10000 + noise.length && list.get(0).getEnd1() > 10000 + noise.length - 10);
+        assertRange(list.get(1), 400000, 400001, 400001);
+    }
+}
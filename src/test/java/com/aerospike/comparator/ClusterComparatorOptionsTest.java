@@ -4,6 +4,8 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.Map;
+
 import org.junit.jupiter.api.Test;
 
 public class ClusterComparatorOptionsTest {
@@ -31,4 +33,19 @@ public class ClusterComparatorOptionsTest {
         assertTrue(ClusterComparatorOptions.isValidThreadsValue(32));
         assertFalse(ClusterComparatorOptions.isValidThreadsValue(-2));
     }
+
+    private static Map<String, String> validate(String... args) throws Exception {
+        String[] allArgs = new String[args.length + 6];
+        System.arraycopy(new String[] {"-h1", "localhost:3100", "-h2", "localhost:3101", "-n", "test"}, 0, allArgs, 0, 6);
+        System.arraycopy(args, 0, allArgs, 6, args.length);
+        return new ClusterComparatorOptions(allArgs, true).validateAndCollectErrors();
+    }
+
+    @Test
+    void singlePassSets_requiresAtLeastTwoSets() throws Exception {
+        assertTrue(validate("-sps").containsKey("singlePassSets"));
+        assertTrue(validate("-sps", "-s", "set1").containsKey("singlePassSets"));
+        assertFalse(validate("-sps", "-s", "set1,set2").containsKey("singlePassSets"));
+        assertFalse(validate("-s", "set1").containsKey("singlePassSets"));
+    }
 }
@@ -0,0 +1,94 @@
+package com.aerospike.comparator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public class ComparePipelineTest {
+    private static byte[] digest(int value) {
+        return new byte[] { (byte)value };
+    }
+
+    @Test
+    public void rangeCompleteOnlyOnceAllComparisonsRun() {
+        ComparePipeline pipeline = new ComparePipeline(4);
+        try {
+            ComparePipeline.RangeTracker tracker = pipeline.newRange();
+            AtomicInteger compared = new AtomicInteger();
+            for (int i = 0; i < 10_000; i++) {
+                tracker.submit(digest(i), () -> compared.incrementAndGet());
+            }
+            tracker.awaitCompletion();
+            assertEquals(10_000, compared.get());
+            assertEquals(0, tracker.getOutstanding());
+            assertArrayEquals(digest(9_999), tracker.getLastCompletedDigest());
+        }
+        finally {
+            pipeline.close();
+        }
+    }
+
+    @Test
+    public void lastCompletedDigestWaitsForEarlierComparisons() throws InterruptedException {
+        ComparePipeline pipeline = new ComparePipeline(2);
+        try {
+            ComparePipeline.RangeTracker tracker = pipeline.newRange();
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch laterDone = new CountDownLatch(1);
+            tracker.submit(digest(1), () -> {
+                try {
+                    release.await();
+                }
+                catch (InterruptedException ignored) {}
+            });
+            tracker.submit(digest(2), laterDone::countDown);
+            laterDone.await();
+            tracker.completed(digest(3));
+            // The first record is still being compared so nothing can be resumed past
+            assertNull(tracker.getLastCompletedDigest());
+            release.countDown();
+            tracker.awaitCompletion();
+            assertArrayEquals(digest(3), tracker.getLastCompletedDigest());
+        }
+        finally {
+            pipeline.close();
+        }
+    }
+
+    @Test
+    public void failureStopsResumePointAndIsThrown() {
+        ComparePipeline pipeline = new ComparePipeline(1);
+        try {
+            ComparePipeline.RangeTracker tracker = pipeline.newRange();
+            tracker.submit(digest(1), () -> {});
+            tracker.submit(digest(2), () -> { throw new IllegalStateException("compare failed"); });
+            tracker.submit(digest(3), () -> {});
+            assertThrows(IllegalStateException.class, tracker::awaitCompletion);
+            assertArrayEquals(digest(1), tracker.getLastCompletedDigest());
+        }
+        finally {
+            pipeline.close();
+        }
+    }
+
+    @Test
+    public void recordsWithoutDigestDoNotMoveResumePoint() {
+        ComparePipeline pipeline = new ComparePipeline(1);
+        try {
+            ComparePipeline.RangeTracker tracker = pipeline.newRange();
+            tracker.completed(digest(1));
+            tracker.submit(null, () -> {});
+            tracker.awaitCompletion();
+            assertArrayEquals(digest(1), tracker.getLastCompletedDigest());
+        }
+        finally {
+            pipeline.close();
+        }
+    }
+}
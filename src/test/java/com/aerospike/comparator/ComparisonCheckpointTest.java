@@ -0,0 +1,135 @@
+package com.aerospike.comparator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.aerospike.comparator.ComparisonCheckpoint.Counters;
+import com.aerospike.comparator.ComparisonCheckpoint.RangeProgress;
+
+public class ComparisonCheckpointTest {
+    @TempDir
+    File tempDir;
+
+    private final AtomicLong compared = new AtomicLong();
+
+    private Counters counters() {
+        long compared = this.compared.get();
+        return new Counters(compared, 2, 3, new long[] {compared, compared + 1}, new long[] {0, 3});
+    }
+
+    private ComparisonCheckpoint open(String fileName, boolean resume) throws IOException {
+        return new ComparisonCheckpoint(fileName, resume, this::counters);
+    }
+
+    @Test
+    public void newCheckpointHasNothingToResume() throws IOException {
+        ComparisonCheckpoint checkpoint = open(new File(tempDir, "cp").getPath(), true);
+        assertFalse(checkpoint.isResuming());
+        assertNull(checkpoint.getRemainingRanges("test", null, 0));
+        checkpoint.close();
+    }
+
+    @Test
+    public void resumeSkipsCompletedAndContinuesInFlightRanges() throws IOException {
+        String fileName = new File(tempDir, "cp").getPath();
+        ComparisonCheckpoint checkpoint = open(fileName, false);
+        List<PartitionRange> ranges = PartitionRange.split(7, 3);
+        checkpoint.rangeComplete(checkpoint.rangeStarted("test", "set1", PartitionRange.wholePartition(1)));
+        checkpoint.rangeComplete(checkpoint.rangeStarted("test", "set1", ranges.get(0)));
+        RangeProgress progress = checkpoint.rangeStarted("test", "set1", ranges.get(1));
+        byte[] lastDigest = PartitionRange.boundaryDigest(7, 3000);
+        progress.setLastDigest(lastDigest);
+        checkpoint.rangeStarted("test", "set1", PartitionRange.wholePartition(2));
+        checkpoint.rangeFailed("test", "set1", PartitionRange.wholePartition(2));
+        compared.set(10);
+        checkpoint.checkpoint();
+        compared.set(20);
+        checkpoint.checkpoint();
+        checkpoint.close();
+
+        ComparisonCheckpoint resumed = open(fileName, true);
+        assertTrue(resumed.isResuming());
+        assertTrue(resumed.getRemainingRanges("test", "set1", 1).isEmpty());
+        assertNull(resumed.getRemainingRanges("test", "set1", 3));
+        assertNull(resumed.getRemainingRanges("test", null, 1));
+
+        List<PartitionRange> remaining = resumed.getRemainingRanges("test", "set1", 7);
+        assertEquals(2, remaining.size());
+        assertEquals(1, remaining.get(0).getRangeIndex());
+        assertArrayEquals(lastDigest, remaining.get(0).getUpperDigest());
+        assertArrayEquals(ranges.get(1).getLowerDigest(), remaining.get(0).getLowerDigest());
+        assertEquals(2, remaining.get(1).getRangeIndex());
+        assertArrayEquals(ranges.get(2).getUpperDigest(), remaining.get(1).getUpperDigest());
+
+        List<PartitionRange> failed = resumed.getRemainingRanges("test", "set1", 2);
+        assertEquals(1, failed.size());
+        assertTrue(failed.get(0).isWholePartition());
+
+        assertTrue(resumed.wasInFlight(7));
+        assertTrue(resumed.wasInFlight(2));
+        assertFalse(resumed.wasInFlight(1));
+        assertEquals(20, resumed.getResumedCounters().getRecordsCompared());
+        assertArrayEquals(new long[] {20, 21}, resumed.getResumedCounters().getProcessedOnCluster());
+        assertArrayEquals(new long[] {0, 3}, resumed.getResumedCounters().getMissingOnCluster());
+        resumed.close();
+    }
+
+    @Test
+    public void partialLineIsIgnored() throws IOException {
+        File file = new File(tempDir, "cp");
+        ComparisonCheckpoint checkpoint = open(file.getPath(), false);
+        checkpoint.rangeComplete(checkpoint.rangeStarted("test", null, PartitionRange.wholePartition(5)));
+        checkpoint.close();
+        try (FileWriter writer = new FileWriter(file, true)) {
+            writer.write("DONE,test,,6,0");
+        }
+
+        ComparisonCheckpoint resumed = open(file.getPath(), true);
+        assertTrue(resumed.getRemainingRanges("test", null, 5).isEmpty());
+        assertNull(resumed.getRemainingRanges("test", null, 6));
+        resumed.rangeComplete(resumed.rangeStarted("test", null, PartitionRange.wholePartition(6)));
+        resumed.close();
+
+        ComparisonCheckpoint resumedAgain = open(file.getPath(), true);
+        assertTrue(resumedAgain.getRemainingRanges("test", null, 6).isEmpty());
+        resumedAgain.close();
+    }
+
+    @Test
+    public void progressWithoutTotalsIsIgnored() throws IOException {
+        File file = new File(tempDir, "cp");
+        compared.set(10);
+        ComparisonCheckpoint checkpoint = open(file.getPath(), false);
+        RangeProgress progress = checkpoint.rangeStarted("test", null, PartitionRange.wholePartition(5));
+        byte[] firstDigest = PartitionRange.boundaryDigest(5, 1);
+        progress.setLastDigest(firstDigest);
+        checkpoint.checkpoint();
+        checkpoint.rangeComplete(checkpoint.rangeStarted("test", null, PartitionRange.wholePartition(6)));
+        checkpoint.close();
+        // Stopped after writing the progress and completion of ranges but before the totals which go with them
+        try (FileWriter writer = new FileWriter(file, true)) {
+            writer.write("PROGRESS,test,,5,0,1," + "80".repeat(DigestMerger.DIGEST_LENGTH) + "\n");
+            writer.write("DONE,test,,7,0,1\n");
+            writer.write("COUNTERS,30,2");
+        }
+
+        ComparisonCheckpoint resumed = open(file.getPath(), true);
+        assertEquals(10, resumed.getResumedCounters().getRecordsCompared());
+        assertArrayEquals(firstDigest, resumed.getRemainingRanges("test", null, 5).get(0).getUpperDigest());
+        assertTrue(resumed.getRemainingRanges("test", null, 6).isEmpty());
+        assertNull(resumed.getRemainingRanges("test", null, 7));
+        resumed.close();
+    }
+}
@@ -0,0 +1,103 @@
+package com.aerospike.comparator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class ConcurrencyControllerTest {
+    private void recordLatencyMs(ConcurrencyController controller, long ms) {
+        controller.recordLatency(TimeUnit.MILLISECONDS.toNanos(ms));
+    }
+
+    @Test
+    public void timeoutsHalveWithinBounds() {
+        ConcurrencyController controller = new ConcurrencyController(3, 16, 1000, 8000, true, true);
+        controller.recordTimeout();
+        assertNotNull(controller.adjust());
+        assertEquals(8, controller.getWorkerLimit());
+        assertEquals(4000, controller.getRecordsPerSecond());
+        assertEquals(500, controller.getRecordsPerSecondPerWorker());
+
+        controller.recordError();
+        controller.adjust();
+        controller.recordError();
+        controller.adjust();
+        assertEquals(3, controller.getWorkerLimit());
+        assertEquals(1000, controller.getRecordsPerSecond());
+        assertEquals(3, controller.getAdjustments());
+    }
+
+    @Test
+    public void growsAdditivelyWhileHealthy() {
+        ConcurrencyController controller = new ConcurrencyController(1, 4, 1, 2000, true, true);
+        controller.recordTimeout();
+        controller.adjust();
+        assertEquals(2, controller.getWorkerLimit());
+        assertEquals(1000, controller.getRecordsPerSecond());
+
+        // No scans ran so there is nothing to judge the clusters by
+        assertNull(controller.adjust());
+
+        recordLatencyMs(controller, 10);
+        controller.adjust();
+        assertEquals(3, controller.getWorkerLimit());
+        assertEquals(1100, controller.getRecordsPerSecond());
+        for (int i = 0; i < 20; i++) {
+            recordLatencyMs(controller, 10);
+            controller.adjust();
+        }
+        assertEquals(4, controller.getWorkerLimit());
+        assertEquals(2000, controller.getRecordsPerSecond());
+    }
+
+    @Test
+    public void slowScansCountAsStress() {
+        ConcurrencyController controller = new ConcurrencyController(1, 8, 1, 0, true, true);
+        recordLatencyMs(controller, 10);
+        assertNull(controller.adjust());
+        recordLatencyMs(controller, 50);
+        controller.adjust();
+        assertEquals(4, controller.getWorkerLimit());
+        // Unlimited RPS is never limited automatically
+        assertEquals(0, controller.getRecordsPerSecond());
+        assertEquals(0, controller.getRecordsPerSecondPerWorker());
+    }
+
+    @Test
+    public void notAdaptiveOnlyChangesByHand() {
+        ConcurrencyController controller = new ConcurrencyController(1, 8, 1, 1000, false, true);
+        controller.recordTimeout();
+        assertNull(controller.adjust());
+        assertEquals(8, controller.getWorkerLimit());
+
+        assertNull(controller.setLimits(20, null));
+        assertEquals(8, controller.getWorkerLimit());
+        controller.setLimits(2, 0);
+        assertEquals(2, controller.getWorkerLimit());
+        assertEquals(0, controller.getRecordsPerSecondPerWorker());
+        assertNull(controller.setLimits(2, 0));
+    }
+
+    @Test
+    public void workersAreLimited() throws InterruptedException {
+        ConcurrencyController controller = new ConcurrencyController(1, 2, 1, 0, false, true);
+        assertTrue(controller.acquireWorker(10));
+        assertTrue(controller.acquireWorker(10));
+        assertFalse(controller.acquireWorker(10));
+        controller.releaseWorker();
+        assertTrue(controller.acquireWorker(10));
+
+        controller.setLimits(1, null);
+        controller.releaseWorker();
+        assertFalse(controller.acquireWorker(10));
+        controller.releaseWorker();
+        assertTrue(controller.acquireWorker(10));
+        assertEquals(1, controller.getWorkersRunning());
+    }
+}
@@ -0,0 +1,226 @@
+package com.aerospike.comparator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.aerospike.client.Key;
+
+public class DigestMergerTest {
+    private static byte[] randomDigest(Random random) {
+        byte[] digest = new byte[DigestMerger.DIGEST_LENGTH];
+        random.nextBytes(digest);
+        return digest;
+    }
+
+    /**
+     * Compare two digests byte by byte, treating the bytes as unsigned. This is the ordering used by
+     * <code>comparePartition</code> before the merge engine was introduced.
+     */
+    private static int compare(byte[] digest1, byte[] digest2) {
+        for (int i = 0; i < digest1.length; i++) {
+            int result = Integer.compare(digest1[i] & 0xff, digest2[i] & 0xff);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return 0;
+    }
+
+    private static Key getKeyWithLargestDigest(Key[] keys) {
+        Key keyToReturn = null;
+        for (Key key : keys) {
+            if (key != null && (keyToReturn == null || compare(keyToReturn.digest, key.digest) < 0)) {
+                keyToReturn = key;
+            }
+        }
+        return keyToReturn;
+    }
+
+    /**
+     * Form a descending stream of digests for each cluster. Each digest from the universe is present on
+     * each cluster with a 70% probability so there is a mix of matching and missing records.
+     */
+    private static List<List<byte[]>> formStreams(Random random, int clusters, int universeSize) {
+        List<byte[]> universe = new ArrayList<>();
+        for (int i = 0; i < universeSize; i++) {
+            universe.add(randomDigest(random));
+        }
+        // Include digests which differ only in the high bit of a byte to exercise unsigned ordering
+        byte[] low = new byte[DigestMerger.DIGEST_LENGTH];
+        byte[] high = new byte[DigestMerger.DIGEST_LENGTH];
+        low[7] = (byte)0x7f;
+        high[7] = (byte)0x80;
+        universe.add(low);
+        universe.add(high);
+        universe.sort((a, b) -> compare(b, a));
+
+        List<List<byte[]>> streams = new ArrayList<>();
+        for (int i = 0; i < clusters; i++) {
+            List<byte[]> stream = new ArrayList<>();
+            for (byte[] digest : universe) {
+                if (random.nextInt(10) < 7) {
+                    stream.add(digest);
+                }
+            }
+            streams.add(stream);
+        }
+        return streams;
+    }
+
+    /**
+     * Walk the streams the way <code>comparePartition</code> did before the merge engine was introduced,
+     * producing one line per emitted digest.
+     */
+    private static List<String> mergeWithReference(List<List<byte[]>> streams) {
+        int clusters = streams.size();
+        int[] positions = new int[clusters];
+        Key[] keys = new Key[clusters];
+        List<String> results = new ArrayList<>();
+        while (true) {
+            boolean anyValid = false;
+            for (int i = 0; i < clusters; i++) {
+                keys[i] = positions[i] < streams.get(i).size() ? new Key("test", streams.get(i).get(positions[i]), null, null) : null;
+                anyValid |= keys[i] != null;
+            }
+            if (!anyValid) {
+                return results;
+            }
+            Key largest = getKeyWithLargestDigest(keys);
+            List<Integer> with = new ArrayList<>();
+            List<Integer> without = new ArrayList<>();
+            for (int i = 0; i < clusters; i++) {
+                if (keys[i] != null && compare(keys[i].digest, largest.digest) == 0) {
+                    with.add(i);
+                }
+                else {
+                    without.add(i);
+                }
+            }
+            results.add(Arrays.toString(largest.digest) + with + without);
+            for (int cluster : with) {
+                positions[cluster]++;
+            }
+        }
+    }
+
+    private static List<String> mergeWithDigestMerger(DigestMerger merger, List<List<byte[]>> streams) {
+        int clusters = streams.size();
+        int[] positions = new int[clusters];
+        for (int i = 0; i < clusters; i++) {
+            load(merger, streams, positions, i);
+        }
+        List<String> results = new ArrayList<>();
+        List<Integer> with = new ArrayList<>();
+        List<Integer> without = new ArrayList<>();
+        while (merger.hasMore()) {
+            long withMask = merger.selectLargest();
+            byte[] largest = streams.get(merger.getLargestCluster()).get(positions[merger.getLargestCluster()]);
+            DigestMerger.toClusterList(withMask, with);
+            DigestMerger.toClusterList(merger.getClustersWithoutRecord(), without);
+            results.add(Arrays.toString(largest) + with + without);
+            for (int cluster : with) {
+                positions[cluster]++;
+                load(merger, streams, positions, cluster);
+            }
+        }
+        return results;
+    }
+
+    private static void load(DigestMerger merger, List<List<byte[]>> streams, int[] positions, int cluster) {
+        if (positions[cluster] < streams.get(cluster).size()) {
+            merger.setDigest(cluster, streams.get(cluster).get(positions[cluster]));
+        }
+        else {
+            merger.setExhausted(cluster);
+        }
+    }
+
+    @Test
+    public void matchesReferenceImplementation() {
+        Random random = new Random(12345);
+        for (int clusters = 2; clusters <= 8; clusters++) {
+            List<List<byte[]>> streams = formStreams(random, clusters, 2000);
+            assertEquals(mergeWithReference(streams), mergeWithDigestMerger(new DigestMerger(clusters), streams),
+                    "Merge mismatch with " + clusters + " clusters");
+        }
+    }
+
+    @Test
+    public void loserTreeMatchesReferenceImplementation() {
+        Random random = new Random(67890);
+        int[] clusterCounts = new int[] {1, 2, 3, 5, 7, 8, 13, 64};
+        for (int clusters : clusterCounts) {
+            List<List<byte[]>> streams = formStreams(random, clusters, 500);
+            assertEquals(mergeWithReference(streams), mergeWithDigestMerger(new LoserTreeDigestMerger(clusters), streams),
+                    "Loser tree merge mismatch with " + clusters + " clusters");
+        }
+    }
+
+    @Test
+    public void loserTreeRebuildsOnOutOfOrderChanges() {
+        DigestMerger merger = new LoserTreeDigestMerger(5);
+        for (int i = 0; i < 5; i++) {
+            byte[] digest = new byte[DigestMerger.DIGEST_LENGTH];
+            digest[0] = (byte)(i * 50);
+            merger.setDigest(i, digest);
+        }
+        assertEquals(1L << 4, merger.selectLargest());
+        // Change a cluster which is not the winner
+        byte[] digest = new byte[DigestMerger.DIGEST_LENGTH];
+        digest[0] = (byte)0xff;
+        merger.setDigest(1, digest);
+        assertEquals(1L << 1, merger.selectLargest());
+        assertEquals(1, merger.getLargestCluster());
+    }
+
+    @Test
+    public void createChoosesImplementation() {
+        assertFalse(DigestMerger.create(4, 4) instanceof LoserTreeDigestMerger);
+        assertTrue(DigestMerger.create(5, 4) instanceof LoserTreeDigestMerger);
+    }
+
+    @Test
+    public void comparesUnsigned() {
+        DigestMerger merger = new DigestMerger(3);
+        byte[] digest1 = new byte[DigestMerger.DIGEST_LENGTH];
+        byte[] digest2 = new byte[DigestMerger.DIGEST_LENGTH];
+        byte[] digest3 = new byte[DigestMerger.DIGEST_LENGTH];
+        digest1[19] = (byte)0xff;
+        digest2[19] = (byte)0x01;
+        digest3[19] = (byte)0xff;
+        merger.setDigest(0, digest1);
+        merger.setDigest(1, digest2);
+        merger.setDigest(2, digest3);
+        assertEquals(0b101L, merger.selectLargest());
+        assertEquals(0, merger.getLargestCluster());
+        assertEquals(0b010L, merger.getClustersWithoutRecord());
+
+        merger.setExhausted(0);
+        merger.setExhausted(2);
+        assertEquals(1, merger.countValid());
+        assertEquals(0b010L, merger.selectLargest());
+        merger.setExhausted(1);
+        assertFalse(merger.hasMore());
+        assertEquals(0L, merger.selectLargest());
+    }
+
+    @Test
+    public void supportsSixtyFourClusters() {
+        DigestMerger merger = new DigestMerger(DigestMerger.MAX_CLUSTERS);
+        byte[] digest = new byte[DigestMerger.DIGEST_LENGTH];
+        merger.setDigest(63, digest);
+        assertEquals(1L << 63, merger.selectLargest());
+        assertEquals(~(1L << 63), merger.getClustersWithoutRecord());
+        assertTrue(DigestMerger.toClusterList(merger.selectLargest(), new ArrayList<>()).contains(63));
+        assertThrows(IllegalArgumentException.class, () -> new DigestMerger(DigestMerger.MAX_CLUSTERS + 1));
+    }
+}
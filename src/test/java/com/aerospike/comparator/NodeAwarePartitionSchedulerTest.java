@@ -0,0 +1,83 @@
+package com.aerospike.comparator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class NodeAwarePartitionSchedulerTest {
+    /** Partitions 0-5 are on node A, 6-7 on node B of the first cluster. The second cluster has every partition on node C. */
+    private String[] nodesFor(PartitionTask task) {
+        int partitionId = task.getRange().getPartitionId();
+        return new String[] { partitionId < 6 ? "0:A" : "0:B", "1:C" };
+    }
+
+    private List<PartitionTask> tasks(int count) {
+        List<PartitionTask> result = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            result.add(new PartitionTask("test", null, PartitionRange.wholePartition(i)));
+        }
+        return result;
+    }
+
+    @Test
+    public void scansPerNodeAreLimited() {
+        NodeAwarePartitionScheduler scheduler = new NodeAwarePartitionScheduler(tasks(8), this::nodesFor, 2);
+        PartitionTask first = scheduler.poll();
+        PartitionTask second = scheduler.poll();
+        assertNotNull(first);
+        assertNotNull(second);
+        // Node C of the second cluster holds every partition and is now full
+        assertNull(scheduler.poll());
+        assertFalse(scheduler.isEmpty());
+        assertEquals(6, scheduler.size());
+        assertEquals(2, scheduler.getScansRunning("1:C"));
+
+        scheduler.release(first);
+        assertNotNull(scheduler.poll());
+        assertEquals(2, scheduler.getScansRunning("1:C"));
+    }
+
+    @Test
+    public void leastBusyNodesAreChosenFirst() {
+        NodeAwarePartitionScheduler scheduler = new NodeAwarePartitionScheduler(tasks(8), task -> {
+            String[] nodes = nodesFor(task);
+            return new String[] { nodes[0] };
+        }, 4);
+        assertEquals(0, scheduler.poll().getRange().getPartitionId());
+        // Node A has a scan running, so node B is used next even though its partitions are later in the order
+        assertEquals(6, scheduler.poll().getRange().getPartitionId());
+        assertEquals(1, scheduler.poll().getRange().getPartitionId());
+        assertEquals(7, scheduler.poll().getRange().getPartitionId());
+        assertEquals(2, scheduler.poll().getRange().getPartitionId());
+        assertEquals(3, scheduler.poll().getRange().getPartitionId());
+        // Node A now has 4 scans running and node B has no partitions left
+        assertNull(scheduler.poll());
+        assertEquals(2, scheduler.size());
+    }
+
+    @Test
+    public void retriesCountTowardsTheLimit() {
+        NodeAwarePartitionScheduler scheduler = new NodeAwarePartitionScheduler(tasks(2), this::nodesFor, 1);
+        scheduler.claim(new PartitionTask("test", null, PartitionRange.wholePartition(7)));
+        assertNull(scheduler.poll());
+        scheduler.release(new PartitionTask("test", null, PartitionRange.wholePartition(7)));
+        assertNotNull(scheduler.poll());
+        assertNull(scheduler.poll());
+    }
+
+    @Test
+    public void unknownNodesAreNotLimited() {
+        NodeAwarePartitionScheduler scheduler = new NodeAwarePartitionScheduler(tasks(3), task -> new String[] { null }, 1);
+        assertNotNull(scheduler.poll());
+        assertNotNull(scheduler.poll());
+        assertNotNull(scheduler.poll());
+        assertTrue(scheduler.isEmpty());
+    }
+}
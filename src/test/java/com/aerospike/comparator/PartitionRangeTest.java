@@ -0,0 +1,99 @@
+package com.aerospike.comparator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.aerospike.client.cluster.Partition;
+
+public class PartitionRangeTest {
+    private static byte[] randomDigestInPartition(Random random, int partitionId) {
+        byte[] digest = new byte[DigestMerger.DIGEST_LENGTH];
+        random.nextBytes(digest);
+        digest[0] = (byte)(partitionId & 0xff);
+        digest[1] = (byte)((digest[1] & 0xf0) | ((partitionId >> 8) & 0x0f));
+        return digest;
+    }
+
+    /**
+     * Returns true if the digest is before the start of the range, ie at or above the exclusive upper digest.
+     */
+    private static boolean isBeforeStart(PartitionRange range, byte[] digest) {
+        if (range.getUpperDigest() == null) {
+            return false;
+        }
+        return !new PartitionRange(range.getPartitionId(), 0, 1, null, range.getUpperDigest()).isPastEnd(digest);
+    }
+
+    @Test
+    public void wholePartitionIsNotSplit() {
+        List<PartitionRange> ranges = PartitionRange.split(17, 1);
+        assertEquals(1, ranges.size());
+        assertTrue(ranges.get(0).isWholePartition());
+        assertNull(ranges.get(0).getFilter("test", null).getDigest());
+        assertEquals("17", ranges.get(0).toString());
+    }
+
+    @Test
+    public void boundariesStayInPartition() {
+        int[] partitionIds = new int[] {0, 1, 255, 256, 2049, 4095};
+        for (int partitionId : partitionIds) {
+            for (PartitionRange range : PartitionRange.split(partitionId, 7)) {
+                if (range.getLowerDigest() != null) {
+                    assertEquals(partitionId, Partition.getPartitionId(range.getLowerDigest()));
+                }
+                if (range.getUpperDigest() != null) {
+                    assertEquals(partitionId, Partition.getPartitionId(range.getUpperDigest()));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void rangesCoverPartitionExactlyOnce() {
+        Random random = new Random(4321);
+        int[] rangeCounts = new int[] {2, 3, 7, 16, 100, PartitionRange.MAX_SPLITS};
+        for (int rangeCount : rangeCounts) {
+            int partitionId = random.nextInt(4096);
+            List<PartitionRange> ranges = PartitionRange.split(partitionId, rangeCount);
+            assertEquals(rangeCount, ranges.size());
+            assertNull(ranges.get(0).getUpperDigest());
+            assertNull(ranges.get(rangeCount - 1).getLowerDigest());
+            for (int i = 1; i < rangeCount; i++) {
+                assertEquals(ranges.get(i-1).getLowerDigest(), ranges.get(i).getUpperDigest());
+            }
+            for (int i = 0; i < 2000; i++) {
+                byte[] digest = randomDigestInPartition(random, partitionId);
+                int matches = 0;
+                for (PartitionRange range : ranges) {
+                    if (!isBeforeStart(range, digest) && !range.isPastEnd(digest)) {
+                        matches++;
+                    }
+                }
+                assertEquals(1, matches);
+            }
+        }
+    }
+
+    @Test
+    public void lowerBoundIsInclusive() {
+        List<PartitionRange> ranges = PartitionRange.split(10, 2);
+        byte[] boundary = ranges.get(0).getLowerDigest();
+        assertFalse(ranges.get(0).isPastEnd(boundary));
+        assertTrue(isBeforeStart(ranges.get(1), boundary));
+        assertEquals("10[1/2]", ranges.get(0).toString());
+    }
+
+    @Test
+    public void invalidSplitCount() {
+        assertThrows(IllegalArgumentException.class, () -> PartitionRange.split(0, 0));
+        assertThrows(IllegalArgumentException.class, () -> PartitionRange.split(0, PartitionRange.MAX_SPLITS + 1));
+    }
+}
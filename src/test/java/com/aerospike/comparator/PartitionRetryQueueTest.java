@@ -0,0 +1,58 @@
+package com.aerospike.comparator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.aerospike.comparator.PartitionRetryQueue.Attempt;
+
+public class PartitionRetryQueueTest {
+    @Test
+    public void backoffDoublesUpToLimit() {
+        PartitionRetryQueue queue = new PartitionRetryQueue(1000);
+        assertEquals(1000, queue.getBackoffMs(1));
+        assertEquals(2000, queue.getBackoffMs(2));
+        assertEquals(4000, queue.getBackoffMs(3));
+        assertEquals(PartitionRetryQueue.MAX_BACKOFF_MS, queue.getBackoffMs(20));
+        assertEquals(PartitionRetryQueue.MAX_BACKOFF_MS, queue.getBackoffMs(Integer.MAX_VALUE));
+        assertEquals(PartitionRetryQueue.MAX_BACKOFF_MS, new PartitionRetryQueue(Long.MAX_VALUE / 2).getBackoffMs(5));
+        assertEquals(0, new PartitionRetryQueue(0).getBackoffMs(5));
+    }
+
+    @Test
+    public void retryNotReadyUntilBackoffElapses() throws InterruptedException {
+        PartitionRetryQueue queue = new PartitionRetryQueue(200);
+        PartitionTask task = new PartitionTask("test", null, PartitionRange.wholePartition(12));
+        assertEquals(200, queue.schedule(task, 1));
+        assertFalse(queue.isEmpty());
+        assertNull(queue.pollReady());
+
+        Attempt attempt = queue.awaitReady(5000);
+        assertNotNull(attempt);
+        assertSame(task, attempt.getTask());
+        assertEquals(1, attempt.getAttempt());
+        assertTrue(queue.isEmpty());
+        assertEquals(1, queue.getRetriesScheduled());
+    }
+
+    @Test
+    public void earliestRetryIsReadyFirst() throws InterruptedException {
+        PartitionRetryQueue queue = new PartitionRetryQueue(50);
+        PartitionTask slow = new PartitionTask("test", "set1", PartitionRange.wholePartition(1));
+        PartitionTask fast = new PartitionTask("test", "set2", PartitionRange.wholePartition(1));
+        queue.schedule(slow, 3);
+        queue.schedule(fast, 1);
+        assertSame(fast, queue.awaitReady(5000).getTask());
+        assertSame(slow, queue.awaitReady(5000).getTask());
+    }
+
+    @Test
+    public void freshWorkIsFirstAttempt() {
+        assertEquals(0, new Attempt(new PartitionTask("test", null, PartitionRange.wholePartition(0))).getAttempt());
+    }
+}
@@ -0,0 +1,81 @@
+package com.aerospike.comparator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.jupiter.api.Test;
+
+public class PartitionSchedulerTest {
+    private List<PartitionTask> tasks(long ...estimates) {
+        List<PartitionTask> result = new ArrayList<>();
+        for (int i = 0; i < estimates.length; i++) {
+            result.add(new PartitionTask("test", null, PartitionRange.wholePartition(i), estimates[i]));
+        }
+        return result;
+    }
+
+    @Test
+    public void tasksAreHandedOutInOrder() {
+        PartitionScheduler scheduler = new PartitionScheduler(tasks(5, 50, 10));
+        assertEquals(3, scheduler.size());
+        assertEquals(0, scheduler.poll().getRange().getPartitionId());
+        assertEquals(1, scheduler.poll().getRange().getPartitionId());
+        assertEquals(2, scheduler.poll().getRange().getPartitionId());
+        assertTrue(scheduler.isEmpty());
+        assertNull(scheduler.poll());
+        assertNull(scheduler.poll());
+        assertEquals(0, scheduler.size());
+    }
+
+    @Test
+    public void largestFirstKeepsOrderOfEqualEstimates() {
+        PartitionScheduler scheduler = PartitionScheduler.largestFirst(tasks(5, 50, 10, 50, 0));
+        assertFalse(scheduler.isEmpty());
+        int[] expected = {1, 3, 2, 0, 4};
+        for (int partitionId : expected) {
+            assertEquals(partitionId, scheduler.poll().getRange().getPartitionId());
+        }
+        assertNull(scheduler.poll());
+    }
+
+    @Test
+    public void eachTaskHandedOutOnceUnderContention() throws InterruptedException {
+        final int taskCount = 4096;
+        final int threadCount = 256;
+        PartitionScheduler scheduler = new PartitionScheduler(tasks(new long[taskCount]));
+        AtomicIntegerArray timesHandedOut = new AtomicIntegerArray(taskCount);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
+                PartitionTask task;
+                while ((task = scheduler.poll()) != null) {
+                    timesHandedOut.incrementAndGet(task.getRange().getPartitionId());
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (int i = 0; i < taskCount; i++) {
+            assertEquals(1, timesHandedOut.get(i));
+        }
+        assertTrue(scheduler.isEmpty());
+    }
+}
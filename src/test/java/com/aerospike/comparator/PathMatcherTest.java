@@ -0,0 +1,84 @@
+package com.aerospike.comparator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class PathMatcherTest {
+    private static final String[] PARTS = { "test", "set", "a", "b", "c", "1", "2" };
+
+    private static String randomPattern(Random random) {
+        StringBuilder sb = new StringBuilder();
+        int length = 1 + random.nextInt(5);
+        for (int i = 0; i < length; i++) {
+            int choice = random.nextInt(PARTS.length + 2);
+            sb.append('/').append(choice == PARTS.length ? "*" : choice == PARTS.length + 1 ? "**" : PARTS[choice]);
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void matchesSameAsPathOptions() {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            List<PathOption> options = new ArrayList<>();
+            int ruleCount = 1 + random.nextInt(round < 100 ? 5 : 300);
+            for (int i = 0; i < ruleCount; i++) {
+                options.add(new PathOption(randomPattern(random), random.nextBoolean() ? PathAction.IGNORE : PathAction.COMPAREUNORDERED));
+            }
+            PathMatcher matcher = new PathMatcher(options);
+            for (int pathCount = 0; pathCount < 50; pathCount++) {
+                // Walk down a random path, checking the matcher at every level
+                Deque<String> path = new ArrayDeque<>();
+                PathMatcher.State state = matcher.getStart();
+                int depth = random.nextInt(8);
+                for (int level = 0; level <= depth; level++) {
+                    EnumSet<PathAction> expected = EnumSet.noneOf(PathAction.class);
+                    for (PathOption option : options) {
+                        if (option.matches(path)) {
+                            expected.add(option.getAction());
+                        }
+                    }
+                    assertEquals(expected, state.getActions(), "path " + path + " options " + options);
+                    String part = random.nextInt(10) == 0 ? "other" : PARTS[random.nextInt(PARTS.length)];
+                    path.addFirst(part);
+                    state = state.next(part);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void statesAreShared() {
+        PathMatcher matcher = new PathMatcher(Arrays.asList(
+                new PathOption("/test/set/**/ignored", PathAction.IGNORE),
+                new PathOption("/test/*/list", PathAction.COMPAREUNORDERED)));
+        PathMatcher.State bin = matcher.getStart().next("test").next("set");
+        assertTrue(bin.next("ignored").isIgnored());
+        assertTrue(bin.next("x").next("y").next("ignored").isIgnored());
+        assertFalse(bin.next("x").next("y").isIgnored());
+        assertTrue(bin.next("list").isUnordered());
+        // Parts which are not literals in any pattern all lead to the same state
+        assertTrue(bin.next("x") == bin.next("y"));
+        int states = matcher.getStateCount();
+        bin.next("x").next("z").next("ignored");
+        assertEquals(states, matcher.getStateCount());
+    }
+
+    @Test
+    public void noPathsMatchNothing() {
+        PathMatcher matcher = new PathMatcher(null);
+        assertTrue(matcher.getStart().next("test").next("set").getActions().isEmpty());
+        assertEquals(1, matcher.getStateCount());
+    }
+}
@@ -0,0 +1,152 @@
+package com.aerospike.comparator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.Bin;
+import com.aerospike.client.Key;
+import com.aerospike.client.Record;
+import com.aerospike.client.ResultCode;
+import com.aerospike.client.policy.BatchPolicy;
+import com.aerospike.client.policy.Policy;
+import com.aerospike.client.policy.QueryPolicy;
+import com.aerospike.client.policy.WritePolicy;
+import com.aerospike.client.query.PartitionFilter;
+import com.aerospike.client.query.Statement;
+import com.aerospike.comparator.dbaccess.AerospikeClientAccess;
+import com.aerospike.comparator.dbaccess.RecordMetadata;
+import com.aerospike.comparator.dbaccess.RecordSetAccess;
+
+public class RecordActionSenderTest {
+    private static final Key KEY = new Key("test", "set", 1);
+
+    /**
+     * A cluster whose touches return futures completed by the test, or throw before returning a future.
+     */
+    private static class StubClient implements AerospikeClientAccess {
+        final List<CompletableFuture<Void>> touches = new CopyOnWriteArrayList<>();
+        final AtomicInteger touchCalls = new AtomicInteger();
+        volatile boolean throwOnTouch = false;
+
+        @Override
+        public CompletableFuture<Void> touchAsync(WritePolicy policy, Key key) {
+            touchCalls.incrementAndGet();
+            if (throwOnTouch) {
+                throw new AerospikeException(ResultCode.NO_MORE_CONNECTIONS);
+            }
+            CompletableFuture<Void> touch = new CompletableFuture<>();
+            touches.add(touch);
+            return touch;
+        }
+
+        @Override public boolean isLocal() { return true; }
+        @Override public void close() {}
+        @Override public void put(WritePolicy policy, Key key, Bin... bins) { throw new UnsupportedOperationException(); }
+        @Override public void touch(WritePolicy policy, Key key) { throw new UnsupportedOperationException(); }
+        @Override public void delete(WritePolicy policy, Key key) { throw new UnsupportedOperationException(); }
+        @Override public boolean exists(Policy policy, Key key) { throw new UnsupportedOperationException(); }
+        @Override public Record get(Policy policy, Key key) { throw new UnsupportedOperationException(); }
+        @Override public boolean[] exists(BatchPolicy policy, Key[] keys) { throw new UnsupportedOperationException(); }
+        @Override public Record[] get(BatchPolicy policy, Key[] keys) { throw new UnsupportedOperationException(); }
+        @Override public RecordMetadata getMetadata(WritePolicy policy, Key key) { throw new UnsupportedOperationException(); }
+        @Override public RecordSetAccess queryPartitions(QueryPolicy queryPolicy, Statement statement, PartitionFilter filter) { throw new UnsupportedOperationException(); }
+        @Override public Map<String, String> invokeInfoCommandOnAllNodes(String info) { throw new UnsupportedOperationException(); }
+        @Override public String invokeInfoCommandOnANode(String info) { throw new UnsupportedOperationException(); }
+        @Override public List<String> getNodeNames() { throw new UnsupportedOperationException(); }
+    }
+
+    private static void touch(RecordActionSender sender, StubClient client) {
+        sender.send(() -> client.touchAsync(null, KEY), KEY, "Touching", "touching");
+    }
+
+    private static Thread inBackground(Runnable runnable) {
+        Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static void waitFor(Thread thread) throws InterruptedException {
+        thread.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse(thread.isAlive());
+    }
+
+    @Test
+    public void sendingBlocksAtTheLimit() throws Exception {
+        StubClient client = new StubClient();
+        RecordActionSender sender = new RecordActionSender(4, true);
+        for (int i = 0; i < 4; i++) {
+            touch(sender, client);
+        }
+        assertEquals(4, sender.getInFlight());
+
+        Thread fifth = inBackground(() -> touch(sender, client));
+        Thread.sleep(200);
+        assertTrue(fifth.isAlive());
+        assertEquals(4, client.touchCalls.get());
+
+        client.touches.get(0).complete(null);
+        waitFor(fifth);
+        assertEquals(5, client.touchCalls.get());
+        assertEquals(4, sender.getInFlight());
+    }
+
+    @Test
+    public void failuresReleaseTheirPermits() {
+        StubClient client = new StubClient();
+        RecordActionSender sender = new RecordActionSender(2, true);
+
+        // Throwing before a future is returned must not leak the permit, or the third send would block forever
+        client.throwOnTouch = true;
+        for (int i = 0; i < 10; i++) {
+            touch(sender, client);
+        }
+        assertEquals(0, sender.getInFlight());
+
+        client.throwOnTouch = false;
+        touch(sender, client);
+        touch(sender, client);
+        assertEquals(2, sender.getInFlight());
+        client.touches.get(0).completeExceptionally(new AerospikeException(ResultCode.TIMEOUT));
+        client.touches.get(1).completeExceptionally(new AerospikeException(ResultCode.KEY_NOT_FOUND_ERROR));
+        assertEquals(0, sender.getInFlight());
+    }
+
+    @Test
+    public void awaitAllDrainsEveryAction() throws Exception {
+        StubClient client = new StubClient();
+        RecordActionSender sender = new RecordActionSender(8, true);
+        for (int i = 0; i < 3; i++) {
+            touch(sender, client);
+        }
+        Thread closer = inBackground(sender::awaitAll);
+        Thread.sleep(200);
+        assertTrue(closer.isAlive());
+
+        client.touches.get(0).complete(null);
+        client.touches.get(2).complete(null);
+        Thread.sleep(100);
+        assertTrue(closer.isAlive());
+
+        client.touches.get(1).complete(null);
+        waitFor(closer);
+        assertEquals(0, sender.getInFlight());
+
+        // All the permits are available again afterwards
+        for (int i = 0; i < 8; i++) {
+            touch(sender, client);
+        }
+        assertEquals(8, sender.getInFlight());
+    }
+}
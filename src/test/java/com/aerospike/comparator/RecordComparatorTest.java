@@ -0,0 +1,195 @@
+package com.aerospike.comparator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+import com.aerospike.client.Key;
+import com.aerospike.client.Record;
+
+public class RecordComparatorTest {
+    private static Record record(String name, Object listItem, Object mapValue) {
+        Map<String, Object> bins = new HashMap<>();
+        bins.put("name", name);
+        bins.put("list", Arrays.asList(1L, listItem));
+        Map<Object, Object> map = new HashMap<>();
+        map.put(7L, mapValue);
+        bins.put("map", map);
+        return new Record(bins, 1, 1);
+    }
+
+    @Test
+    public void differencesHaveFullPaths() {
+        RecordComparator comparator = new RecordComparator();
+        Key key = new Key("test", "compSet", 1);
+        DifferenceSet result = comparator.compare(key, record("Tim", 2L, "a"), record("Tim", 3L, "b"), null, false, 0, 1);
+        assertEquals(2, result.getDifferences().size());
+        assertTrue(result.getDifferences().containsKey("test/compSet/list/1/"));
+        assertTrue(result.getDifferences().containsKey("test/compSet/map/7/"));
+
+        PathOptions options = new PathOptions(new PathOption("/test/compSet/map/7", PathAction.IGNORE));
+        result = comparator.compare(key, record("Tim", 2L, "a"), record("Tim", 3L, "b"), options, false, 0, 1);
+        assertEquals(1, result.getDifferences().size());
+        assertTrue(result.getDifferences().containsKey("test/compSet/list/1/"));
+    }
+
+    @Test
+    public void reportedDifferencesSurviveLaterCompares() {
+        RecordComparator comparator = new RecordComparator();
+        Key key = new Key("test", "compSet", 1);
+        DifferenceSet different = comparator.compare(key, record("Tim", 2L, "a"), record("Bob", 2L, "a"), null, false, 0, 1);
+        DifferenceSet same = comparator.compare(key, record("Tim", 2L, "a"), record("Tim", 2L, "a"), null, false, 0, 1);
+        assertFalse(same.areDifferent());
+        DifferenceSet differentAgain = comparator.compare(key, record("Tim", 2L, "a"), record("Tim", 2L, "b"), null, false, 0, 1);
+        assertEquals(1, different.getDifferences().size());
+        assertTrue(different.getDifferences().containsKey("test/compSet/name/"));
+        assertEquals(1, differentAgain.getDifferences().size());
+        assertTrue(differentAgain.getDifferences().containsKey("test/compSet/map/7/"));
+    }
+
+    private static Record listRecord(Object... items) {
+        Map<String, Object> bins = new HashMap<>();
+        bins.put("tags", Arrays.asList(items));
+        return new Record(bins, 1, 1);
+    }
+
+    @Test
+    public void unorderedListsCompareItemCounts() {
+        RecordComparator comparator = new RecordComparator();
+        Key key = new Key("test", "compSet", 1);
+        PathOptions options = new PathOptions(new PathOption("/test/compSet/tags", PathAction.COMPAREUNORDERED));
+        assertFalse(comparator.compare(key, listRecord("a", "b", "b", "c"), listRecord("b", "c", "b", "a"), options, false, 0, 1).areDifferent());
+        assertTrue(comparator.compare(key, listRecord("a", "b", "b", "c"), listRecord("a", "b", "c", "c"), options, false, 0, 1).areDifferent());
+        assertTrue(comparator.compare(key, listRecord("a", "b"), listRecord("a", "b", "b"), options, false, 0, 1).areDifferent());
+        // Lists nested in an unordered list keep their order
+        assertFalse(comparator.compare(key, listRecord(Arrays.asList(1L, 2L), "x"), listRecord("x", Arrays.asList(1L, 2L)), options, false, 0, 1).areDifferent());
+        assertTrue(comparator.compare(key, listRecord(Arrays.asList(1L, 2L), "x"), listRecord("x", Arrays.asList(2L, 1L)), options, false, 0, 1).areDifferent());
+
+        Object[] items = new Object[50000];
+        Object[] reversed = new Object[items.length];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = (long)(i % 1000);
+            reversed[items.length - 1 - i] = items[i];
+        }
+        assertFalse(comparator.compare(key, listRecord(items), listRecord(reversed), options, false, 0, 1).areDifferent());
+        reversed[0] = 1000L;
+        assertTrue(comparator.compare(key, listRecord(items), listRecord(reversed), options, false, 0, 1).areDifferent());
+    }
+
+    private static Record mapRecord(Map<Object, Object> map) {
+        Map<String, Object> bins = new HashMap<>();
+        bins.put("map", map);
+        return new Record(bins, 1, 1);
+    }
+
+    @Test
+    public void sortedMapsMatchHashedMaps() {
+        RecordComparator comparator = new RecordComparator();
+        Key key = new Key("test", "compSet", 1);
+        Random random = new Random(7);
+        for (int round = 0; round < 100; round++) {
+            // Mixed key types are only in server order with the server's comparator
+            boolean mixedKeys = round % 2 == 0;
+            Map<Object, Object> map1 = mixedKeys ? new TreeMap<>(new AerospikeComparator()) : new TreeMap<>();
+            Map<Object, Object> map2 = mixedKeys ? new TreeMap<>(new AerospikeComparator()) : new TreeMap<>();
+            for (int i = 0; i < 200; i++) {
+                long id = random.nextInt(300);
+                Object mapKey = mixedKeys && random.nextBoolean() ? "k" + id : (Object)id;
+                int where = random.nextInt(10);
+                if (where != 0) {
+                    map1.put(mapKey, id);
+                }
+                if (where != 1) {
+                    map2.put(mapKey, where == 2 ? id + 1 : id);
+                }
+            }
+            DifferenceSet sorted = comparator.compare(key, mapRecord(map1), mapRecord(map2), null, false, 0, 1);
+            DifferenceSet hashed = comparator.compare(key, mapRecord(new HashMap<>(map1)), mapRecord(new HashMap<>(map2)), null, false, 0, 1);
+            assertEquals(hashed.getDifferences().keySet(), sorted.getDifferences().keySet());
+        }
+        Map<Object, Object> map1 = new TreeMap<>();
+        map1.put("a", 1L);
+        Map<Object, Object> map2 = new TreeMap<>();
+        map2.put("a", 1L);
+        assertFalse(comparator.compare(key, mapRecord(map1), mapRecord(map2), null, false, 0, 1).areDifferent());
+    }
+
+    @Test
+    public void blobRangesFollowPathOptions() {
+        RecordComparator comparator = new RecordComparator();
+        Key key = new Key("test", "compSet", 1);
+        byte[] bytes1 = new byte[100];
+        byte[] bytes2 = new byte[100];
+        bytes2[20] = 1;
+        bytes2[80] = 1;
+        Map<String, Object> bins1 = new HashMap<>();
+        bins1.put("blob", bytes1);
+        Map<String, Object> bins2 = new HashMap<>();
+        bins2.put("blob", bytes2);
+
+        DifferenceValue diff = comparator.compare(key, new Record(bins1, 1, 1), new Record(bins2, 1, 1), null, false, 0, 1)
+                .getDifferences().get("test/compSet/blob/");
+        assertNull(diff.getByteRanges());
+        assertTrue(diff.asJsonFragment(true).contains("\"index\":20"));
+
+        PathOption option = new PathOption("/test/compSet/blob", PathAction.REPORTBYTERANGES);
+        option.setMaxRanges(1);
+        diff = comparator.compare(key, new Record(bins1, 1, 1), new Record(bins2, 1, 1), new PathOptions(option), false, 0, 1)
+                .getDifferences().get("test/compSet/blob/");
+        assertEquals(1, diff.getByteRanges().getRanges().size());
+        assertTrue(diff.getByteRanges().isTruncated());
+        assertTrue(diff.asJsonFragment(true).contains("\"ranges\":[{\"start\":20,\"end\":21}],\"moreRanges\":true"));
+    }
+
+    private static Record longListRecord(long offset) {
+        Map<String, Object> bins = new HashMap<>();
+        List<Object> list1 = new ArrayList<>();
+        List<Object> list2 = new ArrayList<>();
+        for (long i = 0; i < 1000; i++) {
+            list1.add(i + offset);
+            list2.add(i + offset);
+        }
+        bins.put("list1", list1);
+        bins.put("list2", list2);
+        return new Record(bins, 1, 1);
+    }
+
+    @Test
+    public void differencesPerBinAreLimited() {
+        RecordComparator comparator = new RecordComparator(0, 10);
+        Key key = new Key("test", "compSet", 1);
+        DifferenceSet result = comparator.compare(key, longListRecord(0), longListRecord(1), null, false, 0, 1);
+        assertEquals(20, result.getDifferences().size());
+        assertTrue(result.isTruncated());
+        assertFalse(result.isRecordLimitReached());
+        assertEquals(990L, result.getOmittedByBin().get("test/compSet/list1/").longValue());
+        assertEquals(990L, result.getOmittedByBin().get("test/compSet/list2/").longValue());
+        assertTrue(result.getAsJson(true, null).contains("{\"path\":\"test/compSet/list1/\",\"type\":\"TRUNCATED\",\"omitted\":990}"));
+    }
+
+    @Test
+    public void differencesPerRecordAreLimited() {
+        RecordComparator comparator = new RecordComparator(15, 10);
+        Key key = new Key("test", "compSet", 1);
+        DifferenceSet result = comparator.compare(key, longListRecord(0), longListRecord(1), null, false, 0, 1);
+        assertEquals(15, result.getDifferences().size());
+        assertTrue(result.isRecordLimitReached());
+        assertTrue(result.getAsJson(true, null).contains("{\"path\":\"test/compSet/\",\"type\":\"TRUNCATED\",\"stoppedAfter\":15}"));
+
+        // A record within the limits is not truncated, and the comparator starts afresh for each record
+        result = comparator.compare(key, record("Tim", 2L, "a"), record("Bob", 2L, "a"), null, false, 0, 1);
+        assertEquals(1, result.getDifferences().size());
+        assertFalse(result.isTruncated());
+    }
+}
@@ -0,0 +1,116 @@
+package com.aerospike.comparator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import org.junit.jupiter.api.Test;
+
+import com.aerospike.client.Key;
+import com.aerospike.client.Record;
+import com.aerospike.comparator.dbaccess.RecordHashVersion;
+import com.aerospike.comparator.dbaccess.RemoteUtils;
+
+public class RecordEquivalenceClassesTest {
+    private final Key key = new Key("test", "testSet", 1);
+    private final RecordComparator comparator = new RecordComparator();
+
+    private Record record(Object ... binsAndValues) {
+        Map<String, Object> bins = new HashMap<>();
+        for (int i = 0; i < binsAndValues.length; i += 2) {
+            bins.put((String)binsAndValues[i], binsAndValues[i+1]);
+        }
+        return new Record(bins, 1, 0);
+    }
+
+    private DifferenceCollection compare(Record[] records, PathOptions pathOptions, AtomicInteger deepCompares) {
+        List<Integer> clusters = new ArrayList<>();
+        for (int i = 0; i < records.length; i++) {
+            clusters.add(i);
+        }
+        IntFunction<byte[]> fingerprinter = cluster -> RemoteUtils.getRecordHash(records[cluster], false, RecordHashVersion.CANONICAL);
+        return new RecordEquivalenceClasses(clusters).compare(fingerprinter, (left, right) -> {
+            deepCompares.incrementAndGet();
+            return comparator.compare(key, records[left], records[right], pathOptions, false, left, right);
+        });
+    }
+
+    @Test
+    public void identicalRecordsNeedNoDeepCompare() {
+        Record[] records = new Record[5];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = record("a", 1, "b", "value");
+        }
+        AtomicInteger deepCompares = new AtomicInteger();
+        DifferenceCollection result = compare(records, null, deepCompares);
+        assertFalse(result.hasDifferences());
+        assertEquals(0, deepCompares.get());
+        assertEquals(1, result.getEquivalenceClasses().getNumberOfClasses());
+    }
+
+    @Test
+    public void onlyRepresentativesAreCompared() {
+        Record a = record("a", 1);
+        Record b = record("a", 2);
+        Record c = record("a", 3);
+        AtomicInteger deepCompares = new AtomicInteger();
+        DifferenceCollection result = compare(new Record[] {a, a, b, a, c}, null, deepCompares);
+        assertEquals("[[0, 1, 3],[2],[4]]", result.getEquivalenceClasses().toString());
+        assertEquals(3, deepCompares.get());
+        assertEquals(3, result.getDifferenceSets().size());
+    }
+
+    @Test
+    public void classesMergedWhenDeepCompareFindsNoDifferences() {
+        PathOptions pathOptions = new PathOptions(new PathOption("/test/testSet/ignored", PathAction.IGNORE));
+        Record a = record("a", 1, "ignored", 1);
+        Record b = record("a", 1, "ignored", 2);
+        AtomicInteger deepCompares = new AtomicInteger();
+        DifferenceCollection result = compare(new Record[] {a, b, a, b}, pathOptions, deepCompares);
+        assertFalse(result.hasDifferences());
+        assertEquals(1, deepCompares.get());
+        assertEquals("[[0, 1, 2, 3]]", result.getEquivalenceClasses().toString());
+    }
+
+    @Test
+    public void binsDifferentExpandsClasses() {
+        Record a = record("x", 1, "y", "a");
+        Record b = record("x", 2, "y", "a");
+        Record c = record("x", 2, "y", "b");
+        DifferenceCollection result = compare(new Record[] {a, b, a, c}, null, new AtomicInteger());
+        String raw = result.getBinsDifferent().toRawString(null, null);
+        // Bin x: clusters 0 and 2 have one value, 1 and 3 the other
+        assertTrue(raw.contains("[0,2]"), raw);
+        assertTrue(raw.contains("[1,3]"), raw);
+        // Bin y: clusters 0, 1 and 2 have one value, 3 the other
+        assertTrue(raw.contains("[0,1,2]"), raw);
+        assertTrue(raw.contains("[3]"), raw);
+    }
+
+    @Test
+    public void missingBinExpandsClasses() {
+        Record a = record("x", 1, "y", 1);
+        Record b = record("y", 1);
+        DifferenceCollection result = compare(new Record[] {a, b, b}, null, new AtomicInteger());
+        String raw = result.getBinsDifferent().toRawString(null, null);
+        assertEquals("{\"DIFFS\":{\"x\":{\"missing\": [1,2]}}}", raw);
+    }
+
+    @Test
+    public void representativeIsLowestCluster() {
+        RecordEquivalenceClasses classes = new RecordEquivalenceClasses(Arrays.asList(5, 3, 1, 7));
+        classes.merge(7, 3);
+        classes.merge(5, 7);
+        assertEquals(3, classes.getRepresentative(5));
+        assertEquals(Arrays.asList(1, 3), classes.getRepresentatives());
+        assertFalse(classes.contains(2));
+    }
+}
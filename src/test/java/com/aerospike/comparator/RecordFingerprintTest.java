@@ -0,0 +1,122 @@
+package com.aerospike.comparator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+import com.aerospike.client.Key;
+import com.aerospike.client.Record;
+import com.aerospike.client.Value;
+
+public class RecordFingerprintTest {
+    private static byte[] fingerprint(Map<String, Object> bins, PathOptions pathOptions) {
+        return RecordFingerprint.of("test", "testSet", bins, pathOptions);
+    }
+
+    private static Map<String, Object> bins(Object... keysAndValues) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            result.put((String)keysAndValues[i], keysAndValues[i+1]);
+        }
+        return result;
+    }
+
+    @Test
+    public void mapOrderDoesNotMatter() {
+        Map<String, Object> map1 = new LinkedHashMap<>();
+        map1.put("a", 1L);
+        map1.put("b", Arrays.asList(1L, "two", new byte[] {3}));
+        Map<String, Object> map2 = new TreeMap<>(Comparator.reverseOrder());
+        map2.putAll(map1);
+        assertArrayEquals(fingerprint(bins("map", map1, "name", "fred"), null), fingerprint(bins("name", "fred", "map", map2), null));
+    }
+
+    @Test
+    public void differentContentsDiffer() {
+        byte[] base = fingerprint(bins("name", "fred", "age", 30L), null);
+        assertFalse(Arrays.equals(base, fingerprint(bins("name", "fred", "age", 31L), null)));
+        assertFalse(Arrays.equals(base, fingerprint(bins("name", "fred", "age", 30), null)));
+        assertFalse(Arrays.equals(base, fingerprint(bins("name", "fred"), null)));
+        assertFalse(Arrays.equals(fingerprint(bins("list", Arrays.asList(1L, 2L)), null), fingerprint(bins("list", Arrays.asList(2L, 1L)), null)));
+        assertFalse(Arrays.equals(fingerprint(bins("blob", new byte[] {1, 2}), null), fingerprint(bins("blob", new byte[] {2, 1}), null)));
+    }
+
+    @Test
+    public void ignoredPathsAreLeftOut() {
+        PathOptions pathOptions = new PathOptions(new PathOption("/test/testSet/updated", PathAction.IGNORE),
+                new PathOption("/**/internal", PathAction.IGNORE));
+        Map<String, Object> nested1 = new HashMap<>();
+        nested1.put("internal", 1L);
+        nested1.put("value", "x");
+        Map<String, Object> nested2 = new HashMap<>();
+        nested2.put("internal", 2L);
+        nested2.put("value", "x");
+        assertArrayEquals(fingerprint(bins("name", "fred", "updated", 1L, "map", nested1), pathOptions),
+                fingerprint(bins("name", "fred", "updated", 2L, "map", nested2), pathOptions));
+        assertArrayEquals(fingerprint(bins("name", "fred", "updated", 1L), pathOptions), fingerprint(bins("name", "fred"), pathOptions));
+        assertFalse(Arrays.equals(fingerprint(bins("name", "fred", "updated", 1L), pathOptions),
+                fingerprint(bins("name", "bob", "updated", 1L), pathOptions)));
+    }
+
+    @Test
+    public void unorderedListsIgnoreOrder() {
+        PathOptions pathOptions = new PathOptions(new PathOption("/test/testSet/tags", PathAction.COMPAREUNORDERED));
+        List<Object> tags1 = Arrays.asList("a", "b", "b", "c");
+        List<Object> tags2 = Arrays.asList("c", "b", "a", "b");
+        assertArrayEquals(fingerprint(bins("tags", tags1), pathOptions), fingerprint(bins("tags", tags2), pathOptions));
+        assertFalse(Arrays.equals(fingerprint(bins("tags", tags1), pathOptions),
+                fingerprint(bins("tags", Arrays.asList("a", "b", "c", "c")), pathOptions)));
+        assertFalse(Arrays.equals(fingerprint(bins("tags", tags1), null), fingerprint(bins("tags", tags2), null)));
+    }
+
+    @Test
+    public void recordsWithoutASetMatchPathsLikeTheComparator() {
+        PathOptions pathOptions = new PathOptions(new PathOption("/test/null/updated", PathAction.IGNORE));
+        Map<String, Object> bins1 = bins("name", "fred", "updated", 1L);
+        Map<String, Object> bins2 = bins("name", "fred", "updated", 2L);
+        Key key = new Key("test", null, "fred");
+        assertFalse(new RecordComparator().compare(key, new Record(bins1, 1, 0), new Record(bins2, 1, 0), pathOptions, false, 0, 1).areDifferent());
+        assertArrayEquals(RecordFingerprint.of(key, new Record(bins1, 1, 0), pathOptions),
+                RecordFingerprint.of(key, new Record(bins2, 1, 0), pathOptions));
+
+        // A path naming an empty set level matches neither
+        pathOptions = new PathOptions(new PathOption("/test//updated", PathAction.IGNORE));
+        assertTrue(new RecordComparator().compare(key, new Record(bins1, 1, 0), new Record(bins2, 1, 0), pathOptions, false, 0, 1).areDifferent());
+        assertFalse(Arrays.equals(RecordFingerprint.of(key, new Record(bins1, 1, 0), pathOptions),
+                RecordFingerprint.of(key, new Record(bins2, 1, 0), pathOptions)));
+    }
+
+    @Test
+    public void otherValueTypesUseTheirFullContents() {
+        assertEquals(RecordFingerprint.LENGTH, fingerprint(bins("name", "fred"), null).length);
+
+        String point1 = "{\"type\":\"Point\",\"coordinates\":[-122.0,37.5]}";
+        String point2 = "{\"type\":\"Point\",\"coordinates\":[-122.0,37.6]}";
+        assertArrayEquals(fingerprint(bins("loc", new Value.GeoJSONValue(point1)), null),
+                fingerprint(bins("loc", new Value.GeoJSONValue(point1)), null));
+        assertFalse(Arrays.equals(fingerprint(bins("loc", new Value.GeoJSONValue(point1)), null),
+                fingerprint(bins("loc", new Value.GeoJSONValue(point2)), null)));
+        assertFalse(Arrays.equals(fingerprint(bins("loc", new Value.GeoJSONValue(point1)), null), fingerprint(bins("loc", point1), null)));
+
+        byte[] hll = new byte[64];
+        byte[] otherHll = hll.clone();
+        otherHll[40] = 1;
+        assertArrayEquals(fingerprint(bins("hll", new Value.HLLValue(hll)), null), fingerprint(bins("hll", new Value.HLLValue(hll.clone())), null));
+        assertFalse(Arrays.equals(fingerprint(bins("hll", new Value.HLLValue(hll)), null), fingerprint(bins("hll", new Value.HLLValue(otherHll)), null)));
+        assertFalse(Arrays.equals(fingerprint(bins("hll", new Value.HLLValue(hll)), null), fingerprint(bins("hll", hll), null)));
+
+        assertFalse(Arrays.equals(fingerprint(bins("flag", true), null), fingerprint(bins("flag", false), null)));
+        assertFalse(Arrays.equals(fingerprint(bins("flag", true), null), fingerprint(bins("flag", 1L), null)));
+    }
+}
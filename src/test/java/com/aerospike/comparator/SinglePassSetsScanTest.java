@@ -0,0 +1,94 @@
+package com.aerospike.comparator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.text.SimpleDateFormat;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.aerospike.client.Bin;
+import com.aerospike.client.Key;
+import com.aerospike.client.exp.Exp;
+
+public class SinglePassSetsScanTest extends AbstractBaseTest {
+
+    @AfterEach
+    void tearDown() {
+        cleanupTestData();
+    }
+
+    private String setName(String suffix) {
+        return getTestSetName() + "_" + suffix;
+    }
+
+    private String[] scanArgs(String compareMode, String sets, boolean singlePass) {
+        String[] args = twoClusterScanArgs(compareMode, null);
+        for (int i = 0; i < args.length; i++) {
+            if ("-s".equals(args[i])) {
+                args[i + 1] = sets;
+            }
+        }
+        if (!singlePass) {
+            return args;
+        }
+        String[] singlePassArgs = new String[args.length + 1];
+        System.arraycopy(args, 0, singlePassArgs, 0, args.length);
+        singlePassArgs[args.length] = "-sps";
+        return singlePassArgs;
+    }
+
+    @Test
+    void filterCombinesSetsWithDateFilter() throws Exception {
+        Exp setA = Exp.eq(Exp.setName(), Exp.val("a"));
+        Exp setB = Exp.eq(Exp.setName(), Exp.val("b"));
+        long begin = TimeUnit.MILLISECONDS.toNanos(new SimpleDateFormat("yyyy/MM/dd").parse("2024/01/01").getTime());
+        Exp dateFilter = Exp.ge(Exp.lastUpdate(), Exp.val(begin));
+
+        assertEquals(Exp.build(setA).getBase64(),
+                Exp.build(ClusterComparator.formSinglePassFilter(new String[] {"a"}, null)).getBase64());
+        assertEquals(Exp.build(Exp.or(setA, setB)).getBase64(),
+                Exp.build(ClusterComparator.formSinglePassFilter(new String[] {"a", "b"}, null)).getBase64());
+        assertEquals(Exp.build(Exp.and(Exp.or(setA, setB), dateFilter)).getBase64(),
+                Exp.build(ClusterComparator.formSinglePassFilter(new String[] {"a", "b"}, dateFilter)).getBase64());
+    }
+
+    @Test
+    void twoClusters_perSetCountsMatchSeparateRuns() throws Exception {
+        assumeTwoTestClustersAvailable();
+        String[] sets = new String[] {setName("a"), setName("b"), setName("other")};
+        for (String set : sets) {
+            getClient(TWO_CLUSTER_A).truncate(null, NAMESPACE, set, null);
+            getClient(TWO_CLUSTER_B).truncate(null, NAMESPACE, set, null);
+        }
+
+        // Set a: one record missing from cluster B and one different
+        putRecord(TWO_CLUSTER_A, uniqueKey(sets[0], "missing"), new Bin("value", 1));
+        Key differentKey = uniqueKey(sets[0], "different");
+        putRecord(TWO_CLUSTER_A, differentKey, new Bin("value", 1));
+        putRecord(TWO_CLUSTER_B, differentKey, new Bin("value", 2));
+        // Set b: two records missing from cluster A and one the same
+        putRecord(TWO_CLUSTER_B, uniqueKey(sets[1], "missing1"), new Bin("value", 1));
+        putRecord(TWO_CLUSTER_B, uniqueKey(sets[1], "missing2"), new Bin("value", 1));
+        Key sameKey = uniqueKey(sets[1], "same");
+        putRecord(TWO_CLUSTER_A, sameKey, new Bin("value", 1));
+        putRecord(TWO_CLUSTER_B, sameKey, new Bin("value", 1));
+        // A set which is not being compared, which the filter must leave out
+        putRecord(TWO_CLUSTER_A, uniqueKey(sets[2], "ignored"), new Bin("value", 1));
+
+        DifferenceSummary singlePass = runComparator(scanArgs("RECORD_DIFFERENCES", sets[0] + "," + sets[1], true));
+        for (int i = 0; i < 2; i++) {
+            DifferenceSummary separate = runComparator(scanArgs("RECORD_DIFFERENCES", sets[i], false));
+            assertEquals(separate.getMissingRecords(0) + separate.getMissingRecords(1), singlePass.getMissingRecordsInSet(sets[i]),
+                    "Missing records in " + sets[i]);
+            assertEquals(separate.getDifferences(), singlePass.getDifferencesInSet(sets[i]), "Different records in " + sets[i]);
+        }
+        assertEquals(1, singlePass.getMissingRecordsInSet(sets[0]));
+        assertEquals(1, singlePass.getDifferencesInSet(sets[0]));
+        assertEquals(2, singlePass.getMissingRecordsInSet(sets[1]));
+        assertEquals(0, singlePass.getDifferencesInSet(sets[1]));
+        assertEquals(0, singlePass.getMissingRecordsInSet(sets[2]));
+        assertEquals(3, singlePass.getMissingRecords(0) + singlePass.getMissingRecords(1));
+    }
+}
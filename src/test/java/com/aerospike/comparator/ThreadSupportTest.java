@@ -0,0 +1,96 @@
+package com.aerospike.comparator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+public class ThreadSupportTest {
+    @AfterEach
+    public void usePlatformThreads() {
+        ThreadSupport.setUseVirtualThreads(false);
+    }
+
+    @Test
+    public void virtualThreadsOnlyUsedWhenAvailable() {
+        boolean available = Runtime.version().feature() >= 21;
+        assertEquals(available, ThreadSupport.isVirtualThreadsAvailable());
+        assertEquals(available, ThreadSupport.setUseVirtualThreads(true));
+        assertEquals(available, ThreadSupport.isUsingVirtualThreads());
+    }
+
+    @Test
+    public void threadsAreNamedDaemons() throws Exception {
+        for (boolean useVirtual : new boolean[] {false, true}) {
+            ThreadSupport.setUseVirtualThreads(useVirtual);
+            Thread thread = ThreadSupport.newThread("test-thread", () -> {});
+            assertEquals("test-thread", thread.getName());
+            assertTrue(thread.isDaemon());
+
+            ExecutorService executor = ThreadSupport.newCachedThreadPool("test-pool");
+            try {
+                Future<String> name = executor.submit(() -> Thread.currentThread().getName());
+                assertTrue(name.get().startsWith("test-pool-"), name.get());
+            }
+            finally {
+                executor.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Only run by the java21 build profile, so the virtual thread path is known to be exercised rather than falling
+     * back to platform threads.
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "comparator.test.virtualThreads", matches = "true")
+    public void virtualThreadsUsedOnJava21() throws Exception {
+        assertTrue(ThreadSupport.setUseVirtualThreads(true));
+        Method isVirtual = Thread.class.getMethod("isVirtual");
+        assertTrue((Boolean) isVirtual.invoke(ThreadSupport.newThread("test-thread", () -> {})));
+
+        for (ExecutorService executor : new ExecutorService[] {
+                ThreadSupport.newFixedThreadPool(4, "test-fixed"), ThreadSupport.newCachedThreadPool("test-cached")}) {
+            try {
+                Future<Boolean> virtual = executor.submit(() -> (Boolean) isVirtual.invoke(Thread.currentThread()));
+                assertTrue(virtual.get());
+            }
+            finally {
+                executor.shutdown();
+            }
+        }
+
+        // Thousands of threads blocked at once, as with thousands of concurrent partition scans
+        int threads = 10_000;
+        CountDownLatch started = new CountDownLatch(threads);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = ThreadSupport.newFixedThreadPool(threads, "test-many");
+        try {
+            for (int i = 0; i < threads; i++) {
+                executor.execute(() -> {
+                    started.countDown();
+                    try {
+                        release.await();
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            assertTrue(started.await(30, TimeUnit.SECONDS));
+        }
+        finally {
+            release.countDown();
+            executor.shutdown();
+        }
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+    }
+}
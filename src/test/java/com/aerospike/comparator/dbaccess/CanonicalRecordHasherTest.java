@@ -0,0 +1,92 @@
+package com.aerospike.comparator.dbaccess;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+public class CanonicalRecordHasherTest {
+    private static Map<String, Object> bins(Object... namesAndValues) {
+        Map<String, Object> bins = new LinkedHashMap<>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            bins.put((String)namesAndValues[i], namesAndValues[i + 1]);
+        }
+        return bins;
+    }
+
+    private static String hex(byte[] hash) {
+        return Arrays.toString(hash);
+    }
+
+    @Test
+    public void equalBinsHashEqually() {
+        Map<String, Object> inner = new LinkedHashMap<>();
+        inner.put("a", Arrays.asList(1L, "two", 3.0));
+        inner.put("b", new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9});
+        Map<String, Object> innerCopy = new LinkedHashMap<>(inner);
+        innerCopy.put("a", new ArrayList<>(Arrays.asList(1L, "two", 3.0)));
+        innerCopy.put("b", new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9});
+
+        byte[] hash = CanonicalRecordHasher.hash(bins("map", inner, "name", "bob"), false);
+        assertEquals(16, hash.length);
+        assertArrayEquals(hash, CanonicalRecordHasher.hash(bins("map", innerCopy, "name", "bob"), false));
+    }
+
+    @Test
+    public void typesAndContentsHashDifferently() {
+        List<Object> values = Arrays.asList(null, 1L, 1, (short)1, (byte)1, 1.0, 1.0f, "1", true, false,
+                new byte[] {1}, new byte[] {1, 0}, Arrays.asList(1L), Arrays.asList(Arrays.asList(1L)),
+                Arrays.asList(1L, 2L), Arrays.asList(2L, 1L), bins("1", 1L), "", "a", "ab", "abc", "abcd", "abcde",
+                "abcdefgh", "abcdefghi", "a\u0000", new byte[0], new byte[8], new byte[9]);
+        Set<String> hashes = new HashSet<>();
+        for (Object value : values) {
+            hashes.add(hex(CanonicalRecordHasher.hash(bins("bin", value), false)));
+        }
+        assertEquals(values.size(), hashes.size());
+
+        // Moving a value between bins changes the hash
+        assertFalse(Arrays.equals(CanonicalRecordHasher.hash(bins("a", "x", "b", ""), false),
+                CanonicalRecordHasher.hash(bins("a", "", "b", "x"), false)));
+    }
+
+    @Test
+    public void sortingMapsIgnoresTheirOrder() {
+        Map<Object, Object> map1 = new LinkedHashMap<>();
+        map1.put("z", 1L);
+        map1.put(5L, "five");
+        map1.put("a", 2L);
+        Map<Object, Object> map2 = new LinkedHashMap<>();
+        map2.put("a", 2L);
+        map2.put("z", 1L);
+        map2.put(5L, "five");
+
+        assertFalse(Arrays.equals(CanonicalRecordHasher.hash(bins("m", map1), false),
+                CanonicalRecordHasher.hash(bins("m", map2), false)));
+        assertArrayEquals(CanonicalRecordHasher.hash(bins("m", map1), true),
+                CanonicalRecordHasher.hash(bins("m", map2), true));
+
+        // Nested maps and the bins themselves are order independent too
+        Map<String, Object> bins1 = bins("list", Arrays.asList("x", map1), "name", "bob");
+        Map<String, Object> bins2 = bins("name", "bob", "list", Arrays.asList("x", map2));
+        assertArrayEquals(CanonicalRecordHasher.hash(bins1, true), CanonicalRecordHasher.hash(bins2, true));
+        assertFalse(Arrays.equals(CanonicalRecordHasher.hash(bins1, true),
+                CanonicalRecordHasher.hash(bins("name", "bob", "list", Arrays.asList(map2, "x")), true)));
+
+        // An entry's key and value stay paired
+        Map<Object, Object> swapped = new LinkedHashMap<>(map1);
+        swapped.put("z", 2L);
+        swapped.put("a", 1L);
+        assertFalse(Arrays.equals(CanonicalRecordHasher.hash(bins("m", map1), true),
+                CanonicalRecordHasher.hash(bins("m", swapped), true)));
+        assertEquals(Arrays.asList("z", 5L, "a"), new ArrayList<>(map1.keySet()));
+    }
+}
@@ -0,0 +1,121 @@
+package com.aerospike.comparator.dbaccess;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.IAerospikeClient;
+import com.aerospike.client.Key;
+import com.aerospike.client.Record;
+import com.aerospike.client.ResultCode;
+import com.aerospike.client.async.EventLoops;
+import com.aerospike.client.listener.ExistsArrayListener;
+import com.aerospike.client.listener.RecordArrayListener;
+import com.aerospike.client.listener.RecordListener;
+import com.aerospike.client.listener.WriteListener;
+
+public class LocalAerospikeClientTest {
+    private static final Key KEY = new Key("test", "set", 1);
+
+    /**
+     * Stands in for the Aerospike client, recording the listener passed to each asynchronous call and the name of
+     * each synchronous call, so the test decides when and how every operation completes.
+     */
+    private static class StubClient {
+        final List<Object> listeners = new ArrayList<>();
+        final List<String> syncCalls = new ArrayList<>();
+        RuntimeException syncFailure = null;
+
+        IAerospikeClient proxy() {
+            return (IAerospikeClient) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {IAerospikeClient.class},
+                    (proxy, method, args) -> {
+                        if (method.getDeclaringClass() == Object.class) {
+                            return method.getName().equals("equals") ? proxy == args[0] : method.invoke(this, args);
+                        }
+                        if (args != null && args.length > 1 && method.getParameterTypes()[0].getSimpleName().equals("EventLoop")) {
+                            listeners.add(args[1]);
+                            return null;
+                        }
+                        syncCalls.add(method.getName());
+                        if (syncFailure != null) {
+                            throw syncFailure;
+                        }
+                        return method.getReturnType() == boolean.class ? Boolean.FALSE : null;
+                    });
+        }
+    }
+
+    private static EventLoops eventLoops() {
+        return (EventLoops) Proxy.newProxyInstance(LocalAerospikeClientTest.class.getClassLoader(), new Class<?>[] {EventLoops.class},
+                (proxy, method, args) -> null);
+    }
+
+    @Test
+    public void asyncOperationsCompleteFromTheirListeners() {
+        StubClient stub = new StubClient();
+        LocalAerospikeClient client = new LocalAerospikeClient(stub.proxy(), eventLoops());
+
+        CompletableFuture<Void> touch = client.touchAsync(null, KEY);
+        CompletableFuture<Record> get = client.getAsync(null, KEY);
+        CompletableFuture<boolean[]> exists = client.existsAsync(null, new Key[] {KEY});
+        CompletableFuture<Record[]> batchGet = client.getAsync(null, new Key[] {KEY});
+        assertEquals(4, stub.listeners.size());
+        assertTrue(stub.syncCalls.isEmpty());
+        assertFalse(touch.isDone() || get.isDone() || exists.isDone() || batchGet.isDone());
+
+        Record record = new Record(null, 1, 0);
+        ((WriteListener) stub.listeners.get(0)).onSuccess(KEY);
+        ((RecordListener) stub.listeners.get(1)).onSuccess(KEY, record);
+        ((ExistsArrayListener) stub.listeners.get(2)).onSuccess(new Key[] {KEY}, new boolean[] {true});
+        ((RecordArrayListener) stub.listeners.get(3)).onSuccess(new Key[] {KEY}, new Record[] {record});
+
+        assertTrue(touch.isDone());
+        assertSame(record, get.join());
+        assertArrayEquals(new boolean[] {true}, exists.join());
+        assertSame(record, batchGet.join()[0]);
+    }
+
+    @Test
+    public void asyncFailuresSurfaceAsAerospikeExceptions() {
+        StubClient stub = new StubClient();
+        LocalAerospikeClient client = new LocalAerospikeClient(stub.proxy(), eventLoops());
+
+        CompletableFuture<Void> touch = client.touchAsync(null, KEY);
+        CompletableFuture<RecordMetadata> metadata = client.getMetadataAsync(null, KEY);
+        ((WriteListener) stub.listeners.get(0)).onFailure(new AerospikeException(ResultCode.TIMEOUT));
+        ((RecordListener) stub.listeners.get(1)).onFailure(new AerospikeException(ResultCode.KEY_NOT_FOUND_ERROR));
+
+        assertEquals(ResultCode.TIMEOUT,
+                assertThrows(AerospikeException.class, () -> AerospikeClientAccess.await(touch)).getResultCode());
+        assertEquals(ResultCode.KEY_NOT_FOUND_ERROR,
+                assertThrows(AerospikeException.class, () -> AerospikeClientAccess.await(metadata)).getResultCode());
+    }
+
+    @Test
+    public void withoutEventLoopsOperationsRunOnTheCaller() {
+        StubClient stub = new StubClient();
+        LocalAerospikeClient client = new LocalAerospikeClient(stub.proxy());
+
+        CompletableFuture<Void> touch = client.touchAsync(null, KEY);
+        assertTrue(touch.isDone() && !touch.isCompletedExceptionally());
+        assertTrue(stub.listeners.isEmpty());
+        assertEquals(List.of("touch"), stub.syncCalls);
+
+        // A synchronous failure is returned as a failed future rather than thrown
+        stub.syncFailure = new AerospikeException(ResultCode.TIMEOUT);
+        CompletableFuture<Record> get = client.getAsync(null, KEY);
+        assertTrue(get.isCompletedExceptionally());
+        assertThrows(AerospikeException.class, () -> AerospikeClientAccess.await(get));
+    }
+}
@@ -0,0 +1,124 @@
+package com.aerospike.comparator.dbaccess;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.Key;
+import com.aerospike.client.Record;
+
+public class ReadAheadRecordSetTest {
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    /**
+     * A record set which returns <code>count</code> records, optionally failing after <code>failAfter</code> records.
+     */
+    private static class CountingRecordSet implements RecordSetAccess {
+        private final int count;
+        private final int failAfter;
+        private int current = 0;
+        private volatile boolean closed = false;
+
+        public CountingRecordSet(int count, int failAfter) {
+            this.count = count;
+            this.failAfter = failAfter;
+        }
+        @Override
+        public boolean next() {
+            if (current == failAfter) {
+                throw new AerospikeException("Simulated failure");
+            }
+            return !closed && ++current <= count;
+        }
+        @Override
+        public Key getKey() {
+            return new Key("test", "testSet", current);
+        }
+        @Override
+        public Record getRecord() {
+            return new Record(Collections.singletonMap("bin", current), 1, 0);
+        }
+        @Override
+        public byte[] getRecordHash(boolean sortMaps, RecordHashVersion version) {
+            return null;
+        }
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    @AfterEach
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void returnsAllRecordsInOrder() {
+        ReadAheadStats stats = new ReadAheadStats();
+        RecordSetAccess recordSet = new ReadAheadRecordSet(new CountingRecordSet(1000, -1), 10, executor, stats);
+        for (int i = 1; i <= 1000; i++) {
+            assertTrue(recordSet.next());
+            assertEquals(i, recordSet.getKey().userKey.toInteger());
+            assertEquals(i, recordSet.getRecord().getInt("bin"));
+        }
+        assertFalse(recordSet.next());
+        assertFalse(recordSet.next());
+        recordSet.close();
+        assertTrue(stats.getAverageDepth() <= 10.0);
+    }
+
+    @Test
+    public void failurePassedToConsumer() {
+        RecordSetAccess recordSet = new ReadAheadRecordSet(new CountingRecordSet(1000, 5), 100, executor, new ReadAheadStats());
+        for (int i = 1; i <= 5; i++) {
+            assertTrue(recordSet.next());
+        }
+        assertThrows(AerospikeException.class, () -> recordSet.next());
+        recordSet.close();
+    }
+
+    @Test
+    public void errorPassedToConsumer() {
+        CountingRecordSet source = new CountingRecordSet(1000, -1) {
+            @Override
+            public boolean next() {
+                throw new StackOverflowError("Simulated error");
+            }
+        };
+        RecordSetAccess recordSet = new ReadAheadRecordSet(source, 100, executor, new ReadAheadStats());
+        assertThrows(StackOverflowError.class, () -> recordSet.next());
+        recordSet.close();
+    }
+
+    @Test
+    public void executorShutDownEndsTheStream() throws InterruptedException {
+        RecordSetAccess recordSet = new ReadAheadRecordSet(new CountingRecordSet(1000, -1), 1, executor, new ReadAheadStats());
+        // Let the filler fill the buffer and wait for space, then interrupt it
+        Thread.sleep(100);
+        executor.shutdownNow();
+        assertThrows(AerospikeException.class, () -> {
+            while (recordSet.next()) {
+            }
+        });
+        recordSet.close();
+    }
+
+    @Test
+    public void closeBeforeEndOfStream() {
+        CountingRecordSet source = new CountingRecordSet(1000, -1);
+        RecordSetAccess recordSet = new ReadAheadRecordSet(source, 2, executor, new ReadAheadStats());
+        assertTrue(recordSet.next());
+        recordSet.close();
+        assertTrue(source.closed);
+    }
+}
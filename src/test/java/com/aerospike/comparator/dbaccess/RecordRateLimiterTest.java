@@ -0,0 +1,73 @@
+package com.aerospike.comparator.dbaccess;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class RecordRateLimiterTest {
+    private long timeMs(Runnable runnable) {
+        long start = System.nanoTime();
+        runnable.run();
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    @Test
+    public void unlimitedOnlyCounts() {
+        RecordRateLimiter limiter = new RecordRateLimiter(0);
+        assertTrue(timeMs(() -> limiter.acquire(1_000_000)) < 100);
+        limiter.acquire(0);
+        assertEquals(1_000_000, limiter.getRecordsUsed());
+    }
+
+    @Test
+    public void burstThenLimited() {
+        RecordRateLimiter limiter = new RecordRateLimiter(1000);
+        // A second's worth of records can be used at once
+        assertTrue(timeMs(() -> limiter.acquire(1000)) < 100);
+        // After that a batch of 300 records has to wait for 300ms worth of tokens
+        long waited = timeMs(() -> limiter.acquire(300));
+        assertTrue(waited >= 200, "waited " + waited + "ms");
+        assertTrue(waited < 2000, "waited " + waited + "ms");
+        assertEquals(1300, limiter.getRecordsUsed());
+    }
+
+    @Test
+    public void limitSharedAcrossThreads() throws InterruptedException {
+        RecordRateLimiter limiter = new RecordRateLimiter(2000);
+        limiter.acquire(2000);
+        List<Thread> threads = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(() -> {
+                for (int j = 0; j < 100; j++) {
+                    limiter.acquire(1);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // 800 records at 2,000 per second once the burst is used
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsedMs >= 300, "took " + elapsedMs + "ms");
+        assertEquals(2800, limiter.getRecordsUsed());
+    }
+
+    @Test
+    public void rateCanBeChanged() {
+        RecordRateLimiter limiter = new RecordRateLimiter(10);
+        limiter.acquire(10);
+        limiter.setRecordsPerSecond(0);
+        assertTrue(timeMs(() -> limiter.acquire(1000)) < 100);
+        assertEquals(0, limiter.getRecordsPerSecond());
+        limiter.updateObservedRate();
+        assertEquals(1010, limiter.getRecordsUsed());
+    }
+}
@@ -0,0 +1,170 @@
+package com.aerospike.comparator.dbaccess;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.Test;
+
+import com.aerospike.client.Key;
+import com.aerospike.client.Record;
+
+public class RemoteAerospikeClientTest {
+    /**
+     * A remote server which only knows the record hash version commands. It answers with the latest version it knows,
+     * or never answers if 0, as servers from before hashes were versioned do.
+     */
+    private static class VersionServer implements AutoCloseable {
+        private final ServerSocket serverSocket = new ServerSocket(0);
+        private final List<Integer> versionsSet = new CopyOnWriteArrayList<>();
+
+        VersionServer(int latestVersion) throws IOException {
+            Thread acceptor = new Thread(() -> {
+                try {
+                    while (true) {
+                        Socket socket = serverSocket.accept();
+                        Thread handler = new Thread(() -> handle(socket, latestVersion));
+                        handler.setDaemon(true);
+                        handler.start();
+                    }
+                }
+                catch (IOException ignored) {
+                    // Closed
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        private void handle(Socket socket, int latestVersion) {
+            try (Socket s = socket) {
+                DataInputStream dis = new DataInputStream(s.getInputStream());
+                DataOutputStream dos = new DataOutputStream(s.getOutputStream());
+                int command;
+                while ((command = dis.read()) >= 0) {
+                    if (latestVersion == 0) {
+                        continue;
+                    }
+                    if (command == RemoteServer.CMD_GET_RECORD_HASH_VERSION) {
+                        dos.writeInt(latestVersion);
+                    }
+                    else if (command == RemoteServer.CMD_SET_RECORD_HASH_VERSION) {
+                        versionsSet.add(dis.readInt());
+                        dos.writeInt(0);
+                    }
+                }
+            }
+            catch (IOException ignored) {
+                // The client went away
+            }
+        }
+
+        RemoteAerospikeClient connect() throws IOException {
+            RemoteAerospikeClient client = new RemoteAerospikeClient("localhost", serverSocket.getLocalPort(), null);
+            client.setHashVersionTimeout(200);
+            return client;
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverSocket.close();
+        }
+    }
+
+    @Test
+    public void versionedServerHashesWithTheVersionAskedFor() throws IOException {
+        try (VersionServer server = new VersionServer(RecordHashVersion.CANONICAL.getId())) {
+            RemoteAerospikeClient client = server.connect();
+            assertTrue(client.supportsScansAfterDigest());
+            assertEquals(RecordHashVersion.CANONICAL, client.useRecordHashVersion(RecordHashVersion.CANONICAL));
+            // Asking again does not go to the server
+            assertEquals(RecordHashVersion.CANONICAL, client.useRecordHashVersion(RecordHashVersion.CANONICAL));
+            assertEquals(List.of(RecordHashVersion.CANONICAL.getId()), server.versionsSet);
+
+            // Another server falling back puts this one back on legacy hashes
+            assertEquals(RecordHashVersion.LEGACY, client.useRecordHashVersion(RecordHashVersion.LEGACY));
+            assertEquals(List.of(RecordHashVersion.CANONICAL.getId(), RecordHashVersion.LEGACY.getId()), server.versionsSet);
+        }
+    }
+
+    @Test
+    public void unversionedServerFallsBackToLegacy() throws IOException {
+        try (VersionServer server = new VersionServer(0)) {
+            RemoteAerospikeClient client = server.connect();
+            assertEquals(RecordHashVersion.LEGACY, client.useRecordHashVersion(RecordHashVersion.CANONICAL));
+            // The server was only asked once, so this does not wait for it again
+            assertFalse(client.supportsScansAfterDigest());
+            // The server is already hashing with the legacy version
+            assertEquals(RecordHashVersion.LEGACY, client.useRecordHashVersion(RecordHashVersion.LEGACY));
+            assertEquals(List.of(), server.versionsSet);
+        }
+    }
+
+    @Test
+    public void olderServerFallsBackToLegacy() throws IOException {
+        try (VersionServer server = new VersionServer(RecordHashVersion.LEGACY.getId())) {
+            RemoteAerospikeClient client = server.connect();
+            assertEquals(RecordHashVersion.LEGACY, client.useRecordHashVersion(RecordHashVersion.CANONICAL));
+            assertEquals(List.of(), server.versionsSet);
+        }
+    }
+
+    /**
+     * A scan of keys with the passed digests, in the order given.
+     */
+    private static RecordSetAccess scanOf(byte[]... digests) {
+        Iterator<byte[]> iterator = List.of(digests).iterator();
+        return new RecordSetAccess() {
+            private Key key;
+            @Override
+            public boolean next() {
+                key = iterator.hasNext() ? new Key("test", iterator.next(), "set", null) : null;
+                return key != null;
+            }
+            @Override
+            public Key getKey() {
+                return key;
+            }
+            @Override
+            public Record getRecord() {
+                return null;
+            }
+            @Override
+            public byte[] getRecordHash(boolean sortMaps, RecordHashVersion version) {
+                return null;
+            }
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    private static List<Integer> firstBytes(RecordSetAccess recordSet) {
+        List<Integer> result = new ArrayList<>();
+        while (recordSet.next()) {
+            result.add(recordSet.getKey().digest[0] & 0xff);
+        }
+        return result;
+    }
+
+    @Test
+    public void wholePartitionScanSkipsToAfterTheDigest() {
+        // Scans return digests in descending unsigned order, and the digest resumed after is not returned again
+        RecordSetAccess scan = scanOf(new byte[] {(byte)0xf0}, new byte[] {(byte)0x90}, new byte[] {(byte)0x80},
+                new byte[] {0x40}, new byte[] {0x10});
+        assertEquals(List.of(0x40, 0x10), firstBytes(new RemoteAerospikeClient.AfterDigestRecordSet(scan, new byte[] {(byte)0x80})));
+
+        scan = scanOf(new byte[] {(byte)0xf0}, new byte[] {0x10});
+        assertEquals(List.of(), firstBytes(new RemoteAerospikeClient.AfterDigestRecordSet(scan, new byte[] {0x01})));
+    }
+}